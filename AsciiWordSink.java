@@ -0,0 +1,29 @@
+/**
+ * A {@code HashedWordSink} that can also be given a word of ASCII text as
+ * bytes, so text that needs no decoding is counted straight from the bytes
+ * read, without being widened to characters first.
+ *
+ * @author Hudson Arledge and Nik Anand
+ *
+ */
+public interface AsciiWordSink extends HashedWordSink {
+
+    /**
+     * Accepts the word {@code text[offset, offset + length)}, whose bytes are
+     * all ASCII and whose {@code String.hashCode} is {@code hash}.
+     *
+     * @param text
+     *            the buffer holding the word
+     * @param offset
+     *            the index of the first byte of the word
+     * @param length
+     *            the number of bytes in the word
+     * @param hash
+     *            the hash of the word
+     * @requires 0 <= offset and 0 < length and offset + length <= |text| and
+     *           [text[offset, offset + length) is ASCII] and
+     *           hash = [String.hashCode of text[offset, offset + length)]
+     */
+    void word(byte[] text, int offset, int length, int hash);
+
+}
@@ -0,0 +1,774 @@
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Stream;
+
+/**
+ * Generates the tag clouds of many files in one process. The files, or every
+ * regular file under the given directories, are counted on a bounded pool of
+ * worker threads, each cloud is written to an output directory, and a summary
+ * of the time and throughput of every file is printed at the end. The counts
+ * can also be merged into one combined cloud of all of the files.
+ *
+ * <pre>
+ * TagCloud [-n words] [-o output directory] [-t threads] [-v]
+ *          [-c combined output file] [-m metrics report] [-p seconds]
+ *          [-a epsilon] [-u] [-s stop words] [-g words per phrase]
+ *          [-e charset] [-k cache directory] [-f formats]
+ *          [-d linear|log|quantile] file or directory...
+ * </pre>
+ *
+ * With {@code -v} each file runs on its own virtual thread, with at most
+ * {@code threads} of them counting at a time; virtual threads need Java 21,
+ * and on an older runtime the option falls back to the platform pool. With
+ * {@code -m} the time spent in each stage of every file, and the totals of
+ * the batch, are written as JSON to the report file, or to standard output if
+ * it is "-"; {@code -p} prints a progress line every few seconds. With
+ * {@code -a} each file is counted approximately in fixed memory, every count
+ * at most {@code epsilon} times the number of words in the file too high;
+ * approximate counts cannot be combined, so {@code -a} excludes {@code -c}.
+ * With {@code -u} every Unicode space, control character and punctuation
+ * mark separates words, not just the ASCII separators of the original
+ * generator. With {@code -s} the words listed in a file, one per line, or
+ * the common English words if it is "english", are left out, and with
+ * {@code -g} phrases of that many consecutive words are counted instead of
+ * single words. {@code -e} names the encoding of the files, UTF-8 by
+ * default, whatever the platform's default charset. With {@code -k} the
+ * clouds are cached by the content of their files in memory and in the
+ * cache directory, so a file with the same bytes as one already counted, in
+ * this run or an earlier one with the same options, is not counted again;
+ * only the selected words are cached, so {@code -k} also excludes
+ * {@code -c}. {@code -f} lists the formats every cloud is written in,
+ * separated by commas, from html, inline, json, csv and svg; each is written
+ * from the same count, to the file of the HTML page with the extension of
+ * the format in place of ".html", and html alone is the default. {@code -d}
+ * chooses how counts are scaled to font sizes: in proportion to the counts,
+ * as by default, to their logarithms, or by rank.
+ *
+ * @author Hudson Arledge and Nik Anand
+ *
+ */
+public final class BatchTagCloud {
+
+    /**
+     * Default number of words in each cloud.
+     */
+    private static final int DEFAULT_WORDS = 100;
+
+    /**
+     * Estimated bytes of memory the clouds cached with {@code -k} may use.
+     */
+    private static final long CACHE_BYTES = 64L << 20;
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private BatchTagCloud() {
+    }
+
+    /**
+     * The outcome of generating the cloud of one file.
+     *
+     * @author Hudson Arledge and Nik Anand
+     *
+     */
+    private static final class FileResult {
+
+        /**
+         * The input file.
+         */
+        private final Path input;
+
+        /**
+         * The number of bytes in the input file.
+         */
+        private final long bytes;
+
+        /**
+         * The number of words in the input file.
+         */
+        private final long words;
+
+        /**
+         * The number of distinct words in the input file, or -1 if not known.
+         */
+        private final int distinct;
+
+        /**
+         * The time taken, in nanoseconds.
+         */
+        private final long nanos;
+
+        /**
+         * The error message, or null if the cloud was generated.
+         */
+        private final String error;
+
+        /**
+         * Constructor.
+         *
+         * @param input
+         *            the input file
+         * @param bytes
+         *            the number of bytes in the input file
+         * @param words
+         *            the number of words in the input file
+         * @param distinct
+         *            the number of distinct words in the input file, or -1
+         *            if not known
+         * @param nanos
+         *            the time taken, in nanoseconds
+         * @param error
+         *            the error message, or null
+         */
+        FileResult(Path input, long bytes, long words, int distinct,
+                long nanos, String error) {
+            this.input = input;
+            this.bytes = bytes;
+            this.words = words;
+            this.distinct = distinct;
+            this.nanos = nanos;
+            this.error = error;
+        }
+    }
+
+    /**
+     * Main method.
+     *
+     * @param args
+     *            the command line arguments
+     */
+    public static void main(String[] args) {
+        int n = DEFAULT_WORDS;
+        Path outputDir = Paths.get(".");
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean virtual = false;
+        Path combined = null;
+        String report = null;
+        long progress = 0;
+        double epsilon = 0;
+        SeparatorSet separators = SeparatorSet.DEFAULT;
+        String stopList = null;
+        int phrases = 1;
+        Charset charset = StandardCharsets.UTF_8;
+        Path cacheDir = null;
+        CloudFormat[] formats = { CloudFormats.HTML };
+        FontScale scale = FontScale.LINEAR;
+        List<Path> roots = new ArrayList<Path>();
+        try {
+            int i = 0;
+            while (i < args.length) {
+                String arg = args[i];
+                if (arg.equals("-n")) {
+                    n = Integer.parseInt(args[i + 1]);
+                    i += 2;
+                } else if (arg.equals("-o")) {
+                    outputDir = Paths.get(args[i + 1]);
+                    i += 2;
+                } else if (arg.equals("-t")) {
+                    threads = Integer.parseInt(args[i + 1]);
+                    i += 2;
+                } else if (arg.equals("-c")) {
+                    combined = Paths.get(args[i + 1]);
+                    i += 2;
+                } else if (arg.equals("-m")) {
+                    report = args[i + 1];
+                    i += 2;
+                } else if (arg.equals("-p")) {
+                    progress = Long.parseLong(args[i + 1]);
+                    i += 2;
+                } else if (arg.equals("-a")) {
+                    epsilon = Double.parseDouble(args[i + 1]);
+                    i += 2;
+                } else if (arg.equals("-s")) {
+                    stopList = args[i + 1];
+                    i += 2;
+                } else if (arg.equals("-g")) {
+                    phrases = Integer.parseInt(args[i + 1]);
+                    i += 2;
+                } else if (arg.equals("-e")) {
+                    charset = Charset.forName(args[i + 1]);
+                    i += 2;
+                } else if (arg.equals("-k")) {
+                    cacheDir = Paths.get(args[i + 1]);
+                    i += 2;
+                } else if (arg.equals("-f")) {
+                    formats = CloudFormats.parse(args[i + 1]);
+                    i += 2;
+                } else if (arg.equals("-d")) {
+                    scale = FontScale.forName(args[i + 1]);
+                    i += 2;
+                } else if (arg.equals("-u")) {
+                    separators = SeparatorSet.unicode();
+                    i++;
+                } else if (arg.equals("-v")) {
+                    virtual = true;
+                    i++;
+                } else {
+                    roots.add(Paths.get(arg));
+                    i++;
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException e) {
+            //an unknown charset or format, or a malformed number
+            usage();
+            return;
+        }
+        if (roots.isEmpty() || n < 0 || threads < 1 || progress < 0
+                || !(0 <= epsilon && epsilon < 1)
+                || (epsilon > 0 && combined != null)
+                || (cacheDir != null && combined != null) || scale == null
+                || phrases < 1
+                || phrases > PhraseCounter.MAX_WORDS) {
+            usage();
+            return;
+        }
+        TagCloudConfig config = TagCloudConfig.DEFAULT.withWords(n)
+                .withApproximation(epsilon).withSeparators(separators)
+                .withPhrases(phrases).withCharset(charset).withScale(scale);
+        if (stopList != null) {
+            try {
+                config = config.withStopWords(stopWords(stopList, config));
+            } catch (IOException e) {
+                System.err.println("Error reading stop words");
+                return;
+            }
+        }
+
+        List<Path> inputs = new ArrayList<Path>();
+        List<Path> outputs = new ArrayList<Path>();
+        try {
+            listInputs(roots, outputDir, inputs, outputs);
+        } catch (IOException e) {
+            //names the directory that cannot be listed, or the inputs whose
+            //clouds would collide
+            System.err.println("Error listing input files: " + e.getMessage());
+            return;
+        }
+        PipelineMetrics metrics = PipelineMetrics.DISABLED;
+        if (report != null || progress > 0) {
+            metrics = PipelineMetrics.start(progress);
+        }
+        TagCloudEngine engine = new TagCloudEngine(config);
+        TagCloudCache cache = null;
+        if (cacheDir != null) {
+            try {
+                cache = new TagCloudCache(engine, CACHE_BYTES, cacheDir);
+            } catch (IOException e) {
+                System.err.println("Error creating cache directory");
+                return;
+            }
+        }
+        run(inputs, outputs, engine, cache, formats, threads, virtual,
+                combined, metrics);
+        if (cache != null) {
+            System.out.println(cache);
+        }
+        if (report != null) {
+            try {
+                metrics.report(report, String.valueOf(roots));
+            } catch (IOException e) {
+                System.err.println("Error writing metrics report");
+            }
+        }
+    }
+
+    /**
+     * Prints the command line usage.
+     */
+    private static void usage() {
+        System.err.println("Usage: TagCloud [-n words] [-o output directory]"
+                + " [-t threads] [-v] [-c combined output file]"
+                + " [-m metrics report] [-p seconds] [-a epsilon] [-u]"
+                + " [-s stop words] [-g words per phrase] [-e charset]"
+                + " [-k cache directory] [-f " + CloudFormats.names() + "]"
+                + " [-d linear|log|quantile] file or directory...");
+    }
+
+    /**
+     * Returns the stop words named by {@code list}: the common English words
+     * if it is "english", and otherwise the words listed in that file, lower
+     * cased if {@code config} lower cases words.
+     *
+     * @param list
+     *            "english" or the path of a list of stop words
+     * @param config
+     *            the configuration the stop words are used with
+     * @return the stop words
+     * @throws IOException
+     *             if the list cannot be read
+     */
+    static StopWords stopWords(String list, TagCloudConfig config)
+            throws IOException {
+        if (list.equals("english")) {
+            return StopWords.english();
+        }
+        return StopWords.read(Paths.get(list), config.foldsCase());
+    }
+
+    /**
+     * Adds every input file named by {@code roots} to {@code inputs}, and the
+     * path of its cloud to {@code outputs}. A directory contributes every
+     * regular file under it, and their clouds mirror its layout. A file named
+     * more than once is listed once. Files whose clouds would have the same
+     * path, such as a/log.txt and b/log.txt, each get their cloud at their
+     * whole path under {@code outputDir} instead, so no cloud overwrites
+     * another.
+     *
+     * @param roots
+     *            the files and directories given on the command line
+     * @param outputDir
+     *            the directory the clouds are written to
+     * @param inputs
+     *            the input files
+     * @param outputs
+     *            the cloud of each input file
+     * @throws IOException
+     *             if a directory cannot be listed, or two clouds would still
+     *             have the same path
+     * @updates inputs, outputs
+     */
+    static void listInputs(List<Path> roots, Path outputDir,
+            List<Path> inputs, List<Path> outputs) throws IOException {
+        int first = inputs.size();
+        for (Path root : roots) {
+            if (Files.isDirectory(root)) {
+                Stream<Path> walk = Files.walk(root);
+                try {
+                    Iterator<Path> iter = walk.iterator();
+                    while (iter.hasNext()) {
+                        Path file = iter.next();
+                        if (Files.isRegularFile(file)) {
+                            inputs.add(file);
+                            outputs.add(outputDir.resolve(
+                                    root.relativize(file).toString() + ".html"));
+                        }
+                    }
+                } finally {
+                    walk.close();
+                }
+            } else {
+                inputs.add(root);
+                outputs.add(outputDir
+                        .resolve(root.getFileName().toString() + ".html"));
+            }
+        }
+
+        //drop the files named again, by a repeated argument or by a file
+        //inside a directory also given
+        Set<Path> listed = new HashSet<Path>();
+        int kept = first;
+        for (int i = first; i < inputs.size(); i++) {
+            if (listed.add(inputs.get(i).toAbsolutePath().normalize())) {
+                inputs.set(kept, inputs.get(i));
+                outputs.set(kept, outputs.get(i));
+                kept++;
+            }
+        }
+        inputs.subList(kept, inputs.size()).clear();
+        outputs.subList(kept, outputs.size()).clear();
+
+        //move the clouds that share a path to the whole path of their input
+        Map<Path, Integer> sharing = new HashMap<Path, Integer>();
+        for (int i = first; i < outputs.size(); i++) {
+            Path output = outputs.get(i).toAbsolutePath().normalize();
+            Integer count = sharing.get(output);
+            sharing.put(output, count == null ? 1 : count + 1);
+        }
+        for (int i = first; i < outputs.size(); i++) {
+            Path output = outputs.get(i).toAbsolutePath().normalize();
+            if (sharing.get(output) > 1) {
+                Path input = inputs.get(i).toAbsolutePath().normalize();
+                outputs.set(i, outputDir.resolve(
+                        input.getRoot().relativize(input).toString()
+                                + ".html"));
+            }
+        }
+        Map<Path, Path> writers = new HashMap<Path, Path>();
+        for (int i = first; i < outputs.size(); i++) {
+            Path other = writers.put(
+                    outputs.get(i).toAbsolutePath().normalize(),
+                    inputs.get(i));
+            if (other != null) {
+                throw new IOException("Clouds of " + other + " and "
+                        + inputs.get(i) + " would both be written to "
+                        + outputs.get(i));
+            }
+        }
+    }
+
+    /**
+     * Generates the cloud of every input file and prints a summary.
+     *
+     * @param inputs
+     *            the input files
+     * @param outputs
+     *            the cloud of each input file
+     * @param engine
+     *            the engine every cloud is generated with
+     * @param cache
+     *            the cache of clouds, or null for none
+     * @param formats
+     *            the formats every cloud is written in
+     * @param threads
+     *            the number of files counted at a time
+     * @param virtual
+     *            whether to run each file on a virtual thread
+     * @param combined
+     *            the combined cloud of all of the files, or null for none
+     * @param metrics
+     *            the metrics every file is recorded into
+     */
+    private static void run(List<Path> inputs, List<Path> outputs,
+            final TagCloudEngine engine, final TagCloudCache cache,
+            final CloudFormat[] formats, int threads, boolean virtual,
+            Path combined, final PipelineMetrics metrics) {
+        final WordCountTable all = combined != null ? new WordCountTable()
+                : null;
+        final Semaphore permits = new Semaphore(threads);
+        ExecutorService executor = null;
+        if (virtual) {
+            executor = newVirtualThreadExecutor();
+            if (executor == null) {
+                System.err.println(
+                        "Virtual threads need Java 21; using a thread pool");
+            }
+        }
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(threads);
+        }
+
+        long start = System.nanoTime();
+        List<Future<FileResult>> futures = new ArrayList<Future<FileResult>>();
+        for (int i = 0; i < inputs.size(); i++) {
+            final Path input = inputs.get(i);
+            final Path output = outputs.get(i);
+            futures.add(executor.submit(new Callable<FileResult>() {
+                @Override
+                public FileResult call() throws InterruptedException {
+                    permits.acquire();
+                    try {
+                        return cloudOf(input, output, engine, cache,
+                                formats, all, metrics);
+                    } finally {
+                        permits.release();
+                    }
+                }
+            }));
+        }
+        List<FileResult> results = new ArrayList<FileResult>();
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                results.add(futures.get(i).get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException e) {
+                results.add(new FileResult(inputs.get(i), 0, 0, 0, 0,
+                        String.valueOf(e.getCause())));
+            }
+        }
+        executor.shutdown();
+
+        if (all != null) {
+            try {
+                writeCloud(combined, all, engine, "all files", formats,
+                        metrics);
+            } catch (IOException e) {
+                System.err.println("Error writing to file");
+            }
+        }
+        printSummary(results, System.nanoTime() - start);
+    }
+
+    /**
+     * Returns an executor that starts a virtual thread per task, or null if
+     * the runtime has no virtual threads. Looked up reflectively so the tool
+     * still compiles and runs on Java 17.
+     *
+     * @return the executor, or null
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Counts {@code input}, writes its cloud to {@code output} and adds its
+     * counts to {@code all}.
+     *
+     * @param input
+     *            the input file
+     * @param output
+     *            the cloud of the input file
+     * @param engine
+     *            the engine the cloud is generated with
+     * @param cache
+     *            the cache of clouds, or null for none
+     * @param formats
+     *            the formats the cloud is written in
+     * @param all
+     *            the combined counts of all of the files, or null
+     * @param metrics
+     *            the metrics to record into
+     * @return the outcome
+     */
+    private static FileResult cloudOf(Path input, Path output,
+            TagCloudEngine engine, TagCloudCache cache, CloudFormat[] formats,
+            WordCountTable all, PipelineMetrics metrics) {
+        long start = System.nanoTime();
+        long allocated = metrics.allocationMark();
+        try {
+            return cloudOf(input, output, engine, cache, formats, all,
+                    metrics, start);
+        } finally {
+            metrics.allocatedSince(allocated);
+        }
+    }
+
+    /**
+     * Counts {@code input}, writes its cloud to {@code output} and adds its
+     * counts to {@code all}.
+     *
+     * @param input
+     *            the input file
+     * @param output
+     *            the cloud of the input file
+     * @param engine
+     *            the engine the cloud is generated with
+     * @param cache
+     *            the cache of clouds, or null for none
+     * @param formats
+     *            the formats the cloud is written in
+     * @param all
+     *            the combined counts of all of the files, or null
+     * @param metrics
+     *            the metrics to record into
+     * @param start
+     *            the time at which work on the file started
+     * @return the outcome
+     */
+    private static FileResult cloudOf(Path input, Path output,
+            TagCloudEngine engine, TagCloudCache cache, CloudFormat[] formats,
+            WordCountTable all, PipelineMetrics metrics, long start) {
+        if (cache != null || engine.config().approximation() > 0) {
+            return selectedCloudOf(input, output, engine, cache, formats,
+                    metrics, start);
+        }
+        WordCountTable table;
+        long bytes;
+        try {
+            FileChannel channel = FileChannel.open(input,
+                    StandardOpenOption.READ);
+            try {
+                bytes = channel.size();
+                table = engine.count(channel, metrics);
+            } finally {
+                channel.close();
+            }
+        } catch (IOException e) {
+            return new FileResult(input, 0, 0, 0, System.nanoTime() - start,
+                    "Error reading file");
+        }
+        try {
+            writeCloud(output, table, engine, input.toString(), formats,
+                    metrics);
+        } catch (IOException e) {
+            return new FileResult(input, bytes, table.total(), table.size(),
+                    System.nanoTime() - start, "Error writing to file");
+        }
+        if (all != null) {
+            long merging = metrics.time();
+            synchronized (all) {
+                all.addAll(table);
+            }
+            metrics.stop(PipelineMetrics.Stage.COUNT, merging);
+        }
+        return new FileResult(input, bytes, table.total(), table.size(),
+                System.nanoTime() - start, null);
+    }
+
+    /**
+     * Writes the cloud of {@code input} to {@code output}, keeping only the
+     * selected words: found in {@code cache} or counted, and counted
+     * approximately, in fixed memory, if the configuration says so.
+     *
+     * @param input
+     *            the input file
+     * @param output
+     *            the cloud of the input file
+     * @param engine
+     *            the engine the cloud is generated with
+     * @param cache
+     *            the cache of clouds, or null for none
+     * @param formats
+     *            the formats the cloud is written in
+     * @param metrics
+     *            the metrics to record into
+     * @param start
+     *            the time at which work on the file started
+     * @return the outcome
+     */
+    private static FileResult selectedCloudOf(Path input, Path output,
+            TagCloudEngine engine, TagCloudCache cache, CloudFormat[] formats,
+            PipelineMetrics metrics, long start) {
+        TagCloudResult cloud;
+        long bytes;
+        try {
+            FileChannel channel = FileChannel.open(input,
+                    StandardOpenOption.READ);
+            try {
+                bytes = channel.size();
+                if (cache != null) {
+                    cloud = cache.cloud(channel, input.toString(), metrics);
+                } else {
+                    cloud = engine.cloud(channel, input.toString(), metrics);
+                }
+            } finally {
+                channel.close();
+            }
+        } catch (IOException e) {
+            return new FileResult(input, 0, 0, 0, System.nanoTime() - start,
+                    "Error reading file");
+        }
+        try {
+            writeCloud(output, cloud, engine, formats, metrics);
+        } catch (IOException e) {
+            return new FileResult(input, bytes, cloud.total(),
+                    cloud.distinct(), System.nanoTime() - start,
+                    "Error writing to file");
+        }
+        return new FileResult(input, bytes, cloud.total(), cloud.distinct(),
+                System.nanoTime() - start, null);
+    }
+
+    /**
+     * Writes the cloud of the most frequent words of {@code table} in each of
+     * {@code formats}, beside {@code output}.
+     *
+     * @param output
+     *            the cloud file to create or replace
+     * @param table
+     *            the counts
+     * @param engine
+     *            the engine the cloud is generated with
+     * @param title
+     *            the name of the input shown in the cloud
+     * @param formats
+     *            the formats the cloud is written in
+     * @param metrics
+     *            the metrics to record into
+     * @throws IOException
+     *             if the cloud cannot be written
+     */
+    private static void writeCloud(Path output, WordCountTable table,
+            TagCloudEngine engine, String title, CloudFormat[] formats,
+            PipelineMetrics metrics) throws IOException {
+        writeCloud(output, engine.cloud(table, title, metrics), engine,
+                formats, metrics);
+    }
+
+    /**
+     * Writes {@code cloud} in each of {@code formats}, to {@code output} in
+     * HTML and beside it in the others, creating its directory if needed.
+     *
+     * @param output
+     *            the HTML cloud file
+     * @param cloud
+     *            the cloud
+     * @param engine
+     *            the engine whose renderer for this thread renders the page
+     * @param formats
+     *            the formats the cloud is written in
+     * @param metrics
+     *            the metrics to record into
+     * @throws IOException
+     *             if the cloud cannot be written
+     */
+    private static void writeCloud(Path output, TagCloudResult cloud,
+            TagCloudEngine engine, CloudFormat[] formats,
+            PipelineMetrics metrics) throws IOException {
+        Path parent = output.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        for (CloudFormat format : formats) {
+            if (format == CloudFormats.HTML) {
+                engine.writeHtml(cloud, output, metrics);
+            } else {
+                long start = metrics.time();
+                CloudFormats.write(cloud, format,
+                        CloudFormats.fileFor(output, format));
+                metrics.stop(PipelineMetrics.Stage.WRITE, start);
+            }
+        }
+    }
+
+    /**
+     * Prints the time and throughput of every file and of the whole batch.
+     *
+     * @param results
+     *            the outcome of every file
+     * @param elapsed
+     *            the time taken by the whole batch, in nanoseconds
+     */
+    private static void printSummary(List<FileResult> results, long elapsed) {
+        final double nanosPerSecond = 1e9;
+        final double bytesPerMegabyte = 1 << 20;
+        long bytes = 0;
+        long words = 0;
+        int failed = 0;
+        System.out.println(String.format("%10s %12s %10s %10s %9s  %s", "ms",
+                "words", "distinct", "MB", "MB/s", "file"));
+        for (FileResult result : results) {
+            if (result.error != null) {
+                System.out.println(String.format(
+                        "%10s %12s %10s %10s %9s  %s: %s", "-", "-", "-", "-",
+                        "-", result.input, result.error));
+                failed++;
+            } else {
+                double megabytes = result.bytes / bytesPerMegabyte;
+                double seconds = result.nanos / nanosPerSecond;
+                System.out.println(String.format(
+                        "%10.1f %12d %10s %10.2f %9.1f  %s", seconds * 1000,
+                        result.words,
+                        result.distinct < 0 ? "-"
+                                : String.valueOf(result.distinct),
+                        megabytes,
+                        seconds > 0 ? megabytes / seconds : 0.0,
+                        result.input));
+                bytes += result.bytes;
+                words += result.words;
+            }
+        }
+        double megabytes = bytes / bytesPerMegabyte;
+        double seconds = elapsed / nanosPerSecond;
+        System.out.println(String.format(
+                "%d files (%d failed), %d words, %.2f MB in %.1f ms, %.1f MB/s",
+                results.size(), failed, words, megabytes, seconds * 1000,
+                seconds > 0 ? megabytes / seconds : 0.0));
+    }
+
+}
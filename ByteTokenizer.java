@@ -0,0 +1,449 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Tokenizes UTF-8 or US-ASCII text that arrives in chunks of bytes, without
+ * decoding it first. ASCII bytes, which are most of the text of logs and
+ * source code, are classified, lower cased and hashed with one table lookup
+ * each, and a word made only of them is passed to the {@code AsciiWordSink}
+ * as bytes, so the counter creates a {@code String} only for a word it has
+ * not seen. A word holding other characters is decoded on its own into a
+ * small buffer of characters. Words, case folding and hashes come out
+ * exactly as they do from {@code ChunkedTokenizer} fed the decoded text,
+ * malformed bytes included, which become U+FFFD as a {@code CharsetDecoder}
+ * that replaces them would make them.
+ *
+ * <p>
+ * A word or character that runs into the end of a chunk is moved to the
+ * front of the buffer and completed by the next chunk, so words that cross
+ * chunk boundaries are counted exactly once.
+ *
+ * @author Hudson Arledge and Nik Anand
+ *
+ */
+public final class ByteTokenizer {
+
+    /**
+     * Default number of bytes in the buffer.
+     */
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    /**
+     * The character malformed input is replaced with.
+     */
+    private static final int REPLACEMENT = 0xFFFD;
+
+    /**
+     * The number of ASCII characters.
+     */
+    private static final int ASCII = 128;
+
+    /**
+     * The separator characters.
+     */
+    private final SeparatorSet separators;
+
+    /**
+     * Whether the text is lower cased before it is split.
+     */
+    private final boolean foldCase;
+
+    /**
+     * Whether the text is UTF-8, rather than US-ASCII.
+     */
+    private final boolean utf8;
+
+    /**
+     * The receiver of the words.
+     */
+    private final AsciiWordSink sink;
+
+    /**
+     * The metrics the chunks are timed into.
+     */
+    private final PipelineMetrics metrics;
+
+    /**
+     * For each ASCII byte, the byte it is lower cased to, or -1 if it is a
+     * separator.
+     */
+    private final int[] ascii;
+
+    /**
+     * The buffer holding the unfinished word of the previous chunk followed by
+     * the bytes of the current chunk.
+     */
+    private byte[] buffer;
+
+    /**
+     * The number of bytes held in {@code buffer}.
+     */
+    private int length;
+
+    /**
+     * The last word holding a character other than ASCII, decoded.
+     */
+    private char[] decoded;
+
+    /**
+     * The number of bytes taken by the character last decoded.
+     */
+    private int width;
+
+    /**
+     * Constructor.
+     *
+     * @param separators
+     *            the separator characters
+     * @param foldCase
+     *            whether the text is lower cased
+     * @param charset
+     *            the encoding of the text
+     * @param sink
+     *            the receiver of the words
+     * @param capacity
+     *            the initial number of bytes in the buffer
+     * @param metrics
+     *            the metrics to record into
+     * @requires supports(charset) and capacity > 0
+     */
+    public ByteTokenizer(SeparatorSet separators, boolean foldCase,
+            Charset charset, AsciiWordSink sink, int capacity,
+            PipelineMetrics metrics) {
+        assert separators != null : "Violation of: separators is not null";
+        assert supports(charset) : "Violation of: supports(charset)";
+        assert sink != null : "Violation of: sink is not null";
+        assert capacity > 0 : "Violation of: capacity > 0";
+        assert metrics != null : "Violation of: metrics is not null";
+
+        this.separators = separators;
+        this.foldCase = foldCase;
+        this.utf8 = charset.equals(StandardCharsets.UTF_8);
+        this.sink = sink;
+        this.metrics = metrics;
+        this.ascii = new int[ASCII];
+        for (int c = 0; c < ASCII; c++) {
+            int lower = c;
+            if (foldCase && 'A' <= c && c <= 'Z') {
+                lower = c + ('a' - 'A');
+            }
+            //as with decoded text, a character is classified once lower cased
+            this.ascii[c] = separators.contains((char) lower) ? -1 : lower;
+        }
+        this.buffer = new byte[capacity];
+        this.length = 0;
+        this.decoded = new char[64];
+    }
+
+    /**
+     * Reports whether text in {@code charset} can be tokenized as bytes.
+     *
+     * @param charset
+     *            the encoding of the text
+     * @return true iff {@code charset} is UTF-8 or US-ASCII
+     */
+    public static boolean supports(Charset charset) {
+        return StandardCharsets.UTF_8.equals(charset)
+                || StandardCharsets.US_ASCII.equals(charset);
+    }
+
+    /**
+     * Tokenizes the bytes {@code bytes[offset, offset + count)}.
+     *
+     * @param bytes
+     *            the chunk of text
+     * @param offset
+     *            the index of the first byte of the chunk
+     * @param count
+     *            the number of bytes in the chunk
+     * @requires 0 <= offset and 0 <= count and offset + count <= |bytes|
+     */
+    public void accept(byte[] bytes, int offset, int count) {
+        assert bytes != null : "Violation of: bytes is not null";
+
+        int done = 0;
+        while (done < count) {
+            this.reserve();
+            int n = Math.min(count - done, this.buffer.length - this.length);
+            long start = this.metrics.time();
+            System.arraycopy(bytes, offset + done, this.buffer, this.length,
+                    n);
+            this.length += n;
+            done += n;
+            this.process(false);
+            this.metrics.stop(PipelineMetrics.Stage.TOKENIZE, start);
+        }
+    }
+
+    /**
+     * Tokenizes the remaining bytes of {@code bytes}, counting them as read.
+     *
+     * @param bytes
+     *            the chunk of text, such as a window of a mapped file
+     * @updates bytes.position
+     */
+    public void accept(ByteBuffer bytes) {
+        assert bytes != null : "Violation of: bytes is not null";
+
+        while (bytes.hasRemaining()) {
+            this.reserve();
+            int n = Math.min(bytes.remaining(),
+                    this.buffer.length - this.length);
+            long start = this.metrics.time();
+            bytes.get(this.buffer, this.length, n);
+            this.metrics.stop(PipelineMetrics.Stage.READ, start);
+            this.metrics.read(n);
+            start = this.metrics.time();
+            this.length += n;
+            this.process(false);
+            this.metrics.stop(PipelineMetrics.Stage.TOKENIZE, start);
+        }
+    }
+
+    /**
+     * Reports the word held back from the last chunk, if any. Must be called
+     * once after all of the input has been passed in.
+     */
+    public void finish() {
+        long start = this.metrics.time();
+        this.process(true);
+        this.metrics.stop(PipelineMetrics.Stage.TOKENIZE, start);
+    }
+
+    /**
+     * Returns the metrics the chunks are timed into.
+     *
+     * @return the metrics
+     */
+    PipelineMetrics metrics() {
+        return this.metrics;
+    }
+
+    /**
+     * Tokenizes the buffer and moves the unfinished word, if any, to its front.
+     *
+     * @param endOfInput
+     *            whether no more text follows the buffer
+     */
+    private void process(boolean endOfInput) {
+        int next = this.tokenize(this.length, endOfInput);
+        System.arraycopy(this.buffer, next, this.buffer, 0,
+                this.length - next);
+        this.length -= next;
+    }
+
+    /**
+     * Reports every word in {@code buffer[0, end)} to the sink, in order,
+     * except that when {@code endOfInput} is false a word or character
+     * running up to {@code end} is held back, because the next chunk may
+     * continue it. ASCII letters of the words are lower cased in place.
+     *
+     * @param end
+     *            the index at which scanning stops
+     * @param endOfInput
+     *            whether {@code buffer[0, end)} ends the input
+     * @return the index of the first byte not consumed
+     */
+    private int tokenize(int end, boolean endOfInput) {
+        byte[] text = this.buffer;
+        int[] table = this.ascii;
+        int i = 0;
+        while (i < end) {
+            //skip a separator
+            int b = text[i];
+            if (b >= 0) {
+                if (table[b] < 0) {
+                    i++;
+                    continue;
+                }
+            } else {
+                int codePoint = this.decode(i, end);
+                if (codePoint < 0) {
+                    if (!endOfInput) {
+                        return i;
+                    }
+                    codePoint = REPLACEMENT;
+                }
+                if (this.isSeparator(codePoint)) {
+                    i += this.width;
+                    continue;
+                }
+            }
+            //scan the word, hashing it as long as it is all ASCII
+            int start = i;
+            int hash = 0;
+            boolean plain = true;
+            while (i < end) {
+                b = text[i];
+                if (b >= 0) {
+                    int c = table[b];
+                    if (c < 0) {
+                        break;
+                    }
+                    text[i] = (byte) c;
+                    hash = 31 * hash + c;
+                    i++;
+                } else {
+                    int codePoint = this.decode(i, end);
+                    if (codePoint < 0) {
+                        if (!endOfInput) {
+                            return start;
+                        }
+                        codePoint = REPLACEMENT;
+                    }
+                    if (this.isSeparator(codePoint)) {
+                        break;
+                    }
+                    plain = false;
+                    i += this.width;
+                }
+            }
+            if (i == end && !endOfInput) {
+                return start;
+            }
+            if (plain) {
+                this.sink.word(text, start, i - start, hash);
+            } else {
+                this.decodedWord(start, i);
+            }
+        }
+        return end;
+    }
+
+    /**
+     * Reports whether {@code codePoint}, lower cased if the text is, is a
+     * separator.
+     *
+     * @param codePoint
+     *            the code point
+     * @return true iff the code point is a separator
+     */
+    private boolean isSeparator(int codePoint) {
+        if (this.foldCase) {
+            return this.separators.contains(Tokenizer.toLowerCase(codePoint));
+        }
+        return this.separators.contains(codePoint);
+    }
+
+    /**
+     * Decodes the word {@code buffer[from, to)}, which holds a character other
+     * than ASCII, lower cases it if the text is lower cased, and reports it
+     * to the sink.
+     *
+     * @param from
+     *            the index of the first byte of the word
+     * @param to
+     *            the index just past the word
+     */
+    private void decodedWord(int from, int to) {
+        //a byte never decodes to more than one character
+        if (this.decoded.length < to - from) {
+            this.decoded = new char[Math.max(to - from,
+                    2 * this.decoded.length)];
+        }
+        int n = 0;
+        int i = from;
+        while (i < to) {
+            int b = this.buffer[i];
+            if (b >= 0) {
+                this.decoded[n] = (char) b;
+                n++;
+                i++;
+            } else {
+                int codePoint = this.decode(i, to);
+                if (codePoint < 0) {
+                    //only the end of the input cuts a character short
+                    codePoint = REPLACEMENT;
+                }
+                if (this.foldCase) {
+                    codePoint = Tokenizer.toLowerCase(codePoint);
+                }
+                n += Character.toChars(codePoint, this.decoded, n);
+                i += this.width;
+            }
+        }
+        this.sink.word(this.decoded, 0, n,
+                WordCountTable.hash(this.decoded, 0, n));
+    }
+
+    /**
+     * Decodes the character that starts with the byte {@code buffer[index]},
+     * which is not ASCII, and sets {@code width} to the number of bytes it
+     * takes. A malformed sequence decodes to U+FFFD and takes the longest
+     * prefix of it that could start a character, as in the JDK's decoder.
+     *
+     * @param index
+     *            the index of the first byte of the character
+     * @param end
+     *            the index at which the bytes end
+     * @return the code point, or -1 if {@code buffer[index, end)} is only the
+     *         start of a character, in which case {@code width} is
+     *         {@code end - index}
+     * @requires 0 <= index < end <= length and buffer[index] < 0
+     */
+    private int decode(int index, int end) {
+        int lead = this.buffer[index] & 0xFF;
+        if (!this.utf8 || lead < 0xC2 || lead > 0xF4) {
+            this.width = 1;
+            return REPLACEMENT;
+        }
+        int count;
+        int codePoint;
+        //the second byte is restricted further so that overlong forms and
+        //code points past U+10FFFF are malformed
+        int min = 0x80;
+        int max = 0xBF;
+        if (lead < 0xE0) {
+            count = 2;
+            codePoint = lead & 0x1F;
+        } else if (lead < 0xF0) {
+            count = 3;
+            codePoint = lead & 0x0F;
+            if (lead == 0xE0) {
+                min = 0xA0;
+            }
+        } else {
+            count = 4;
+            codePoint = lead & 0x07;
+            if (lead == 0xF0) {
+                min = 0x90;
+            } else if (lead == 0xF4) {
+                max = 0x8F;
+            }
+        }
+        for (int i = 1; i < count; i++) {
+            if (index + i == end) {
+                this.width = i;
+                return -1;
+            }
+            int b = this.buffer[index + i] & 0xFF;
+            if (b < min || b > max) {
+                this.width = i;
+                return REPLACEMENT;
+            }
+            codePoint = (codePoint << 6) | (b & 0x3F);
+            min = 0x80;
+            max = 0xBF;
+        }
+        this.width = count;
+        if (Character.isSurrogate((char) codePoint)) {
+            //an encoded surrogate is malformed as a whole, as in the JDK
+            return REPLACEMENT;
+        }
+        return codePoint;
+    }
+
+    /**
+     * Makes sure the buffer has room for more bytes, growing it when a single
+     * word fills all of it.
+     */
+    private void reserve() {
+        if (this.length == this.buffer.length) {
+            byte[] larger = new byte[2 * this.buffer.length];
+            System.arraycopy(this.buffer, 0, larger, 0, this.length);
+            this.buffer = larger;
+        }
+    }
+
+}
@@ -0,0 +1,307 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+
+/**
+ * Tokenizes input that arrives in chunks. Each chunk is lower cased in place
+ * in a reusable buffer, unless case folding is turned off, and split into
+ * words; a word that runs into the end of
+ * a chunk is moved to the front of the buffer and completed by the next
+ * chunk, so words that cross chunk boundaries are counted exactly once.
+ *
+ * @author Hudson Arledge and Nik Anand
+ *
+ */
+public final class ChunkedTokenizer {
+
+    /**
+     * Default number of characters in the buffer.
+     */
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    /**
+     * Number of free characters always left in the buffer for new text: a
+     * decoder writes a supplementary character as a surrogate pair or not at
+     * all, so with less room it could never make progress.
+     */
+    private static final int MIN_FREE = 2;
+
+    /**
+     * The separator characters.
+     */
+    private final SeparatorSet separators;
+
+    /**
+     * Whether the text is lower cased before it is split.
+     */
+    private final boolean foldCase;
+
+    /**
+     * The receiver of the words.
+     */
+    private final WordSink sink;
+
+    /**
+     * The metrics the chunks are timed into.
+     */
+    private final PipelineMetrics metrics;
+
+    /**
+     * The buffer holding the unfinished word of the previous chunk followed by
+     * the text of the current chunk.
+     */
+    private char[] buffer;
+
+    /**
+     * The number of characters held in {@code buffer}.
+     */
+    private int length;
+
+    /**
+     * Constructor.
+     *
+     * @param separators
+     *            the separator characters
+     * @param sink
+     *            the receiver of the words
+     * @param capacity
+     *            the initial number of characters in the buffer
+     * @requires capacity > 0
+     */
+    public ChunkedTokenizer(SeparatorSet separators, WordSink sink,
+            int capacity) {
+        this(separators, true, sink, capacity, PipelineMetrics.DISABLED);
+    }
+
+    /**
+     * Constructor for a tokenizer that lower cases the text only if
+     * {@code foldCase} is true, and records the time spent reading and
+     * tokenizing each chunk in {@code metrics}.
+     *
+     * @param separators
+     *            the separator characters
+     * @param foldCase
+     *            whether the text is lower cased
+     * @param sink
+     *            the receiver of the words
+     * @param capacity
+     *            the initial number of characters in the buffer
+     * @param metrics
+     *            the metrics to record into
+     * @requires capacity > 0
+     */
+    public ChunkedTokenizer(SeparatorSet separators, boolean foldCase,
+            WordSink sink, int capacity, PipelineMetrics metrics) {
+        assert separators != null : "Violation of: separators is not null";
+        assert sink != null : "Violation of: sink is not null";
+        assert capacity > 0 : "Violation of: capacity > 0";
+        assert metrics != null : "Violation of: metrics is not null";
+
+        this.separators = separators;
+        this.foldCase = foldCase;
+        this.sink = sink;
+        this.metrics = metrics;
+        this.buffer = new char[capacity];
+        this.length = 0;
+    }
+
+    /**
+     * Returns a {@code CharBuffer} over the free part of the buffer, to be
+     * filled by the caller and then passed to {@code accept}.
+     *
+     * @return a buffer positioned at the first free character
+     * @ensures input.remaining() >= 2
+     */
+    public CharBuffer input() {
+        this.reserve(MIN_FREE);
+        CharBuffer input = CharBuffer.wrap(this.buffer);
+        input.position(this.length);
+        return input;
+    }
+
+    /**
+     * Tokenizes the characters written into {@code input} since it was
+     * returned by {@code input()}.
+     *
+     * @param input
+     *            the buffer returned by the last call to {@code input()}
+     */
+    public void accept(CharBuffer input) {
+        assert input != null : "Violation of: input is not null";
+
+        long start = this.metrics.time();
+        int end = input.position();
+        if (this.foldCase) {
+            Tokenizer.toLowerCase(this.buffer, this.foldFrom(), end);
+        }
+        this.length = end;
+        this.process(false);
+        this.metrics.stop(PipelineMetrics.Stage.TOKENIZE, start);
+    }
+
+    /**
+     * Reads the next chunk of {@code reader} and tokenizes it.
+     *
+     * @param reader
+     *            the source of the text
+     * @return the number of characters read, or -1 at the end of the input
+     * @throws IOException
+     *             if {@code reader} fails
+     */
+    public int read(Reader reader) throws IOException {
+        assert reader != null : "Violation of: reader is not null";
+
+        this.reserve(MIN_FREE);
+        long start = this.metrics.time();
+        int read = reader.read(this.buffer, this.length,
+                this.buffer.length - this.length);
+        this.metrics.stop(PipelineMetrics.Stage.READ, start);
+        if (read > 0) {
+            this.metrics.read(read);
+            start = this.metrics.time();
+            if (this.foldCase) {
+                Tokenizer.toLowerCase(this.buffer, this.foldFrom(),
+                        this.length + read);
+            }
+            this.length += read;
+            this.process(false);
+            this.metrics.stop(PipelineMetrics.Stage.TOKENIZE, start);
+        }
+        return read;
+    }
+
+    /**
+     * Decodes as much of {@code bytes} as {@code decoder} can take straight
+     * into the buffer and tokenizes the text; if {@code endOfInput}, also
+     * flushes {@code decoder}. Bytes of a character cut by the end of
+     * {@code bytes} are left in it unless {@code endOfInput}. Decoding is
+     * timed as the read stage of the metrics.
+     *
+     * @param decoder
+     *            the decoder of the input, which keeps its state between calls
+     * @param bytes
+     *            the next bytes of the input
+     * @param endOfInput
+     *            whether no bytes follow {@code bytes}
+     * @updates bytes
+     */
+    void decode(CharsetDecoder decoder, ByteBuffer bytes,
+            boolean endOfInput) {
+        assert decoder != null : "Violation of: decoder is not null";
+        assert bytes != null : "Violation of: bytes is not null";
+
+        this.decodeUntilUnderflow(decoder, bytes, endOfInput);
+        if (endOfInput) {
+            this.decodeUntilUnderflow(decoder, null, true);
+        }
+    }
+
+    /**
+     * Repeats decoding {@code bytes}, or flushing {@code decoder} if
+     * {@code bytes} is null, into the buffer and tokenizing the text until
+     * {@code decoder} no longer runs out of room.
+     *
+     * @param decoder
+     *            the decoder of the input
+     * @param bytes
+     *            the next bytes of the input, or null to flush
+     * @param endOfInput
+     *            whether no bytes follow {@code bytes}
+     */
+    private void decodeUntilUnderflow(CharsetDecoder decoder,
+            ByteBuffer bytes, boolean endOfInput) {
+        int free = MIN_FREE;
+        CoderResult result;
+        do {
+            this.reserve(free);
+            CharBuffer chars = CharBuffer.wrap(this.buffer);
+            chars.position(this.length);
+            long start = this.metrics.time();
+            if (bytes == null) {
+                result = decoder.flush(chars);
+            } else {
+                result = decoder.decode(bytes, chars, endOfInput);
+            }
+            this.metrics.stop(PipelineMetrics.Stage.READ, start);
+            //a decoder that needs more room than it was given writes nothing,
+            //so it is given twice as much next time rather than the same
+            if (chars.position() == this.length) {
+                free = 2 * chars.remaining();
+            } else {
+                free = MIN_FREE;
+            }
+            this.accept(chars);
+        } while (result.isOverflow());
+    }
+
+    /**
+     * Reports the word held back from the last chunk, if any. Must be called
+     * once after all of the input has been passed in.
+     */
+    public void finish() {
+        long start = this.metrics.time();
+        this.process(true);
+        this.metrics.stop(PipelineMetrics.Stage.TOKENIZE, start);
+    }
+
+    /**
+     * Returns the index from which new text is lower cased: the end of the
+     * text already held, or one before it if that is a high surrogate whose
+     * pair is only now complete.
+     *
+     * @return the index of the first character to lower case
+     */
+    private int foldFrom() {
+        if (this.length > 0
+                && Character.isHighSurrogate(this.buffer[this.length - 1])) {
+            return this.length - 1;
+        }
+        return this.length;
+    }
+
+    /**
+     * Returns the metrics the chunks are timed into.
+     *
+     * @return the metrics
+     */
+    PipelineMetrics metrics() {
+        return this.metrics;
+    }
+
+    /**
+     * Tokenizes the buffer and moves the unfinished word, if any, to its front.
+     *
+     * @param endOfInput
+     *            whether no more text follows the buffer
+     */
+    private void process(boolean endOfInput) {
+        int next = Tokenizer.tokenizeChunk(this.buffer, 0, this.length,
+                this.separators, this.sink, endOfInput);
+        System.arraycopy(this.buffer, next, this.buffer, 0,
+                this.length - next);
+        this.length -= next;
+    }
+
+    /**
+     * Makes sure the buffer has room for at least {@code free} more
+     * characters, growing it when a single word fills nearly all of it.
+     *
+     * @param free
+     *            the number of free characters needed
+     */
+    private void reserve(int free) {
+        if (this.buffer.length - this.length < free) {
+            int capacity = this.buffer.length;
+            while (capacity - this.length < free) {
+                capacity *= 2;
+            }
+            char[] larger = new char[capacity];
+            System.arraycopy(this.buffer, 0, larger, 0, this.length);
+            this.buffer = larger;
+        }
+    }
+
+}
@@ -0,0 +1,42 @@
+import java.io.IOException;
+
+/**
+ * A way of writing a {@code TagCloudResult}, such as an HTML page or a JSON
+ * document. A format only reads the result, so one count can be written in
+ * any number of formats, and it writes through a {@code CloudOutput}, so its
+ * output streams to the destination as it is produced. The formats that come
+ * with the generator are in {@code CloudFormats}.
+ *
+ * @author Hudson Arledge and Nik Anand
+ *
+ */
+public interface CloudFormat {
+
+    /**
+     * Returns the name the format is chosen by, such as "json".
+     *
+     * @return the name
+     */
+    String name();
+
+    /**
+     * Returns the extension of a file in this format, dot included, such as
+     * ".json".
+     *
+     * @return the extension
+     */
+    String extension();
+
+    /**
+     * Writes {@code cloud} to {@code out}, without flushing it.
+     *
+     * @param cloud
+     *            the cloud
+     * @param out
+     *            the destination
+     * @throws IOException
+     *             if the output cannot be written
+     */
+    void write(TagCloudResult cloud, CloudOutput out) throws IOException;
+
+}
@@ -0,0 +1,522 @@
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The formats a cloud can be written in: the original HTML page, which links
+ * to the course style sheet, a self-contained HTML page with the styles
+ * inline, JSON and CSV for programs that want the counts back, and an SVG
+ * picture with the words laid out in rows. Several formats can be written
+ * from one {@code TagCloudResult}, so they all share a single count.
+ *
+ * @author Hudson Arledge and Nik Anand
+ *
+ */
+public final class CloudFormats {
+
+    /**
+     * The original HTML page, as {@code HtmlRenderer} renders it.
+     */
+    public static final CloudFormat HTML = new CloudFormat() {
+        @Override
+        public String name() {
+            return "html";
+        }
+
+        @Override
+        public String extension() {
+            return ".html";
+        }
+
+        @Override
+        public void write(TagCloudResult cloud, CloudOutput out)
+                throws IOException {
+            RENDERERS.get().render(cloud).writeTo(out);
+        }
+    };
+
+    /**
+     * An HTML page that needs no style sheet, with the words in alphabetical
+     * order and a font size class per word, like the original.
+     */
+    public static final CloudFormat INLINE_HTML = new CloudFormat() {
+        @Override
+        public String name() {
+            return "inline";
+        }
+
+        @Override
+        public String extension() {
+            return ".inline.html";
+        }
+
+        @Override
+        public void write(TagCloudResult cloud, CloudOutput out)
+                throws IOException {
+            writeInlineHtml(cloud, out);
+        }
+    };
+
+    /**
+     * A JSON object with the totals of the input and the selected words, best
+     * first.
+     */
+    public static final CloudFormat JSON = new CloudFormat() {
+        @Override
+        public String name() {
+            return "json";
+        }
+
+        @Override
+        public String extension() {
+            return ".json";
+        }
+
+        @Override
+        public void write(TagCloudResult cloud, CloudOutput out)
+                throws IOException {
+            writeJson(cloud, out);
+        }
+    };
+
+    /**
+     * A CSV table of the selected words, best first, with a header row.
+     */
+    public static final CloudFormat CSV = new CloudFormat() {
+        @Override
+        public String name() {
+            return "csv";
+        }
+
+        @Override
+        public String extension() {
+            return ".csv";
+        }
+
+        @Override
+        public void write(TagCloudResult cloud, CloudOutput out)
+                throws IOException {
+            writeCsv(cloud, out);
+        }
+    };
+
+    /**
+     * An SVG picture of the words in alphabetical order, in centered rows.
+     */
+    public static final CloudFormat SVG = new CloudFormat() {
+        @Override
+        public String name() {
+            return "svg";
+        }
+
+        @Override
+        public String extension() {
+            return ".svg";
+        }
+
+        @Override
+        public void write(TagCloudResult cloud, CloudOutput out)
+                throws IOException {
+            writeSvg(cloud, out);
+        }
+    };
+
+    /**
+     * Every format, in the order they are listed in usage messages.
+     */
+    private static final CloudFormat[] ALL = {
+        HTML, INLINE_HTML, JSON, CSV, SVG };
+
+    /**
+     * A renderer per thread for the HTML format, so each thread reuses its
+     * own buffer.
+     */
+    private static final ThreadLocal<HtmlRenderer> RENDERERS =
+            new ThreadLocal<HtmlRenderer>() {
+                @Override
+                protected HtmlRenderer initialValue() {
+                    return new HtmlRenderer();
+                }
+            };
+
+    /**
+     * Width in pixels a row of the SVG layout is filled to.
+     */
+    private static final int SVG_WIDTH = 800;
+
+    /**
+     * Orders words alphabetically, as {@code String.compareTo} does.
+     */
+    private static final Comparator<WordCount> ALPHABETICAL =
+            new Comparator<WordCount>() {
+                @Override
+                public int compare(WordCount o1, WordCount o2) {
+                    return o1.word().compareTo(o2.word());
+                }
+            };
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private CloudFormats() {
+    }
+
+    /**
+     * Returns the format named {@code name}.
+     *
+     * @param name
+     *            the name of the format
+     * @return the format, or null if there is none of that name
+     */
+    public static CloudFormat forName(String name) {
+        assert name != null : "Violation of: name is not null";
+
+        for (CloudFormat format : ALL) {
+            if (format.name().equals(name)) {
+                return format;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the formats named in the comma-separated list {@code names}.
+     *
+     * @param names
+     *            the names of the formats, such as "html,json"
+     * @return the formats, without repeats
+     * @throws IllegalArgumentException
+     *             if a name is not that of a format
+     */
+    public static CloudFormat[] parse(String names) {
+        assert names != null : "Violation of: names is not null";
+
+        List<CloudFormat> formats = new ArrayList<CloudFormat>();
+        for (String name : names.split(",")) {
+            CloudFormat format = forName(name.trim());
+            if (format == null) {
+                throw new IllegalArgumentException(
+                        "Unknown format: " + name.trim());
+            }
+            if (!formats.contains(format)) {
+                formats.add(format);
+            }
+        }
+        return formats.toArray(new CloudFormat[formats.size()]);
+    }
+
+    /**
+     * Returns the names of every format, separated by commas.
+     *
+     * @return the names
+     */
+    public static String names() {
+        StringBuilder names = new StringBuilder();
+        for (CloudFormat format : ALL) {
+            if (names.length() > 0) {
+                names.append(',');
+            }
+            names.append(format.name());
+        }
+        return names.toString();
+    }
+
+    /**
+     * Returns the file a cloud in {@code format} is written to beside the
+     * HTML page {@code page}: {@code page} with its ".html" extension, if it
+     * has one, replaced by that of the format.
+     *
+     * @param page
+     *            the file of the HTML page
+     * @param format
+     *            the format
+     * @return the file of the cloud in {@code format}
+     */
+    public static Path fileFor(Path page, CloudFormat format) {
+        assert page != null : "Violation of: page is not null";
+        assert format != null : "Violation of: format is not null";
+
+        String name = page.getFileName().toString();
+        if (name.endsWith(HTML.extension())) {
+            name = name.substring(0, name.length() - HTML.extension().length());
+        }
+        return page.resolveSibling(name + format.extension());
+    }
+
+    /**
+     * Writes {@code cloud} in {@code format} to {@code file}, creating or
+     * replacing it.
+     *
+     * @param cloud
+     *            the cloud
+     * @param format
+     *            the format
+     * @param file
+     *            the destination
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    public static void write(TagCloudResult cloud, CloudFormat format,
+            Path file) throws IOException {
+        assert cloud != null : "Violation of: cloud is not null";
+        assert format != null : "Violation of: format is not null";
+        assert file != null : "Violation of: file is not null";
+
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            CloudOutput out = new CloudOutput(channel);
+            format.write(cloud, out);
+            out.flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Returns the selected words of {@code cloud} in alphabetical order.
+     *
+     * @param cloud
+     *            the cloud
+     * @return the words
+     */
+    private static WordCount[] alphabetical(TagCloudResult cloud) {
+        WordCount[] words = cloud.top();
+        Arrays.sort(words, ALPHABETICAL);
+        return words;
+    }
+
+    /**
+     * Puts the count of {@code word} as the original page shows it: the range
+     * the true count is in if it was counted approximately.
+     *
+     * @param word
+     *            the word
+     * @param out
+     *            the destination
+     * @throws IOException
+     *             if the output cannot be written
+     */
+    private static void putCount(WordCount word, CloudOutput out)
+            throws IOException {
+        if (word.error() > 0) {
+            out.putLong(word.count() - word.error()).put(" to ");
+        }
+        out.putLong(word.count());
+    }
+
+    /**
+     * Puts "Top n words in title", with the title escaped as markup.
+     *
+     * @param cloud
+     *            the cloud
+     * @param out
+     *            the destination
+     * @throws IOException
+     *             if the output cannot be written
+     */
+    private static void putHeading(TagCloudResult cloud, CloudOutput out)
+            throws IOException {
+        out.put("Top ").putLong(cloud.config().words()).put(" words in ")
+                .putMarkup(cloud.title());
+    }
+
+    /**
+     * Writes {@code cloud} as a self-contained HTML page.
+     *
+     * @param cloud
+     *            the cloud
+     * @param out
+     *            the destination
+     * @throws IOException
+     *             if the output cannot be written
+     */
+    private static void writeInlineHtml(TagCloudResult cloud, CloudOutput out)
+            throws IOException {
+        out.put("<!DOCTYPE html>\n<html>\n<head>\n<meta charset=\"utf-8\">\n"
+                + "<title>");
+        putHeading(cloud, out);
+        out.put("</title>\n<style>\n"
+                + "body { font-family: sans-serif; }\n"
+                + ".cdiv { margin: 1em; padding: 1em; border: 1px solid #999;"
+                + " border-radius: 6px; }\n"
+                + ".cbox { text-align: center; line-height: 1.5; }\n"
+                + ".cbox span { margin: 0 0.25em; }\n");
+        for (int font = cloud.config().minFont(); font <= cloud.config()
+                .maxFont(); font++) {
+            out.put(".f").putLong(font).put(" { font-size: ").putLong(font)
+                    .put("px; }\n");
+        }
+        out.put("</style>\n</head>\n<body>\n<h2>");
+        putHeading(cloud, out);
+        out.put("</h2>\n<hr>\n<div class=\"cdiv\">\n<p class=\"cbox\">\n");
+        for (WordCount word : alphabetical(cloud)) {
+            out.put("<span style=\"cursor:default\" class=\"f")
+                    .putLong(cloud.font(word.count()))
+                    .put("\" title=\"count: ");
+            putCount(word, out);
+            out.put("\">").putMarkup(word.word()).put("</span>\n");
+        }
+        out.put("</p>\n</div>\n</body>\n</html>\n");
+    }
+
+    /**
+     * Writes {@code cloud} as a JSON object. The number of distinct words is
+     * null if it is not known, and a word counted approximately has the most
+     * its count may be too high as its error.
+     *
+     * @param cloud
+     *            the cloud
+     * @param out
+     *            the destination
+     * @throws IOException
+     *             if the output cannot be written
+     */
+    private static void writeJson(TagCloudResult cloud, CloudOutput out)
+            throws IOException {
+        out.put("{\n  \"title\": ").putJson(cloud.title());
+        out.put(",\n  \"words\": ").putLong(cloud.config().words());
+        out.put(",\n  \"total\": ").putLong(cloud.total());
+        out.put(",\n  \"distinct\": ");
+        if (cloud.distinct() < 0) {
+            out.put("null");
+        } else {
+            out.putLong(cloud.distinct());
+        }
+        out.put(",\n  \"min\": ").putLong(cloud.min());
+        out.put(",\n  \"max\": ").putLong(cloud.max());
+        out.put(",\n  \"top\": [");
+        for (int i = 0; i < cloud.size(); i++) {
+            WordCount word = cloud.word(i);
+            out.put(i == 0 ? "\n    " : ",\n    ");
+            out.put("{\"word\": ").putJson(word.word());
+            out.put(", \"count\": ").putLong(word.count());
+            if (word.error() > 0) {
+                out.put(", \"error\": ").putLong(word.error());
+            }
+            out.put(", \"font\": ").putLong(cloud.font(word.count()))
+                    .put("}");
+        }
+        out.put(cloud.size() == 0 ? "]\n}\n" : "\n  ]\n}\n");
+    }
+
+    /**
+     * Writes {@code cloud} as CSV, one row per word with its rank, as in RFC
+     * 4180.
+     *
+     * @param cloud
+     *            the cloud
+     * @param out
+     *            the destination
+     * @throws IOException
+     *             if the output cannot be written
+     */
+    private static void writeCsv(TagCloudResult cloud, CloudOutput out)
+            throws IOException {
+        out.put("rank,word,count,error,font\r\n");
+        for (int i = 0; i < cloud.size(); i++) {
+            WordCount word = cloud.word(i);
+            out.putLong(i + 1).put(",").putCsv(word.word()).put(",")
+                    .putLong(word.count()).put(",").putLong(word.error())
+                    .put(",").putLong(cloud.font(word.count())).put("\r\n");
+        }
+    }
+
+    /**
+     * Returns the estimated width of {@code text} in a font of size
+     * {@code font}: half the size for a narrow character, such as a Latin
+     * letter, and the size for a wide one, such as an ideograph.
+     *
+     * @param text
+     *            the text
+     * @param font
+     *            the font size in pixels
+     * @return the width in pixels
+     */
+    private static long width(String text, long font) {
+        long halves = 0;
+        for (int i = 0; i < text.length(); i += Character.charCount(
+                text.codePointAt(i))) {
+            int c = text.codePointAt(i);
+            //East Asian scripts and most symbols from Hangul Jamo up are
+            //drawn about a full em wide
+            halves += c >= 0x1100 ? 2 : 1;
+        }
+        return (halves * font + 1) / 2;
+    }
+
+    /**
+     * Writes {@code cloud} as an SVG picture. The words, in alphabetical
+     * order, fill rows of {@code SVG_WIDTH} pixels from left to right, and
+     * each row is centered; a word wider than a row gets a row of its own
+     * and widens the picture.
+     *
+     * @param cloud
+     *            the cloud
+     * @param out
+     *            the destination
+     * @throws IOException
+     *             if the output cannot be written
+     */
+    private static void writeSvg(TagCloudResult cloud, CloudOutput out)
+            throws IOException {
+        WordCount[] words = alphabetical(cloud);
+        long[] fonts = new long[words.length];
+        long[] x = new long[words.length];
+        long[] y = new long[words.length];
+        long width = SVG_WIDTH;
+        long top = 0;
+        int first = 0;
+        while (first < words.length) {
+            //fill a row, then center it and place it below the last one
+            long used = 0;
+            long tallest = 0;
+            int end = first;
+            while (end < words.length) {
+                long font = cloud.font(words[end].count());
+                long gap = end > first ? font / 2 : 0;
+                long wordWidth = width(words[end].word(), font);
+                if (end > first && used + gap + wordWidth > SVG_WIDTH) {
+                    break;
+                }
+                fonts[end] = font;
+                x[end] = used + gap;
+                used += gap + wordWidth;
+                tallest = Math.max(tallest, font);
+                end++;
+            }
+            long shift = Math.max(0, (SVG_WIDTH - used) / 2);
+            for (int i = first; i < end; i++) {
+                x[i] += shift;
+                y[i] = top + tallest;
+            }
+            width = Math.max(width, used);
+            //leave room below the baseline for descenders
+            top += tallest + tallest / 4;
+            first = end;
+        }
+
+        out.put("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"")
+                .putLong(width).put("\" height=\"").putLong(top)
+                .put("\" viewBox=\"0 0 ").putLong(width).put(" ")
+                .putLong(top).put("\" font-family=\"sans-serif\">\n<title>");
+        putHeading(cloud, out);
+        out.put("</title>\n");
+        for (int i = 0; i < words.length; i++) {
+            out.put("<text x=\"").putLong(x[i]).put("\" y=\"").putLong(y[i])
+                    .put("\" font-size=\"").putLong(fonts[i]).put("\">")
+                    .putMarkup(words[i].word()).put("<title>count: ");
+            putCount(words[i], out);
+            out.put("</title></text>\n");
+        }
+        out.put("</svg>\n");
+    }
+
+}
@@ -0,0 +1,408 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Streams the text of a rendered cloud to a channel as UTF-8 through one
+ * fixed buffer, which is written out whenever it fills, so a page of any size
+ * is produced without being held in memory. Text can be escaped for the
+ * format being written: as markup for HTML and SVG, as a string literal for
+ * JSON, or as a field for CSV.
+ *
+ * <p>
+ * Nothing reaches the channel before the buffer fills or {@code flush} is
+ * called, so a writer must be flushed once everything has been put.
+ *
+ * @author Hudson Arledge and Nik Anand
+ *
+ */
+public final class CloudOutput {
+
+    /**
+     * Default number of bytes in the buffer.
+     */
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    /**
+     * Most bytes one character can be written as: six for "&quot;" or a
+     * JSON escape.
+     */
+    private static final int MAX_BYTES_PER_CHAR = 6;
+
+    /**
+     * Hexadecimal digits, for JSON escapes.
+     */
+    private static final byte[] HEX = {
+        '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd',
+        'e', 'f' };
+
+    /**
+     * The destination.
+     */
+    private final WritableByteChannel channel;
+
+    /**
+     * The bytes not yet written to the channel.
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * How text is escaped.
+     */
+    private enum Escape {
+        /**
+         * Not at all.
+         */
+        NONE,
+
+        /**
+         * As HTML or XML character data or attribute values.
+         */
+        MARKUP,
+
+        /**
+         * As the inside of a JSON string literal.
+         */
+        JSON
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param channel
+     *            the destination
+     */
+    public CloudOutput(WritableByteChannel channel) {
+        this(channel, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param channel
+     *            the destination
+     * @param capacity
+     *            the number of bytes in the buffer
+     * @requires capacity >= 64
+     */
+    public CloudOutput(WritableByteChannel channel, int capacity) {
+        assert channel != null : "Violation of: channel is not null";
+        assert capacity >= 64 : "Violation of: capacity >= 64";
+
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocate(capacity);
+    }
+
+    /**
+     * Makes sure the buffer has room for {@code extra} more bytes, writing
+     * it out if it has not.
+     *
+     * @param extra
+     *            the number of bytes about to be added
+     * @throws IOException
+     *             if the buffer cannot be written
+     * @requires extra <= [capacity of the buffer]
+     */
+    private void reserve(int extra) throws IOException {
+        if (this.buffer.remaining() < extra) {
+            this.drain();
+        }
+    }
+
+    /**
+     * Writes out everything in the buffer.
+     *
+     * @throws IOException
+     *             if the buffer cannot be written
+     */
+    private void drain() throws IOException {
+        this.buffer.flip();
+        while (this.buffer.hasRemaining()) {
+            this.channel.write(this.buffer);
+        }
+        this.buffer.clear();
+    }
+
+    /**
+     * Writes everything put so far to the channel.
+     *
+     * @throws IOException
+     *             if it cannot be written
+     */
+    public void flush() throws IOException {
+        this.drain();
+    }
+
+    /**
+     * Puts {@code bytes[offset, offset + length)} as they are.
+     *
+     * @param bytes
+     *            the buffer holding the bytes
+     * @param offset
+     *            the index of the first byte
+     * @param length
+     *            the number of bytes
+     * @return this output
+     * @throws IOException
+     *             if the buffer fills and cannot be written
+     * @requires 0 <= offset and 0 <= length and offset + length <= |bytes|
+     */
+    public CloudOutput put(byte[] bytes, int offset, int length)
+            throws IOException {
+        assert bytes != null : "Violation of: bytes is not null";
+
+        int done = 0;
+        while (done < length) {
+            this.reserve(1);
+            int n = Math.min(length - done, this.buffer.remaining());
+            this.buffer.put(bytes, offset + done, n);
+            done += n;
+        }
+        return this;
+    }
+
+    /**
+     * Puts {@code text} as it is. Meant for the fixed parts of a format, so
+     * nothing in it is escaped.
+     *
+     * @param text
+     *            the text
+     * @return this output
+     * @throws IOException
+     *             if the buffer fills and cannot be written
+     */
+    public CloudOutput put(CharSequence text) throws IOException {
+        return this.putText(text, Escape.NONE);
+    }
+
+    /**
+     * Puts the decimal digits of {@code value}.
+     *
+     * @param value
+     *            the number
+     * @return this output
+     * @throws IOException
+     *             if the buffer fills and cannot be written
+     */
+    public CloudOutput putLong(long value) throws IOException {
+        final int maxDigits = 20;
+        this.reserve(maxDigits);
+        byte[] out = this.buffer.array();
+        int at = this.buffer.position();
+        if (value < 0) {
+            out[at] = '-';
+            at++;
+        }
+        //write the digits backward from the end of the number, working on
+        //the negative value so Long.MIN_VALUE needs no special case
+        long rest = value < 0 ? value : -value;
+        int digits = 1;
+        for (long power = rest / 10; power != 0; power /= 10) {
+            digits++;
+        }
+        int index = at + digits;
+        do {
+            index--;
+            out[index] = (byte) ('0' - rest % 10);
+            rest /= 10;
+        } while (rest != 0);
+        this.buffer.position(at + digits);
+        return this;
+    }
+
+    /**
+     * Puts {@code text} with the characters that are special in HTML and XML
+     * replaced by entities. Control characters that XML does not allow are
+     * replaced by '?'.
+     *
+     * @param text
+     *            the text
+     * @return this output
+     * @throws IOException
+     *             if the buffer fills and cannot be written
+     */
+    public CloudOutput putMarkup(CharSequence text) throws IOException {
+        return this.putText(text, Escape.MARKUP);
+    }
+
+    /**
+     * Puts {@code text} as a JSON string literal, quotes included.
+     *
+     * @param text
+     *            the text
+     * @return this output
+     * @throws IOException
+     *             if the buffer fills and cannot be written
+     */
+    public CloudOutput putJson(CharSequence text) throws IOException {
+        this.put("\"");
+        this.putText(text, Escape.JSON);
+        return this.put("\"");
+    }
+
+    /**
+     * Puts {@code text} as a CSV field: as it is, or between double quotes
+     * with its double quotes doubled if it holds a comma, a double quote or a
+     * line break.
+     *
+     * @param text
+     *            the text
+     * @return this output
+     * @throws IOException
+     *             if the buffer fills and cannot be written
+     */
+    public CloudOutput putCsv(CharSequence text) throws IOException {
+        boolean quoted = false;
+        for (int i = 0; i < text.length() && !quoted; i++) {
+            char c = text.charAt(i);
+            quoted = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quoted) {
+            return this.putText(text, Escape.NONE);
+        }
+        this.put("\"");
+        int from = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '"') {
+                this.putText(text.subSequence(from, i + 1), Escape.NONE);
+                from = i;
+            }
+        }
+        this.putText(text.subSequence(from, text.length()), Escape.NONE);
+        return this.put("\"");
+    }
+
+    /**
+     * Puts {@code text} as UTF-8, escaped as {@code escape} says. An unpaired
+     * surrogate cannot be encoded and is written as '?'.
+     *
+     * @param text
+     *            the text
+     * @param escape
+     *            how the text is escaped
+     * @return this output
+     * @throws IOException
+     *             if the buffer fills and cannot be written
+     */
+    private CloudOutput putText(CharSequence text, Escape escape)
+            throws IOException {
+        int i = 0;
+        while (i < text.length()) {
+            this.reserve(MAX_BYTES_PER_CHAR);
+            byte[] out = this.buffer.array();
+            int at = this.buffer.position();
+            //stop a character short of the end, so a surrogate pair always
+            //fits
+            int limit = this.buffer.limit() - 2 * MAX_BYTES_PER_CHAR;
+            while (i < text.length() && at <= limit) {
+                char c = text.charAt(i);
+                if (c < 0x80) {
+                    at = putAscii(out, at, c, escape);
+                } else if (c < 0x800) {
+                    out[at] = (byte) (0xC0 | (c >> 6));
+                    out[at + 1] = (byte) (0x80 | (c & 0x3F));
+                    at += 2;
+                } else if (Character.isHighSurrogate(c)
+                        && i + 1 < text.length()
+                        && Character.isLowSurrogate(text.charAt(i + 1))) {
+                    int code = Character.toCodePoint(c, text.charAt(i + 1));
+                    out[at] = (byte) (0xF0 | (code >> 18));
+                    out[at + 1] = (byte) (0x80 | ((code >> 12) & 0x3F));
+                    out[at + 2] = (byte) (0x80 | ((code >> 6) & 0x3F));
+                    out[at + 3] = (byte) (0x80 | (code & 0x3F));
+                    at += 4;
+                    i++;
+                } else if (Character.isSurrogate(c)) {
+                    out[at] = '?';
+                    at++;
+                } else {
+                    out[at] = (byte) (0xE0 | (c >> 12));
+                    out[at + 1] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    out[at + 2] = (byte) (0x80 | (c & 0x3F));
+                    at += 3;
+                }
+                i++;
+            }
+            this.buffer.position(at);
+            if (i < text.length()) {
+                this.drain();
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Copies the ASCII character {@code c} into {@code out} at {@code at},
+     * escaped as {@code escape} says.
+     *
+     * @param out
+     *            the destination
+     * @param at
+     *            the index of the first byte written
+     * @param c
+     *            the character
+     * @param escape
+     *            how the character is escaped
+     * @return the index just past the bytes written
+     */
+    private static int putAscii(byte[] out, int at, char c, Escape escape) {
+        if (escape == Escape.MARKUP) {
+            switch (c) {
+                case '&':
+                    return putAscii(out, at, "&amp;");
+                case '<':
+                    return putAscii(out, at, "&lt;");
+                case '>':
+                    return putAscii(out, at, "&gt;");
+                case '"':
+                    return putAscii(out, at, "&quot;");
+                case '\'':
+                    return putAscii(out, at, "&#39;");
+                default:
+                    //XML 1.0 allows no other control character
+                    if (c < ' ' && c != '\t' && c != '\n' && c != '\r') {
+                        out[at] = '?';
+                        return at + 1;
+                    }
+                    break;
+            }
+        } else if (escape == Escape.JSON) {
+            if (c == '"' || c == '\\') {
+                out[at] = '\\';
+                out[at + 1] = (byte) c;
+                return at + 2;
+            }
+            if (c < ' ') {
+                out[at] = '\\';
+                out[at + 1] = 'u';
+                out[at + 2] = '0';
+                out[at + 3] = '0';
+                out[at + 4] = HEX[c >> 4];
+                out[at + 5] = HEX[c & 0xF];
+                return at + 6;
+            }
+        }
+        out[at] = (byte) c;
+        return at + 1;
+    }
+
+    /**
+     * Copies the ASCII characters of {@code entity} into {@code out} at
+     * {@code at}.
+     *
+     * @param out
+     *            the destination
+     * @param at
+     *            the index of the first byte written
+     * @param entity
+     *            the ASCII text
+     * @return the index just past the bytes written
+     */
+    private static int putAscii(byte[] out, int at, String entity) {
+        for (int i = 0; i < entity.length(); i++) {
+            out[at + i] = (byte) entity.charAt(i);
+        }
+        return at + entity.length();
+    }
+
+}
@@ -0,0 +1,437 @@
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads a compressed text file and passes its text to a
+ * {@code ChunkedTokenizer}, or its bytes to a {@code ByteTokenizer}, so an
+ * archive is counted without first being decompressed to disk. The file is
+ * decompressed on a thread of its own into a ring of a few fixed-size
+ * buffers, while the calling thread tokenizes the buffers already filled;
+ * a buffer goes back to the decompressing thread once it has been tokenized,
+ * so the two stages overlap and the memory used does not depend on the size
+ * of the file.
+ *
+ * <p>
+ * gzip, including files of several concatenated members, is read with the
+ * JDK alone. zstd is read if zstd-jni or aircompressor is on the class path.
+ * The format is recognized from the first bytes of the file, not its name.
+ *
+ * @author Hudson Arledge and Nik Anand
+ *
+ */
+public final class CompressedIngest {
+
+    /**
+     * Number of bytes of decompressed text in each buffer.
+     */
+    public static final int BUFFER_SIZE = 1 << 20;
+
+    /**
+     * Number of buffers in the ring.
+     */
+    public static final int BUFFERS = 4;
+
+    /**
+     * Number of bytes reserved at the front of each buffer for the start of a
+     * character cut by the end of the previous buffer.
+     */
+    private static final int CARRY = 8;
+
+    /**
+     * The first bytes of a gzip file.
+     */
+    private static final int GZIP_MAGIC = 0x1F8B08;
+
+    /**
+     * The first bytes of a zstd frame.
+     */
+    private static final int ZSTD_MAGIC = 0x28B52FFD;
+
+    /**
+     * The zstd streams tried, in order, if zstd input is found.
+     */
+    private static final String[] ZSTD_STREAMS = {
+            "com.github.luben.zstd.ZstdInputStream",
+            "io.airlift.compress.zstd.ZstdInputStream" };
+
+    /**
+     * Handed over in place of a filled buffer when the decompressing thread
+     * has finished, normally or not.
+     */
+    private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private CompressedIngest() {
+    }
+
+    /**
+     * Reports whether {@code channel} starts like a gzip or zstd file. The
+     * position of the channel is not changed.
+     *
+     * @param channel
+     *            the file to check
+     * @return true iff the file is compressed in a format read by
+     *         {@code ingest}
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    public static boolean isCompressed(FileChannel channel)
+            throws IOException {
+        assert channel != null : "Violation of: channel is not null";
+
+        int magic = magic(channel);
+        return magic == ZSTD_MAGIC || magic >>> Byte.SIZE == GZIP_MAGIC;
+    }
+
+    /**
+     * Returns the first four bytes of {@code channel}, big-endian, or -1 if
+     * it is shorter than that.
+     *
+     * @param channel
+     *            the file to read
+     * @return the first four bytes
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    private static int magic(FileChannel channel) throws IOException {
+        ByteBuffer magic = ByteBuffer.allocate(Integer.BYTES);
+        while (magic.hasRemaining()) {
+            if (channel.read(magic, magic.position()) < 0) {
+                return -1;
+            }
+        }
+        return magic.getInt(0);
+    }
+
+    /**
+     * Returns a stream of the decompressed contents of {@code channel}, read
+     * from its current position. Closing the stream releases the decompressor
+     * but leaves {@code channel} open.
+     *
+     * @param channel
+     *            the compressed file
+     * @return the decompressed stream
+     * @throws IOException
+     *             if the file cannot be read, or it is zstd and no zstd
+     *             library is on the class path
+     * @requires isCompressed(channel)
+     */
+    public static InputStream open(FileChannel channel) throws IOException {
+        assert channel != null : "Violation of: channel is not null";
+
+        int magic = magic(channel);
+        //the decompressor is closed when done, but the channel is the caller's
+        InputStream in = new FilterInputStream(
+                Channels.newInputStream(channel)) {
+            @Override
+            public void close() {
+                //the channel stays open
+            }
+        };
+        if (magic != ZSTD_MAGIC) {
+            return new GZIPInputStream(in, ChunkedTokenizer.DEFAULT_CAPACITY);
+        }
+        for (String name : ZSTD_STREAMS) {
+            try {
+                return (InputStream) Class.forName(name)
+                        .getConstructor(InputStream.class).newInstance(in);
+            } catch (ClassNotFoundException e) {
+                //try the next library
+            } catch (InvocationTargetException e) {
+                throw new IOException("Error starting zstd decompression",
+                        e.getCause());
+            } catch (ReflectiveOperationException | LinkageError e) {
+                throw new IOException("Error starting zstd decompression", e);
+            }
+        }
+        throw new IOException(
+                "zstd input needs zstd-jni or aircompressor on the class path");
+    }
+
+    /**
+     * Receives the buffers of decompressed bytes, in order, on the thread
+     * that called {@code ingest}.
+     */
+    private interface Chunks {
+
+        /**
+         * Takes the bytes of {@code bytes} from its position to its limit.
+         * The {@code CARRY} bytes in front of the position are free to be
+         * written.
+         *
+         * @param bytes
+         *            the buffer, given back to the decompressing thread
+         *            afterwards
+         */
+        void accept(ByteBuffer bytes);
+
+        /**
+         * Ends the input, once every buffer has been taken.
+         */
+        void finish();
+
+    }
+
+    /**
+     * Decompresses {@code channel}, decodes it from {@code charset} and
+     * passes the text to {@code tokenizer}, then finishes {@code tokenizer}.
+     * Malformed input is replaced rather than reported. Decompressing and
+     * decoding are timed as the read stage of the tokenizer's metrics.
+     *
+     * @param channel
+     *            the compressed file, read from the start
+     * @param charset
+     *            the encoding of the decompressed text
+     * @param tokenizer
+     *            the receiver of the text
+     * @throws IOException
+     *             if the file cannot be read or decompressed
+     * @requires isCompressed(channel)
+     */
+    public static void ingest(FileChannel channel, Charset charset,
+            final ChunkedTokenizer tokenizer) throws IOException {
+        assert charset != null : "Violation of: charset is not null";
+        assert tokenizer != null : "Violation of: tokenizer is not null";
+
+        final PipelineMetrics metrics = tokenizer.metrics();
+        final CharsetDecoder decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        run(channel, metrics, new Chunks() {
+
+            /**
+             * The bytes of a character cut by the end of the last buffer.
+             */
+            private final byte[] carry = new byte[CARRY];
+
+            /**
+             * The number of bytes in {@code carry}.
+             */
+            private int carried = 0;
+
+            @Override
+            public void accept(ByteBuffer bytes) {
+                //the cut character is completed in front of the new bytes
+                int from = bytes.position() - this.carried;
+                System.arraycopy(this.carry, 0, bytes.array(), from,
+                        this.carried);
+                bytes.position(from);
+                tokenizer.decode(decoder, bytes, false);
+                this.carried = bytes.remaining();
+                assert this.carried <= CARRY
+                        : "Violation of: carried <= CARRY";
+                bytes.get(this.carry, 0, this.carried);
+            }
+
+            @Override
+            public void finish() {
+                tokenizer.decode(decoder,
+                        ByteBuffer.wrap(this.carry, 0, this.carried), true);
+                tokenizer.finish();
+            }
+        });
+    }
+
+    /**
+     * Decompresses {@code channel} and passes the bytes to {@code tokenizer},
+     * which splits them into words without decoding them, then finishes
+     * {@code tokenizer}.
+     *
+     * @param channel
+     *            the compressed file, read from the start
+     * @param tokenizer
+     *            the receiver of the text
+     * @throws IOException
+     *             if the file cannot be read or decompressed
+     * @requires isCompressed(channel)
+     */
+    public static void ingest(FileChannel channel,
+            final ByteTokenizer tokenizer) throws IOException {
+        assert tokenizer != null : "Violation of: tokenizer is not null";
+
+        run(channel, tokenizer.metrics(), new Chunks() {
+            @Override
+            public void accept(ByteBuffer bytes) {
+                //the tokenizer holds back a character cut by the end
+                tokenizer.accept(bytes.array(), bytes.position(),
+                        bytes.remaining());
+            }
+
+            @Override
+            public void finish() {
+                tokenizer.finish();
+            }
+        });
+    }
+
+    /**
+     * Decompresses {@code channel} on another thread, ahead of
+     * {@code chunks} by up to {@code BUFFERS} buffers, and passes the
+     * buffers to {@code chunks} in order. Decompressing is timed as the read
+     * stage of {@code metrics}, and progress is counted in compressed bytes,
+     * to match the size of the file.
+     *
+     * @param channel
+     *            the compressed file, read from the start
+     * @param metrics
+     *            the metrics to record into
+     * @param chunks
+     *            the receiver of the bytes
+     * @throws IOException
+     *             if the file cannot be read or decompressed
+     */
+    private static void run(final FileChannel channel,
+            final PipelineMetrics metrics, Chunks chunks) throws IOException {
+        assert channel != null : "Violation of: channel is not null";
+
+        channel.position(0);
+        final InputStream in = open(channel);
+        final BlockingQueue<ByteBuffer> free =
+                new ArrayBlockingQueue<ByteBuffer>(BUFFERS);
+        final BlockingQueue<ByteBuffer> filled =
+                new ArrayBlockingQueue<ByteBuffer>(BUFFERS + 1);
+        for (int i = 0; i < BUFFERS; i++) {
+            free.add(ByteBuffer.allocate(CARRY + BUFFER_SIZE));
+        }
+        final IOException[] failure = new IOException[1];
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    fill(in, channel, free, filled, metrics);
+                } catch (IOException e) {
+                    failure[0] = e;
+                } catch (RuntimeException e) {
+                    failure[0] = new IOException("Error decompressing file",
+                            e);
+                } catch (InterruptedException e) {
+                    //the reader has given up and waits for nothing more
+                    failure[0] = new InterruptedIOException();
+                } finally {
+                    try {
+                        in.close();
+                    } catch (IOException e) {
+                        if (failure[0] == null) {
+                            failure[0] = e;
+                        }
+                    }
+                    //there is always room, as no more than BUFFERS buffers
+                    //are ever queued
+                    filled.add(END);
+                }
+            }
+        }, "tagcloud-decompress");
+        producer.setDaemon(true);
+        producer.start();
+
+        boolean finished = false;
+        try {
+            ByteBuffer bytes = filled.take();
+            while (bytes != END) {
+                chunks.accept(bytes);
+                free.put(bytes);
+                bytes = filled.take();
+            }
+            finished = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted reading file");
+        } finally {
+            if (!finished) {
+                producer.interrupt();
+            }
+            join(producer);
+        }
+        //written before END was queued, so visible once END was taken
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        chunks.finish();
+    }
+
+    /**
+     * Fills the buffers of {@code free} with the decompressed text of
+     * {@code in} and queues them on {@code filled}, in order, until the end
+     * of the text. Each buffer holds its text from {@code CARRY} to its
+     * limit.
+     *
+     * @param in
+     *            the decompressed stream
+     * @param channel
+     *            the compressed file, whose position gives the compressed
+     *            bytes read
+     * @param free
+     *            the buffers ready to be filled
+     * @param filled
+     *            the buffers ready to be tokenized
+     * @param metrics
+     *            the metrics to record into
+     * @throws IOException
+     *             if the file cannot be read or decompressed
+     * @throws InterruptedException
+     *             if the thread is interrupted while waiting for a buffer
+     */
+    private static void fill(InputStream in, FileChannel channel,
+            BlockingQueue<ByteBuffer> free, BlockingQueue<ByteBuffer> filled,
+            PipelineMetrics metrics) throws IOException, InterruptedException {
+        long compressed = channel.position();
+        int read = 0;
+        while (read >= 0) {
+            ByteBuffer buffer = free.take();
+            long start = metrics.time();
+            byte[] bytes = buffer.array();
+            int length = CARRY;
+            read = in.read(bytes, length, bytes.length - length);
+            //a decompressor returns little at a time, so fill the buffer to
+            //hand over fewer, larger pieces
+            while (read >= 0 && (length += read) < bytes.length) {
+                read = in.read(bytes, length, bytes.length - length);
+            }
+            metrics.stop(PipelineMetrics.Stage.READ, start);
+            long position = channel.position();
+            metrics.read(position - compressed);
+            compressed = position;
+            buffer.limit(length);
+            buffer.position(CARRY);
+            if (length > CARRY) {
+                filled.put(buffer);
+            }
+        }
+    }
+
+    /**
+     * Waits for {@code thread} to end, even if the calling thread is
+     * interrupted, in which case it is interrupted again afterwards.
+     *
+     * @param thread
+     *            the thread to wait for
+     */
+    private static void join(Thread thread) {
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -0,0 +1,913 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.zip.CRC32;
+
+/**
+ * Reads, writes and merges snapshots of word counts, so that a corpus only has
+ * to be tokenized once. A snapshot is laid out as
+ *
+ * <pre>
+ * magic       4 bytes, 0x89 'T' 'C' 'S'
+ * entries     one per word, in unsigned order of the UTF-8 bytes:
+ *               varint  bytes shared with the previous word
+ *               varint  bytes not shared
+ *               bytes   the bytes not shared
+ *               varint  count
+ * trailer     8 bytes  number of entries
+ *             8 bytes  sum of the counts
+ *             8 bytes  offset of the source already counted
+ *             4 bytes  CRC32 of everything before it
+ * </pre>
+ *
+ * Varints are unsigned LEB128. Snapshots are written through a
+ * {@code FileChannel} and read through a memory map, and because the entries
+ * are sorted any number of snapshots can be merged in one streaming pass,
+ * into another snapshot or straight into a cloud of their most frequent
+ * words.
+ *
+ * @author Hudson Arledge and Nik Anand
+ *
+ */
+public final class CountSnapshot {
+
+    /**
+     * The first bytes of every snapshot.
+     */
+    private static final int MAGIC = 0x89544353;
+
+    /**
+     * Number of bytes in the trailer.
+     */
+    private static final int TRAILER_SIZE = 3 * Long.BYTES + Integer.BYTES;
+
+    /**
+     * Number of bytes buffered by a {@code Writer} between channel writes.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Length of the ranges of entries {@code write} sorts by insertion.
+     */
+    private static final int INSERTION_SORT_SIZE = 16;
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private CountSnapshot() {
+    }
+
+    /**
+     * Reports whether {@code channel} starts like a snapshot. The position of
+     * {@code channel} is not changed.
+     *
+     * @param channel
+     *            the file to check
+     * @return true iff the file starts with the snapshot magic number
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    public static boolean isSnapshot(FileChannel channel) throws IOException {
+        assert channel != null : "Violation of: channel is not null";
+
+        ByteBuffer magic = ByteBuffer.allocate(Integer.BYTES);
+        while (magic.hasRemaining()) {
+            if (channel.read(magic, magic.position()) < 0) {
+                return false;
+            }
+        }
+        return magic.getInt(0) == MAGIC;
+    }
+
+    /**
+     * Writes every word of {@code table} to a snapshot at {@code file}.
+     *
+     * @param table
+     *            the counts to save
+     * @param sourceOffset
+     *            the offset of the source already counted, or 0 if the
+     *            whole source was counted
+     * @param file
+     *            the snapshot to create or replace
+     * @throws IOException
+     *             if the snapshot cannot be written
+     */
+    public static void write(WordCountTable table, long sourceOffset,
+            Path file) throws IOException {
+        assert table != null : "Violation of: table is not null";
+        assert file != null : "Violation of: file is not null";
+
+        byte[][] keys = new byte[table.size()][];
+        long[] counts = new long[table.size()];
+        int[] order = new int[table.size()];
+        int size = 0;
+        for (int slot = 0; slot < table.capacity(); slot++) {
+            if (table.keyAt(slot) != null) {
+                keys[size] = table.keyAt(slot)
+                        .getBytes(StandardCharsets.UTF_8);
+                counts[size] = table.countAt(slot);
+                order[size] = size;
+                size++;
+            }
+        }
+        sort(order, keys, 0, size);
+        Writer writer = new Writer(file);
+        try {
+            for (int i = 0; i < size; i++) {
+                byte[] key = keys[order[i]];
+                writer.add(key, key.length, counts[order[i]]);
+            }
+            writer.finish(sourceOffset);
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Sorts {@code order[from, to)}, indexes into {@code keys}, into unsigned
+     * order of the keys they index. A quicksort on the median of three keys,
+     * finished by insertion sort, that sorts the shorter side of each split
+     * first so the stack stays logarithmic; unlike sorting boxed indexes it
+     * allocates nothing.
+     *
+     * @param order
+     *            the indexes to sort
+     * @param keys
+     *            the keys the indexes refer to
+     * @param from
+     *            the first index to sort
+     * @param to
+     *            one past the last index to sort
+     * @updates order
+     * @requires 0 <= from <= to <= |order|
+     */
+    private static void sort(int[] order, byte[][] keys, int from, int to) {
+        while (to - from > INSERTION_SORT_SIZE) {
+            byte[] a = keys[order[from]];
+            byte[] b = keys[order[(from + to) >>> 1]];
+            byte[] c = keys[order[to - 1]];
+            byte[] pivot;
+            if (compareBytes(a, a.length, b, b.length) < 0) {
+                if (compareBytes(b, b.length, c, c.length) < 0) {
+                    pivot = b;
+                } else if (compareBytes(a, a.length, c, c.length) < 0) {
+                    pivot = c;
+                } else {
+                    pivot = a;
+                }
+            } else if (compareBytes(a, a.length, c, c.length) < 0) {
+                pivot = a;
+            } else if (compareBytes(b, b.length, c, c.length) < 0) {
+                pivot = c;
+            } else {
+                pivot = b;
+            }
+            int i = from;
+            int j = to - 1;
+            while (i <= j) {
+                while (compareBytes(keys[order[i]], keys[order[i]].length,
+                        pivot, pivot.length) < 0) {
+                    i++;
+                }
+                while (compareBytes(keys[order[j]], keys[order[j]].length,
+                        pivot, pivot.length) > 0) {
+                    j--;
+                }
+                if (i <= j) {
+                    int swapped = order[i];
+                    order[i] = order[j];
+                    order[j] = swapped;
+                    i++;
+                    j--;
+                }
+            }
+            //[from, j] holds no key above the pivot and [i, to) none below
+            if (j + 1 - from < to - i) {
+                sort(order, keys, from, j + 1);
+                from = i;
+            } else {
+                sort(order, keys, i, to);
+                to = j + 1;
+            }
+        }
+        for (int i = from + 1; i < to; i++) {
+            int index = order[i];
+            byte[] key = keys[index];
+            int j = i;
+            while (j > from && compareBytes(keys[order[j - 1]],
+                    keys[order[j - 1]].length, key, key.length) > 0) {
+                order[j] = order[j - 1];
+                j--;
+            }
+            order[j] = index;
+        }
+    }
+
+    /**
+     * Returns a table holding every word of the snapshot {@code channel}.
+     *
+     * @param channel
+     *            the snapshot to load
+     * @return the counts of the snapshot
+     * @throws IOException
+     *             if the snapshot cannot be read or is corrupt
+     */
+    public static WordCountTable load(FileChannel channel) throws IOException {
+        Cursor cursor = new Cursor(channel);
+        WordCountTable table = new WordCountTable(
+                (int) Math.min(Integer.MAX_VALUE, cursor.entries()));
+        while (cursor.next()) {
+            table.add(cursor.word(), cursor.count());
+        }
+        return table;
+    }
+
+    /**
+     * Merges the snapshots {@code inputs} into one snapshot at {@code output},
+     * adding the counts of words that appear in more than one. Only one entry
+     * of each input is held in memory at a time. The output replaces its file
+     * only once it is complete, so it may be one of the inputs.
+     *
+     * @param inputs
+     *            the snapshots to merge
+     * @param output
+     *            the snapshot to create or replace
+     * @throws IOException
+     *             if a snapshot cannot be read or written
+     */
+    public static void merge(Path[] inputs, Path output) throws IOException {
+        assert inputs != null : "Violation of: inputs is not null";
+        assert output != null : "Violation of: output is not null";
+
+        final Writer writer = new Writer(output);
+        try {
+            merge(inputs, new long[inputs.length], new MergedEntries() {
+                @Override
+                public void add(byte[] key, int keyLength, long count,
+                        long error) throws IOException {
+                    writer.add(key, keyLength, count);
+                }
+            });
+            writer.finish(0);
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Returns the cloud of the most frequent words of the snapshots
+     * {@code inputs} together, merging them in one streaming pass so that
+     * only one entry of each input, and the selected words, are held in
+     * memory at a time.
+     *
+     * <p>
+     * A snapshot may hold approximate counts, such as the words of a
+     * {@code SpaceSavingSketch}, whose counts are at most
+     * {@code errorBounds[i]} too high and which leaves out words that occurred
+     * at most {@code errorBounds[i]} times. A word's merged count then adds
+     * that bound for every approximate snapshot it is missing from, so it is
+     * never too low, and is at most the sum of all the bounds too high.
+     *
+     * @param inputs
+     *            the snapshots to merge
+     * @param errorBounds
+     *            the most a count of each snapshot may be too high, 0 for
+     *            exact counts
+     * @param config
+     *            the configuration of the cloud
+     * @param title
+     *            the name of the input
+     * @return the cloud; the number of distinct words is -1 if any snapshot
+     *         is approximate
+     * @throws IOException
+     *             if a snapshot cannot be read or is corrupt
+     * @requires |inputs| = |errorBounds|
+     */
+    public static TagCloudResult cloud(Path[] inputs, long[] errorBounds,
+            TagCloudConfig config, String title) throws IOException {
+        assert inputs != null : "Violation of: inputs is not null";
+        assert errorBounds != null : "Violation of: errorBounds is not null";
+        assert inputs.length == errorBounds.length
+                : "Violation of: |inputs| = |errorBounds|";
+
+        final int n = config.words();
+        //the worst of the words selected so far is at the head
+        final PriorityQueue<WordCount> best = new PriorityQueue<WordCount>(
+                Math.max(1, n), new Comparator<WordCount>() {
+                    @Override
+                    public int compare(WordCount o1, WordCount o2) {
+                        return WordCount.compareByRank(o2.word(), o2.count(),
+                                o1.word(), o1.count());
+                    }
+                });
+        final long[] distinct = new long[1];
+        long total = merge(inputs, errorBounds, new MergedEntries() {
+            @Override
+            public void add(byte[] key, int keyLength, long count,
+                    long error) {
+                distinct[0]++;
+                if (n == 0 || (best.size() == n
+                        && count < best.peek().count())) {
+                    return;
+                }
+                //only a word that may be selected is decoded
+                WordCount word = new WordCount(new String(key, 0, keyLength,
+                        StandardCharsets.UTF_8), count, error);
+                if (best.size() < n) {
+                    best.add(word);
+                } else if (best.comparator().compare(word, best.peek()) > 0) {
+                    best.poll();
+                    best.add(word);
+                }
+            }
+        });
+        WordCount[] top = new WordCount[best.size()];
+        for (int i = top.length - 1; i >= 0; i--) {
+            top[i] = best.poll();
+        }
+        boolean exact = true;
+        for (long bound : errorBounds) {
+            exact &= bound == 0;
+        }
+        return new TagCloudResult(config, title, top, total,
+                exact ? (int) Math.min(Integer.MAX_VALUE, distinct[0]) : -1);
+    }
+
+    /**
+     * Receives the entries of a merge of snapshots, in order.
+     */
+    private interface MergedEntries {
+
+        /**
+         * Receives the word whose UTF-8 bytes are {@code key[0, keyLength)}.
+         *
+         * @param key
+         *            the UTF-8 bytes of the word, valid until the next call
+         * @param keyLength
+         *            the number of bytes in the word
+         * @param count
+         *            the merged count of the word
+         * @param error
+         *            the most {@code count} may be too high
+         * @throws IOException
+         *             if the entry cannot be written
+         */
+        void add(byte[] key, int keyLength, long count, long error)
+                throws IOException;
+    }
+
+    /**
+     * Passes every word of the snapshots {@code inputs}, with its counts
+     * added up, to {@code out} in order. A word missing from snapshot
+     * {@code i} is counted as occurring {@code errorBounds[i]} times in it.
+     *
+     * @param inputs
+     *            the snapshots to merge
+     * @param errorBounds
+     *            the most a count of each snapshot may be too high
+     * @param out
+     *            the receiver of the merged entries
+     * @return the sum of the counts of every snapshot
+     * @throws IOException
+     *             if a snapshot cannot be read or {@code out} fails
+     */
+    private static long merge(Path[] inputs, long[] errorBounds,
+            MergedEntries out) throws IOException {
+        final Cursor[] cursors = new Cursor[inputs.length];
+        PriorityQueue<Integer> queue = new PriorityQueue<Integer>(
+                Math.max(1, inputs.length), new Comparator<Integer>() {
+                    @Override
+                    public int compare(Integer o1, Integer o2) {
+                        return compareBytes(cursors[o1].key,
+                                cursors[o1].keyLength, cursors[o2].key,
+                                cursors[o2].keyLength);
+                    }
+                });
+        long total = 0;
+        long allBounds = 0;
+        for (int i = 0; i < inputs.length; i++) {
+            FileChannel channel = FileChannel.open(inputs[i],
+                    StandardOpenOption.READ);
+            try {
+                cursors[i] = new Cursor(channel);
+            } finally {
+                channel.close();
+            }
+            total += cursors[i].total();
+            allBounds += errorBounds[i];
+            if (cursors[i].next()) {
+                queue.add(i);
+            }
+        }
+        byte[] key = new byte[0];
+        int keyLength = 0;
+        long count = 0;
+        long bounds = 0;
+        boolean pending = false;
+        while (queue.size() > 0) {
+            int i = queue.poll();
+            Cursor cursor = cursors[i];
+            if (pending && compareBytes(key, keyLength, cursor.key,
+                    cursor.keyLength) == 0) {
+                count += cursor.count();
+                bounds += errorBounds[i];
+            } else {
+                if (pending) {
+                    out.add(key, keyLength, count + allBounds - bounds,
+                            allBounds);
+                }
+                if (key.length < cursor.keyLength) {
+                    key = new byte[cursor.key.length];
+                }
+                System.arraycopy(cursor.key, 0, key, 0, cursor.keyLength);
+                keyLength = cursor.keyLength;
+                count = cursor.count();
+                bounds = errorBounds[i];
+                pending = true;
+            }
+            if (cursor.next()) {
+                queue.add(i);
+            }
+        }
+        if (pending) {
+            out.add(key, keyLength, count + allBounds - bounds, allBounds);
+        }
+        return total;
+    }
+
+    /**
+     * Compares {@code a[0, aLength)} and {@code b[0, bLength)} as unsigned
+     * bytes, which for UTF-8 is the order of the code points.
+     *
+     * @param a
+     *            the first key
+     * @param aLength
+     *            the length of the first key
+     * @param b
+     *            the second key
+     * @param bLength
+     *            the length of the second key
+     * @return a negative number, zero or a positive number as the first key is
+     *         less than, equal to or greater than the second
+     */
+    static int compareBytes(byte[] a, int aLength, byte[] b, int bLength) {
+        int length = Math.min(aLength, bLength);
+        for (int i = 0; i < length; i++) {
+            int difference = (a[i] & 0xFF) - (b[i] & 0xFF);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return aLength - bLength;
+    }
+
+    /**
+     * Writes the entries of a snapshot, in order, through a buffered
+     * {@code FileChannel}. The entries go to a temporary file beside the
+     * snapshot, which replaces the snapshot in one atomic move when the
+     * writer is closed after {@code finish}, so a crash or an error while
+     * writing leaves the old snapshot, if any, as it was.
+     *
+     * @author Hudson Arledge and Nik Anand
+     *
+     */
+    public static final class Writer {
+
+        /**
+         * The snapshot to create or replace.
+         */
+        private final Path file;
+
+        /**
+         * The temporary file the snapshot is written to.
+         */
+        private final Path temporary;
+
+        /**
+         * The temporary file being written.
+         */
+        private final FileChannel channel;
+
+        /**
+         * Whether the trailer has been written.
+         */
+        private boolean finished;
+
+        /**
+         * The bytes not yet written to {@code channel}.
+         */
+        private final ByteBuffer buffer;
+
+        /**
+         * The checksum of the bytes written so far.
+         */
+        private final CRC32 crc;
+
+        /**
+         * The previous key, for prefix compression.
+         */
+        private byte[] previous;
+
+        /**
+         * The length of the previous key.
+         */
+        private int previousLength;
+
+        /**
+         * The number of entries written.
+         */
+        private long entries;
+
+        /**
+         * The sum of the counts written.
+         */
+        private long total;
+
+        /**
+         * Constructor.
+         *
+         * @param file
+         *            the snapshot to create or replace
+         * @throws IOException
+         *             if the file cannot be created
+         */
+        public Writer(Path file) throws IOException {
+            assert file != null : "Violation of: file is not null";
+
+            //a temporary file in the same directory, so the move that
+            //replaces the snapshot is a rename
+            this.file = file;
+            Path directory = file.toAbsolutePath().getParent();
+            this.temporary = Files.createTempFile(directory,
+                    file.getFileName().toString(), ".tmp");
+            this.channel = FileChannel.open(this.temporary,
+                    StandardOpenOption.WRITE);
+            this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            this.crc = new CRC32();
+            this.previous = new byte[0];
+            this.previousLength = 0;
+            this.buffer.putInt(MAGIC);
+        }
+
+        /**
+         * Appends the word whose UTF-8 bytes are {@code key[0, length)}.
+         *
+         * @param key
+         *            the UTF-8 bytes of the word
+         * @param length
+         *            the number of bytes in the word
+         * @param count
+         *            the count of the word
+         * @throws IOException
+         *             if the snapshot cannot be written
+         * @requires [key is greater than every key added before]
+         */
+        public void add(byte[] key, int length, long count)
+                throws IOException {
+            assert compareBytes(this.previous, this.previousLength, key,
+                    length) < 0
+                    || this.entries == 0 : "Violation of: keys are in order";
+
+            int shared = 0;
+            int limit = Math.min(length, this.previousLength);
+            while (shared < limit && key[shared] == this.previous[shared]) {
+                shared++;
+            }
+            this.putVarint(shared);
+            this.putVarint(length - shared);
+            int written = shared;
+            while (written < length) {
+                if (!this.buffer.hasRemaining()) {
+                    this.drain();
+                }
+                int chunk = Math.min(length - written,
+                        this.buffer.remaining());
+                this.buffer.put(key, written, chunk);
+                written += chunk;
+            }
+            this.putVarint(count);
+            if (this.previous.length < length) {
+                this.previous = new byte[Math.max(length,
+                        2 * this.previous.length)];
+            }
+            System.arraycopy(key, shared, this.previous, shared,
+                    length - shared);
+            this.previousLength = length;
+            this.entries++;
+            this.total += count;
+        }
+
+        /**
+         * Writes the trailer. No entry may be added afterwards.
+         *
+         * @param sourceOffset
+         *            the offset of the source already counted
+         * @throws IOException
+         *             if the snapshot cannot be written
+         */
+        public void finish(long sourceOffset) throws IOException {
+            if (this.buffer.remaining() < TRAILER_SIZE) {
+                this.drain();
+            }
+            this.buffer.putLong(this.entries);
+            this.buffer.putLong(this.total);
+            this.buffer.putLong(sourceOffset);
+            this.drain();
+            this.buffer.putInt((int) this.crc.getValue());
+            this.drain();
+            //on disk before it replaces the snapshot
+            this.channel.force(true);
+            this.finished = true;
+        }
+
+        /**
+         * Closes the snapshot file. If {@code finish} was called the snapshot
+         * replaces the file given to the constructor; otherwise it is
+         * discarded and the file is left as it was.
+         *
+         * @throws IOException
+         *             if the file cannot be closed or moved into place
+         */
+        public void close() throws IOException {
+            boolean moved = false;
+            try {
+                this.channel.close();
+                if (this.finished) {
+                    Files.move(this.temporary, this.file,
+                            StandardCopyOption.REPLACE_EXISTING,
+                            StandardCopyOption.ATOMIC_MOVE);
+                    moved = true;
+                }
+            } finally {
+                if (!moved) {
+                    Files.deleteIfExists(this.temporary);
+                }
+            }
+        }
+
+        /**
+         * Appends {@code value} as an unsigned LEB128 varint.
+         *
+         * @param value
+         *            the value, treated as unsigned
+         * @throws IOException
+         *             if the snapshot cannot be written
+         */
+        private void putVarint(long value) throws IOException {
+            if (this.buffer.remaining() < 10) {
+                this.drain();
+            }
+            long rest = value;
+            while ((rest & ~0x7FL) != 0) {
+                this.buffer.put((byte) ((rest & 0x7F) | 0x80));
+                rest >>>= 7;
+            }
+            this.buffer.put((byte) rest);
+        }
+
+        /**
+         * Writes the buffered bytes to the channel and adds them to the
+         * checksum.
+         *
+         * @throws IOException
+         *             if the snapshot cannot be written
+         */
+        private void drain() throws IOException {
+            this.buffer.flip();
+            this.crc.update(this.buffer.duplicate());
+            while (this.buffer.hasRemaining()) {
+                this.channel.write(this.buffer);
+            }
+            this.buffer.clear();
+        }
+    }
+
+    /**
+     * Reads the entries of a memory-mapped snapshot in order. The checksum is
+     * verified when the cursor is created.
+     *
+     * @author Hudson Arledge and Nik Anand
+     *
+     */
+    public static final class Cursor {
+
+        /**
+         * The mapped entries of the snapshot.
+         */
+        private final MappedByteBuffer entriesBuffer;
+
+        /**
+         * The number of entries in the snapshot.
+         */
+        private final long entries;
+
+        /**
+         * The sum of the counts in the snapshot.
+         */
+        private final long total;
+
+        /**
+         * The offset of the source already counted.
+         */
+        private final long sourceOffset;
+
+        /**
+         * The UTF-8 bytes of the current word.
+         */
+        private byte[] key;
+
+        /**
+         * The number of bytes in the current word.
+         */
+        private int keyLength;
+
+        /**
+         * The count of the current word.
+         */
+        private long count;
+
+        /**
+         * Constructor. The mapping stays valid after {@code channel} is
+         * closed.
+         *
+         * @param channel
+         *            the snapshot to read
+         * @throws IOException
+         *             if the snapshot cannot be read or is corrupt
+         */
+        public Cursor(FileChannel channel) throws IOException {
+            long size = channel.size();
+            if (size < Integer.BYTES + TRAILER_SIZE) {
+                throw new IOException("Snapshot is truncated");
+            }
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot is too large to map");
+            }
+            MappedByteBuffer mapped = channel
+                    .map(FileChannel.MapMode.READ_ONLY, 0, size);
+            int end = mapped.limit() - Integer.BYTES;
+            CRC32 crc = new CRC32();
+            ByteBuffer checked = mapped.duplicate();
+            checked.limit(end);
+            crc.update(checked);
+            if (mapped.getInt(0) != MAGIC
+                    || mapped.getInt(end) != (int) crc.getValue()) {
+                throw new IOException("Snapshot checksum does not match");
+            }
+            int trailer = end - 3 * Long.BYTES;
+            this.entries = mapped.getLong(trailer);
+            this.total = mapped.getLong(trailer + Long.BYTES);
+            this.sourceOffset = mapped.getLong(trailer + 2 * Long.BYTES);
+            mapped.position(Integer.BYTES);
+            mapped.limit(trailer);
+            this.entriesBuffer = mapped;
+            this.key = new byte[64];
+            this.keyLength = 0;
+            this.count = 0;
+        }
+
+        /**
+         * Moves to the next entry.
+         *
+         * @return false iff there are no more entries
+         */
+        public boolean next() {
+            if (!this.entriesBuffer.hasRemaining()) {
+                return false;
+            }
+            int shared = (int) this.getVarint();
+            int suffix = (int) this.getVarint();
+            int length = shared + suffix;
+            if (this.key.length < length) {
+                this.key = Arrays.copyOf(this.key,
+                        Math.max(length, 2 * this.key.length));
+            }
+            this.entriesBuffer.get(this.key, shared, suffix);
+            this.keyLength = length;
+            this.count = this.getVarint();
+            return true;
+        }
+
+        /**
+         * Returns the current word, decoding it from UTF-8.
+         *
+         * @return the current word
+         */
+        public String word() {
+            return new String(this.key, 0, this.keyLength,
+                    StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Returns the count of the current word.
+         *
+         * @return the current count
+         */
+        public long count() {
+            return this.count;
+        }
+
+        /**
+         * Returns the number of entries in the snapshot.
+         *
+         * @return the number of entries
+         */
+        public long entries() {
+            return this.entries;
+        }
+
+        /**
+         * Returns the sum of the counts in the snapshot.
+         *
+         * @return the total count
+         */
+        public long total() {
+            return this.total;
+        }
+
+        /**
+         * Returns the offset of the source already counted when the snapshot
+         * was written.
+         *
+         * @return the source offset
+         */
+        public long sourceOffset() {
+            return this.sourceOffset;
+        }
+
+        /**
+         * Reads an unsigned LEB128 varint.
+         *
+         * @return the value read
+         */
+        private long getVarint() {
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = this.entriesBuffer.get();
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return value;
+        }
+    }
+
+    /**
+     * Main method. With {@code write <text file> <snapshot>} counts the words
+     * of a text file into a snapshot, and with
+     * {@code merge <snapshot> <input snapshot>...} merges snapshots into one.
+     * A snapshot can be given to {@code TagCloud} in place of a text file.
+     *
+     * @param args
+     *            the command line arguments
+     */
+    public static void main(String[] args) {
+        if (args.length == 3 && args[0].equals("write")) {
+            WordCountTable table;
+            try {
+                FileChannel channel = FileChannel.open(Paths.get(args[1]),
+                        StandardOpenOption.READ);
+                try {
+                    table = new TagCloudEngine(TagCloudConfig.DEFAULT)
+                            .count(channel, PipelineMetrics.DISABLED);
+                } finally {
+                    channel.close();
+                }
+            } catch (IOException e) {
+                System.err.println("Error reading file");
+                return;
+            }
+            try {
+                write(table, 0, Paths.get(args[2]));
+            } catch (IOException e) {
+                System.err.println("Error writing to file");
+            }
+        } else if (args.length >= 2 && args[0].equals("merge")) {
+            Path[] inputs = new Path[args.length - 2];
+            for (int i = 0; i < inputs.length; i++) {
+                inputs[i] = Paths.get(args[i + 2]);
+            }
+            try {
+                merge(inputs, Paths.get(args[1]));
+            } catch (IOException e) {
+                System.err.println("Error merging snapshots: " + e.getMessage());
+            }
+        } else {
+            System.err.println("Usage: CountSnapshot write <text file> <snapshot>");
+            System.err.println(
+                    "       CountSnapshot merge <snapshot> <input snapshot>...");
+        }
+    }
+
+}
@@ -0,0 +1,529 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Generates one tag cloud of many files by counting them in several worker
+ * processes on this machine. The coordinator starts {@code workers} JVMs,
+ * hands each a share of the files, balanced by size, over its standard input,
+ * and reads back over its standard output the partial counts it wrote. The
+ * partial counts are {@code CountSnapshot} files, sorted by word, which the
+ * coordinator merges in one streaming pass straight into the most frequent
+ * words, so its memory does not grow with the vocabulary.
+ *
+ * <pre>
+ * DistributedTagCloud [-n words] [-w workers] [-a epsilon] [-i words]
+ *                     [-e charset] [-x worker JVM option]... output file
+ *                     file or directory...
+ * </pre>
+ *
+ * A worker keeps at most {@code -i} distinct words in memory: when its table
+ * is full it is written out as a sorted run and emptied, so a corpus whose
+ * vocabulary is larger than any one JVM can hold is still counted exactly.
+ * With {@code -a} a worker instead counts each file in a
+ * {@code SpaceSavingSketch}, and the cloud shows how far each merged count may
+ * be off. {@code -e} names the encoding of the files, UTF-8 by default.
+ * {@code -x} passes an option, such as {@code -Xmx512m}, to every
+ * worker JVM.
+ *
+ * @author Hudson Arledge and Nik Anand
+ *
+ */
+public final class DistributedTagCloud {
+
+    /**
+     * Default number of words in the cloud.
+     */
+    private static final int DEFAULT_WORDS = 100;
+
+    /**
+     * Default number of distinct words a worker holds before writing a run.
+     */
+    private static final int DEFAULT_SPILL = 1 << 20;
+
+    /**
+     * The argument that starts a worker instead of a coordinator.
+     */
+    private static final String WORKER = "--worker";
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private DistributedTagCloud() {
+    }
+
+    /**
+     * Main method.
+     *
+     * @param args
+     *            the command line arguments
+     */
+    public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals(WORKER)) {
+            System.exit(worker(args));
+        }
+
+        int n = DEFAULT_WORDS;
+        int workers = Runtime.getRuntime().availableProcessors();
+        double epsilon = 0;
+        int spill = DEFAULT_SPILL;
+        Charset charset = StandardCharsets.UTF_8;
+        List<String> jvmOptions = new ArrayList<String>();
+        List<Path> roots = new ArrayList<Path>();
+        try {
+            int i = 0;
+            while (i < args.length) {
+                String arg = args[i];
+                if (arg.equals("-n")) {
+                    n = Integer.parseInt(args[i + 1]);
+                    i += 2;
+                } else if (arg.equals("-w")) {
+                    workers = Integer.parseInt(args[i + 1]);
+                    i += 2;
+                } else if (arg.equals("-a")) {
+                    epsilon = Double.parseDouble(args[i + 1]);
+                    i += 2;
+                } else if (arg.equals("-i")) {
+                    spill = Integer.parseInt(args[i + 1]);
+                    i += 2;
+                } else if (arg.equals("-e")) {
+                    charset = Charset.forName(args[i + 1]);
+                    i += 2;
+                } else if (arg.equals("-x")) {
+                    jvmOptions.add(args[i + 1]);
+                    i += 2;
+                } else if (arg.startsWith("-") && arg.length() > 1) {
+                    throw new IllegalArgumentException(arg);
+                } else {
+                    roots.add(Paths.get(arg));
+                    i++;
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException e) {
+            //an unknown option or charset, or a malformed number
+            usage();
+            return;
+        }
+        if (roots.size() < 2 || n < 0 || workers < 1 || spill < 1
+                || !(0 <= epsilon && epsilon < 1)) {
+            usage();
+            return;
+        }
+        Path output = roots.remove(0);
+
+        List<Path> inputs = new ArrayList<Path>();
+        try {
+            BatchTagCloud.listInputs(roots, Paths.get("."), inputs,
+                    new ArrayList<Path>());
+        } catch (IOException e) {
+            System.err.println("Error listing input files");
+            return;
+        }
+        TagCloudConfig config = TagCloudConfig.DEFAULT.withWords(n)
+                .withApproximation(epsilon).withCharset(charset);
+
+        Path partials;
+        try {
+            partials = Files.createTempDirectory("tagcloud");
+        } catch (IOException e) {
+            System.err.println("Error creating temporary directory");
+            return;
+        }
+        try {
+            TagCloudResult cloud = coordinate(inputs, workers, config, spill,
+                    jvmOptions, partials);
+            if (cloud != null) {
+                new TagCloudEngine(config).writeHtml(cloud, output);
+            }
+        } catch (IOException e) {
+            System.err.println("Error writing to file");
+        } finally {
+            deleteAll(partials);
+        }
+    }
+
+    /**
+     * Prints the command line usage.
+     */
+    private static void usage() {
+        System.err.println("Usage: DistributedTagCloud [-n words] [-w workers]"
+                + " [-a epsilon] [-i words] [-e charset]"
+                + " [-x worker JVM option]..."
+                + " output file file or directory...");
+    }
+
+    /**
+     * Counts {@code inputs} in {@code workers} worker processes and returns
+     * the cloud of the merged counts. The workers run this class from the
+     * class path of this JVM.
+     *
+     * @param inputs
+     *            the input files
+     * @param workers
+     *            the number of worker processes
+     * @param config
+     *            the configuration of the cloud
+     * @param spill
+     *            the number of distinct words a worker holds before writing a
+     *            run
+     * @param jvmOptions
+     *            the options of every worker JVM
+     * @param partials
+     *            the directory the workers write their partial counts to
+     * @return the cloud, or null if a worker failed
+     * @throws IOException
+     *             if a worker cannot be started or a partial count cannot be
+     *             read
+     */
+    static TagCloudResult coordinate(List<Path> inputs, int workers,
+            TagCloudConfig config, int spill, List<String> jvmOptions,
+            Path partials) throws IOException {
+        List<List<Path>> shares = share(inputs, Math.min(workers,
+                Math.max(1, inputs.size())));
+
+        String java = System.getProperty("java.home") + File.separator + "bin"
+                + File.separator + "java";
+        List<Process> processes = new ArrayList<Process>();
+        try {
+            for (List<Path> share : shares) {
+                List<String> command = new ArrayList<String>();
+                command.add(java);
+                command.addAll(jvmOptions);
+                command.add("-cp");
+                command.add(System.getProperty("java.class.path"));
+                command.add(DistributedTagCloud.class.getName());
+                command.add(WORKER);
+                command.add(String.valueOf(config.words()));
+                command.add(String.valueOf(config.approximation()));
+                command.add(String.valueOf(spill));
+                command.add(partials.toString());
+                command.add(config.charset().name());
+                Process process = new ProcessBuilder(command)
+                        .redirectError(ProcessBuilder.Redirect.INHERIT)
+                        .start();
+                processes.add(process);
+                //a worker reads its whole share before writing anything, so
+                //neither side can block on a full pipe
+                BufferedWriter toWorker = new BufferedWriter(
+                        new OutputStreamWriter(process.getOutputStream(),
+                                StandardCharsets.UTF_8));
+                try {
+                    for (Path file : share) {
+                        toWorker.write(file.toString());
+                        toWorker.newLine();
+                    }
+                } finally {
+                    toWorker.close();
+                }
+            }
+
+            //every worker's output is read at once, on a thread of its own,
+            //so no worker blocks on a full pipe while an earlier one runs
+            List<List<String>> outputs = new ArrayList<List<String>>();
+            List<Thread> readers = new ArrayList<Thread>();
+            IOException[] failure = new IOException[processes.size()];
+            for (int i = 0; i < processes.size(); i++) {
+                List<String> lines = new ArrayList<String>();
+                outputs.add(lines);
+                readers.add(readLines(processes.get(i), lines, failure, i));
+            }
+            List<Path> runs = new ArrayList<Path>();
+            List<Long> bounds = new ArrayList<Long>();
+            boolean failed = false;
+            for (int i = 0; i < processes.size(); i++) {
+                try {
+                    readers.get(i).join();
+                    failed |= processes.get(i).waitFor() != 0;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+                if (failure[i] != null) {
+                    throw failure[i];
+                }
+                for (String line : outputs.get(i)) {
+                    //each line is the error bound and path of one run
+                    int space = line.indexOf(' ');
+                    bounds.add(Long.parseLong(line.substring(0, space)));
+                    runs.add(Paths.get(line.substring(space + 1)));
+                }
+            }
+            if (failed) {
+                System.err.println("Error: a worker failed");
+                return null;
+            }
+
+            long[] errorBounds = new long[bounds.size()];
+            for (int i = 0; i < errorBounds.length; i++) {
+                errorBounds[i] = bounds.get(i);
+            }
+            return CountSnapshot.cloud(runs.toArray(new Path[runs.size()]),
+                    errorBounds, config, "all files");
+        } finally {
+            for (Process process : processes) {
+                process.destroy();
+            }
+        }
+    }
+
+    /**
+     * Starts a thread that reads the standard output of {@code process} to
+     * its end, adding each line to {@code lines}, or the error that stopped
+     * it to {@code failure[index]}.
+     *
+     * @param process
+     *            the worker
+     * @param lines
+     *            the lines of its output
+     * @param failure
+     *            the error reading the output of each worker, if any
+     * @param index
+     *            the index of this worker's error in {@code failure}
+     * @return the started thread
+     * @updates lines, failure
+     */
+    private static Thread readLines(final Process process,
+            final List<String> lines, final IOException[] failure,
+            final int index) {
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    BufferedReader fromWorker = new BufferedReader(
+                            new InputStreamReader(process.getInputStream(),
+                                    StandardCharsets.UTF_8));
+                    try {
+                        String line = fromWorker.readLine();
+                        while (line != null) {
+                            lines.add(line);
+                            line = fromWorker.readLine();
+                        }
+                    } finally {
+                        fromWorker.close();
+                    }
+                } catch (IOException e) {
+                    failure[index] = e;
+                }
+            }
+        }, "worker output " + index);
+        reader.setDaemon(true);
+        reader.start();
+        return reader;
+    }
+
+    /**
+     * Splits {@code inputs} into {@code count} shares of about the same number
+     * of bytes, giving each file, largest first, to the share with the fewest
+     * bytes so far.
+     *
+     * @param inputs
+     *            the input files
+     * @param count
+     *            the number of shares
+     * @return the shares
+     * @requires count > 0
+     */
+    private static List<List<Path>> share(List<Path> inputs, int count) {
+        final Path[] files = inputs.toArray(new Path[inputs.size()]);
+        final long[] sizes = new long[files.length];
+        Integer[] order = new Integer[files.length];
+        for (int i = 0; i < files.length; i++) {
+            try {
+                sizes[i] = Files.size(files[i]);
+            } catch (IOException e) {
+                //the worker reports the file it cannot read
+                sizes[i] = 0;
+            }
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                return Long.compare(sizes[o2], sizes[o1]);
+            }
+        });
+        List<List<Path>> shares = new ArrayList<List<Path>>();
+        long[] loads = new long[count];
+        for (int i = 0; i < count; i++) {
+            shares.add(new ArrayList<Path>());
+        }
+        for (int i : order) {
+            int lightest = 0;
+            for (int j = 1; j < count; j++) {
+                if (loads[j] < loads[lightest]) {
+                    lightest = j;
+                }
+            }
+            shares.get(lightest).add(files[i]);
+            loads[lightest] += sizes[i];
+        }
+        return shares;
+    }
+
+    /**
+     * Runs a worker: reads the paths of its files from standard input, counts
+     * them, and writes the error bound and path of each partial count it
+     * creates to standard output.
+     *
+     * @param args
+     *            {@code --worker}, the number of words, the approximation,
+     *            the number of distinct words held before writing a run,
+     *            the directory of the partial counts, and the name of the
+     *            encoding of the files
+     * @return the exit status, 0 on success
+     */
+    private static int worker(String[] args) {
+        final int spill = Integer.parseInt(args[3]);
+        final Path partials = Paths.get(args[4]);
+        TagCloudEngine engine = new TagCloudEngine(TagCloudConfig.DEFAULT
+                .withWords(Integer.parseInt(args[1]))
+                .withApproximation(Double.parseDouble(args[2]))
+                .withCharset(Charset.forName(args[5])));
+
+        List<Path> files = new ArrayList<Path>();
+        try {
+            BufferedReader in = new BufferedReader(
+                    new InputStreamReader(System.in, StandardCharsets.UTF_8));
+            String line = in.readLine();
+            while (line != null) {
+                files.add(Paths.get(line));
+                line = in.readLine();
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading file list");
+            return 1;
+        }
+
+        final WordCountTable table = new WordCountTable();
+        //counts into the table, writing it out as a run whenever it is full
+        AsciiWordSink sink = new AsciiWordSink() {
+            @Override
+            public void word(char[] text, int offset, int length) {
+                this.word(text, offset, length,
+                        WordCountTable.hash(text, offset, length));
+            }
+
+            @Override
+            public void word(char[] text, int offset, int length, int hash) {
+                table.word(text, offset, length, hash);
+                this.spillIfFull();
+            }
+
+            @Override
+            public void word(byte[] text, int offset, int length, int hash) {
+                table.word(text, offset, length, hash);
+                this.spillIfFull();
+            }
+
+            /**
+             * Writes the table out as a run if it holds {@code spill}
+             * words.
+             */
+            private void spillIfFull() {
+                if (table.size() >= spill) {
+                    try {
+                        writeRun(table, 0, partials);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            }
+        };
+        for (Path file : files) {
+            try {
+                FileChannel channel = FileChannel.open(file,
+                        StandardOpenOption.READ);
+                try {
+                    if (CountSnapshot.isSnapshot(channel)) {
+                        writeRun(CountSnapshot.load(channel), 0, partials);
+                    } else if (engine.config().approximation() > 0) {
+                        SpaceSavingSketch sketch = engine.sketch(channel,
+                                PipelineMetrics.DISABLED);
+                        WordCountTable words = new WordCountTable(
+                                sketch.size());
+                        for (WordCount word : sketch.top(sketch.size())) {
+                            words.add(word.word(), word.count());
+                        }
+                        writeRun(words, sketch.errorBound(), partials);
+                    } else {
+                        engine.tokenize(channel, sink,
+                                PipelineMetrics.DISABLED);
+                    }
+                } finally {
+                    channel.close();
+                }
+            } catch (IOException | UncheckedIOException e) {
+                System.err.println("Error reading file " + file);
+                return 1;
+            }
+        }
+        if (table.size() > 0) {
+            try {
+                writeRun(table, 0, partials);
+            } catch (IOException e) {
+                System.err.println("Error writing partial count");
+                return 1;
+            }
+        }
+        System.out.flush();
+        return System.out.checkError() ? 1 : 0;
+    }
+
+    /**
+     * Writes {@code table} as a sorted run in {@code partials}, reports its
+     * error bound and path on standard output, and empties the table.
+     *
+     * @param table
+     *            the counts to write
+     * @param errorBound
+     *            the most a count of the table may be too high
+     * @param partials
+     *            the directory of the partial counts
+     * @throws IOException
+     *             if the run cannot be written
+     * @updates table
+     */
+    private static void writeRun(WordCountTable table, long errorBound,
+            Path partials) throws IOException {
+        Path run = Files.createTempFile(partials, "run", ".tcs");
+        CountSnapshot.write(table, 0, run);
+        System.out.println(errorBound + " " + run);
+        table.clear();
+    }
+
+    /**
+     * Deletes {@code directory} and the files in it.
+     *
+     * @param directory
+     *            the directory to delete
+     */
+    private static void deleteAll(Path directory) {
+        File[] files = directory.toFile().listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (!file.delete()) {
+                    System.err.println("Error deleting " + file);
+                }
+            }
+        }
+        if (!directory.toFile().delete()) {
+            System.err.println("Error deleting " + directory);
+        }
+    }
+
+}
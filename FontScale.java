@@ -0,0 +1,52 @@
+/**
+ * How the counts of the selected words of a cloud are mapped to font size
+ * classes. Every scale gives the least frequent selected word the smallest
+ * class and the most frequent the largest, gives equal counts equal classes,
+ * and never gives a word a smaller class than a less frequent one; they
+ * differ in how the classes in between are spread.
+ *
+ * @author Hudson Arledge and Nik Anand
+ *
+ */
+public enum FontScale {
+
+    /**
+     * Classes in proportion to the counts, as in the original generator. On
+     * skewed text, where a few words are far more frequent than the rest,
+     * most words end up in the smallest classes.
+     */
+    LINEAR,
+
+    /**
+     * Classes in proportion to the logarithms of the counts, so a word ten
+     * times as frequent as another is the same number of classes larger
+     * wherever it is in the range.
+     */
+    LOG,
+
+    /**
+     * Classes by rank: about as many of the selected words get each class,
+     * whatever their counts, so the words use the whole range. A word's
+     * class is set by the number of selected words less frequent than it.
+     */
+    QUANTILE;
+
+    /**
+     * Returns the scale named {@code name}, such as "log", ignoring case.
+     *
+     * @param name
+     *            the name of the scale
+     * @return the scale, or null if there is none of that name
+     */
+    public static FontScale forName(String name) {
+        assert name != null : "Violation of: name is not null";
+
+        for (FontScale scale : values()) {
+            if (scale.name().equalsIgnoreCase(name)) {
+                return scale;
+            }
+        }
+        return null;
+    }
+
+}
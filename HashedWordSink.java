@@ -0,0 +1,28 @@
+/**
+ * A {@code WordSink} that can also be given the hash of each word, so a word
+ * that has already been hashed, by a stop word lookup or as part of a phrase,
+ * is not hashed again.
+ *
+ * @author Hudson Arledge and Nik Anand
+ *
+ */
+public interface HashedWordSink extends WordSink {
+
+    /**
+     * Accepts the word {@code text[offset, offset + length)}, whose
+     * {@code String.hashCode} is {@code hash}.
+     *
+     * @param text
+     *            the buffer holding the word
+     * @param offset
+     *            the index of the first character of the word
+     * @param length
+     *            the number of characters in the word
+     * @param hash
+     *            the hash of the word
+     * @requires 0 <= offset and 0 < length and offset + length <= |text| and
+     *           hash = WordCountTable.hash(text, offset, length)
+     */
+    void word(char[] text, int offset, int length, int hash);
+
+}
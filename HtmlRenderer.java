@@ -0,0 +1,476 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Renders the HTML of a tag cloud into a reusable byte buffer. The top words
+ * are sorted alphabetically once, in an array, and the page is encoded as
+ * UTF-8 straight into the buffer from precomputed bytes for the fixed parts
+ * of the markup, with the words and the title HTML-escaped on the way, so no
+ * {@code String} is built per word. The finished page can then be written to
+ * a channel in one write, to an {@code OutputStream}, or copied into a byte
+ * array.
+ *
+ * <p>
+ * A renderer is not safe for use by several threads at once; each thread
+ * should keep its own, which then stops allocating once its buffer has grown
+ * to fit the largest page.
+ *
+ * @author Hudson Arledge and Nik Anand
+ *
+ */
+public final class HtmlRenderer {
+
+    /**
+     * Default number of bytes in the buffer.
+     */
+    private static final int DEFAULT_CAPACITY = 1 << 13;
+
+    /**
+     * Bytes before the number of words in the title.
+     */
+    private static final byte[] TITLE_START = bytes(
+            "<html> \n<head> <title> Top ");
+
+    /**
+     * Bytes between the number of words and the input name in the title.
+     */
+    private static final byte[] TITLE_MIDDLE = bytes("words in ");
+
+    /**
+     * Bytes between the title and the number of words in the heading.
+     */
+    private static final byte[] HEADING_START = bytes("</title>\n"
+            + "<link href=\"http://cse.osu.edu/software/2231/web-sw2/"
+            + "assignments/projects/tag-cloud-generator/data/"
+            + "tagcloud.css\" rel=\"stylesheet\" type=\"text/css\">\n"
+            + "</head>\n<body data-gr-c-s-loaded=\"true\">\n<h2>Top ");
+
+    /**
+     * Bytes between the number of words and the input name in the heading.
+     */
+    private static final byte[] HEADING_MIDDLE = bytes(" words in ");
+
+    /**
+     * Bytes between the heading and the first word.
+     */
+    private static final byte[] CLOUD_START = bytes(
+            "</h2><hr>\n<div class = \"cdiv\"> <p class =\"cbox\">\n");
+
+    /**
+     * Bytes before the font size of a word.
+     */
+    private static final byte[] WORD_START = bytes(
+            "<span style=\"cursor:default\" class=\"f");
+
+    /**
+     * Bytes between the font size and the count of a word.
+     */
+    private static final byte[] WORD_COUNT = bytes("\" title=\"count: ");
+
+    /**
+     * Bytes between the lowest and highest possible count of a word that was
+     * counted approximately.
+     */
+    private static final byte[] WORD_RANGE = bytes(" to ");
+
+    /**
+     * Bytes between the count and the text of a word.
+     */
+    private static final byte[] WORD_TEXT = bytes("\">");
+
+    /**
+     * Bytes after the text of a word.
+     */
+    private static final byte[] WORD_END = bytes("</span>\n");
+
+    /**
+     * Bytes after the last word.
+     */
+    private static final byte[] CLOUD_END = bytes("</p> </div> <body> </html>");
+
+    /**
+     * Orders words alphabetically, as {@code String.compareTo} does.
+     */
+    private static final Comparator<WordCount> ALPHABETICAL =
+            new Comparator<WordCount>() {
+                @Override
+                public int compare(WordCount o1, WordCount o2) {
+                    return o1.word().compareTo(o2.word());
+                }
+            };
+
+    /**
+     * The metrics the sorting and writing are timed into unless a page is
+     * rendered with others.
+     */
+    private final PipelineMetrics defaultMetrics;
+
+    /**
+     * The metrics the page held by this renderer is timed into.
+     */
+    private PipelineMetrics metrics;
+
+    /**
+     * The buffer holding the rendered page.
+     */
+    private byte[] buffer;
+
+    /**
+     * The number of bytes of the page in {@code buffer}.
+     */
+    private int length;
+
+    /**
+     * The words being rendered, sorted alphabetically; kept between pages so
+     * the array is only allocated when a larger cloud is rendered.
+     */
+    private WordCount[] sorted;
+
+    /**
+     * Constructor.
+     */
+    public HtmlRenderer() {
+        this(PipelineMetrics.DISABLED);
+    }
+
+    /**
+     * Constructor for a renderer that times the alphabetical sort and the
+     * writing of each page in {@code metrics}.
+     *
+     * @param metrics
+     *            the metrics to record into
+     */
+    public HtmlRenderer(PipelineMetrics metrics) {
+        assert metrics != null : "Violation of: metrics is not null";
+
+        this.defaultMetrics = metrics;
+        this.metrics = metrics;
+        this.buffer = new byte[DEFAULT_CAPACITY];
+        this.length = 0;
+        this.sorted = new WordCount[0];
+    }
+
+    /**
+     * Returns the US-ASCII bytes of {@code text}.
+     *
+     * @param text
+     *            the text, which is all ASCII
+     * @return the bytes of {@code text}
+     */
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Renders {@code cloud} with its words in alphabetical order, replacing
+     * the page held by this renderer. Each word's font size class is given by
+     * {@code cloud.font}.
+     *
+     * @param cloud
+     *            the cloud to render
+     * @return this renderer
+     */
+    public HtmlRenderer render(TagCloudResult cloud) {
+        return this.render(cloud, this.defaultMetrics);
+    }
+
+    /**
+     * Renders {@code cloud} as {@code render(cloud)} does, timing the sort,
+     * the rendering and the writing of this page in {@code pageMetrics}, so
+     * one renderer can be reused for clouds recorded in different metrics.
+     *
+     * @param cloud
+     *            the cloud to render
+     * @param pageMetrics
+     *            the metrics to record into
+     * @return this renderer
+     */
+    public HtmlRenderer render(TagCloudResult cloud,
+            PipelineMetrics pageMetrics) {
+        assert cloud != null : "Violation of: cloud is not null";
+        assert pageMetrics != null : "Violation of: pageMetrics is not null";
+
+        this.metrics = pageMetrics;
+        int size = cloud.size();
+        long start = this.metrics.time();
+        if (this.sorted.length < size) {
+            this.sorted = new WordCount[size];
+        }
+        for (int i = 0; i < size; i++) {
+            this.sorted[i] = cloud.word(i);
+        }
+        Arrays.sort(this.sorted, 0, size, ALPHABETICAL);
+        this.metrics.stop(PipelineMetrics.Stage.SORT, start);
+
+        start = this.metrics.time();
+        int n = cloud.config().words();
+        this.length = 0;
+        this.put(TITLE_START);
+        this.putLong(n);
+        this.put(TITLE_MIDDLE);
+        this.putText(cloud.title());
+        this.put(HEADING_START);
+        this.putLong(n);
+        this.put(HEADING_MIDDLE);
+        this.putText(cloud.title());
+        this.put(CLOUD_START);
+        for (int i = 0; i < size; i++) {
+            WordCount word = this.sorted[i];
+            this.put(WORD_START);
+            this.putLong(cloud.font(word.count()));
+            this.put(WORD_COUNT);
+            //an approximate count is shown as the range the true count is in
+            if (word.error() > 0) {
+                this.putLong(word.count() - word.error());
+                this.put(WORD_RANGE);
+            }
+            this.putLong(word.count());
+            this.put(WORD_TEXT);
+            this.putText(word.word());
+            this.put(WORD_END);
+            this.sorted[i] = null;
+        }
+        this.put(CLOUD_END);
+        this.metrics.stop(PipelineMetrics.Stage.WRITE, start);
+        return this;
+    }
+
+    /**
+     * Returns the number of bytes in the rendered page.
+     *
+     * @return the size of the page
+     */
+    public int size() {
+        return this.length;
+    }
+
+    /**
+     * Returns a copy of the rendered page.
+     *
+     * @return the UTF-8 bytes of the page
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(this.buffer, this.length);
+    }
+
+    /**
+     * Writes the rendered page to {@code channel}.
+     *
+     * @param channel
+     *            the destination
+     * @throws IOException
+     *             if the page cannot be written
+     */
+    public void writeTo(WritableByteChannel channel) throws IOException {
+        assert channel != null : "Violation of: channel is not null";
+
+        long start = this.metrics.time();
+        ByteBuffer page = ByteBuffer.wrap(this.buffer, 0, this.length);
+        while (page.hasRemaining()) {
+            channel.write(page);
+        }
+        this.metrics.stop(PipelineMetrics.Stage.WRITE, start);
+    }
+
+    /**
+     * Writes the rendered page to {@code out}.
+     *
+     * @param out
+     *            the destination
+     * @throws IOException
+     *             if the page cannot be written
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        assert out != null : "Violation of: out is not null";
+
+        long start = this.metrics.time();
+        out.write(this.buffer, 0, this.length);
+        this.metrics.stop(PipelineMetrics.Stage.WRITE, start);
+    }
+
+    /**
+     * Puts the rendered page into {@code out}, without flushing it.
+     *
+     * @param out
+     *            the destination
+     * @throws IOException
+     *             if the page cannot be written
+     */
+    public void writeTo(CloudOutput out) throws IOException {
+        assert out != null : "Violation of: out is not null";
+
+        long start = this.metrics.time();
+        out.put(this.buffer, 0, this.length);
+        this.metrics.stop(PipelineMetrics.Stage.WRITE, start);
+    }
+
+    /**
+     * Writes the rendered page to {@code file}, creating or replacing it.
+     *
+     * @param file
+     *            the destination
+     * @throws IOException
+     *             if the page cannot be written
+     */
+    public void writeTo(Path file) throws IOException {
+        assert file != null : "Violation of: file is not null";
+
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            this.writeTo(channel);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Makes sure the buffer has room for {@code extra} more bytes.
+     *
+     * @param extra
+     *            the number of bytes about to be added
+     */
+    private void reserve(int extra) {
+        if (this.buffer.length - this.length < extra) {
+            int capacity = this.buffer.length;
+            while (capacity - this.length < extra) {
+                capacity = Math.multiplyExact(capacity, 2);
+            }
+            this.buffer = Arrays.copyOf(this.buffer, capacity);
+        }
+    }
+
+    /**
+     * Appends {@code bytes} to the page.
+     *
+     * @param bytes
+     *            the bytes to append
+     */
+    private void put(byte[] bytes) {
+        this.reserve(bytes.length);
+        System.arraycopy(bytes, 0, this.buffer, this.length, bytes.length);
+        this.length += bytes.length;
+    }
+
+    /**
+     * Appends the decimal digits of {@code value} to the page.
+     *
+     * @param value
+     *            the number
+     */
+    private void putLong(long value) {
+        final int maxDigits = 20;
+        this.reserve(maxDigits);
+        if (value < 0) {
+            this.buffer[this.length] = '-';
+            this.length++;
+        }
+        //write the digits backward from the end of the number, working on
+        //the negative value so Long.MIN_VALUE needs no special case
+        long rest = value < 0 ? value : -value;
+        int digits = 1;
+        for (long power = rest / 10; power != 0; power /= 10) {
+            digits++;
+        }
+        int index = this.length + digits;
+        do {
+            index--;
+            this.buffer[index] = (byte) ('0' - rest % 10);
+            rest /= 10;
+        } while (rest != 0);
+        this.length += digits;
+    }
+
+    /**
+     * Appends {@code text} to the page as UTF-8, replacing the characters that
+     * are special in HTML with entities.
+     *
+     * @param text
+     *            the text to append
+     */
+    private void putText(String text) {
+        //at most six bytes per character, for "&quot;"
+        final int maxBytesPerChar = 6;
+        this.reserve(maxBytesPerChar * text.length());
+        byte[] out = this.buffer;
+        int at = this.length;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                switch (c) {
+                    case '&':
+                        at = putAscii(out, at, "&amp;");
+                        break;
+                    case '<':
+                        at = putAscii(out, at, "&lt;");
+                        break;
+                    case '>':
+                        at = putAscii(out, at, "&gt;");
+                        break;
+                    case '"':
+                        at = putAscii(out, at, "&quot;");
+                        break;
+                    case '\'':
+                        at = putAscii(out, at, "&#39;");
+                        break;
+                    default:
+                        out[at] = (byte) c;
+                        at++;
+                        break;
+                }
+            } else if (c < 0x800) {
+                out[at] = (byte) (0xC0 | (c >> 6));
+                out[at + 1] = (byte) (0x80 | (c & 0x3F));
+                at += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length()
+                    && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int code = Character.toCodePoint(c, text.charAt(i + 1));
+                out[at] = (byte) (0xF0 | (code >> 18));
+                out[at + 1] = (byte) (0x80 | ((code >> 12) & 0x3F));
+                out[at + 2] = (byte) (0x80 | ((code >> 6) & 0x3F));
+                out[at + 3] = (byte) (0x80 | (code & 0x3F));
+                at += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                //an unpaired surrogate cannot be encoded
+                out[at] = '?';
+                at++;
+            } else {
+                out[at] = (byte) (0xE0 | (c >> 12));
+                out[at + 1] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                out[at + 2] = (byte) (0x80 | (c & 0x3F));
+                at += 3;
+            }
+        }
+        this.length = at;
+    }
+
+    /**
+     * Copies the ASCII characters of {@code entity} into {@code out} at
+     * {@code at}.
+     *
+     * @param out
+     *            the destination
+     * @param at
+     *            the index of the first byte written
+     * @param entity
+     *            the ASCII text
+     * @return the index just past the bytes written
+     */
+    private static int putAscii(byte[] out, int at, String entity) {
+        for (int i = 0; i < entity.length(); i++) {
+            out[at + i] = (byte) entity.charAt(i);
+        }
+        return at + entity.length();
+    }
+
+}
@@ -0,0 +1,447 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Scanner;
+
+/**
+ * A tag cloud of a file that keeps growing, such as a log. The counts, the
+ * current top words and the number of bytes already consumed are kept between
+ * refreshes, and each refresh only maps and tokenizes the bytes appended since
+ * the last one, so its cost depends on the size of the new data rather than
+ * the size of the file. The state can be saved to a {@code CountSnapshot}
+ * and restored by a later process.
+ *
+ * <p>
+ * A refresh stops at the last separator in the file, because the word after it
+ * may still be being written; that word is counted by the refresh after a
+ * separator follows it. The separator is found by looking at single bytes, so
+ * the file must be UTF-8 or ASCII, whose separator bytes are never part of a
+ * longer character, or in an encoding of one byte per character, such as
+ * ISO-8859-1; UTF-8 and ASCII are tokenized as bytes and the others decoded
+ * first. Stop words and phrases are applied as in the other tools; the
+ * tokenizer is kept between refreshes, so a phrase may span the end of one
+ * refresh and the start of the next.
+ *
+ * @author Hudson Arledge and Nik Anand
+ *
+ */
+public final class IncrementalTagCloud {
+
+    /**
+     * Number of bytes read at a time while looking for the last separator.
+     */
+    private static final int PROBE_SIZE = 1 << 12;
+
+    /**
+     * The file being followed.
+     */
+    private final Path file;
+
+    /**
+     * The configuration of the cloud.
+     */
+    private final TagCloudConfig config;
+
+    /**
+     * The engine that builds the tokenizer of the cloud.
+     */
+    private final TagCloudEngine engine;
+
+    /**
+     * The counts of every word consumed so far.
+     */
+    private final WordCountTable counts;
+
+    /**
+     * The counts of the words consumed by the current refresh.
+     */
+    private final WordCountTable delta;
+
+    /**
+     * Whether each byte, as an unsigned value, ends a word in the encoding of
+     * the file.
+     */
+    private final boolean[] boundaries;
+
+    /**
+     * The tokenizer that counts bytes into {@code delta}, or null if the
+     * encoding of the file is decoded to characters first.
+     */
+    private ByteTokenizer bytes;
+
+    /**
+     * The tokenizer that counts characters into {@code delta}, or null if
+     * {@code bytes} is used.
+     */
+    private ChunkedTokenizer chars;
+
+    /**
+     * The top words of {@code counts}.
+     */
+    private final TopWordsTracker top;
+
+    /**
+     * The number of bytes at the start of the file already counted.
+     */
+    private long offset;
+
+    /**
+     * Constructor.
+     *
+     * @param file
+     *            the file to follow
+     * @param n
+     *            the number of words in the cloud
+     * @requires n >= 0
+     */
+    public IncrementalTagCloud(Path file, int n) {
+        this(file, TagCloudConfig.DEFAULT.withWords(n));
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param file
+     *            the file to follow
+     * @param config
+     *            the configuration of the cloud
+     * @throws IllegalArgumentException
+     *             if {@code config.charset()} is not supported
+     */
+    public IncrementalTagCloud(Path file, TagCloudConfig config) {
+        assert file != null : "Violation of: file is not null";
+        assert config != null : "Violation of: config is not null";
+        //checked even without assertions, since a charset of several bytes
+        //per character would be miscounted at refresh boundaries
+        if (!supports(config.charset())) {
+            throw new IllegalArgumentException(
+                    "unsupported charset " + config.charset().name());
+        }
+
+        this.file = file;
+        this.config = config;
+        this.engine = new TagCloudEngine(config);
+        this.counts = new WordCountTable();
+        this.delta = new WordCountTable();
+        this.boundaries = new boolean[1 << Byte.SIZE];
+        Charset charset = config.charset();
+        boolean ascii = ByteTokenizer.supports(charset);
+        for (int b = 0; b < this.boundaries.length; b++) {
+            if (ascii) {
+                this.boundaries[b] = b < 0x80
+                        && config.separators().contains((char) b);
+            } else {
+                CharBuffer decoded = charset
+                        .decode(ByteBuffer.wrap(new byte[] { (byte) b }));
+                this.boundaries[b] = decoded.remaining() == 1
+                        && config.separators().contains(decoded.get(0));
+            }
+        }
+        this.newTokenizer();
+        this.top = new TopWordsTracker(config.words());
+        this.offset = 0;
+    }
+
+    /**
+     * Returns whether a file in {@code charset} can be followed: whether a
+     * separator can be told from a single byte of it.
+     *
+     * @param charset
+     *            the encoding of the file
+     * @return true if {@code charset} is UTF-8, ASCII, or has one byte per
+     *         character
+     */
+    public static boolean supports(Charset charset) {
+        assert charset != null : "Violation of: charset is not null";
+
+        return ByteTokenizer.supports(charset) || (charset.canEncode()
+                && charset.newEncoder().maxBytesPerChar() == 1);
+    }
+
+    /**
+     * Replaces the tokenizer with a new one that counts into {@code delta},
+     * on bytes if the encoding of the file allows it.
+     */
+    private void newTokenizer() {
+        if (ByteTokenizer.supports(this.config.charset())) {
+            this.bytes = this.engine.byteTokenizer(this.delta,
+                    PipelineMetrics.DISABLED);
+            this.chars = null;
+        } else {
+            this.bytes = null;
+            this.chars = this.engine.tokenizer(this.delta,
+                    PipelineMetrics.DISABLED);
+        }
+    }
+
+    /**
+     * Counts the words appended to the file since the last refresh. If the
+     * file became shorter than the part already counted, it is assumed to have
+     * been truncated or replaced and is counted again from the start.
+     *
+     * @return the number of bytes consumed by this refresh
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    public long refresh() throws IOException {
+        FileChannel channel = FileChannel.open(this.file,
+                StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size < this.offset) {
+                this.reset();
+            }
+            long end = this.lastBoundary(channel, this.offset, size);
+            if (end == this.offset) {
+                return 0;
+            }
+            //count the new bytes on their own so only the words they contain
+            //are offered to the top words
+            this.delta.clear();
+            if (this.bytes != null) {
+                MappedFileIngest.ingest(channel, this.offset, end,
+                        this.bytes);
+            } else {
+                MappedFileIngest.ingest(channel, this.offset, end,
+                        this.config.charset(), this.chars);
+            }
+            for (int slot = 0; slot < this.delta.capacity(); slot++) {
+                String word = this.delta.keyAt(slot);
+                if (word != null) {
+                    int counted = this.counts.add(word,
+                            this.delta.countAt(slot));
+                    this.top.offer(word, this.counts.countAt(counted));
+                }
+            }
+            long consumed = end - this.offset;
+            this.offset = end;
+            return consumed;
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Forgets all counts, and any phrase begun, so the file is counted again
+     * from the start.
+     */
+    private void reset() {
+        this.counts.clear();
+        this.top.clear();
+        this.newTokenizer();
+        this.offset = 0;
+    }
+
+    /**
+     * Returns the offset just past the last separator byte in
+     * {@code [from, to)} of {@code channel}, or {@code from} if there is none.
+     *
+     * @param channel
+     *            the file to search
+     * @param from
+     *            the offset at which the search stops
+     * @param to
+     *            the offset at which the search starts, going backward
+     * @return the end of the complete words in {@code [from, to)}
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    private long lastBoundary(FileChannel channel, long from, long to)
+            throws IOException {
+        ByteBuffer probe = ByteBuffer.allocate(PROBE_SIZE);
+        long end = to;
+        while (end > from) {
+            long start = Math.max(from, end - PROBE_SIZE);
+            probe.clear();
+            probe.limit((int) (end - start));
+            while (probe.hasRemaining()) {
+                if (channel.read(probe, start + probe.position()) < 0) {
+                    return from;
+                }
+            }
+            for (int i = probe.limit() - 1; i >= 0; i--) {
+                if (this.boundaries[probe.get(i) & 0xFF]) {
+                    return start + i + 1;
+                }
+            }
+            end = start;
+        }
+        return from;
+    }
+
+    /**
+     * Saves the counts and the offset already counted to a snapshot, so that
+     * a later process can {@code restore} them and carry on from there.
+     *
+     * @param snapshot
+     *            the snapshot to create or replace
+     * @throws IOException
+     *             if the snapshot cannot be written
+     */
+    public void save(Path snapshot) throws IOException {
+        CountSnapshot.write(this.counts, this.offset, snapshot);
+    }
+
+    /**
+     * Replaces the counts and the offset already counted with those saved in
+     * {@code snapshot}.
+     *
+     * @param snapshot
+     *            a snapshot written by {@code save}
+     * @throws IOException
+     *             if the snapshot cannot be read or is corrupt
+     */
+    public void restore(Path snapshot) throws IOException {
+        FileChannel channel = FileChannel.open(snapshot,
+                StandardOpenOption.READ);
+        try {
+            CountSnapshot.Cursor cursor = new CountSnapshot.Cursor(channel);
+            this.reset();
+            while (cursor.next()) {
+                String word = cursor.word();
+                this.counts.add(word, cursor.count());
+                this.top.offer(word, cursor.count());
+            }
+            this.offset = cursor.sourceOffset();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Returns the number of bytes at the start of the file already counted.
+     *
+     * @return the offset of the first byte not yet counted
+     */
+    public long offset() {
+        return this.offset;
+    }
+
+    /**
+     * Returns the counts of every word consumed so far.
+     *
+     * @return the table of counts
+     */
+    public WordCountTable counts() {
+        return this.counts;
+    }
+
+    /**
+     * Returns the current top words, best first.
+     *
+     * @return the top words
+     */
+    public WordCount[] top() {
+        return this.top.top();
+    }
+
+    /**
+     * Returns the current cloud of the file.
+     *
+     * @return the cloud
+     */
+    public TagCloudResult cloud() {
+        return new TagCloudResult(this.config, this.file.toString(),
+                this.top.top(), this.counts.total(), this.counts.size());
+    }
+
+    /**
+     * Main method. Follows a file and rewrites its tag cloud after every
+     * refresh, with the charset, font scale, separators, stop words and
+     * phrases given by the same {@code -Dtagcloud.*} properties as
+     * {@code TagCloud}.
+     *
+     * @param args
+     *            the command line arguments
+     */
+    public static void main(String[] args) {
+        Scanner scanner = new Scanner(System.in);
+
+        //prompt user for the files, the number of words and the interval
+        System.out.println("Input File: ");
+        String fileName = scanner.nextLine();
+        System.out.println("Output File: ");
+        String fileNameOut = scanner.nextLine();
+        System.out.println("Number of words in cloud tag: ");
+        int n = scanner.nextInt();
+        System.out.println("Seconds between refreshes: ");
+        long interval = scanner.nextLong();
+        scanner.nextLine();
+        System.out.println("State File (blank for none): ");
+        String stateName = scanner.nextLine().trim();
+        scanner.close();
+        //the file is read with the same -Dtagcloud.* options as TagCloud
+        Charset charset = TagCloud.charset();
+        FontScale scale = TagCloud.scale();
+        if (n < 0) {
+            System.out.println("Error: n is negative.");
+            return;
+        }
+        if (interval < 0 || interval > Long.MAX_VALUE / 1000) {
+            System.out.println("Error: seconds between refreshes is out of"
+                    + " range.");
+            return;
+        }
+        if (charset == null || !supports(charset)) {
+            System.out.println("Error: tagcloud.charset is not supported.");
+            return;
+        }
+        if (scale == null) {
+            System.out.println(
+                    "Error: tagcloud.scale is not linear, log or quantile.");
+            return;
+        }
+
+        IncrementalTagCloud cloud = new IncrementalTagCloud(
+                Paths.get(fileName), TagCloud.configure(n, charset, scale));
+        //carry on from the state saved by an earlier run, if any
+        Path state = null;
+        if (stateName.length() > 0) {
+            state = Paths.get(stateName);
+            if (Files.exists(state)) {
+                try {
+                    cloud.restore(state);
+                } catch (IOException e) {
+                    System.err.println("Error reading state file");
+                    return;
+                }
+            }
+        }
+        //one renderer is reused, so its buffer is only grown once
+        HtmlRenderer renderer = new HtmlRenderer();
+        while (true) {
+            long consumed;
+            try {
+                consumed = cloud.refresh();
+            } catch (IOException e) {
+                System.err.println("Error reading file");
+                return;
+            }
+            if (consumed > 0) {
+                try {
+                    renderer.render(cloud.cloud())
+                            .writeTo(Paths.get(fileNameOut));
+                    if (state != null) {
+                        cloud.save(state);
+                    }
+                } catch (IOException e) {
+                    System.err.println("Error writing to file");
+                    return;
+                }
+                System.out.println("Counted " + consumed + " new bytes");
+            }
+            try {
+                Thread.sleep(interval * 1000);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,140 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads a file through {@code FileChannel.map} and passes its text to a
+ * {@code ChunkedTokenizer}, or its bytes to a {@code ByteTokenizer}. The file
+ * is mapped one window at a time and decoded straight from the mapped bytes
+ * into the tokenizer's buffer, so the heap used does not depend on the size
+ * of the file and no {@code String} is created per line.
+ *
+ * @author Hudson Arledge and Nik Anand
+ *
+ */
+public final class MappedFileIngest {
+
+    /**
+     * Number of bytes of the file mapped at a time.
+     */
+    public static final long WINDOW_SIZE = 64L << 20;
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private MappedFileIngest() {
+    }
+
+    /**
+     * Decodes the bytes {@code [from, to)} of {@code channel} as UTF-8 and
+     * passes them to {@code tokenizer}, then finishes {@code tokenizer}.
+     * Malformed input is replaced rather than reported. Mapping and decoding
+     * are timed as the read stage of the tokenizer's metrics.
+     *
+     * @param channel
+     *            the file to read
+     * @param from
+     *            the offset of the first byte to read
+     * @param to
+     *            the offset at which reading stops
+     * @param tokenizer
+     *            the receiver of the text
+     * @throws IOException
+     *             if the file cannot be mapped
+     * @requires 0 <= from <= to <= [size of channel]
+     */
+    public static void ingest(FileChannel channel, long from, long to,
+            ChunkedTokenizer tokenizer) throws IOException {
+        ingest(channel, from, to, StandardCharsets.UTF_8, tokenizer);
+    }
+
+    /**
+     * Decodes the bytes {@code [from, to)} of {@code channel} from
+     * {@code charset} and passes them to {@code tokenizer}, then finishes
+     * {@code tokenizer}. Malformed input is replaced rather than reported.
+     * Mapping and decoding are timed as the read stage of the tokenizer's
+     * metrics.
+     *
+     * @param channel
+     *            the file to read
+     * @param from
+     *            the offset of the first byte to read
+     * @param to
+     *            the offset at which reading stops
+     * @param charset
+     *            the encoding of the file
+     * @param tokenizer
+     *            the receiver of the text
+     * @throws IOException
+     *             if the file cannot be mapped
+     * @requires 0 <= from <= to <= [size of channel] and
+     *           [from is the start of a character]
+     */
+    public static void ingest(FileChannel channel, long from, long to,
+            Charset charset, ChunkedTokenizer tokenizer) throws IOException {
+        assert channel != null : "Violation of: channel is not null";
+        assert charset != null : "Violation of: charset is not null";
+        assert tokenizer != null : "Violation of: tokenizer is not null";
+        assert 0 <= from : "Violation of: 0 <= from";
+        assert from <= to : "Violation of: from <= to";
+
+        CharsetDecoder decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        PipelineMetrics metrics = tokenizer.metrics();
+        long position = from;
+        while (position < to) {
+            long size = Math.min(WINDOW_SIZE, to - position);
+            boolean last = position + size == to;
+            MappedByteBuffer bytes = channel
+                    .map(FileChannel.MapMode.READ_ONLY, position, size);
+            tokenizer.decode(decoder, bytes, last);
+            metrics.read(bytes.position());
+            //a multi-byte character cut by the end of the window is left
+            //unconsumed and mapped again at the start of the next window
+            position += bytes.position();
+        }
+        tokenizer.finish();
+    }
+
+    /**
+     * Passes the bytes {@code [from, to)} of {@code channel} to
+     * {@code tokenizer}, which splits them into words without decoding them,
+     * then finishes {@code tokenizer}. Copying the bytes out of the mapping
+     * is timed as the read stage of the tokenizer's metrics.
+     *
+     * @param channel
+     *            the file to read
+     * @param from
+     *            the offset of the first byte to read
+     * @param to
+     *            the offset at which reading stops
+     * @param tokenizer
+     *            the receiver of the text
+     * @throws IOException
+     *             if the file cannot be mapped
+     * @requires 0 <= from <= to <= [size of channel]
+     */
+    public static void ingest(FileChannel channel, long from, long to,
+            ByteTokenizer tokenizer) throws IOException {
+        assert channel != null : "Violation of: channel is not null";
+        assert tokenizer != null : "Violation of: tokenizer is not null";
+        assert 0 <= from : "Violation of: 0 <= from";
+        assert from <= to : "Violation of: from <= to";
+
+        long position = from;
+        while (position < to) {
+            long size = Math.min(WINDOW_SIZE, to - position);
+            //the tokenizer holds back a character cut by the end of a window
+            tokenizer.accept(
+                    channel.map(FileChannel.MapMode.READ_ONLY, position, size));
+            position += size;
+        }
+        tokenizer.finish();
+    }
+
+}
@@ -0,0 +1,372 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Counts the words of a file in parallel. The file is split into byte ranges
+ * whose boundaries fall on ASCII separator bytes, each range is counted into
+ * its own table by a fork/join task, and the partial tables are merged
+ * pairwise as the tasks join, so the reduction is a tree rather than a
+ * chain. The file must be UTF-8, or US-ASCII, where a byte below 128 is never
+ * part of a longer character, so a range never starts or ends inside a word,
+ * and each range is split into words straight from its bytes.
+ *
+ * @author Hudson Arledge and Nik Anand
+ *
+ */
+public final class ParallelWordCount {
+
+    /**
+     * The smallest range worth counting on its own.
+     */
+    public static final long MIN_SEGMENT_SIZE = 4L << 20;
+
+    /**
+     * The number of ranges created per worker thread, so that a worker that
+     * finishes early can steal work from a slower one.
+     */
+    private static final int SEGMENTS_PER_THREAD = 4;
+
+    /**
+     * Number of bytes read at a time while looking for a range boundary.
+     */
+    private static final int PROBE_SIZE = 1 << 12;
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private ParallelWordCount() {
+    }
+
+    /**
+     * A fork/join task that counts the words of the ranges
+     * {@code [bounds[lo], bounds[hi])} of the file.
+     *
+     * @author Hudson Arledge and Nik Anand
+     *
+     */
+    private static final class CountTask
+            extends RecursiveTask<WordCountTable> {
+
+        /**
+         * Serialization version, required because {@code RecursiveTask} is
+         * serializable.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The file being counted.
+         */
+        private final transient FileChannel channel;
+
+        /**
+         * The separator characters.
+         */
+        private final transient SeparatorSet separators;
+
+        /**
+         * Whether the text is lower cased.
+         */
+        private final boolean foldCase;
+
+        /**
+         * The words left out, or null for none.
+         */
+        private final transient StopWords stopWords;
+
+        /**
+         * The metrics the work is recorded into.
+         */
+        private final transient PipelineMetrics metrics;
+
+        /**
+         * The offsets of the range boundaries, from 0 to the size of the file.
+         */
+        private final long[] bounds;
+
+        /**
+         * The index of the first range counted by this task.
+         */
+        private final int lo;
+
+        /**
+         * The index just past the last range counted by this task.
+         */
+        private final int hi;
+
+        /**
+         * Constructor.
+         *
+         * @param channel
+         *            the file being counted
+         * @param separators
+         *            the separator characters
+         * @param foldCase
+         *            whether the text is lower cased
+         * @param stopWords
+         *            the words left out, or null for none
+         * @param metrics
+         *            the metrics to record into
+         * @param bounds
+         *            the offsets of the range boundaries
+         * @param lo
+         *            the index of the first range
+         * @param hi
+         *            the index just past the last range
+         */
+        CountTask(FileChannel channel, SeparatorSet separators,
+                boolean foldCase, StopWords stopWords, PipelineMetrics metrics,
+                long[] bounds, int lo, int hi) {
+            this.channel = channel;
+            this.separators = separators;
+            this.foldCase = foldCase;
+            this.stopWords = stopWords;
+            this.metrics = metrics;
+            this.bounds = bounds;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected WordCountTable compute() {
+            if (this.hi - this.lo == 1) {
+                long allocated = this.metrics.allocationMark();
+                WordCountTable table = new WordCountTable();
+                AsciiWordSink sink = table;
+                if (this.stopWords != null) {
+                    sink = new PhraseCounter(table, this.stopWords, 1);
+                }
+                ByteTokenizer tokenizer = new ByteTokenizer(this.separators,
+                        this.foldCase, StandardCharsets.UTF_8, sink,
+                        ByteTokenizer.DEFAULT_CAPACITY, this.metrics);
+                try {
+                    MappedFileIngest.ingest(this.channel, this.bounds[this.lo],
+                            this.bounds[this.hi], tokenizer);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                this.metrics.table(table);
+                this.metrics.allocatedSince(allocated);
+                return table;
+            }
+            int mid = (this.lo + this.hi) >>> 1;
+            CountTask left = new CountTask(this.channel, this.separators,
+                    this.foldCase, this.stopWords, this.metrics, this.bounds,
+                    this.lo, mid);
+            CountTask right = new CountTask(this.channel, this.separators,
+                    this.foldCase, this.stopWords, this.metrics, this.bounds,
+                    mid, this.hi);
+            left.fork();
+            WordCountTable rightTable = right.compute();
+            WordCountTable leftTable = left.join();
+            long start = this.metrics.time();
+            long allocated = this.metrics.allocationMark();
+            WordCountTable merged = merge(leftTable, rightTable);
+            this.metrics.allocatedSince(allocated);
+            this.metrics.stop(PipelineMetrics.Stage.COUNT, start);
+            this.metrics.table(merged);
+            return merged;
+        }
+    }
+
+    /**
+     * Adds the counts of the smaller of {@code a} and {@code b} into the
+     * larger one and returns the larger one.
+     *
+     * @param a
+     *            a partial table of counts
+     * @param b
+     *            a partial table of counts
+     * @return the table holding the sum of the counts
+     */
+    private static WordCountTable merge(
+            WordCountTable a, WordCountTable b) {
+        WordCountTable large = a;
+        WordCountTable small = b;
+        if (a.size() < b.size()) {
+            large = b;
+            small = a;
+        }
+        large.addAll(small);
+        return large;
+    }
+
+    /**
+     * Returns a table from each word of {@code channel} to its number of
+     * occurrences, counted on {@code pool}. The result is the same as counting
+     * the whole file with a single {@code ChunkedTokenizer}.
+     *
+     * @param channel
+     *            the UTF-8 file to count
+     * @param separators
+     *            the separator characters
+     * @param pool
+     *            the pool the ranges are counted on
+     * @return a table from each word to its number of occurrences
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    public static WordCountTable count(FileChannel channel,
+            SeparatorSet separators, ForkJoinPool pool) throws IOException {
+        return count(channel, separators, true, null, pool,
+                PipelineMetrics.DISABLED);
+    }
+
+    /**
+     * Returns a table from each word of {@code channel} to its number of
+     * occurrences, counted on {@code pool}, recording the work of every range
+     * and every merge in {@code metrics}.
+     *
+     * @param channel
+     *            the UTF-8 file to count
+     * @param separators
+     *            the separator characters
+     * @param foldCase
+     *            whether the text is lower cased
+     * @param stopWords
+     *            the words left out, or null for none
+     * @param pool
+     *            the pool the ranges are counted on
+     * @param metrics
+     *            the metrics to record into
+     * @return a table from each word to its number of occurrences
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    public static WordCountTable count(FileChannel channel,
+            SeparatorSet separators, boolean foldCase, StopWords stopWords,
+            ForkJoinPool pool, PipelineMetrics metrics) throws IOException {
+        return count(channel, separators, foldCase, stopWords, pool, metrics,
+                MIN_SEGMENT_SIZE);
+    }
+
+    /**
+     * Returns a table from each word of {@code channel} to its number of
+     * occurrences, counted on {@code pool} in ranges of at least
+     * {@code minSegmentSize} bytes, recording the work of every range and
+     * every merge in {@code metrics}.
+     *
+     * @param channel
+     *            the UTF-8 file to count
+     * @param separators
+     *            the separator characters
+     * @param foldCase
+     *            whether the text is lower cased
+     * @param stopWords
+     *            the words left out, or null for none
+     * @param pool
+     *            the pool the ranges are counted on
+     * @param metrics
+     *            the metrics to record into
+     * @param minSegmentSize
+     *            the smallest range, in bytes
+     * @return a table from each word to its number of occurrences
+     * @throws IOException
+     *             if the file cannot be read
+     * @requires minSegmentSize > 0
+     */
+    static WordCountTable count(FileChannel channel, SeparatorSet separators,
+            boolean foldCase, StopWords stopWords, ForkJoinPool pool,
+            PipelineMetrics metrics, long minSegmentSize) throws IOException {
+        assert channel != null : "Violation of: channel is not null";
+        assert separators != null : "Violation of: separators is not null";
+        assert pool != null : "Violation of: pool is not null";
+        assert metrics != null : "Violation of: metrics is not null";
+        assert minSegmentSize > 0 : "Violation of: minSegmentSize > 0";
+
+        long[] bounds = split(channel, separators,
+                SEGMENTS_PER_THREAD * pool.getParallelism(), minSegmentSize);
+        try {
+            return pool.invoke(
+                    new CountTask(channel, separators, foldCase, stopWords,
+                            metrics, bounds, 0, bounds.length - 1));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Splits {@code channel} into at most {@code segments} ranges of at least
+     * {@code minSegmentSize} bytes, each ending on an ASCII separator byte
+     * or at the end of the file.
+     *
+     * @param channel
+     *            the file to split
+     * @param separators
+     *            the separator characters
+     * @param segments
+     *            the number of ranges wanted
+     * @param minSegmentSize
+     *            the smallest range, in bytes
+     * @return the offsets of the range boundaries, starting with 0 and ending
+     *         with the size of the file
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    static long[] split(FileChannel channel, SeparatorSet separators,
+            int segments, long minSegmentSize) throws IOException {
+        long size = channel.size();
+        long target = Math.max(minSegmentSize,
+                (size + segments - 1) / Math.max(1, segments));
+        long[] bounds = new long[(int) Math.max(1,
+                (size + target - 1) / target) + 1];
+        ByteBuffer probe = ByteBuffer.allocate(PROBE_SIZE);
+        int count = 1;
+        long boundary = 0;
+        while (boundary < size) {
+            boundary = nextSeparator(channel, separators,
+                    Math.min(size, boundary + target), probe);
+            bounds[count] = boundary;
+            count++;
+        }
+        if (count == 1) {
+            count++;
+        }
+        long[] trimmed = new long[count];
+        System.arraycopy(bounds, 0, trimmed, 0, count);
+        return trimmed;
+    }
+
+    /**
+     * Returns the offset of the first ASCII separator byte of {@code channel}
+     * at or after {@code from}, or the size of the file if there is none.
+     *
+     * @param channel
+     *            the file to search
+     * @param separators
+     *            the separator characters
+     * @param from
+     *            the offset at which the search starts
+     * @param probe
+     *            a scratch buffer
+     * @return the offset of the separator byte
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    private static long nextSeparator(FileChannel channel,
+            SeparatorSet separators, long from, ByteBuffer probe)
+            throws IOException {
+        long size = channel.size();
+        long position = from;
+        while (position < size) {
+            probe.clear();
+            int read = channel.read(probe, position);
+            if (read <= 0) {
+                return size;
+            }
+            for (int i = 0; i < read; i++) {
+                byte b = probe.get(i);
+                if (b >= 0 && separators.contains((char) b)) {
+                    return position + i;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+}
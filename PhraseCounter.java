@@ -0,0 +1,195 @@
+/**
+ * Passes the words of a text to a counter as phrases of a fixed number of
+ * consecutive words, leaving out stop words. With one word per phrase it is
+ * a plain stop word filter.
+ *
+ * <p>
+ * The last words seen are kept, joined by single spaces, in a small buffer
+ * that is handed to the counter as a slice, so a {@code String} is only made
+ * for a phrase the counter has not seen before. The hash of a phrase is built
+ * from the hashes of its words, as {@code String.hashCode} of the joined
+ * text, rather than by scanning the phrase again. A stop word ends the
+ * current phrase, so no phrase spans one, which also keeps the number of
+ * distinct phrases, and the memory they take, down.
+ *
+ * <p>
+ * It also adapts a counter that takes characters to a tokenizer that reads
+ * bytes: a word given as ASCII bytes is widened into a small buffer of its
+ * own before it is looked up.
+ *
+ * @author Hudson Arledge and Nik Anand
+ *
+ */
+public final class PhraseCounter implements AsciiWordSink {
+
+    /**
+     * Largest number of words in a phrase.
+     */
+    public static final int MAX_WORDS = 5;
+
+    /**
+     * The counter the phrases are passed to.
+     */
+    private final HashedWordSink counter;
+
+    /**
+     * The words left out, or null for none.
+     */
+    private final StopWords stopWords;
+
+    /**
+     * The number of words in a phrase.
+     */
+    private final int words;
+
+    /**
+     * The words held, joined by single spaces.
+     */
+    private char[] phrase;
+
+    /**
+     * The number of characters of {@code phrase} in use.
+     */
+    private int length;
+
+    /**
+     * The length of each word held.
+     */
+    private final int[] lengths;
+
+    /**
+     * The hash of each word held.
+     */
+    private final int[] hashes;
+
+    /**
+     * The number of words held.
+     */
+    private int held;
+
+    /**
+     * The last word given as bytes, widened to characters.
+     */
+    private char[] widened;
+
+    /**
+     * Constructor.
+     *
+     * @param counter
+     *            the counter the phrases are passed to
+     * @param stopWords
+     *            the words left out, or null for none
+     * @param words
+     *            the number of words in a phrase
+     * @requires 1 <= words <= MAX_WORDS
+     */
+    public PhraseCounter(HashedWordSink counter, StopWords stopWords,
+            int words) {
+        assert counter != null : "Violation of: counter is not null";
+        assert 1 <= words : "Violation of: 1 <= words";
+        assert words <= MAX_WORDS : "Violation of: words <= MAX_WORDS";
+
+        this.counter = counter;
+        this.stopWords = stopWords;
+        this.words = words;
+        this.phrase = new char[64];
+        this.length = 0;
+        this.lengths = new int[words];
+        this.hashes = new int[words];
+        this.held = 0;
+        this.widened = new char[64];
+    }
+
+    @Override
+    public void word(char[] text, int offset, int length) {
+        this.word(text, offset, length,
+                WordCountTable.hash(text, offset, length));
+    }
+
+    @Override
+    public void word(byte[] text, int offset, int length, int hash) {
+        if (length > this.widened.length) {
+            this.widened = new char[Math.max(length,
+                    2 * this.widened.length)];
+        }
+        for (int i = 0; i < length; i++) {
+            this.widened[i] = (char) text[offset + i];
+        }
+        this.word(this.widened, 0, length, hash);
+    }
+
+    @Override
+    public void word(char[] text, int offset, int length, int hash) {
+        if (this.stopWords != null
+                && this.stopWords.contains(text, offset, length, hash)) {
+            //no phrase spans a stop word
+            this.held = 0;
+            this.length = 0;
+            return;
+        }
+        if (this.words == 1) {
+            this.counter.word(text, offset, length, hash);
+            return;
+        }
+
+        if (this.held == this.words) {
+            //drop the oldest word and the space after it
+            int dropped = this.lengths[0] + 1;
+            System.arraycopy(this.phrase, dropped, this.phrase, 0,
+                    this.length - dropped);
+            this.length -= dropped;
+            System.arraycopy(this.lengths, 1, this.lengths, 0, this.held - 1);
+            System.arraycopy(this.hashes, 1, this.hashes, 0, this.held - 1);
+            this.held--;
+        }
+        int needed = this.length + 1 + length;
+        if (needed > this.phrase.length) {
+            char[] grown = new char[Math.max(needed, 2 * this.phrase.length)];
+            System.arraycopy(this.phrase, 0, grown, 0, this.length);
+            this.phrase = grown;
+        }
+        if (this.held > 0) {
+            this.phrase[this.length] = ' ';
+            this.length++;
+        }
+        System.arraycopy(text, offset, this.phrase, this.length, length);
+        this.length += length;
+        this.lengths[this.held] = length;
+        this.hashes[this.held] = hash;
+        this.held++;
+
+        if (this.held == this.words) {
+            //hash(x + " " + y) = (hash(x) * 31 + ' ') * 31^|y| + hash(y)
+            int phraseHash = this.hashes[0];
+            for (int i = 1; i < this.held; i++) {
+                phraseHash = (phraseHash * 31 + ' ') * power31(this.lengths[i])
+                        + this.hashes[i];
+            }
+            this.counter.word(this.phrase, 0, this.length, phraseHash);
+        }
+    }
+
+    /**
+     * Returns 31<sup>exponent</sup>, wrapping around as {@code int}
+     * arithmetic does.
+     *
+     * @param exponent
+     *            the exponent
+     * @return 31 to the power {@code exponent}
+     * @requires exponent >= 0
+     */
+    private static int power31(int exponent) {
+        int result = 1;
+        int base = 31;
+        int rest = exponent;
+        while (rest > 0) {
+            if ((rest & 1) != 0) {
+                result *= base;
+            }
+            base *= base;
+            rest >>>= 1;
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,529 @@
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records where the time of a tag cloud run goes: the time spent in each stage
+ * of the pipeline, the bytes and words processed, the size of the counting
+ * tables and the garbage collection and allocation caused by the run. The
+ * totals can be written as a JSON report at the end of a run, and progress
+ * lines can be printed while a long input is being read.
+ *
+ * <p>
+ * Every method is safe to call from several threads at once. The stages of
+ * parallel workers are summed, so a stage can take longer than the whole run.
+ * {@code DISABLED} records nothing: its methods return before reading the
+ * clock, so passing it costs one predictable branch per chunk of input.
+ *
+ * @author Hudson Arledge and Nik Anand
+ *
+ */
+public final class PipelineMetrics {
+
+    /**
+     * The stages of the pipeline.
+     *
+     * @author Hudson Arledge and Nik Anand
+     *
+     */
+    public enum Stage {
+        /**
+         * Reading the input and decoding it into characters.
+         */
+        READ,
+        /**
+         * Lower casing and splitting the text into words. Counting each word
+         * is fused with splitting, so the table updates are timed here too.
+         */
+        TOKENIZE,
+        /**
+         * Merging partial counts and loading saved snapshots.
+         */
+        COUNT,
+        /**
+         * Selecting the most frequent words.
+         */
+        SELECT,
+        /**
+         * Sorting the selected words alphabetically.
+         */
+        SORT,
+        /**
+         * Writing the HTML of the cloud.
+         */
+        WRITE
+    }
+
+    /**
+     * Metrics that record nothing.
+     */
+    public static final PipelineMetrics DISABLED = new PipelineMetrics(false,
+            0);
+
+    /**
+     * Number of nanoseconds in a millisecond.
+     */
+    private static final double NANOS_PER_MILLI = 1e6;
+
+    /**
+     * Number of bytes in a megabyte.
+     */
+    private static final double BYTES_PER_MEGABYTE = 1 << 20;
+
+    /**
+     * Whether anything is recorded.
+     */
+    private final boolean enabled;
+
+    /**
+     * Nanoseconds between progress lines, or 0 for none.
+     */
+    private final long progressInterval;
+
+    /**
+     * The nanoseconds spent in each stage, indexed by ordinal.
+     */
+    private final AtomicLongArray stageNanos;
+
+    /**
+     * The number of input bytes read.
+     */
+    private final AtomicLong bytes;
+
+    /**
+     * The number of input bytes expected, or 0 if unknown.
+     */
+    private final AtomicLong expected;
+
+    /**
+     * The number of words counted.
+     */
+    private final AtomicLong tokens;
+
+    /**
+     * The number of distinct words counted, summed over every input.
+     */
+    private final AtomicLong distinct;
+
+    /**
+     * The largest number of slots of any counting table.
+     */
+    private final AtomicLong peakCapacity;
+
+    /**
+     * The largest error of any approximate count.
+     */
+    private final AtomicLong maxError;
+
+    /**
+     * The bytes allocated by worker threads, as reported by them.
+     */
+    private final AtomicLong allocated;
+
+    /**
+     * The time at which the last progress line was printed.
+     */
+    private final AtomicLong lastProgress;
+
+    /**
+     * The time at which recording started.
+     */
+    private final long startNanos;
+
+    /**
+     * The thread that created these metrics.
+     */
+    private final long ownerThread;
+
+    /**
+     * The bytes allocated by the creating thread before recording started.
+     */
+    private final long ownerAllocatedAtStart;
+
+    /**
+     * The number of garbage collections before recording started.
+     */
+    private final long gcCountAtStart;
+
+    /**
+     * The milliseconds of garbage collection before recording started.
+     */
+    private final long gcMillisAtStart;
+
+    /**
+     * Constructor.
+     *
+     * @param enabled
+     *            whether anything is recorded
+     * @param progressInterval
+     *            nanoseconds between progress lines, or 0 for none
+     */
+    private PipelineMetrics(boolean enabled, long progressInterval) {
+        this.enabled = enabled;
+        this.progressInterval = progressInterval;
+        this.stageNanos = new AtomicLongArray(Stage.values().length);
+        this.bytes = new AtomicLong();
+        this.expected = new AtomicLong();
+        this.tokens = new AtomicLong();
+        this.distinct = new AtomicLong();
+        this.peakCapacity = new AtomicLong();
+        this.maxError = new AtomicLong();
+        this.allocated = new AtomicLong();
+        this.startNanos = System.nanoTime();
+        this.lastProgress = new AtomicLong(this.startNanos);
+        this.ownerThread = Thread.currentThread().getId();
+        this.ownerAllocatedAtStart = enabled ? threadAllocatedBytes() : 0;
+        this.gcCountAtStart = enabled ? gcCount() : 0;
+        this.gcMillisAtStart = enabled ? gcMillis() : 0;
+    }
+
+    /**
+     * Returns new metrics that start recording now.
+     *
+     * @param progressSeconds
+     *            seconds between progress lines on {@code System.err}, or 0
+     *            for none
+     * @return the metrics
+     * @requires progressSeconds >= 0
+     */
+    public static PipelineMetrics start(long progressSeconds) {
+        assert progressSeconds >= 0 : "Violation of: progressSeconds >= 0";
+
+        return new PipelineMetrics(true, progressSeconds * 1_000_000_000L);
+    }
+
+    /**
+     * Returns whether anything is recorded.
+     *
+     * @return true iff these metrics are enabled
+     */
+    public boolean enabled() {
+        return this.enabled;
+    }
+
+    /**
+     * Returns the time at which a stage starts, to be passed to {@code stop}.
+     *
+     * @return the current time in nanoseconds, or 0 if disabled
+     */
+    public long time() {
+        if (!this.enabled) {
+            return 0;
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * Adds the time since {@code start} to {@code stage}.
+     *
+     * @param stage
+     *            the stage that ran
+     * @param start
+     *            the time returned by {@code time} when the stage started
+     */
+    public void stop(Stage stage, long start) {
+        if (!this.enabled) {
+            return;
+        }
+        this.stageNanos.addAndGet(stage.ordinal(), System.nanoTime() - start);
+    }
+
+    /**
+     * Records that {@code length} more bytes of input are going to be read.
+     *
+     * @param length
+     *            the number of bytes
+     */
+    public void expect(long length) {
+        if (!this.enabled) {
+            return;
+        }
+        this.expected.addAndGet(length);
+    }
+
+    /**
+     * Records that {@code length} more bytes of input were read, and prints a
+     * progress line if one is due. For a stream, whose bytes are not seen,
+     * characters are counted instead.
+     *
+     * @param length
+     *            the number of bytes
+     */
+    public void read(long length) {
+        if (!this.enabled) {
+            return;
+        }
+        long read = this.bytes.addAndGet(length);
+        if (this.progressInterval > 0) {
+            long now = System.nanoTime();
+            long last = this.lastProgress.get();
+            if (now - last >= this.progressInterval
+                    && this.lastProgress.compareAndSet(last, now)) {
+                this.printProgress(read, now);
+            }
+        }
+    }
+
+    /**
+     * Prints a progress line for {@code read} bytes at time {@code now}.
+     *
+     * @param read
+     *            the number of bytes read so far
+     * @param now
+     *            the current time in nanoseconds
+     */
+    private void printProgress(long read, long now) {
+        double megabytes = read / BYTES_PER_MEGABYTE;
+        double seconds = (now - this.startNanos) / (NANOS_PER_MILLI * 1000);
+        double rate = seconds > 0 ? megabytes / seconds : 0.0;
+        long total = this.expected.get();
+        if (total > 0) {
+            System.err.println(String.format(
+                    "progress: %.1f of %.1f MB (%.0f%%), %.1f MB/s",
+                    megabytes, total / BYTES_PER_MEGABYTE,
+                    100.0 * read / total, rate));
+        } else {
+            System.err.println(String.format("progress: %.1f MB, %.1f MB/s",
+                    megabytes, rate));
+        }
+    }
+
+    /**
+     * Records the size of a counting table, which may be a partial table of a
+     * parallel count.
+     *
+     * @param table
+     *            the table
+     */
+    public void table(WordCountTable table) {
+        if (!this.enabled) {
+            return;
+        }
+        this.peakCapacity.accumulateAndGet(table.capacity(), Math::max);
+    }
+
+    /**
+     * Records the final counts of one input.
+     *
+     * @param table
+     *            the counts of the input
+     */
+    public void counted(WordCountTable table) {
+        if (!this.enabled) {
+            return;
+        }
+        this.table(table);
+        this.tokens.addAndGet(table.total());
+        this.distinct.addAndGet(table.size());
+    }
+
+    /**
+     * Records the approximate counts of one input. The words being counted
+     * at the end are recorded as its distinct words, and the number of
+     * counters as the table capacity.
+     *
+     * @param sketch
+     *            the approximate counts of the input
+     */
+    public void counted(SpaceSavingSketch sketch) {
+        if (!this.enabled) {
+            return;
+        }
+        this.peakCapacity.accumulateAndGet(sketch.capacity(), Math::max);
+        this.maxError.accumulateAndGet(sketch.errorBound(), Math::max);
+        this.tokens.addAndGet(sketch.total());
+        this.distinct.addAndGet(sketch.size());
+    }
+
+    /**
+     * Returns a mark to pass to {@code allocatedSince} once a worker thread,
+     * other than the one that created these metrics, finishes a piece of work.
+     * Only a thread can see its own allocation, so each worker reports its
+     * own.
+     *
+     * @return the bytes allocated so far by the current thread, or -1 if
+     *         disabled or not measurable
+     */
+    public long allocationMark() {
+        if (!this.enabled) {
+            return -1;
+        }
+        return threadAllocatedBytes();
+    }
+
+    /**
+     * Records the bytes allocated by the current thread since {@code mark}.
+     *
+     * @param mark
+     *            the value returned by {@code allocationMark} on this thread
+     */
+    public void allocatedSince(long mark) {
+        if (!this.enabled || mark < 0) {
+            return;
+        }
+        this.allocated.addAndGet(threadAllocatedBytes() - mark);
+    }
+
+    /**
+     * Returns the number of bytes allocated so far by the current thread, or
+     * -1 if the runtime cannot measure it.
+     *
+     * @return the bytes allocated by the current thread
+     */
+    private static long threadAllocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads)
+                    .getCurrentThreadAllocatedBytes();
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the number of garbage collections so far.
+     *
+     * @return the number of collections
+     */
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory
+                .getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    /**
+     * Returns the milliseconds spent in garbage collection so far.
+     *
+     * @return the collection time
+     */
+    private static long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory
+                .getGarbageCollectorMXBeans()) {
+            millis += Math.max(0, gc.getCollectionTime());
+        }
+        return millis;
+    }
+
+    /**
+     * Returns a JSON object holding everything recorded so far. The
+     * allocation of the creating thread is only included when this is called
+     * from that thread.
+     *
+     * @param input
+     *            the name of the input the report describes
+     * @return the report
+     */
+    public String toJson(String input) {
+        assert input != null : "Violation of: input is not null";
+
+        long wall = System.nanoTime() - this.startNanos;
+        long allocatedBytes = this.allocated.get();
+        if (Thread.currentThread().getId() == this.ownerThread
+                && this.ownerAllocatedAtStart >= 0) {
+            allocatedBytes += threadAllocatedBytes()
+                    - this.ownerAllocatedAtStart;
+        }
+        StringBuilder json = new StringBuilder();
+        json.append("{\n  \"input\": ");
+        appendString(json, input);
+        json.append(",\n  \"wallMillis\": ").append(millis(wall));
+        json.append(",\n  \"stages\": {");
+        Stage[] stages = Stage.values();
+        for (int i = 0; i < stages.length; i++) {
+            json.append(i == 0 ? "\n" : ",\n").append("    \"")
+                    .append(stages[i].name().toLowerCase(Locale.ROOT))
+                    .append("\": {\"millis\": ")
+                    .append(millis(this.stageNanos.get(i))).append('}');
+        }
+        json.append("\n  },\n  \"bytes\": ").append(this.bytes.get());
+        json.append(",\n  \"tokens\": ").append(this.tokens.get());
+        json.append(",\n  \"distinct\": ").append(this.distinct.get());
+        json.append(",\n  \"peakTableCapacity\": ")
+                .append(this.peakCapacity.get());
+        json.append(",\n  \"maxCountError\": ").append(this.maxError.get());
+        double seconds = wall / (NANOS_PER_MILLI * 1000);
+        json.append(",\n  \"megabytesPerSecond\": ")
+                .append(String.format(Locale.ROOT, "%.1f",
+                        seconds > 0
+                                ? this.bytes.get() / BYTES_PER_MEGABYTE
+                                        / seconds
+                                : 0.0));
+        json.append(",\n  \"gc\": {\"collections\": ")
+                .append(gcCount() - this.gcCountAtStart)
+                .append(", \"millis\": ")
+                .append(gcMillis() - this.gcMillisAtStart).append('}');
+        json.append(",\n  \"allocatedBytes\": ").append(allocatedBytes);
+        json.append("\n}\n");
+        return json.toString();
+    }
+
+    /**
+     * Writes the report of {@code toJson} to {@code destination}, or to
+     * {@code System.out} if {@code destination} is "-".
+     *
+     * @param destination
+     *            the report file, or "-"
+     * @param input
+     *            the name of the input the report describes
+     * @throws IOException
+     *             if the report cannot be written
+     */
+    public void report(String destination, String input) throws IOException {
+        assert destination != null : "Violation of: destination is not null";
+
+        String json = this.toJson(input);
+        if (destination.equals("-")) {
+            System.out.print(json);
+        } else {
+            Files.write(Paths.get(destination),
+                    json.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Formats {@code nanos} as milliseconds with one decimal, in the same
+     * format in every locale so the report stays valid JSON.
+     *
+     * @param nanos
+     *            a duration in nanoseconds
+     * @return the duration in milliseconds
+     */
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.1f", nanos / NANOS_PER_MILLI);
+    }
+
+    /**
+     * Appends {@code value} to {@code json} as a JSON string literal.
+     *
+     * @param json
+     *            the JSON being built
+     * @param value
+     *            the string
+     * @updates json
+     */
+    static void appendString(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < ' ') {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+
+}
@@ -0,0 +1,566 @@
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Counts of words that can go down as well as up, with the {@code n} highest
+ * ranked words kept up to date after every change. {@code TopWordsTracker}
+ * relies on counts only growing; here a kept word may fall below a word that
+ * is not kept, so every counted word is in one of two heaps: the kept words,
+ * worst at the root, and the others, best at the root. A change sifts the
+ * word within its heap and then swaps the two roots while the best of the
+ * others outranks the worst kept word, so the kept words stay exact at a cost
+ * of O(log size()) per change, without rescanning the vocabulary.
+ *
+ * <p>
+ * Words are found through an open-addressing index, as in
+ * {@code SpaceSavingSketch}, and a word whose count falls to zero is removed,
+ * so the table only ever holds the words with a positive count.
+ *
+ * @author Hudson Arledge and Nik Anand
+ *
+ */
+public final class RankedWordCounts {
+
+    /**
+     * Number of words the table has room for before it first grows.
+     */
+    private static final int INITIAL_CAPACITY = 1 << 6;
+
+    /**
+     * The number of words kept.
+     */
+    private final int n;
+
+    /**
+     * The counted words, in no particular order.
+     */
+    private String[] words;
+
+    /**
+     * The {@code String.hashCode} of each counted word.
+     */
+    private int[] hashes;
+
+    /**
+     * The count of each counted word.
+     */
+    private long[] counts;
+
+    /**
+     * The index slot of each counted word.
+     */
+    private int[] slots;
+
+    /**
+     * The heap position of each counted word: the position in {@code kept}
+     * if it is kept, and the complement of its position in {@code others} if
+     * it is not.
+     */
+    private int[] places;
+
+    /**
+     * The entry plus one of the word in each index slot, or 0 for an empty
+     * slot.
+     */
+    private int[] index;
+
+    /**
+     * The number of words counted.
+     */
+    private int size;
+
+    /**
+     * The kept words, as a heap of entries whose root ranks lowest.
+     */
+    private final int[] kept;
+
+    /**
+     * The number of words kept.
+     */
+    private int keptSize;
+
+    /**
+     * The words that are not kept, as a heap of entries whose root ranks
+     * highest.
+     */
+    private int[] others;
+
+    /**
+     * The number of words that are not kept.
+     */
+    private int othersSize;
+
+    /**
+     * The sum of all counts.
+     */
+    private long total;
+
+    /**
+     * Constructor.
+     *
+     * @param n
+     *            the number of words kept
+     * @requires n >= 0
+     */
+    public RankedWordCounts(int n) {
+        assert n >= 0 : "Violation of: n >= 0";
+
+        this.n = n;
+        this.kept = new int[n];
+        this.allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Replaces the tables with empty ones with room for {@code capacity}
+     * words.
+     *
+     * @param capacity
+     *            the number of words
+     */
+    private void allocate(int capacity) {
+        this.words = new String[capacity];
+        this.hashes = new int[capacity];
+        this.counts = new long[capacity];
+        this.slots = new int[capacity];
+        this.places = new int[capacity];
+        this.others = new int[capacity];
+        //at most half full, so probe sequences stay short
+        this.index = new int[capacity << 1];
+        this.size = 0;
+        this.keptSize = 0;
+        this.othersSize = 0;
+        this.total = 0;
+    }
+
+    /**
+     * Adds {@code delta} to the count of {@code word}, which may be negative.
+     * The word is added if it was not counted, and removed if its count
+     * becomes zero.
+     *
+     * @param word
+     *            the word
+     * @param delta
+     *            the change of its count
+     * @return the new count of {@code word}
+     * @requires count(word) + delta >= 0
+     */
+    public long add(String word, long delta) {
+        assert word != null : "Violation of: word is not null";
+
+        int hash = word.hashCode();
+        int mask = this.index.length - 1;
+        int slot = WordCountTable.home(hash, mask);
+        int entry = this.index[slot];
+        while (entry != 0) {
+            int id = entry - 1;
+            if (this.hashes[id] == hash && this.words[id].equals(word)) {
+                long count = this.counts[id] + delta;
+                assert count >= 0
+                        : "Violation of: count(word) + delta >= 0";
+                this.total += delta;
+                this.counts[id] = count;
+                if (count == 0) {
+                    this.remove(id);
+                } else {
+                    this.reorder(id);
+                }
+                return count;
+            }
+            slot = (slot + 1) & mask;
+            entry = this.index[slot];
+        }
+        assert delta >= 0 : "Violation of: count(word) + delta >= 0";
+        if (delta > 0) {
+            this.total += delta;
+            this.insert(slot, word, hash, delta);
+        }
+        return delta;
+    }
+
+    /**
+     * Adds {@code word}, which is not counted, with count {@code delta}.
+     *
+     * @param slot
+     *            the empty index slot that ended the search for the word
+     * @param word
+     *            the word
+     * @param hash
+     *            the hash of the word
+     * @param delta
+     *            the count of the word
+     */
+    private void insert(int slot, String word, int hash, long delta) {
+        int free = slot;
+        if (this.size == this.words.length) {
+            this.grow();
+            int mask = this.index.length - 1;
+            free = WordCountTable.home(hash, mask);
+            while (this.index[free] != 0) {
+                free = (free + 1) & mask;
+            }
+        }
+        int id = this.size;
+        this.size++;
+        this.words[id] = word;
+        this.hashes[id] = hash;
+        this.counts[id] = delta;
+        this.link(free, id);
+        //a new word starts among the others and is promoted if it ranks high
+        //enough
+        this.othersSize++;
+        this.put(this.others, false, this.othersSize - 1, id);
+        this.siftUp(this.others, false, this.othersSize - 1);
+        this.rebalance();
+    }
+
+    /**
+     * Doubles the number of words the table has room for, keeping every word
+     * and its heap position.
+     */
+    private void grow() {
+        int capacity = this.words.length << 1;
+        this.words = Arrays.copyOf(this.words, capacity);
+        this.hashes = Arrays.copyOf(this.hashes, capacity);
+        this.counts = Arrays.copyOf(this.counts, capacity);
+        this.slots = Arrays.copyOf(this.slots, capacity);
+        this.places = Arrays.copyOf(this.places, capacity);
+        this.others = Arrays.copyOf(this.others, capacity);
+        this.index = new int[capacity << 1];
+        int mask = this.index.length - 1;
+        for (int id = 0; id < this.size; id++) {
+            int slot = WordCountTable.home(this.hashes[id], mask);
+            while (this.index[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            this.link(slot, id);
+        }
+    }
+
+    /**
+     * Removes the word of entry {@code id}, moving the last entry into its
+     * place.
+     *
+     * @param id
+     *            the entry
+     */
+    private void remove(int id) {
+        int place = this.places[id];
+        if (place >= 0) {
+            this.keptSize--;
+            this.removeAt(this.kept, true, this.keptSize, place);
+        } else {
+            this.othersSize--;
+            this.removeAt(this.others, false, this.othersSize, ~place);
+        }
+        this.unlink(this.slots[id]);
+        int last = this.size - 1;
+        if (id != last) {
+            this.words[id] = this.words[last];
+            this.hashes[id] = this.hashes[last];
+            this.counts[id] = this.counts[last];
+            this.index[this.slots[last]] = id + 1;
+            this.slots[id] = this.slots[last];
+            int moved = this.places[last];
+            if (moved >= 0) {
+                this.put(this.kept, true, moved, id);
+            } else {
+                this.put(this.others, false, ~moved, id);
+            }
+        }
+        this.words[last] = null;
+        this.size = last;
+        this.rebalance();
+    }
+
+    /**
+     * Puts the entry at the end of {@code heap} at {@code position}, whose
+     * entry has been removed, and restores the heap order.
+     *
+     * @param heap
+     *            the heap
+     * @param isKept
+     *            whether {@code heap} is the heap of kept words
+     * @param last
+     *            the position of the end of the heap, which is its new size
+     * @param position
+     *            the position of the removed entry
+     */
+    private void removeAt(int[] heap, boolean isKept, int last,
+            int position) {
+        if (position != last) {
+            int id = heap[last];
+            this.put(heap, isKept, position, id);
+            this.siftUp(heap, isKept, position);
+            int place = this.places[id];
+            this.siftDown(heap, isKept, last, isKept ? place : ~place);
+        }
+    }
+
+    /**
+     * Restores the order of the heaps after the count of entry {@code id}
+     * changed.
+     *
+     * @param id
+     *            the entry
+     */
+    private void reorder(int id) {
+        int place = this.places[id];
+        if (place >= 0) {
+            this.siftUp(this.kept, true, place);
+            this.siftDown(this.kept, true, this.keptSize, this.places[id]);
+        } else {
+            this.siftUp(this.others, false, ~place);
+            this.siftDown(this.others, false, this.othersSize,
+                    ~this.places[id]);
+        }
+        this.rebalance();
+    }
+
+    /**
+     * Moves words between the heaps until as many words as possible are kept
+     * and no word that is not kept outranks a kept word.
+     */
+    private void rebalance() {
+        while (this.keptSize < this.n && this.othersSize > 0) {
+            int best = this.others[0];
+            this.othersSize--;
+            this.removeAt(this.others, false, this.othersSize, 0);
+            this.keptSize++;
+            this.put(this.kept, true, this.keptSize - 1, best);
+            this.siftUp(this.kept, true, this.keptSize - 1);
+        }
+        while (this.keptSize > 0 && this.othersSize > 0
+                && this.ranks(this.others[0], this.kept[0]) < 0) {
+            int worst = this.kept[0];
+            this.put(this.kept, true, 0, this.others[0]);
+            this.put(this.others, false, 0, worst);
+            this.siftDown(this.kept, true, this.keptSize, 0);
+            this.siftDown(this.others, false, this.othersSize, 0);
+        }
+    }
+
+    /**
+     * Puts entry {@code id} at {@code position} of {@code heap}.
+     *
+     * @param heap
+     *            the heap
+     * @param isKept
+     *            whether {@code heap} is the heap of kept words
+     * @param position
+     *            the heap position
+     * @param id
+     *            the entry
+     */
+    private void put(int[] heap, boolean isKept, int position, int id) {
+        heap[position] = id;
+        if (isKept) {
+            this.places[id] = position;
+        } else {
+            this.places[id] = ~position;
+        }
+    }
+
+    /**
+     * Reports whether entry {@code a} belongs nearer the root of
+     * {@code heap} than entry {@code b}: the kept heap has the lowest ranked
+     * word at its root, and the heap of the others the highest.
+     *
+     * @param isKept
+     *            whether the heap is the heap of kept words
+     * @param a
+     *            the first entry
+     * @param b
+     *            the second entry
+     * @return whether {@code a} belongs above {@code b}
+     */
+    private boolean above(boolean isKept, int a, int b) {
+        int ranks = this.ranks(a, b);
+        if (isKept) {
+            return ranks > 0;
+        }
+        return ranks < 0;
+    }
+
+    /**
+     * Moves the entry at {@code position} of {@code heap} toward the root
+     * while it belongs above its parent.
+     *
+     * @param heap
+     *            the heap
+     * @param isKept
+     *            whether {@code heap} is the heap of kept words
+     * @param position
+     *            the heap position
+     */
+    private void siftUp(int[] heap, boolean isKept, int position) {
+        int id = heap[position];
+        int child = position;
+        while (child > 0) {
+            int parent = (child - 1) >>> 1;
+            if (!this.above(isKept, id, heap[parent])) {
+                break;
+            }
+            this.put(heap, isKept, child, heap[parent]);
+            child = parent;
+        }
+        this.put(heap, isKept, child, id);
+    }
+
+    /**
+     * Moves the entry at {@code position} of {@code heap[0, size)} away from
+     * the root while one of its children belongs above it.
+     *
+     * @param heap
+     *            the heap
+     * @param isKept
+     *            whether {@code heap} is the heap of kept words
+     * @param size
+     *            the number of entries in the heap
+     * @param position
+     *            the heap position
+     */
+    private void siftDown(int[] heap, boolean isKept, int size,
+            int position) {
+        int id = heap[position];
+        int parent = position;
+        int child = 2 * parent + 1;
+        while (child < size) {
+            if (child + 1 < size
+                    && this.above(isKept, heap[child + 1], heap[child])) {
+                child++;
+            }
+            if (!this.above(isKept, heap[child], id)) {
+                break;
+            }
+            this.put(heap, isKept, parent, heap[child]);
+            parent = child;
+            child = 2 * parent + 1;
+        }
+        this.put(heap, isKept, parent, id);
+    }
+
+    /**
+     * Compares the ranks of the words of entries {@code a} and {@code b}.
+     *
+     * @param a
+     *            the first entry
+     * @param b
+     *            the second entry
+     * @return a negative number if the word of {@code a} ranks above the word
+     *         of {@code b}, and a positive number if it ranks below
+     */
+    private int ranks(int a, int b) {
+        return WordCount.compareByRank(this.words[a], this.counts[a],
+                this.words[b], this.counts[b]);
+    }
+
+    /**
+     * Puts entry {@code id} in the empty index slot {@code slot}.
+     *
+     * @param slot
+     *            the index slot
+     * @param id
+     *            the entry
+     */
+    private void link(int slot, int id) {
+        this.index[slot] = id + 1;
+        this.slots[id] = slot;
+    }
+
+    /**
+     * Empties index slot {@code slot}, moving later entries of the same probe
+     * sequence back so that every remaining word can still be found.
+     *
+     * @param slot
+     *            the index slot
+     */
+    private void unlink(int slot) {
+        int mask = this.index.length - 1;
+        int hole = slot;
+        this.index[hole] = 0;
+        int next = (hole + 1) & mask;
+        while (this.index[next] != 0) {
+            int id = this.index[next] - 1;
+            int home = WordCountTable.home(this.hashes[id], mask);
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                this.index[next] = 0;
+                this.link(hole, id);
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+    }
+
+    /**
+     * Returns the count of {@code word}.
+     *
+     * @param word
+     *            the word
+     * @return the count of {@code word}, or 0 if it is not counted
+     */
+    public long count(String word) {
+        assert word != null : "Violation of: word is not null";
+
+        int hash = word.hashCode();
+        int mask = this.index.length - 1;
+        int slot = WordCountTable.home(hash, mask);
+        int entry = this.index[slot];
+        while (entry != 0) {
+            int id = entry - 1;
+            if (this.hashes[id] == hash && this.words[id].equals(word)) {
+                return this.counts[id];
+            }
+            slot = (slot + 1) & mask;
+            entry = this.index[slot];
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the kept words, best first: the min(n, size()) highest ranked
+     * words, with equal counts ranked alphabetically.
+     *
+     * @return the kept words
+     */
+    public WordCount[] top() {
+        WordCount[] top = new WordCount[this.keptSize];
+        for (int i = 0; i < this.keptSize; i++) {
+            int id = this.kept[i];
+            top[i] = new WordCount(this.words[id], this.counts[id]);
+        }
+        Arrays.sort(top, new Comparator<WordCount>() {
+            @Override
+            public int compare(WordCount o1, WordCount o2) {
+                return WordCount.compareByRank(o1.word(), o1.count(),
+                        o2.word(), o2.count());
+            }
+        });
+        return top;
+    }
+
+    /**
+     * Forgets every word.
+     */
+    public void clear() {
+        this.allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Returns the number of words with a positive count.
+     *
+     * @return the number of words counted
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns the sum of all counts.
+     *
+     * @return the total count
+     */
+    public long total() {
+        return this.total;
+    }
+
+}
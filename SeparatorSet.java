@@ -0,0 +1,421 @@
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * An immutable set of separator characters compiled into a lookup table.
+ * Membership of an ASCII character is a single bit test on one of two
+ * {@code long} masks, any other character of the Basic Multilingual Plane is
+ * a bit test in a bitmap that only reaches as far as the highest separator,
+ * and a supplementary code point is found by binary search in a small sorted
+ * array of ranges, so no {@code Character} is ever boxed while scanning text.
+ *
+ * <p>
+ * A set is either given as a list of characters, with {@code of}, or built by
+ * Unicode general category, character class and user list with a
+ * {@code Builder}, which compiles it once into the same lookup table.
+ *
+ * @author Hudson Arledge and Nik Anand
+ *
+ */
+public final class SeparatorSet {
+
+    /**
+     * The separator characters of the original tag cloud generator.
+     */
+    private static final String DEFAULT_CHARS = " ,/.-!?_'\"`*()[]{}\\|<>~^@#$&+="
+            + ";:\n\r";
+
+    /**
+     * The separator characters used by the tag cloud generator. Line
+     * terminators are included so that text which is not read line by line
+     * splits into the same words as text read through {@code readLine}.
+     */
+    public static final SeparatorSet DEFAULT = of(DEFAULT_CHARS);
+
+    /**
+     * Number of code points in the Basic Multilingual Plane.
+     */
+    private static final int BMP_SIZE = 1 << 16;
+
+    /**
+     * Bit mask of the separators in the range [0, 64).
+     */
+    private final long low;
+
+    /**
+     * Bit mask of the separators in the range [64, 128).
+     */
+    private final long high;
+
+    /**
+     * Bitmap of the separators of the Basic Multilingual Plane, up to the
+     * highest one.
+     */
+    private final long[] bmp;
+
+    /**
+     * The supplementary separators, as sorted pairs of the first and last
+     * code point of each range.
+     */
+    private final int[] ranges;
+
+    /**
+     * Constructor.
+     *
+     * @param bmp
+     *            the bitmap of the separators below {@code BMP_SIZE}
+     * @param ranges
+     *            the sorted first and last code points of the supplementary
+     *            separator ranges
+     */
+    private SeparatorSet(long[] bmp, int[] ranges) {
+        this.low = bmp.length > 0 ? bmp[0] : 0;
+        this.high = bmp.length > 1 ? bmp[1] : 0;
+        this.bmp = bmp;
+        this.ranges = ranges;
+    }
+
+    /**
+     * The set of the default separators together with every Unicode space,
+     * control character and punctuation mark, compiled on first use.
+     */
+    private static final class Unicode {
+
+        /**
+         * The compiled set.
+         */
+        static final SeparatorSet SET = builder().add(DEFAULT_CHARS)
+                .addWhitespace().addPunctuation()
+                .addCategory(Character.CONTROL).build();
+    }
+
+    /**
+     * Returns the default separators together with every Unicode space,
+     * control character, such as a tab, and punctuation mark, such as an em
+     * dash or CJK full stop, so that multilingual text splits into words.
+     *
+     * @return the compiled separator set
+     */
+    public static SeparatorSet unicode() {
+        return Unicode.SET;
+    }
+
+    /**
+     * Returns a new, empty {@code Builder}.
+     *
+     * @return the builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Returns a {@code SeparatorSet} containing every character of
+     * {@code chars}.
+     *
+     * @param chars
+     *            the separator characters
+     * @return the compiled separator set
+     */
+    public static SeparatorSet of(CharSequence chars) {
+        assert chars != null : "Violation of: chars is not null";
+
+        return builder().add(chars).build();
+    }
+
+    /**
+     * Returns a {@code SeparatorSet} containing every character of
+     * {@code chars}.
+     *
+     * @param chars
+     *            the separator characters
+     * @return the compiled separator set
+     */
+    public static SeparatorSet of(Set<Character> chars) {
+        assert chars != null : "Violation of: chars is not null";
+
+        Builder builder = builder();
+        Iterator<Character> iter = chars.iterator();
+        while (iter.hasNext()) {
+            builder.add(iter.next().charValue());
+        }
+        return builder.build();
+    }
+
+    /**
+     * Reports whether {@code c} is a separator. Half of a surrogate pair is
+     * only a separator if it was added on its own.
+     *
+     * @param c
+     *            the character to test
+     * @return true iff {@code c} is in this set
+     */
+    public boolean contains(char c) {
+        if (c < 64) {
+            return ((this.low >>> c) & 1L) != 0;
+        } else if (c < 128) {
+            return ((this.high >>> (c - 64)) & 1L) != 0;
+        }
+        int word = c >>> 6;
+        return word < this.bmp.length && ((this.bmp[word] >>> c) & 1L) != 0;
+    }
+
+    /**
+     * Reports whether {@code codePoint} is a separator.
+     *
+     * @param codePoint
+     *            the code point to test
+     * @return true iff {@code codePoint} is in this set
+     */
+    public boolean contains(int codePoint) {
+        if (codePoint < BMP_SIZE) {
+            return codePoint >= 0 && this.contains((char) codePoint);
+        }
+        //find the last range starting at or before the code point
+        int lo = 0;
+        int hi = this.ranges.length / 2 - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (this.ranges[2 * mid] <= codePoint) {
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return hi >= 0 && codePoint <= this.ranges[2 * hi + 1];
+    }
+
+    /**
+     * Reports whether any supplementary code point is a separator, in which
+     * case text must be scanned by code point rather than by character.
+     *
+     * @return true iff a code point above the Basic Multilingual Plane is in
+     *         this set
+     */
+    public boolean hasSupplementary() {
+        return this.ranges.length > 0;
+    }
+
+    /**
+     * Collects separators by character, range, Unicode general category and
+     * character class, and compiles them into a {@code SeparatorSet}. Removals
+     * win over additions, whatever order they are made in, so a category can
+     * be added with a few of its characters kept as word characters.
+     *
+     * @author Hudson Arledge and Nik Anand
+     *
+     */
+    public static final class Builder {
+
+        /**
+         * The code points added one at a time or by range.
+         */
+        private final BitSet added;
+
+        /**
+         * The code points removed.
+         */
+        private final BitSet removed;
+
+        /**
+         * Bit mask of the general categories added, indexed by the values
+         * returned by {@code Character.getType}.
+         */
+        private int categories;
+
+        /**
+         * Whether every {@code Character.isWhitespace} code point is added.
+         */
+        private boolean whitespace;
+
+        /**
+         * Constructor.
+         */
+        private Builder() {
+            this.added = new BitSet();
+            this.removed = new BitSet();
+            this.categories = 0;
+            this.whitespace = false;
+        }
+
+        /**
+         * Adds the code point {@code codePoint}.
+         *
+         * @param codePoint
+         *            the separator
+         * @return this builder
+         * @requires 0 <= codePoint <= Character.MAX_CODE_POINT
+         */
+        public Builder add(int codePoint) {
+            assert Character.isValidCodePoint(codePoint)
+                    : "Violation of: codePoint is valid";
+
+            this.added.set(codePoint);
+            return this;
+        }
+
+        /**
+         * Adds every code point of {@code chars}.
+         *
+         * @param chars
+         *            the separators
+         * @return this builder
+         */
+        public Builder add(CharSequence chars) {
+            assert chars != null : "Violation of: chars is not null";
+
+            int i = 0;
+            while (i < chars.length()) {
+                int codePoint = Character.codePointAt(chars, i);
+                this.added.set(codePoint);
+                i += Character.charCount(codePoint);
+            }
+            return this;
+        }
+
+        /**
+         * Adds every code point from {@code first} to {@code last}.
+         *
+         * @param first
+         *            the first separator of the range
+         * @param last
+         *            the last separator of the range
+         * @return this builder
+         * @requires 0 <= first <= last <= Character.MAX_CODE_POINT
+         */
+        public Builder addRange(int first, int last) {
+            assert 0 <= first : "Violation of: 0 <= first";
+            assert first <= last : "Violation of: first <= last";
+            assert last <= Character.MAX_CODE_POINT
+                    : "Violation of: last <= Character.MAX_CODE_POINT";
+
+            this.added.set(first, last + 1);
+            return this;
+        }
+
+        /**
+         * Adds every code point of the Unicode general category
+         * {@code type}, given as a constant of {@code Character} such as
+         * {@code Character.DASH_PUNCTUATION}.
+         *
+         * @param type
+         *            the general category
+         * @return this builder
+         * @requires 0 <= type < 32
+         */
+        public Builder addCategory(int type) {
+            assert 0 <= type && type < Integer.SIZE
+                    : "Violation of: 0 <= type < 32";
+
+            this.categories |= 1 << type;
+            return this;
+        }
+
+        /**
+         * Adds every code point for which {@code Character.isWhitespace} is
+         * true, and every space separator, such as a no-break space.
+         *
+         * @return this builder
+         */
+        public Builder addWhitespace() {
+            this.whitespace = true;
+            return this.addCategory(Character.SPACE_SEPARATOR)
+                    .addCategory(Character.LINE_SEPARATOR)
+                    .addCategory(Character.PARAGRAPH_SEPARATOR);
+        }
+
+        /**
+         * Adds every punctuation mark: the categories Pc, Pd, Ps, Pe, Pi, Pf
+         * and Po.
+         *
+         * @return this builder
+         */
+        public Builder addPunctuation() {
+            return this.addCategory(Character.CONNECTOR_PUNCTUATION)
+                    .addCategory(Character.DASH_PUNCTUATION)
+                    .addCategory(Character.START_PUNCTUATION)
+                    .addCategory(Character.END_PUNCTUATION)
+                    .addCategory(Character.INITIAL_QUOTE_PUNCTUATION)
+                    .addCategory(Character.FINAL_QUOTE_PUNCTUATION)
+                    .addCategory(Character.OTHER_PUNCTUATION);
+        }
+
+        /**
+         * Adds every symbol: the categories Sm, Sc, Sk and So, which include
+         * emoji.
+         *
+         * @return this builder
+         */
+        public Builder addSymbols() {
+            return this.addCategory(Character.MATH_SYMBOL)
+                    .addCategory(Character.CURRENCY_SYMBOL)
+                    .addCategory(Character.MODIFIER_SYMBOL)
+                    .addCategory(Character.OTHER_SYMBOL);
+        }
+
+        /**
+         * Makes every code point of {@code chars} a word character, even if
+         * it is also added.
+         *
+         * @param chars
+         *            the word characters
+         * @return this builder
+         */
+        public Builder remove(CharSequence chars) {
+            assert chars != null : "Violation of: chars is not null";
+
+            int i = 0;
+            while (i < chars.length()) {
+                int codePoint = Character.codePointAt(chars, i);
+                this.removed.set(codePoint);
+                i += Character.charCount(codePoint);
+            }
+            return this;
+        }
+
+        /**
+         * Compiles the separators collected so far. Categories and character
+         * classes are resolved here, once, by a scan over every code point.
+         *
+         * @return the compiled separator set
+         */
+        public SeparatorSet build() {
+            BitSet set = (BitSet) this.added.clone();
+            if (this.categories != 0 || this.whitespace) {
+                for (int c = 0; c <= Character.MAX_CODE_POINT; c++) {
+                    if (((this.categories >>> Character.getType(c)) & 1) != 0
+                            || (this.whitespace
+                                    && Character.isWhitespace(c))) {
+                        set.set(c);
+                    }
+                }
+            }
+            set.andNot(this.removed);
+
+            //the bitmap only reaches as far as the highest BMP separator
+            int last = set.previousSetBit(BMP_SIZE - 1);
+            long[] bmp = new long[last < 0 ? 0 : (last >>> 6) + 1];
+            int c = set.nextSetBit(0);
+            while (c >= 0 && c < BMP_SIZE) {
+                bmp[c >>> 6] |= 1L << c;
+                c = set.nextSetBit(c + 1);
+            }
+            int[] ranges = new int[2];
+            int size = 0;
+            while (c >= 0) {
+                int end = set.nextClearBit(c);
+                if (size == ranges.length) {
+                    ranges = Arrays.copyOf(ranges, 2 * size);
+                }
+                ranges[size] = c;
+                ranges[size + 1] = end - 1;
+                size += 2;
+                c = set.nextSetBit(end);
+            }
+            return new SeparatorSet(bmp, Arrays.copyOf(ranges, size));
+        }
+    }
+
+}
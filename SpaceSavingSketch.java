@@ -0,0 +1,496 @@
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Finds the most frequent words of a stream in fixed memory with the
+ * Space-Saving algorithm. At most {@code capacity} words are counted at a
+ * time; a word that is not being counted replaces the word with the lowest
+ * count and inherits that count, which is remembered as the word's error.
+ * Counts are therefore never too low, and each is at most its error, and at
+ * most {@code total() / capacity}, too high. Every word that occurs more than
+ * {@code total() / capacity} times is guaranteed to be counted.
+ *
+ * <p>
+ * The counted words form a min-heap on their counts, so the word to replace
+ * is always at the root, and an open-addressing index from word to heap
+ * position finds a word straight from the tokenizer's buffer, as
+ * {@code WordCountTable} does, so a {@code String} is only created when a
+ * word starts being counted.
+ *
+ * @author Hudson Arledge and Nik Anand
+ *
+ */
+public final class SpaceSavingSketch implements AsciiWordSink {
+
+    /**
+     * Largest number of words counted at a time.
+     */
+    public static final int MAX_CAPACITY = 1 << 24;
+
+    /**
+     * The number of words counted at a time.
+     */
+    private final int capacity;
+
+    /**
+     * The counted words, as a heap whose root has the lowest count.
+     */
+    private final String[] words;
+
+    /**
+     * The {@code String.hashCode} of each counted word.
+     */
+    private final int[] hashes;
+
+    /**
+     * The count of each counted word.
+     */
+    private final long[] counts;
+
+    /**
+     * The most each count may be too high.
+     */
+    private final long[] errors;
+
+    /**
+     * The index slot of each counted word.
+     */
+    private final int[] slots;
+
+    /**
+     * The heap position plus one of the word in each index slot, or 0 for an
+     * empty slot.
+     */
+    private final int[] index;
+
+    /**
+     * The number of words counted.
+     */
+    private int size;
+
+    /**
+     * The number of words seen.
+     */
+    private long total;
+
+    /**
+     * Constructor.
+     *
+     * @param capacity
+     *            the number of words counted at a time
+     * @requires 0 < capacity <= MAX_CAPACITY
+     */
+    public SpaceSavingSketch(int capacity) {
+        assert 0 < capacity : "Violation of: 0 < capacity";
+        assert capacity <= MAX_CAPACITY
+                : "Violation of: capacity <= MAX_CAPACITY";
+
+        this.capacity = capacity;
+        this.words = new String[capacity];
+        this.hashes = new int[capacity];
+        this.counts = new long[capacity];
+        this.errors = new long[capacity];
+        this.slots = new int[capacity];
+        //the smallest power of two at most half full, so probe sequences
+        //stay short without the index outgrowing the heap arrays
+        this.index = new int[Integer.highestOneBit(2 * capacity - 1) << 1];
+        this.size = 0;
+        this.total = 0;
+    }
+
+    /**
+     * Returns the number of counters needed for every count to be at most
+     * {@code epsilon} times the number of words too high, and for at least
+     * {@code n} words to be counted.
+     *
+     * @param epsilon
+     *            the largest error, as a fraction of the number of words
+     * @param n
+     *            the number of words wanted
+     * @return the capacity, at most {@code MAX_CAPACITY}
+     * @requires 0 < epsilon < 1 and n >= 0
+     */
+    public static int capacityFor(double epsilon, int n) {
+        assert 0 < epsilon && epsilon < 1 : "Violation of: 0 < epsilon < 1";
+        assert n >= 0 : "Violation of: n >= 0";
+
+        double needed = Math.max(Math.ceil(1 / epsilon), Math.max(n, 1));
+        return (int) Math.min(needed, MAX_CAPACITY);
+    }
+
+    @Override
+    public void word(char[] text, int offset, int length) {
+        this.add(text, offset, length, 1);
+    }
+
+    @Override
+    public void word(char[] text, int offset, int length, int hash) {
+        this.add(text, offset, length, hash, 1);
+    }
+
+    /**
+     * Adds {@code delta} occurrences of the word {@code text[offset, offset +
+     * length)}.
+     *
+     * @param text
+     *            the buffer holding the word
+     * @param offset
+     *            the index of the first character of the word
+     * @param length
+     *            the number of characters in the word
+     * @param delta
+     *            the number of occurrences
+     * @requires 0 <= offset and 0 < length and offset + length <= |text| and
+     *           delta > 0
+     */
+    public void add(char[] text, int offset, int length, long delta) {
+        assert text != null : "Violation of: text is not null";
+
+        this.add(text, offset, length,
+                WordCountTable.hash(text, offset, length), delta);
+    }
+
+    /**
+     * Adds {@code delta} occurrences of the word {@code text[offset, offset +
+     * length)}, whose hash is {@code hash}.
+     *
+     * @param text
+     *            the buffer holding the word
+     * @param offset
+     *            the index of the first character of the word
+     * @param length
+     *            the number of characters in the word
+     * @param hash
+     *            the hash of the word
+     * @param delta
+     *            the number of occurrences
+     * @requires 0 <= offset and 0 < length and offset + length <= |text| and
+     *           hash = WordCountTable.hash(text, offset, length) and delta > 0
+     */
+    private void add(char[] text, int offset, int length, int hash,
+            long delta) {
+        this.total += delta;
+        int mask = this.index.length - 1;
+        int slot = WordCountTable.home(hash, mask);
+        int entry = this.index[slot];
+        while (entry != 0) {
+            int position = entry - 1;
+            if (this.hashes[position] == hash && WordCountTable
+                    .matches(this.words[position], text, offset, length)) {
+                this.counts[position] += delta;
+                this.siftDown(position);
+                return;
+            }
+            slot = (slot + 1) & mask;
+            entry = this.index[slot];
+        }
+        this.insert(slot, new String(text, offset, length), hash, delta);
+    }
+
+    @Override
+    public void word(byte[] text, int offset, int length, int hash) {
+        this.total++;
+        int mask = this.index.length - 1;
+        int slot = WordCountTable.home(hash, mask);
+        int entry = this.index[slot];
+        while (entry != 0) {
+            int position = entry - 1;
+            if (this.hashes[position] == hash && WordCountTable
+                    .matches(this.words[position], text, offset, length)) {
+                this.counts[position]++;
+                this.siftDown(position);
+                return;
+            }
+            slot = (slot + 1) & mask;
+            entry = this.index[slot];
+        }
+        //the word is decoded only now that it is new to the sketch
+        this.insert(slot,
+                new String(text, offset, length, StandardCharsets.ISO_8859_1),
+                hash, 1);
+    }
+
+    /**
+     * Adds {@code delta} occurrences of {@code word}, which is not in the
+     * sketch, replacing the word with the lowest count if the sketch is full.
+     *
+     * @param slot
+     *            the empty index slot that ended the search for the word
+     * @param word
+     *            the word
+     * @param hash
+     *            the hash of the word
+     * @param delta
+     *            the number of occurrences
+     */
+    private void insert(int slot, String word, int hash, long delta) {
+        if (this.size < this.capacity) {
+            int position = this.size;
+            this.size++;
+            this.words[position] = word;
+            this.hashes[position] = hash;
+            this.counts[position] = delta;
+            this.errors[position] = 0;
+            this.link(slot, position);
+            this.siftUp(position);
+        } else {
+            //replace the word with the lowest count, which is at the root
+            this.unlink(this.slots[0]);
+            //the removal may have shifted entries, so probe again
+            int mask = this.index.length - 1;
+            int free = WordCountTable.home(hash, mask);
+            while (this.index[free] != 0) {
+                free = (free + 1) & mask;
+            }
+            this.words[0] = word;
+            this.hashes[0] = hash;
+            this.errors[0] = this.counts[0];
+            this.counts[0] += delta;
+            this.link(free, 0);
+            this.siftDown(0);
+        }
+    }
+
+    /**
+     * Puts the word at heap {@code position} in the empty index slot
+     * {@code slot}.
+     *
+     * @param slot
+     *            the index slot
+     * @param position
+     *            the heap position
+     */
+    private void link(int slot, int position) {
+        this.index[slot] = position + 1;
+        this.slots[position] = slot;
+    }
+
+    /**
+     * Empties index slot {@code slot}, moving later entries of the same probe
+     * sequence back so that every remaining word can still be found.
+     *
+     * @param slot
+     *            the index slot
+     */
+    private void unlink(int slot) {
+        int mask = this.index.length - 1;
+        int hole = slot;
+        this.index[hole] = 0;
+        int next = (hole + 1) & mask;
+        while (this.index[next] != 0) {
+            int position = this.index[next] - 1;
+            int home = WordCountTable.home(this.hashes[position], mask);
+            //the entry may fill the hole if the hole is no further from its
+            //home slot than the entry itself is
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                this.index[next] = 0;
+                this.link(hole, position);
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+    }
+
+    /**
+     * Swaps the words at heap positions {@code a} and {@code b}.
+     *
+     * @param a
+     *            the first heap position
+     * @param b
+     *            the second heap position
+     */
+    private void swap(int a, int b) {
+        String word = this.words[a];
+        int hash = this.hashes[a];
+        long count = this.counts[a];
+        long error = this.errors[a];
+        int slot = this.slots[a];
+        this.words[a] = this.words[b];
+        this.hashes[a] = this.hashes[b];
+        this.counts[a] = this.counts[b];
+        this.errors[a] = this.errors[b];
+        this.link(this.slots[b], a);
+        this.words[b] = word;
+        this.hashes[b] = hash;
+        this.counts[b] = count;
+        this.errors[b] = error;
+        this.link(slot, b);
+    }
+
+    /**
+     * Moves the word at heap position {@code i} toward the root while its
+     * count is lower than its parent's.
+     *
+     * @param i
+     *            the heap position
+     */
+    private void siftUp(int i) {
+        int child = i;
+        while (child > 0) {
+            int parent = (child - 1) >>> 1;
+            if (this.counts[child] >= this.counts[parent]) {
+                break;
+            }
+            this.swap(child, parent);
+            child = parent;
+        }
+    }
+
+    /**
+     * Moves the word at heap position {@code i} away from the root while one
+     * of its children has a lower count.
+     *
+     * @param i
+     *            the heap position
+     */
+    private void siftDown(int i) {
+        int parent = i;
+        int child = 2 * parent + 1;
+        while (child < this.size) {
+            if (child + 1 < this.size
+                    && this.counts[child + 1] < this.counts[child]) {
+                child++;
+            }
+            if (this.counts[child] >= this.counts[parent]) {
+                break;
+            }
+            this.swap(child, parent);
+            parent = child;
+            child = 2 * parent + 1;
+        }
+    }
+
+    /**
+     * Returns the {@code n} words with the highest counts, best first. Words
+     * with equal counts are ranked alphabetically. Each {@code WordCount}
+     * carries the most its count may be too high.
+     *
+     * @param n
+     *            the number of words wanted
+     * @return the min(n, size()) words with the highest counts
+     * @requires n >= 0
+     */
+    public WordCount[] top(int n) {
+        assert n >= 0 : "Violation of: n >= 0";
+
+        int limit = Math.min(n, this.size);
+        //heap[0] is the worst of the words kept so far, as in TopWords
+        int[] heap = new int[limit];
+        int kept = 0;
+        for (int position = 0; limit > 0 && position < this.size; position++) {
+            if (kept < limit) {
+                heap[kept] = position;
+                kept++;
+                int child = kept - 1;
+                while (child > 0) {
+                    int parent = (child - 1) >>> 1;
+                    if (this.ranks(heap[child], heap[parent]) <= 0) {
+                        break;
+                    }
+                    int swap = heap[child];
+                    heap[child] = heap[parent];
+                    heap[parent] = swap;
+                    child = parent;
+                }
+            } else if (this.ranks(position, heap[0]) < 0) {
+                heap[0] = position;
+                this.siftDownRanks(heap, kept);
+            }
+        }
+        WordCount[] top = new WordCount[kept];
+        while (kept > 0) {
+            int position = heap[0];
+            kept--;
+            heap[0] = heap[kept];
+            this.siftDownRanks(heap, kept);
+            top[kept] = new WordCount(this.words[position],
+                    this.counts[position], this.errors[position]);
+        }
+        return top;
+    }
+
+    /**
+     * Compares the ranks of the counted words at heap positions {@code a}
+     * and {@code b}.
+     *
+     * @param a
+     *            the first heap position
+     * @param b
+     *            the second heap position
+     * @return a negative number if the word at {@code a} ranks above the word
+     *         at {@code b}, and a positive number if it ranks below
+     */
+    private int ranks(int a, int b) {
+        return WordCount.compareByRank(this.words[a], this.counts[a],
+                this.words[b], this.counts[b]);
+    }
+
+    /**
+     * Moves the root of the selection heap {@code heap[0, size)} away from
+     * the root while one of its children ranks below it.
+     *
+     * @param heap
+     *            heap positions of the selected words, worst at the root
+     * @param size
+     *            the number of selected words
+     */
+    private void siftDownRanks(int[] heap, int size) {
+        int parent = 0;
+        int child = 1;
+        while (child < size) {
+            if (child + 1 < size
+                    && this.ranks(heap[child + 1], heap[child]) > 0) {
+                child++;
+            }
+            if (this.ranks(heap[child], heap[parent]) <= 0) {
+                break;
+            }
+            int swap = heap[child];
+            heap[child] = heap[parent];
+            heap[parent] = swap;
+            parent = child;
+            child = 2 * parent + 1;
+        }
+    }
+
+    /**
+     * Returns the most any count may be too high, which is also the most any
+     * word that is not counted can have occurred: the lowest count once every
+     * counter is in use, and 0 before.
+     *
+     * @return the error bound
+     */
+    public long errorBound() {
+        if (this.size < this.capacity) {
+            return 0;
+        }
+        return this.counts[0];
+    }
+
+    /**
+     * Returns the number of words being counted.
+     *
+     * @return the number of counters in use
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns the number of words counted at a time.
+     *
+     * @return the capacity
+     */
+    public int capacity() {
+        return this.capacity;
+    }
+
+    /**
+     * Returns the number of words seen.
+     *
+     * @return the total count
+     */
+    public long total() {
+        return this.total;
+    }
+
+}
@@ -0,0 +1,454 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * An immutable set of words that are left out of a cloud, compiled into a
+ * perfect hash table by hash and displace: the stop words are split by hash
+ * into buckets of about four, and each bucket is given a displacement that
+ * moves its words into slots no other stop word has, so looking up a word
+ * costs one read of its bucket's displacement, one probe and at most one
+ * comparison, straight from the tokenizer's buffer. The table has at most
+ * twice as many slots as needed to keep it half full, and is built in time
+ * proportional to the number of stop words. The rare stop word whose hash
+ * equals another's cannot be given a slot of its own and is kept in a short
+ * list that is only searched when a word's hash matches its slot but the word
+ * does not.
+ *
+ * @author Hudson Arledge and Nik Anand
+ *
+ */
+public final class StopWords {
+
+    /**
+     * Common English words, lower cased.
+     */
+    private static final String ENGLISH_WORDS = "a about above after again "
+            + "against all am an and any are as at be because been before "
+            + "being below between both but by can could did do does doing "
+            + "down during each few for from further had has have having he "
+            + "her here hers herself him himself his how i if in into is it "
+            + "its itself just me more most my myself no nor not now of off "
+            + "on once only or other our ours ourselves out over own same she "
+            + "should so some such than that the their theirs them themselves "
+            + "then there these they this those through to too under until "
+            + "up very was we were what when where which while who whom why "
+            + "will with would you your yours yourself yourselves";
+
+    /**
+     * The most displacements tried for one bucket before the table is
+     * doubled, which a half full table practically never needs.
+     */
+    private static final int MAX_DISPLACEMENT = 1 << 16;
+
+    /**
+     * The odd multiplier that spreads hashes over the buckets.
+     */
+    private static final int BUCKET_MULTIPLIER = 0x9E3779B9;
+
+    /**
+     * The number of bits fewer a bucket has than a slot, so there are about
+     * four stop words per bucket.
+     */
+    private static final int BUCKET_BITS_LESS = 3;
+
+    /**
+     * The stop words, by slot, or null for an empty slot.
+     */
+    private final String[] keys;
+
+    /**
+     * The {@code String.hashCode} of the stop word in each slot.
+     */
+    private final int[] hashes;
+
+    /**
+     * The stop words whose hash equals that of a word in a slot.
+     */
+    private final String[] overflow;
+
+    /**
+     * The displacement of each bucket.
+     */
+    private final int[] displacements;
+
+    /**
+     * The number of bits a spread hash is shifted right to give a bucket.
+     */
+    private final int bucketShift;
+
+    /**
+     * The number of bits a mixed hash is shifted right to give a slot.
+     */
+    private final int shift;
+
+    /**
+     * The number of stop words.
+     */
+    private final int size;
+
+    /**
+     * Constructor.
+     *
+     * @param keys
+     *            the stop words, by slot
+     * @param hashes
+     *            the hash of the stop word in each slot
+     * @param overflow
+     *            the stop words whose hash equals that of a word in a slot
+     * @param displacements
+     *            the displacement of each bucket
+     * @param bucketShift
+     *            the number of bits a spread hash is shifted right
+     * @param shift
+     *            the number of bits a mixed hash is shifted right
+     * @param size
+     *            the number of stop words
+     */
+    private StopWords(String[] keys, int[] hashes, String[] overflow,
+            int[] displacements, int bucketShift, int shift, int size) {
+        this.keys = keys;
+        this.hashes = hashes;
+        this.overflow = overflow;
+        this.displacements = displacements;
+        this.bucketShift = bucketShift;
+        this.shift = shift;
+        this.size = size;
+    }
+
+    /**
+     * The English stop words, compiled on first use.
+     */
+    private static final class English {
+
+        /**
+         * The compiled set.
+         */
+        static final StopWords SET = of(
+                Arrays.asList(ENGLISH_WORDS.split(" ")));
+    }
+
+    /**
+     * Returns about 130 common English words, lower cased, such as "the",
+     * "and" and "of".
+     *
+     * @return the English stop words
+     */
+    public static StopWords english() {
+        return English.SET;
+    }
+
+    /**
+     * Returns the set of {@code words}. Words are matched exactly, so they
+     * should be lower cased if the words of the text are.
+     *
+     * @param words
+     *            the stop words
+     * @return the compiled set
+     */
+    public static StopWords of(Collection<String> words) {
+        assert words != null : "Violation of: words is not null";
+
+        Set<String> unique = new LinkedHashSet<String>(words);
+        unique.remove("");
+        //words whose hash is taken already could never be separated
+        Set<Integer> seen = new HashSet<Integer>();
+        List<String> slotted = new ArrayList<String>();
+        List<String> overflow = new ArrayList<String>();
+        for (String word : unique) {
+            if (seen.add(word.hashCode())) {
+                slotted.add(word);
+            } else {
+                overflow.add(word);
+            }
+        }
+        String[] list = slotted.toArray(new String[slotted.size()]);
+        String[] extra = overflow.toArray(new String[overflow.size()]);
+        //at most half of the slots are used
+        int bits = BUCKET_BITS_LESS + 1;
+        while ((1 << bits) < 2 * list.length) {
+            bits++;
+        }
+        StopWords table = tryBuild(list, extra, bits);
+        while (table == null) {
+            bits++;
+            table = tryBuild(list, extra, bits);
+        }
+        return table;
+    }
+
+    /**
+     * Returns the set of the words listed in {@code file}, one per line.
+     * Blank lines and lines starting with # are skipped.
+     *
+     * @param file
+     *            the list of stop words, in UTF-8
+     * @param foldCase
+     *            whether to lower case the words, to match the words of text
+     *            that is lower cased
+     * @return the compiled set
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    public static StopWords read(Path file, boolean foldCase)
+            throws IOException {
+        assert file != null : "Violation of: file is not null";
+
+        Set<String> words = new LinkedHashSet<String>();
+        BufferedReader reader = Files.newBufferedReader(file,
+                StandardCharsets.UTF_8);
+        try {
+            String line = reader.readLine();
+            while (line != null) {
+                String word = line.trim();
+                if (word.length() > 0 && word.charAt(0) != '#') {
+                    if (foldCase) {
+                        char[] chars = word.toCharArray();
+                        Tokenizer.toLowerCase(chars, 0, chars.length);
+                        word = new String(chars);
+                    }
+                    words.add(word);
+                }
+                line = reader.readLine();
+            }
+        } finally {
+            reader.close();
+        }
+        return of(words);
+    }
+
+    /**
+     * Returns the slot of the word whose hash is {@code hash} in a table
+     * whose slots are {@code Integer.SIZE - shift} bits, when its bucket has
+     * {@code displacement}.
+     *
+     * @param hash
+     *            the hash of the word
+     * @param displacement
+     *            the displacement of the word's bucket
+     * @param shift
+     *            the number of bits the mixed hash is shifted right
+     * @return the slot
+     */
+    private static int slot(int hash, int displacement, int shift) {
+        //the finalizer of MurmurHash3, so every displacement scatters the
+        //words of a bucket independently
+        int h = hash ^ (displacement * BUCKET_MULTIPLIER);
+        h = (h ^ (h >>> 16)) * 0x85EBCA6B;
+        h = (h ^ (h >>> 13)) * 0xC2B2AE35;
+        return (h ^ (h >>> 16)) >>> shift;
+    }
+
+    /**
+     * Returns the table of {@code words} with 2<sup>bits</sup> slots, or null
+     * if some bucket has no displacement that puts its words in free slots.
+     * The buckets are placed largest first, while the table is emptiest.
+     *
+     * @param words
+     *            the stop words, with distinct hashes
+     * @param overflow
+     *            the stop words whose hash equals that of one of
+     *            {@code words}
+     * @param bits
+     *            the number of bits of a slot
+     * @return the table, or null
+     * @requires bits > BUCKET_BITS_LESS
+     */
+    private static StopWords tryBuild(String[] words, String[] overflow,
+            int bits) {
+        int shift = Integer.SIZE - bits;
+        int bucketShift = shift + BUCKET_BITS_LESS;
+        int buckets = 1 << (bits - BUCKET_BITS_LESS);
+        //the words sorted by bucket, those of bucket b starting at start[b]
+        int[] start = new int[buckets + 1];
+        int[] hashOf = new int[words.length];
+        for (int i = 0; i < words.length; i++) {
+            hashOf[i] = words[i].hashCode();
+            start[((hashOf[i] * BUCKET_MULTIPLIER) >>> bucketShift) + 1]++;
+        }
+        int largest = 0;
+        for (int b = 0; b < buckets; b++) {
+            largest = Math.max(largest, start[b + 1]);
+            start[b + 1] += start[b];
+        }
+        int[] byBucket = new int[words.length];
+        int[] filled = new int[buckets];
+        for (int i = 0; i < words.length; i++) {
+            int b = (hashOf[i] * BUCKET_MULTIPLIER) >>> bucketShift;
+            byBucket[start[b] + filled[b]] = i;
+            filled[b]++;
+        }
+        //the buckets sorted by size, largest first
+        int[] sizeStart = new int[largest + 2];
+        for (int b = 0; b < buckets; b++) {
+            sizeStart[largest - filled[b] + 1]++;
+        }
+        for (int k = 0; k <= largest; k++) {
+            sizeStart[k + 1] += sizeStart[k];
+        }
+        int[] order = new int[buckets];
+        for (int b = 0; b < buckets; b++) {
+            order[sizeStart[largest - filled[b]]] = b;
+            sizeStart[largest - filled[b]]++;
+        }
+
+        String[] keys = new String[1 << bits];
+        int[] hashes = new int[1 << bits];
+        int[] displacements = new int[buckets];
+        int[] slots = new int[largest];
+        for (int b : order) {
+            int from = start[b];
+            int count = filled[b];
+            if (count == 0) {
+                break;
+            }
+            int displacement = 0;
+            while (!fits(byBucket, from, count, hashOf, displacement, shift,
+                    keys, slots)) {
+                displacement++;
+                if (displacement == MAX_DISPLACEMENT) {
+                    return null;
+                }
+            }
+            displacements[b] = displacement;
+            for (int k = 0; k < count; k++) {
+                int i = byBucket[from + k];
+                keys[slots[k]] = words[i];
+                hashes[slots[k]] = hashOf[i];
+            }
+        }
+        return new StopWords(keys, hashes, overflow, displacements,
+                bucketShift, shift, words.length + overflow.length);
+    }
+
+    /**
+     * Reports whether {@code displacement} puts the {@code count} words
+     * {@code byBucket[from, from + count)} of a bucket in distinct slots that
+     * are free in {@code keys}, and if so leaves those slots in
+     * {@code slots}.
+     *
+     * @param byBucket
+     *            the indexes of the words, sorted by bucket
+     * @param from
+     *            the index in {@code byBucket} of the bucket's first word
+     * @param count
+     *            the number of words in the bucket
+     * @param hashOf
+     *            the hash of each word
+     * @param displacement
+     *            the displacement to try
+     * @param shift
+     *            the number of bits a mixed hash is shifted right
+     * @param keys
+     *            the words already placed, by slot
+     * @param slots
+     *            the slots of the bucket's words, if they fit
+     * @return true iff the words fit
+     * @updates slots
+     */
+    private static boolean fits(int[] byBucket, int from, int count,
+            int[] hashOf, int displacement, int shift, String[] keys,
+            int[] slots) {
+        for (int k = 0; k < count; k++) {
+            int slot = slot(hashOf[byBucket[from + k]], displacement, shift);
+            if (keys[slot] != null) {
+                return false;
+            }
+            for (int j = 0; j < k; j++) {
+                if (slots[j] == slot) {
+                    return false;
+                }
+            }
+            slots[k] = slot;
+        }
+        return true;
+    }
+
+    /**
+     * Reports whether the word {@code text[offset, offset + length)}, whose
+     * {@code String.hashCode} is {@code hash}, is a stop word.
+     *
+     * @param text
+     *            the buffer holding the word
+     * @param offset
+     *            the index of the first character of the word
+     * @param length
+     *            the number of characters in the word
+     * @param hash
+     *            the hash of the word
+     * @return true iff the word is in this set
+     * @requires hash = WordCountTable.hash(text, offset, length)
+     */
+    public boolean contains(char[] text, int offset, int length, int hash) {
+        int bucket = (hash * BUCKET_MULTIPLIER) >>> this.bucketShift;
+        int slot = slot(hash, this.displacements[bucket], this.shift);
+        String key = this.keys[slot];
+        if (key == null || this.hashes[slot] != hash) {
+            return false;
+        }
+        if (WordCountTable.matches(key, text, offset, length)) {
+            return true;
+        }
+        for (String other : this.overflow) {
+            if (WordCountTable.matches(other, text, offset, length)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reports whether {@code word} is a stop word.
+     *
+     * @param word
+     *            the word
+     * @return true iff the word is in this set
+     */
+    public boolean contains(String word) {
+        assert word != null : "Violation of: word is not null";
+
+        char[] chars = word.toCharArray();
+        return this.contains(chars, 0, chars.length, word.hashCode());
+    }
+
+    /**
+     * Returns the stop words, sorted, so two equal sets give equal arrays.
+     *
+     * @return the stop words
+     */
+    String[] words() {
+        String[] words = new String[this.size];
+        int i = 0;
+        for (String key : this.keys) {
+            if (key != null) {
+                words[i] = key;
+                i++;
+            }
+        }
+        for (String word : this.overflow) {
+            words[i] = word;
+            i++;
+        }
+        Arrays.sort(words);
+        return words;
+    }
+
+    /**
+     * Returns the number of stop words.
+     *
+     * @return the size of this set
+     */
+    public int size() {
+        return this.size;
+    }
+
+}
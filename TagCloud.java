@@ -1,16 +1,18 @@
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.Closeable;
+import java.io.FileInputStream;
 import java.io.IOException;
-import java.util.AbstractMap;
-import java.util.Comparator;
-import java.util.HashMap;
+import java.io.InputStreamReader;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.HashSet;
-import java.util.Iterator;
-import java.util.PriorityQueue;
 import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Generates a Tag Cloud from a text file. The Tag Cloud lists the most frequent
@@ -24,58 +26,64 @@ import java.util.Scanner;
 public final class TagCloud {
 
     /**
-     * Private constructor so this utility class cannot be instantiated.
-     */
-    private TagCloud() {
-    }
-
-    /**
-     * Global integer for the minimum number of word occurrences in the file.
-     */
-    private static int min = 0;
-
-    /**
-     * Global integer for the maximum number of word occurrences in the file.
-     */
-    private static int max = 0;
-
-    /**
-     * A {@code Comparator}) class that compares AbstractMap.SimpleEntry<String,
-     * Integer> using the {@code compareTo(String)}) java.util method.
+     * A {@code HashSet} of separators with its compiled form.
      *
      * @author Hudson Arledge and Nik Anand
      *
      */
-    private static class Alphabetize
-            implements Comparator<AbstractMap.SimpleEntry<String, Integer>> {
-        @Override
-        public int compare(AbstractMap.SimpleEntry<String, Integer> o1,
-                AbstractMap.SimpleEntry<String, Integer> o2) {
-            return o1.getKey().compareTo(o2.getKey());
+    private static final class CompiledSeparators {
+
+        /**
+         * The set the separators were compiled from.
+         */
+        private final HashSet<Character> source;
+
+        /**
+         * The number of separators in {@code source} when it was compiled.
+         */
+        private final int size;
+
+        /**
+         * The compiled separators.
+         */
+        private final SeparatorSet set;
+
+        /**
+         * Constructor.
+         *
+         * @param source
+         *            the separator characters
+         */
+        CompiledSeparators(HashSet<Character> source) {
+            this.source = source;
+            this.size = source.size();
+            this.set = SeparatorSet.of(source);
         }
     }
 
     /**
-     * A {@code Comparator}) class that compares AbstractMap.SimpleEntry<String,
-     * Integer> using the {@code compareTo(Integer)}) java.util method.
-     *
-     * @author Hudson Arledge and Nik Anand
-     *
+     * The separators last passed to {@code nextWordOrSeparator} as a
+     * {@code HashSet}, compiled, or null. The entry is never changed, only
+     * replaced, so threads splitting with different sets recompile but never
+     * see a set they did not pass.
      */
-    private static class CountComparator
-            implements Comparator<AbstractMap.SimpleEntry<String, Integer>> {
-        @Override
-        public int compare(AbstractMap.SimpleEntry<String, Integer> o1,
-                AbstractMap.SimpleEntry<String, Integer> o2) {
-            return o2.getValue().compareTo(o1.getValue());
-        }
+    private static volatile CompiledSeparators lastSeparators;
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private TagCloud() {
     }
 
     /**
      * Returns the first "word" (maximal length string of characters not in
      * {@code separators}) or "separator string" (maximal length string of
      * characters in {@code separators}) in the given {@code text} starting at
-     * the given {@code position}.
+     * the given {@code position}. The set is compiled once and reused for as
+     * long as the same set, with as many characters, is passed; a set whose
+     * characters are changed in place without changing its size should be
+     * replaced by a new set, or compiled with {@code SeparatorSet.of} and
+     * passed to the method below, which returns the same strings.
      *
      * @param text
      *            the {@code String} from which to get the word or separator
@@ -110,54 +118,62 @@ public final class TagCloud {
         assert 0 <= position : "Violation of: 0 <= position";
         assert position < text.length() : "Violation of: position < |text|";
 
-        String output = "";
-        StringBuilder outputBuilder = new StringBuilder();
-        int index = position;
-        boolean loop = true;
-        //case for separator string
-        if (separators.contains(text.charAt(index))) {
-            //keeps adding characters to the StringBuilder until either a
-            //non-separator is read or the end of the string is reached
-            while (loop) {
-                outputBuilder.append(text.charAt(index));
-                index++;
-                if (index >= text.length()) {
-                    loop = false;
-                } else if (!separators.contains(text.charAt(index))) {
-                    loop = false;
-                }
-            }
-            //case for non-separator string
-        } else {
-            //keeps adding characters to the StringBuilder until either a
-            //separator is read or the end of the string is reached
-            while (loop) {
-                outputBuilder.append(text.charAt(index));
-                index++;
-                if (index >= text.length()) {
-                    loop = false;
-                } else if (separators.contains(text.charAt(index))) {
-                    loop = false;
-                }
-            }
+        CompiledSeparators compiled = lastSeparators;
+        if (compiled == null || compiled.source != separators
+                || compiled.size != separators.size()) {
+            compiled = new CompiledSeparators(separators);
+            lastSeparators = compiled;
         }
-        output = outputBuilder.toString();
-        //return the resulting word or separator
-        return output;
+        int end = Tokenizer.runEnd(text, position, text.length(),
+                compiled.set);
+        return text.substring(position, end);
+    }
 
+    /**
+     * Returns the first "word" (maximal length string of characters not in
+     * {@code separators}) or "separator string" (maximal length string of
+     * characters in {@code separators}) in the given {@code text} starting at
+     * the given {@code position}, as the method above does, with the
+     * separators already compiled.
+     *
+     * @param text
+     *            the {@code String} from which to get the word or separator
+     *            string
+     * @param position
+     *            the starting index
+     * @param separators
+     *            the separator characters
+     * @return the first word or separator string found in {@code text} starting
+     *         at index {@code position}
+     * @requires 0 <= position < |text|
+     */
+    public static String nextWordOrSeparator(String text, int position,
+            SeparatorSet separators) {
+        assert text != null : "Violation of: text is not null";
+        assert separators != null : "Violation of: separators is not null";
+        assert 0 <= position : "Violation of: 0 <= position";
+        assert position < text.length() : "Violation of: position < |text|";
+
+        //only the boundary is found by the tokenizer; the one copy made here
+        //is the String this method is specified to return
+        int end = Tokenizer.runEnd(text, position, text.length(), separators);
+        return text.substring(position, end);
     }
 
     /**
-     * Generates a {@code Map<String, Integer>} containing each word in the text
-     * file {@code in} as keys and their number of occurrences in {@code in} as
+     * Generates a {@code WordCountTable} containing each word in the text file
+     * {@code in} as keys and their number of occurrences in {@code in} as
      * values.
      *
      * @param bufferedReader
      *            the input stream to the text file from which the map is
      *            generated
-     * @param n
-     *            the number of words in the cloud tag as specified by the user
-     * @return a {@code AbstractMap<String, Integer>} containing each word in
+     * @param config
+     *            the configuration of the cloud tag, including the number of
+     *            words specified by the user
+     * @param metrics
+     *            the metrics the reading and counting are recorded into
+     * @return a {@code WordCountTable} containing each word in
      *         {@code in} as keys and their number of occurrences in {@code in}
      *         as values
      * @ensures [the returned map contains all the words in the input file as
@@ -165,91 +181,22 @@ public final class TagCloud {
      *          appears in the text file] and [n is not larger than the number
      *          of words in the file]
      */
-    private static AbstractMap<String, Integer> generateMapWithCount(
-            BufferedReader bufferedReader, int n) {
-        //Create set of separators
-        HashSet<Character> separators = new HashSet<>();
-        separators.add(' ');
-        separators.add(',');
-        separators.add('/');
-        separators.add('.');
-        separators.add('-');
-        separators.add('!');
-        separators.add('?');
-        separators.add('_');
-        separators.add('\'');
-        separators.add('\"');
-        separators.add('`');
-        separators.add('*');
-        separators.add('(');
-        separators.add(')');
-        separators.add('[');
-        separators.add(']');
-        separators.add('{');
-        separators.add('}');
-        separators.add('\\');
-        separators.add('|');
-        separators.add('<');
-        separators.add('>');
-        separators.add('~');
-        separators.add('^');
-        separators.add('@');
-        separators.add('#');
-        separators.add('$');
-        separators.add('&');
-        separators.add('+');
-        separators.add('=');
-        separators.add(';');
-        separators.add(':');
+    private static WordCountTable generateMapWithCount(
+            BufferedReader bufferedReader, TagCloudConfig config,
+            PipelineMetrics metrics) {
         //declare map to be generated
-        AbstractMap<String, Integer> wordCountMap = new HashMap<String, Integer>();
-        //generate map
-        int count = 0;
+        WordCountTable wordCountMap;
+        //generate map, reading until the end of the stream rather than while
+        //ready() so a slow stream is not cut short
         try {
-            while (bufferedReader.ready()) {
-                String text = bufferedReader.readLine().toLowerCase();
-                int i = 0;
-                //read each word or separator in the line, and store any non-separators
-                //in the queue.
-                while (i < text.length()) {
-                    String key = nextWordOrSeparator(text, i, separators);
-                    if (key.contains(" ") || key.contains(",")
-                            || key.contains("/") || key.contains(".")
-                            || key.contains("-") || key.contains("!")
-                            || key.contains("?") || key.contains("_")
-                            || key.contains("\'") || key.contains("\"")
-                            || key.contains("`") || key.contains("*")
-                            || key.contains("(") || key.contains(")")
-                            || key.contains("[") || key.contains("]")
-                            || key.contains("{") || key.contains("}")
-                            || key.contains("\\") || key.contains("|")
-                            || key.contains("<") || key.contains(">")
-                            || key.contains("~") || key.contains("^")
-                            || key.contains("@") || key.contains("#")
-                            || key.contains("$") || key.contains("&")
-                            || key.contains("+") || key.contains("=")
-                            || key.contains(";") || key.contains(":")) {
-                        i += key.length();
-                    } else {
-                        //store all non-separators and their respective counts in
-                        //the map
-                        if (wordCountMap.containsKey(key)) {
-                            int value = wordCountMap.get(key) + 1;
-                            wordCountMap.replace(key, value);
-                        } else {
-                            wordCountMap.put(key, 1);
-                        }
-                        i += key.length();
-                        count++;
-                    }
-                }
-            }
+            wordCountMap = new TagCloudEngine(config).count(bufferedReader,
+                    metrics);
         } catch (IOException e) {
             System.err.println("Error reading file");
             return null;
         }
         //print error message if n is too big
-        if (count < n) {
+        if (wordCountMap.total() < config.words()) {
             System.out.println(
                     "Error: n is larger than the number of words in the file");
         }
@@ -257,213 +204,333 @@ public final class TagCloud {
     }
 
     /**
-     * Returns a {@code PriorityQueue<AbstractMap.SimpleEntry<String, Integer>>}
-     * containing the elements of {@code map}. The PriorityQueue is ordered
-     * based on {@code c}.
+     * Generates a {@code WordCountTable} containing each word in the text file
+     * {@code channel} as keys and their number of occurrences in
+     * {@code channel} as values. The file is memory-mapped and decoded as
+     * UTF-8 in large chunks instead of line by line, and a file of at least
+     * {@code TagCloudEngine.PARALLEL_THRESHOLD} bytes is counted on every
+     * available core. A snapshot written by {@code CountSnapshot} is loaded
+     * instead of being tokenized.
      *
-     * @param map
-     *            the map whose elements are used to create the PriorityQueue
-     * @param c
-     *            the ordering for the PriorityQueue
-     * @return a {@code PriorityQueue<AbstractMap.SimpleEntry<String, Integer>>}
-     *         containing the elements of {@code map} with ordering from
-     *         {@code c}
-     * @ensures [the PriorityQueue is in ordering c and it contains all of the
-     *          elements of the map]
+     * @param channel
+     *            the text file from which the map is generated
+     * @param config
+     *            the configuration of the cloud tag, including the number of
+     *            words specified by the user
+     * @param metrics
+     *            the metrics the reading and counting are recorded into
+     * @return a {@code WordCountTable} containing each word in
+     *         {@code channel} as keys and their number of occurrences in
+     *         {@code channel} as values
+     * @ensures [the returned map contains all the words in the input file as
+     *          keys, and each key's value is the number of times that key
+     *          appears in the text file] and [n is not larger than the number
+     *          of words in the file]
      */
-    private static PriorityQueue<AbstractMap.SimpleEntry<String, Integer>> countPQueue(
-            AbstractMap<String, Integer> map, CountComparator c) {
-        PriorityQueue<AbstractMap.SimpleEntry<String, Integer>> sorter;
-        sorter = new PriorityQueue<AbstractMap.SimpleEntry<String, Integer>>(c);
-
-        Iterator<String> iter = map.keySet().iterator();
-        while (iter.hasNext()) {
-            String key = iter.next();
-            AbstractMap.SimpleEntry<String, Integer> pair;
-            pair = new AbstractMap.SimpleEntry<String, Integer>(key,
-                    map.get(key));
-            sorter.add(pair);
+    private static WordCountTable generateMapWithCount(FileChannel channel,
+            TagCloudConfig config, PipelineMetrics metrics) {
+        //declare map to be generated
+        WordCountTable wordCountMap;
+        //generate map, splitting large files across all available cores
+        int threads = Runtime.getRuntime().availableProcessors();
+        try {
+            if (threads > 1
+                    && channel.size() >= TagCloudEngine.PARALLEL_THRESHOLD) {
+                ForkJoinPool pool = new ForkJoinPool(threads);
+                try {
+                    wordCountMap = new TagCloudEngine(config, pool)
+                            .count(channel, metrics);
+                } finally {
+                    pool.shutdown();
+                }
+            } else {
+                wordCountMap = new TagCloudEngine(config).count(channel,
+                        metrics);
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading file");
+            return null;
         }
-        return sorter;
-    }
-
-    /**
-     * Returns a {@code PriorityQueue<AbstractMap.SimpleEntry<String, Integer>>}
-     * containing the elements of {@code map}. The PriorityQueue is ordered
-     * based on {@code c}.
-     *
-     * @param map
-     *            the map whose elements are used to create the PriorityQueue
-     * @param c
-     *            the ordering for the PriorityQueue
-     * @return a {@code PriorityQueue<AbstractMap.SimpleEntry<String, Integer>>}
-     *         containing the elements of {@code map} with ordering from
-     *         {@code c}
-     * @ensures [the alphaQueue is in ordering c and it contains all of the
-     *          elements of the map]
-     */
-    private static PriorityQueue<AbstractMap.SimpleEntry<String, Integer>> alphaPQueue(
-            AbstractMap<String, Integer> map, Alphabetize c) {
-        PriorityQueue<AbstractMap.SimpleEntry<String, Integer>> sorter;
-        sorter = new PriorityQueue<AbstractMap.SimpleEntry<String, Integer>>(c);
-
-        Iterator<String> iter = map.keySet().iterator();
-        while (iter.hasNext()) {
-            String key = iter.next();
-            AbstractMap.SimpleEntry<String, Integer> pair;
-            pair = new AbstractMap.SimpleEntry<String, Integer>(key,
-                    map.get(key));
-            sorter.add(pair);
+        //print error message if n is too big
+        if (wordCountMap.total() < config.words()) {
+            System.out.println(
+                    "Error: n is larger than the number of words in the file");
         }
-        return sorter;
+        return wordCountMap;
     }
 
     /**
-     * Generates and returns a {@code AbstractMap<String, Integer>} containing
-     * the first n elements of {@code sorter}.
+     * Returns the cloud of the input, counted approximately in fixed memory.
      *
-     * @param sorter
-     *            the PriorityQueue whose elements are used to make the
-     *            AbstractMap
-     * @param n
-     *            the number of elements to be taken from {@code sorter}
-     * @updates sorter
-     *
-     * @ensures [the PriorityQueue only contains elements that were not removed]
-     *          and [the AbstractMap being returned contains the first n
-     *          elements of the sorter in its original state]
-     * @requires |sorter| > 0 and n <= |sorter|
-     * @return a {@code AbstractMap<String, Integer>} containing the first n
-     *         elements of {@code sorter}
+     * @param channel
+     *            the input file, or null if the input is a stream
+     * @param bufferedReader
+     *            the input stream, used if {@code channel} is null
+     * @param config
+     *            the configuration of the cloud tag, with an approximation
+     * @param fileName
+     *            the name of the given input file
+     * @param metrics
+     *            the metrics the reading and counting are recorded into
+     * @return the cloud, or null if the input cannot be read
      */
-    private static AbstractMap<String, Integer> generateShortenedMap(
-            PriorityQueue<AbstractMap.SimpleEntry<String, Integer>> sorter,
-            int n) {
-
-        AbstractMap<String, Integer> map = new HashMap<String, Integer>();
-        AbstractMap.SimpleEntry<String, Integer> currentPair = sorter.poll();
-        max = currentPair.getValue();
-        map.put(currentPair.getKey(), currentPair.getValue());
-        int i = 1;
-        while (i < n) {
-            AbstractMap.SimpleEntry<String, Integer> pair = sorter.poll();
-            map.put(pair.getKey(), pair.getValue());
-            min = pair.getValue();
-            i++;
+    private static TagCloudResult approximateCloud(FileChannel channel,
+            BufferedReader bufferedReader, TagCloudConfig config,
+            String fileName, PipelineMetrics metrics) {
+        TagCloudEngine engine = new TagCloudEngine(config);
+        TagCloudResult cloud;
+        try {
+            if (channel != null) {
+                cloud = engine.cloud(channel, fileName, metrics);
+            } else {
+                cloud = engine.cloud(bufferedReader, fileName, metrics);
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading file");
+            return null;
+        }
+        //print error message if n is too big
+        if (cloud.total() < config.words()) {
+            System.out.println(
+                    "Error: n is larger than the number of words in the file");
         }
-        return map;
+        return cloud;
     }
 
     /**
-     * Outputs to a given file {@code out} HTML code that prints words from
-     * {@code alphaSorter} in order, adjusting the word's font size based on
-     * occurrences and making the occurrences of a word visible by hovering it
-     * with the cursor.
+     * Counts the words of the input, selects the most frequent of them and
+     * writes their tag cloud to {@code output}. The time spent is recorded if
+     * {@code -Dtagcloud.metrics} names a report file, or - for standard
+     * output, and {@code -Dtagcloud.progress=seconds} also prints progress
+     * lines while the input is read. If {@code config} has an approximation
+     * the words are counted in fixed memory and the cloud shows the range
+     * each count is in. The same cloud is then written in each of
+     * {@code formats} other than HTML, beside {@code page}.
      *
-     * @param bufferedWriter
-     *            the output stream to the HTML file
-     * @param alphaSorter
-     *            an alphabetically sorted PriorityQueue of words with counts
-     * @param n
-     *            the given number of words in cloud tag
+     * @param channel
+     *            the input file, or null if the input is a stream
+     * @param bufferedReader
+     *            the input stream, used if {@code channel} is null
+     * @param output
+     *            the HTML file
+     * @param page
+     *            the path of the HTML file
+     * @param formats
+     *            the formats the cloud is written in
+     * @param config
+     *            the configuration of the cloud tag
      * @param fileName
      *            the name of the given input file
-     * @updates alphaSorter
-     * @ensures [a valid html file is generated to the given output filename]
-     *          and [alphaSorter has no elements]
      */
-    private static void outputTagCloud(BufferedWriter bufferedWriter,
-            PriorityQueue<AbstractMap.SimpleEntry<String, Integer>> alphaSorter,
-            int n, String fileName) {
+    private static void outputTagCloud(FileChannel channel,
+            BufferedReader bufferedReader, FileChannel output, Path page,
+            CloudFormat[] formats, TagCloudConfig config, String fileName) {
+        String report = System.getProperty("tagcloud.metrics");
+        PipelineMetrics metrics = PipelineMetrics.DISABLED;
+        if (report != null) {
+            metrics = PipelineMetrics
+                    .start(Math.max(0, Long.getLong("tagcloud.progress", 0)));
+        }
 
-        //output header
-        try {
-            bufferedWriter.write("<html> \n");
-        } catch (IOException e) {
-            System.err.println("Error writing to file");
-            return;
+        TagCloudEngine engine = new TagCloudEngine(config);
+        TagCloudResult cloud;
+        if (config.approximation() > 0) {
+            //count and select the n most frequent words in fixed memory
+            cloud = approximateCloud(channel, bufferedReader, config,
+                    fileName, metrics);
+        } else {
+            //generate map of all terms and their respective counts from input
+            //file
+            WordCountTable bigMap;
+            if (channel != null) {
+                bigMap = generateMapWithCount(channel, config, metrics);
+            } else {
+                bigMap = generateMapWithCount(bufferedReader, config, metrics);
+            }
+            if (bigMap == null) {
+                return;
+            }
+
+            //select the n most frequent words of the big map
+            cloud = engine.cloud(bigMap, fileName, metrics);
         }
-        try {
-            bufferedWriter.write("<head> " + "<title> Top " + n + "words in "
-                    + fileName + "</title>\n");
-        } catch (IOException e) {
-            System.err.println("Error writing to file");
+        if (cloud == null) {
             return;
         }
+
+        //render the HTML code for the tag cloud and write it to the output
+        //file in one go
         try {
-            bufferedWriter.write(
-                    "<link href=\"http://cse.osu.edu/software/2231/web-sw2/"
-                            + "assignments/projects/tag-cloud-generator/data/"
-                            + "tagcloud.css\" rel=\"stylesheet\" type=\"text/css\">\n");
+            engine.writeHtml(cloud, output, metrics);
         } catch (IOException e) {
             System.err.println("Error writing to file");
-            return;
         }
-        try {
-            bufferedWriter.write("</head>\n");
-        } catch (IOException e) {
-            System.err.println("Error writing to file");
-            return;
+        for (CloudFormat format : formats) {
+            if (format != CloudFormats.HTML) {
+                try {
+                    CloudFormats.write(cloud, format,
+                            CloudFormats.fileFor(page, format));
+                } catch (IOException e) {
+                    System.err.println("Error writing to file");
+                }
+            }
         }
 
-        //output tag cloud
+        if (report != null) {
+            try {
+                metrics.report(report, fileName);
+            } catch (IOException e) {
+                System.err.println("Error writing metrics report");
+            }
+        }
+    }
+
+    /**
+     * Returns the approximation given by {@code -Dtagcloud.epsilon=fraction},
+     * the largest error of a count as a fraction of the number of words, or
+     * 0 to count exactly if it is not given.
+     *
+     * @return the approximation, or -1 if it is not a number in [0, 1)
+     */
+    private static double approximation() {
+        String epsilon = System.getProperty("tagcloud.epsilon");
+        if (epsilon == null) {
+            return 0;
+        }
+        double approximation;
         try {
-            bufferedWriter.write("<body data-gr-c-s-loaded=\"true\">\n");
-        } catch (IOException e) {
-            System.err.println("Error writing to file");
-            return;
+            approximation = Double.parseDouble(epsilon);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+        if (!(0 <= approximation && approximation < 1)) {
+            return -1;
+        }
+        return approximation;
+    }
+
+    /**
+     * Returns the font scale given by {@code -Dtagcloud.scale=name}, one of
+     * linear, log and quantile, or linear, as in the original generator, if
+     * it is not given.
+     *
+     * @return the scale, or null if it is not one of those
+     */
+    static FontScale scale() {
+        String name = System.getProperty("tagcloud.scale");
+        if (name == null) {
+            return FontScale.LINEAR;
+        }
+        return FontScale.forName(name);
+    }
+
+    /**
+     * Returns the formats given by {@code -Dtagcloud.formats=names}, such as
+     * "json,svg", the cloud is written in besides the HTML output file, or
+     * none if it is not given.
+     *
+     * @return the formats, or null if a name is not that of a format
+     */
+    private static CloudFormat[] formats() {
+        String names = System.getProperty("tagcloud.formats");
+        if (names == null) {
+            return new CloudFormat[0];
         }
         try {
-            bufferedWriter.write(
-                    "<h2>Top " + n + " words in " + fileName + "</h2><hr>\n");
-        } catch (IOException e) {
-            System.err.println("Error writing to file");
-            return;
+            return CloudFormats.parse(names);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the encoding of the input file given by
+     * {@code -Dtagcloud.charset=name}, or UTF-8 if it is not given, whatever
+     * the platform's default charset.
+     *
+     * @return the charset, or null if it is not supported
+     */
+    static Charset charset() {
+        String name = System.getProperty("tagcloud.charset");
+        if (name == null) {
+            return StandardCharsets.UTF_8;
         }
         try {
-            bufferedWriter
-                    .write("<div class = \"cdiv\"> " + "<p class =\"cbox\">\n");
-        } catch (IOException e) {
-            System.err.println("Error writing to file");
-            return;
+            return Charset.forName(name);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the configuration of a cloud of {@code n} words of input in
+     * {@code charset}, with font sizes on {@code scale}, and the separators,
+     * stop words and phrases given by {@code -Dtagcloud.unicode},
+     * {@code -Dtagcloud.stopwords} and {@code -Dtagcloud.phrases}. A stop
+     * word list that cannot be read is reported and left out.
+     *
+     * @param n
+     *            the number of words in the cloud
+     * @param charset
+     *            the encoding of the input
+     * @param scale
+     *            the font scale
+     * @return the configuration
+     * @requires n >= 0
+     */
+    static TagCloudConfig configure(int n, Charset charset, FontScale scale) {
+        assert n >= 0 : "Violation of: n >= 0";
+        assert charset != null : "Violation of: charset is not null";
+        assert scale != null : "Violation of: scale is not null";
+
+        //-Dtagcloud.unicode=true splits words at every Unicode space,
+        //control character and punctuation mark, and
+        //-Dtagcloud.scale=log or quantile spreads the font sizes over
+        //skewed counts
+        TagCloudConfig config = TagCloudConfig.DEFAULT.withWords(n)
+                .withCharset(charset).withScale(scale);
+        if (Boolean.getBoolean("tagcloud.unicode")) {
+            config = config.withSeparators(SeparatorSet.unicode());
         }
-        while (alphaSorter.size() > 0) {
-            AbstractMap.SimpleEntry<String, Integer> pair = alphaSorter.poll();
-            final int a = 37;
-            int font = (a) * (pair.getValue() - min);
-            font /= (max - min);
-            final int b = 11;
-            font += b;
+        //-Dtagcloud.stopwords=english or a file leaves stop words out,
+        //and -Dtagcloud.phrases=n counts phrases of n words
+        config = config.withPhrases(Math.max(1, Math.min(
+                PhraseCounter.MAX_WORDS,
+                Integer.getInteger("tagcloud.phrases", 1))));
+        String stopList = System.getProperty("tagcloud.stopwords");
+        if (stopList != null) {
             try {
-                bufferedWriter.write("<span style=\"cursor:default\" class=\"f"
-                        + font + "\"" + " title=\"count: " + pair.getValue()
-                        + "\">" + pair.getKey() + "</span>\n");
+                config = config.withStopWords(
+                        BatchTagCloud.stopWords(stopList, config));
             } catch (IOException e) {
-                System.err.println("Error writing to file");
-                return;
+                System.err.println("Error reading stop words");
             }
-
-        }
-
-        try {
-            bufferedWriter.write("</p> </div> <body> </html>");
-        } catch (IOException e) {
-            System.err.println("Error writing to file");
-            return;
         }
+        return config;
     }
 
     /**
-     * Main method.
+     * Main method. Without arguments, prompts for an input file, an output
+     * file and the number of words; with arguments, runs
+     * {@code BatchTagCloud}.
      *
      * @param args
      *            the command line arguments
      *
      */
     public static void main(String[] args) {
-        //declare comparator objects
-        Alphabetize alphabetize = new Alphabetize();
-        CountComparator countCompare = new CountComparator();
+        //any command line arguments select the non-interactive batch mode
+        if (args.length > 0) {
+            BatchTagCloud.main(args);
+            return;
+        }
+
+        //-Dtagcloud.charset=name reads the input in another encoding
+        Charset charset = charset();
+        if (charset == null) {
+            System.out.println("Error: tagcloud.charset is not supported.");
+            return;
+        }
 
         //create console input and output streams
         Scanner scanner = new Scanner(System.in);
@@ -472,11 +539,23 @@ public final class TagCloud {
         System.out.println("Input File: ");
         String fileName = scanner.nextLine();
 
+        //regular files are memory-mapped; anything else, such as a pipe, is
+        //read as a stream
+        FileChannel channel = null;
         BufferedReader bufferedReader = null;
+        Closeable input = null;
 
         try {
-            bufferedReader = new BufferedReader(new FileReader(fileName));
-        } catch (FileNotFoundException e) {
+            if (Files.isRegularFile(Paths.get(fileName))) {
+                channel = FileChannel.open(Paths.get(fileName),
+                        StandardOpenOption.READ);
+                input = channel;
+            } else {
+                bufferedReader = new BufferedReader(new InputStreamReader(
+                        new FileInputStream(fileName), charset));
+                input = bufferedReader;
+            }
+        } catch (IOException e) {
             System.err.println("Error opening file");
             scanner.close();
             return;
@@ -486,14 +565,16 @@ public final class TagCloud {
         System.out.println("Output File: ");
         String fileNameOut = scanner.nextLine();
 
-        BufferedWriter bufferedWriter = null;
+        FileChannel output = null;
         try {
-            bufferedWriter = new BufferedWriter(new FileWriter(fileNameOut));
+            output = FileChannel.open(Paths.get(fileNameOut),
+                    StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
         } catch (IOException e) {
             System.err.println("Error creating file");
             scanner.close();
             try {
-                bufferedReader.close();
+                input.close();
             } catch (IOException e1) {
                 System.err.println("Error closing file");
                 return;
@@ -506,43 +587,27 @@ public final class TagCloud {
         //note that this will report an error if the user does not enter an integer
         int n = scanner.nextInt();
 
-        //generate map of all terms and their respective counts from input file
-
-        AbstractMap<String, Integer> bigMap = generateMapWithCount(
-                bufferedReader, n);
-        if (bigMap == null) {
-            scanner.close();
-            try {
-                bufferedWriter.close();
-            } catch (IOException e) {
-                System.err.println("Error closing file");
-                return;
-            }
-            return;
-        }
-
-        //check for user error for the value of n
-        boolean a = n >= 0;
-        if (!a) {
+        //check for user error for the value of n before counting anything
+        double epsilon = approximation();
+        CloudFormat[] formats = formats();
+        FontScale scale = scale();
+        if (n < 0) {
             System.out.println("Error: n is negative.");
+        } else if (epsilon < 0) {
+            System.out.println("Error: tagcloud.epsilon is not in [0, 1).");
+        } else if (scale == null) {
+            System.out.println(
+                    "Error: tagcloud.scale is not linear, log or quantile.");
+        } else if (formats == null) {
+            System.out.println("Error: tagcloud.formats names a format other"
+                    + " than " + CloudFormats.names() + ".");
         } else {
-
-            //generate a PriorityQueue sorted by count with the big map
-            PriorityQueue<AbstractMap.SimpleEntry<String, Integer>> countSorter;
-            countSorter = countPQueue(bigMap, countCompare);
-
-            //generate a map with n words, using up the PriorityQueue
-            AbstractMap<String, Integer> smallMap = new HashMap<String, Integer>();
-            if (countSorter.size() > 0) {
-                smallMap = generateShortenedMap(countSorter, n);
-            }
-
-            //generate a PriorityQueue sorted alphabetically with the new map
-            PriorityQueue<AbstractMap.SimpleEntry<String, Integer>> aSorter = alphaPQueue(
-                    smallMap, alphabetize);
-
-            //output HTML code for the tag cloud to the output file
-            outputTagCloud(bufferedWriter, aSorter, n, fileName);
+            TagCloudConfig config = configure(n, charset, scale)
+                    .withApproximation(epsilon);
+            //-Dtagcloud.formats=json,svg also writes the cloud in those
+            //formats, beside the output file
+            outputTagCloud(channel, bufferedReader, output,
+                    Paths.get(fileNameOut), formats, config, fileName);
         }
 
         /*
@@ -551,13 +616,13 @@ public final class TagCloud {
 
         scanner.close();
         try {
-            bufferedReader.close();
+            input.close();
         } catch (IOException e) {
             System.err.println("Error closing file");
             return;
         }
         try {
-            bufferedWriter.close();
+            output.close();
         } catch (IOException e) {
             System.err.println("Error writing to file");
             return;
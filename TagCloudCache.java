@@ -0,0 +1,725 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers the clouds of a {@code TagCloudEngine} by the content of their
+ * input, so a document that has been counted before gets its cloud, or its
+ * HTML page, without being tokenized again. The key of a cloud is the SHA-256
+ * of the engine's configuration followed by the bytes of the input file, so a
+ * renamed or copied file is still found, and a file whose bytes changed is
+ * not.
+ *
+ * <p>
+ * Clouds are kept in memory in least recently used order, up to an estimated
+ * number of bytes, and, if the cache has a directory, also written there, so
+ * a cloud evicted from memory, or made by an earlier process, is read back
+ * rather than counted. The directory is never trimmed. If several threads ask
+ * for the cloud of the same content at once, one of them counts it and the
+ * others wait for its result.
+ *
+ * @author Hudson Arledge and Nik Anand
+ *
+ */
+public final class TagCloudCache {
+
+    /**
+     * Estimated bytes of memory used by a cached cloud besides its words.
+     */
+    private static final int ENTRY_OVERHEAD = 256;
+
+    /**
+     * Estimated bytes of memory used by a word of a cached cloud besides its
+     * characters.
+     */
+    private static final int WORD_OVERHEAD = 80;
+
+    /**
+     * Number of bytes of the input hashed at a time.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * The first bytes of a cloud written to the directory: "TCC" and the
+     * version of the format.
+     */
+    private static final int MAGIC = 0x54434301;
+
+    /**
+     * Number of bytes of a cached cloud before its first word: the magic
+     * number, the total, the number of distinct words and the number of
+     * words.
+     */
+    private static final int HEADER_SIZE = 3 * Integer.BYTES + Long.BYTES;
+
+    /**
+     * Number of bytes of the fields of each word of a cached cloud besides
+     * its UTF-8 text: its length, count and error.
+     */
+    private static final int WORD_FIELDS_SIZE = Integer.BYTES + 2 * Long.BYTES;
+
+    /**
+     * Digits of a key.
+     */
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * The engine that counts the clouds not found.
+     */
+    private final TagCloudEngine engine;
+
+    /**
+     * The estimated bytes of memory the cached clouds may use.
+     */
+    private final long capacity;
+
+    /**
+     * The directory clouds are also kept in, or null for none.
+     */
+    private final Path directory;
+
+    /**
+     * The SHA-256 of the configuration of the engine, which starts the
+     * digest of every key.
+     */
+    private final byte[] configDigest;
+
+    /**
+     * The cached clouds and their estimated sizes, least recently used first.
+     */
+    private final LinkedHashMap<String, Entry> clouds;
+
+    /**
+     * The clouds being counted, by key.
+     */
+    private final ConcurrentHashMap<String, CompletableFuture<TagCloudResult>>
+            pending;
+
+    /**
+     * The estimated bytes of memory used by the cached clouds.
+     */
+    private long bytes;
+
+    /**
+     * The number of clouds found in memory.
+     */
+    private final AtomicLong hits;
+
+    /**
+     * The number of clouds found in the directory.
+     */
+    private final AtomicLong diskHits;
+
+    /**
+     * The number of clouds found being counted for another request.
+     */
+    private final AtomicLong shared;
+
+    /**
+     * The number of clouds counted.
+     */
+    private final AtomicLong misses;
+
+    /**
+     * The number of clouds evicted from memory.
+     */
+    private final AtomicLong evictions;
+
+    /**
+     * A cached cloud.
+     */
+    private static final class Entry {
+
+        /**
+         * The cloud.
+         */
+        private final TagCloudResult cloud;
+
+        /**
+         * The estimated bytes of memory used by the cloud.
+         */
+        private final long size;
+
+        /**
+         * Constructor.
+         *
+         * @param cloud
+         *            the cloud
+         */
+        Entry(TagCloudResult cloud) {
+            this.cloud = cloud;
+            long estimate = ENTRY_OVERHEAD;
+            for (int i = 0; i < cloud.size(); i++) {
+                estimate += WORD_OVERHEAD + 2L * cloud.word(i).word().length();
+            }
+            this.size = estimate;
+        }
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param engine
+     *            the engine that counts the clouds not found
+     * @param capacity
+     *            the estimated bytes of memory the cached clouds may use
+     * @param directory
+     *            the directory clouds are also kept in, created if need be,
+     *            or null to keep them in memory only
+     * @throws IOException
+     *             if the directory cannot be created
+     * @requires capacity >= 0
+     */
+    public TagCloudCache(TagCloudEngine engine, long capacity, Path directory)
+            throws IOException {
+        assert engine != null : "Violation of: engine is not null";
+        assert capacity >= 0 : "Violation of: capacity >= 0";
+
+        this.engine = engine;
+        this.capacity = capacity;
+        this.directory = directory;
+        if (directory != null) {
+            Files.createDirectories(directory);
+        }
+        this.configDigest = digestOf(engine.config());
+        //in access order, so the eldest entry is the least recently used
+        this.clouds = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+        this.pending = new ConcurrentHashMap<String,
+                CompletableFuture<TagCloudResult>>();
+        this.bytes = 0;
+        this.hits = new AtomicLong();
+        this.diskHits = new AtomicLong();
+        this.shared = new AtomicLong();
+        this.misses = new AtomicLong();
+        this.evictions = new AtomicLong();
+    }
+
+    /**
+     * Returns a new SHA-256 digest.
+     *
+     * @return the digest
+     */
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            //every Java platform is required to have SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns the SHA-256 of everything in {@code config} that changes a
+     * cloud: the number of words, the separators, case folding, the font
+     * range, the approximation, the stop words, the words per phrase and the
+     * charset.
+     *
+     * @param config
+     *            the configuration
+     * @return the digest of the configuration
+     */
+    private static byte[] digestOf(TagCloudConfig config) {
+        ByteBuffer fields = ByteBuffer.allocate(Integer.BYTES * 5
+                + Long.BYTES + 1);
+        fields.putInt(MAGIC);
+        fields.putInt(config.words());
+        fields.putInt(config.minFont());
+        fields.putInt(config.maxFont());
+        fields.putInt(config.phrases());
+        fields.putLong(Double.doubleToLongBits(config.approximation()));
+        fields.put((byte) (config.foldsCase() ? 1 : 0));
+        MessageDigest digest = sha256();
+        digest.update(fields.array());
+        digest.update(config.charset().name()
+                .getBytes(StandardCharsets.UTF_8));
+        //every code point, as a bit set, so equal sets built differently
+        //give the same key
+        SeparatorSet separators = config.separators();
+        byte[] bits = new byte[(Character.MAX_CODE_POINT + 1) / Byte.SIZE];
+        for (int c = 0; c <= Character.MAX_CODE_POINT; c++) {
+            if (separators.contains(c)) {
+                bits[c >>> 3] |= (byte) (1 << (c & 7));
+            }
+        }
+        digest.update(bits);
+        if (config.stopWords() != null) {
+            for (String word : config.stopWords().words()) {
+                digest.update(word.getBytes(StandardCharsets.UTF_8));
+                //a separator no word contains, so lists cannot run together
+                digest.update((byte) 0xFF);
+            }
+        }
+        return digest.digest();
+    }
+
+    /**
+     * Returns the key of the cloud of the file {@code channel} with this
+     * cache's configuration: the SHA-256 of the configuration and the
+     * bytes of the file, in hex.
+     *
+     * @param channel
+     *            the file
+     * @return the key
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    public String key(FileChannel channel) throws IOException {
+        assert channel != null : "Violation of: channel is not null";
+
+        MessageDigest digest = sha256();
+        digest.update(this.configDigest);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        long position = 0;
+        int read = channel.read(buffer, position);
+        while (read >= 0) {
+            position += read;
+            buffer.flip();
+            digest.update(buffer);
+            buffer.clear();
+            read = channel.read(buffer, position);
+        }
+        byte[] hash = digest.digest();
+        char[] hex = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            hex[2 * i] = HEX[(hash[i] >>> 4) & 0xF];
+            hex[2 * i + 1] = HEX[hash[i] & 0xF];
+        }
+        return new String(hex);
+    }
+
+    /**
+     * Returns the cloud of the text file {@code file}, titled with its name,
+     * from the cache if its content has been counted before.
+     *
+     * @param file
+     *            the text file or snapshot
+     * @return the cloud
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    public TagCloudResult cloud(Path file) throws IOException {
+        assert file != null : "Violation of: file is not null";
+
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            return this.cloud(channel, file.toString(),
+                    PipelineMetrics.DISABLED);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Returns the cloud of the text file {@code channel}, from the cache if
+     * its content has been counted before. The file must not change during
+     * the call.
+     *
+     * @param channel
+     *            the text file or snapshot
+     * @param title
+     *            the name of the input
+     * @param metrics
+     *            the metrics to record into if the file is counted
+     * @return the cloud
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    public TagCloudResult cloud(FileChannel channel, String title,
+            PipelineMetrics metrics) throws IOException {
+        assert channel != null : "Violation of: channel is not null";
+        assert title != null : "Violation of: title is not null";
+        assert metrics != null : "Violation of: metrics is not null";
+
+        String key = this.key(channel);
+        while (true) {
+            TagCloudResult cached = this.find(key);
+            if (cached != null) {
+                return retitled(cached, title);
+            }
+            CompletableFuture<TagCloudResult> mine =
+                    new CompletableFuture<TagCloudResult>();
+            CompletableFuture<TagCloudResult> running = this.pending
+                    .putIfAbsent(key, mine);
+            if (running == null) {
+                return this.count(key, channel, title, metrics, mine);
+            }
+            try {
+                TagCloudResult counted = running.get();
+                this.shared.incrementAndGet();
+                return retitled(counted, title);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for "
+                        + "the cloud");
+            } catch (ExecutionException e) {
+                //the other request could not count it, so try again, most
+                //likely counting it here
+                continue;
+            }
+        }
+    }
+
+    /**
+     * Counts the cloud of {@code channel}, caches it under {@code key} and
+     * completes {@code future} with it, for any other request for the same
+     * key.
+     *
+     * @param key
+     *            the key of the cloud
+     * @param channel
+     *            the text file or snapshot
+     * @param title
+     *            the name of the input
+     * @param metrics
+     *            the metrics to record into
+     * @param future
+     *            the future registered for the key in {@code pending}
+     * @return the cloud
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    private TagCloudResult count(String key, FileChannel channel,
+            String title, PipelineMetrics metrics,
+            CompletableFuture<TagCloudResult> future) throws IOException {
+        try {
+            //the cloud may have been cached after the last look and before
+            //the future was registered
+            TagCloudResult cloud = this.find(key);
+            if (cloud == null) {
+                this.misses.incrementAndGet();
+                cloud = this.engine.cloud(channel, title, metrics);
+                this.remember(key, cloud);
+                this.store(key, cloud);
+            }
+            future.complete(cloud);
+            return retitled(cloud, title);
+        } catch (IOException | RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            this.pending.remove(key, future);
+        }
+    }
+
+    /**
+     * Returns the HTML page of the cloud of the text file {@code file},
+     * titled with its name, from the cache if its content has been counted
+     * before.
+     *
+     * @param file
+     *            the text file or snapshot
+     * @return the UTF-8 bytes of the page
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    public byte[] html(Path file) throws IOException {
+        return this.engine.render(this.cloud(file));
+    }
+
+    /**
+     * Returns {@code cloud} with the title {@code title}.
+     *
+     * @param cloud
+     *            the cloud
+     * @param title
+     *            the title
+     * @return the cloud, or a copy of it with the title
+     */
+    private static TagCloudResult retitled(TagCloudResult cloud,
+            String title) {
+        if (cloud.title().equals(title)) {
+            return cloud;
+        }
+        return new TagCloudResult(cloud.config(), title, cloud.top(),
+                cloud.total(), cloud.distinct());
+    }
+
+    /**
+     * Returns the cached cloud with key {@code key} from memory, or else from
+     * the directory, counting the hit, or null if it is not cached.
+     *
+     * @param key
+     *            the key
+     * @return the cloud, or null
+     */
+    private TagCloudResult find(String key) {
+        synchronized (this.clouds) {
+            Entry entry = this.clouds.get(key);
+            if (entry != null) {
+                this.hits.incrementAndGet();
+                return entry.cloud;
+            }
+        }
+        TagCloudResult cloud = this.load(key);
+        if (cloud != null) {
+            this.diskHits.incrementAndGet();
+            this.remember(key, cloud);
+        }
+        return cloud;
+    }
+
+    /**
+     * Caches {@code cloud} in memory under {@code key}, evicting the least
+     * recently used clouds until the cache is within its capacity.
+     *
+     * @param key
+     *            the key
+     * @param cloud
+     *            the cloud
+     */
+    private void remember(String key, TagCloudResult cloud) {
+        Entry entry = new Entry(cloud);
+        synchronized (this.clouds) {
+            Entry old = this.clouds.put(key, entry);
+            if (old != null) {
+                this.bytes -= old.size;
+            }
+            this.bytes += entry.size;
+            Iterator<Map.Entry<String, Entry>> eldest = this.clouds.entrySet()
+                    .iterator();
+            while (this.bytes > this.capacity && eldest.hasNext()) {
+                Entry evicted = eldest.next().getValue();
+                eldest.remove();
+                this.bytes -= evicted.size;
+                this.evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Returns the file of the directory that holds the cloud with key
+     * {@code key}.
+     *
+     * @param key
+     *            the key
+     * @return the file
+     */
+    private Path fileOf(String key) {
+        return this.directory.resolve(key + ".cloud");
+    }
+
+    /**
+     * Writes {@code cloud} to the directory, if there is one, replacing the
+     * file of {@code key} at once so that no reader ever sees half of it.
+     * Failing to write is not an error, as the cloud can be counted again.
+     *
+     * @param key
+     *            the key
+     * @param cloud
+     *            the cloud
+     */
+    private void store(String key, TagCloudResult cloud) {
+        if (this.directory == null) {
+            return;
+        }
+        Path file = this.fileOf(key);
+        Path temporary = null;
+        try {
+            temporary = Files.createTempFile(this.directory, key, ".tmp");
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temporary)));
+            try {
+                out.writeInt(MAGIC);
+                out.writeLong(cloud.total());
+                out.writeInt(cloud.distinct());
+                out.writeInt(cloud.size());
+                for (int i = 0; i < cloud.size(); i++) {
+                    WordCount word = cloud.word(i);
+                    byte[] text = word.word().getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(text.length);
+                    out.write(text);
+                    out.writeLong(word.count());
+                    out.writeLong(word.error());
+                }
+            } finally {
+                out.close();
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            temporary = null;
+        } catch (IOException e) {
+            System.err.println("Error writing cached cloud " + file);
+        } finally {
+            if (temporary != null) {
+                try {
+                    Files.deleteIfExists(temporary);
+                } catch (IOException e) {
+                    //left for whoever clears the directory
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the cloud with key {@code key} read from the directory, or null
+     * if there is no directory, the cloud is not there, or its file cannot
+     * be read.
+     *
+     * @param key
+     *            the key
+     * @return the cloud, or null
+     */
+    private TagCloudResult load(String key) {
+        if (this.directory == null) {
+            return null;
+        }
+        Path file = this.fileOf(key);
+        try {
+            FileChannel channel = FileChannel.open(file,
+                    StandardOpenOption.READ);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    Channels.newInputStream(channel)));
+            try {
+                //files are replaced whole, never changed in place, so no
+                //word is longer than the bytes of the file still unread; a
+                //damaged length is caught before its buffer is allocated
+                long unread = channel.size() - HEADER_SIZE;
+                if (unread < 0 || in.readInt() != MAGIC) {
+                    return null;
+                }
+                long total = in.readLong();
+                int distinct = in.readInt();
+                int size = in.readInt();
+                if (size < 0 || size > this.engine.config().words()) {
+                    return null;
+                }
+                WordCount[] top = new WordCount[size];
+                for (int i = 0; i < size; i++) {
+                    int length = in.readInt();
+                    unread -= WORD_FIELDS_SIZE;
+                    if (length <= 0 || length > unread) {
+                        return null;
+                    }
+                    unread -= length;
+                    byte[] text = new byte[length];
+                    in.readFully(text);
+                    long count = in.readLong();
+                    long error = in.readLong();
+                    top[i] = new WordCount(
+                            new String(text, StandardCharsets.UTF_8), count,
+                            error);
+                }
+                return new TagCloudResult(this.engine.config(), key, top,
+                        total, distinct);
+            } finally {
+                in.close();
+            }
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            //a damaged file is a miss; the cloud is counted and rewritten
+            return null;
+        }
+    }
+
+    /**
+     * Forgets the clouds cached in memory. Clouds in the directory are kept.
+     */
+    public void clear() {
+        synchronized (this.clouds) {
+            this.clouds.clear();
+            this.bytes = 0;
+        }
+    }
+
+    /**
+     * Returns the number of clouds cached in memory.
+     *
+     * @return the number of clouds
+     */
+    public int size() {
+        synchronized (this.clouds) {
+            return this.clouds.size();
+        }
+    }
+
+    /**
+     * Returns the estimated bytes of memory used by the clouds cached in
+     * memory.
+     *
+     * @return the estimated size of the clouds
+     */
+    public long bytes() {
+        synchronized (this.clouds) {
+            return this.bytes;
+        }
+    }
+
+    /**
+     * Returns the number of clouds found in memory.
+     *
+     * @return the number of memory hits
+     */
+    public long hits() {
+        return this.hits.get();
+    }
+
+    /**
+     * Returns the number of clouds read back from the directory.
+     *
+     * @return the number of directory hits
+     */
+    public long diskHits() {
+        return this.diskHits.get();
+    }
+
+    /**
+     * Returns the number of clouds that were being counted for another
+     * request and were waited for rather than counted again.
+     *
+     * @return the number of shared counts
+     */
+    public long shared() {
+        return this.shared.get();
+    }
+
+    /**
+     * Returns the number of clouds that had to be counted.
+     *
+     * @return the number of misses
+     */
+    public long misses() {
+        return this.misses.get();
+    }
+
+    /**
+     * Returns the number of clouds evicted from memory to stay within the
+     * capacity.
+     *
+     * @return the number of evictions
+     */
+    public long evictions() {
+        return this.evictions.get();
+    }
+
+    @Override
+    public String toString() {
+        return "cache: " + this.hits() + " hits, " + this.diskHits()
+                + " disk hits, " + this.shared() + " shared, "
+                + this.misses() + " misses, " + this.evictions()
+                + " evictions, " + this.size() + " clouds, " + this.bytes()
+                + " bytes";
+    }
+
+}
@@ -0,0 +1,369 @@
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The immutable settings of a {@code TagCloudEngine}: the separator
+ * characters, the number of words in a cloud, whether words are lower cased
+ * before counting, the range of font size classes, whether the words are
+ * counted exactly or approximately in fixed memory, the stop words left out,
+ * the number of words in each phrase counted, the encoding of the text files
+ * read, and how counts are scaled to font size classes. Each {@code with}
+ * method returns a copy with one setting changed, so a configuration can be
+ * shared freely between threads.
+ *
+ * @author Hudson Arledge and Nik Anand
+ *
+ */
+public final class TagCloudConfig {
+
+    /**
+     * The settings of the original tag cloud generator: the default
+     * separators, 100 words, lower cased, in font size classes f11 to f48 of
+     * the course style sheet scaled linearly, read as UTF-8.
+     */
+    public static final TagCloudConfig DEFAULT = new TagCloudConfig(
+            SeparatorSet.DEFAULT, 100, true, 11, 48, 0, null, 1,
+            StandardCharsets.UTF_8, FontScale.LINEAR);
+
+    /**
+     * The separator characters.
+     */
+    private final SeparatorSet separators;
+
+    /**
+     * The number of words in a cloud.
+     */
+    private final int words;
+
+    /**
+     * Whether words are lower cased before counting.
+     */
+    private final boolean foldCase;
+
+    /**
+     * The font size class of the least frequent word of a cloud.
+     */
+    private final int minFont;
+
+    /**
+     * The font size class of the most frequent word of a cloud.
+     */
+    private final int maxFont;
+
+    /**
+     * The largest error of an approximate count, as a fraction of the number
+     * of words, or 0 to count exactly.
+     */
+    private final double approximation;
+
+    /**
+     * The words left out, or null for none.
+     */
+    private final StopWords stopWords;
+
+    /**
+     * The number of consecutive words counted as one phrase.
+     */
+    private final int phrases;
+
+    /**
+     * The encoding of the text files read.
+     */
+    private final Charset charset;
+
+    /**
+     * How counts are mapped to font size classes.
+     */
+    private final FontScale scale;
+
+    /**
+     * Constructor.
+     *
+     * @param separators
+     *            the separator characters
+     * @param words
+     *            the number of words in a cloud
+     * @param foldCase
+     *            whether words are lower cased before counting
+     * @param minFont
+     *            the font size class of the least frequent word
+     * @param maxFont
+     *            the font size class of the most frequent word
+     * @param approximation
+     *            the largest error of an approximate count, or 0 to count
+     *            exactly
+     * @param stopWords
+     *            the words left out, or null for none
+     * @param phrases
+     *            the number of consecutive words counted as one phrase
+     * @param charset
+     *            the encoding of the text files read
+     * @param scale
+     *            how counts are mapped to font size classes
+     */
+    private TagCloudConfig(SeparatorSet separators, int words,
+            boolean foldCase, int minFont, int maxFont, double approximation,
+            StopWords stopWords, int phrases, Charset charset,
+            FontScale scale) {
+        this.separators = separators;
+        this.words = words;
+        this.foldCase = foldCase;
+        this.minFont = minFont;
+        this.maxFont = maxFont;
+        this.approximation = approximation;
+        this.stopWords = stopWords;
+        this.phrases = phrases;
+        this.charset = charset;
+        this.scale = scale;
+    }
+
+    /**
+     * Returns a copy of this configuration with the given separators.
+     *
+     * @param set
+     *            the separator characters
+     * @return the new configuration
+     */
+    public TagCloudConfig withSeparators(SeparatorSet set) {
+        assert set != null : "Violation of: set is not null";
+
+        return new TagCloudConfig(set, this.words, this.foldCase,
+                this.minFont, this.maxFont, this.approximation, this.stopWords,
+                this.phrases, this.charset, this.scale);
+    }
+
+    /**
+     * Returns a copy of this configuration with {@code n} words per cloud.
+     *
+     * @param n
+     *            the number of words in a cloud
+     * @return the new configuration
+     * @requires n >= 0
+     */
+    public TagCloudConfig withWords(int n) {
+        assert n >= 0 : "Violation of: n >= 0";
+
+        return new TagCloudConfig(this.separators, n, this.foldCase,
+                this.minFont, this.maxFont, this.approximation, this.stopWords,
+                this.phrases, this.charset, this.scale);
+    }
+
+    /**
+     * Returns a copy of this configuration that lower cases words before
+     * counting them if {@code fold} is true, and counts them as written
+     * otherwise.
+     *
+     * @param fold
+     *            whether words are lower cased
+     * @return the new configuration
+     */
+    public TagCloudConfig withCaseFolding(boolean fold) {
+        return new TagCloudConfig(this.separators, this.words, fold,
+                this.minFont, this.maxFont, this.approximation, this.stopWords,
+                this.phrases, this.charset, this.scale);
+    }
+
+    /**
+     * Returns a copy of this configuration whose font size classes run from
+     * {@code min} for the least frequent word to {@code max} for the most
+     * frequent. The classes must exist in the style sheet the cloud links.
+     *
+     * @param min
+     *            the smallest font size class
+     * @param max
+     *            the largest font size class
+     * @return the new configuration
+     * @requires 0 <= min <= max
+     */
+    public TagCloudConfig withFontRange(int min, int max) {
+        assert 0 <= min : "Violation of: 0 <= min";
+        assert min <= max : "Violation of: min <= max";
+
+        return new TagCloudConfig(this.separators, this.words, this.foldCase,
+                min, max, this.approximation, this.stopWords, this.phrases,
+                this.charset, this.scale);
+    }
+
+    /**
+     * Returns a copy of this configuration that counts words approximately,
+     * in memory that does not grow with the vocabulary, if {@code epsilon}
+     * is positive, and exactly if it is 0. An approximate count is never too
+     * low and at most {@code epsilon} times the number of words too high, and
+     * every word more frequent than that is sure to be counted.
+     *
+     * @param epsilon
+     *            the largest error, as a fraction of the number of words
+     * @return the new configuration
+     * @requires 0 <= epsilon < 1
+     */
+    public TagCloudConfig withApproximation(double epsilon) {
+        assert 0 <= epsilon && epsilon < 1 : "Violation of: 0 <= epsilon < 1";
+
+        return new TagCloudConfig(this.separators, this.words, this.foldCase,
+                this.minFont, this.maxFont, epsilon, this.stopWords,
+                this.phrases, this.charset, this.scale);
+    }
+
+    /**
+     * Returns a copy of this configuration that leaves the words of
+     * {@code words} out of the cloud, or leaves nothing out if it is null.
+     * Words are matched after they are lower cased, if they are. No phrase
+     * spans a stop word.
+     *
+     * @param words
+     *            the stop words, or null for none
+     * @return the new configuration
+     */
+    public TagCloudConfig withStopWords(StopWords words) {
+        return new TagCloudConfig(this.separators, this.words, this.foldCase,
+                this.minFont, this.maxFont, this.approximation, words,
+                this.phrases, this.charset, this.scale);
+    }
+
+    /**
+     * Returns a copy of this configuration that counts phrases of {@code n}
+     * consecutive words, such as bigrams for 2 and trigrams for 3, instead of
+     * single words. There are many more distinct phrases than words, so
+     * phrase clouds of large inputs are best counted approximately.
+     *
+     * @param n
+     *            the number of words in a phrase
+     * @return the new configuration
+     * @requires 1 <= n <= PhraseCounter.MAX_WORDS
+     */
+    public TagCloudConfig withPhrases(int n) {
+        assert 1 <= n : "Violation of: 1 <= n";
+        assert n <= PhraseCounter.MAX_WORDS
+                : "Violation of: n <= PhraseCounter.MAX_WORDS";
+
+        return new TagCloudConfig(this.separators, this.words, this.foldCase,
+                this.minFont, this.maxFont, this.approximation, this.stopWords,
+                n, this.charset, this.scale);
+    }
+
+    /**
+     * Returns a copy of this configuration that reads text files in
+     * {@code set}. UTF-8 and US-ASCII files are split into words straight
+     * from their bytes; files in other encodings are decoded first.
+     *
+     * @param set
+     *            the encoding of the text files read
+     * @return the new configuration
+     */
+    public TagCloudConfig withCharset(Charset set) {
+        assert set != null : "Violation of: set is not null";
+
+        return new TagCloudConfig(this.separators, this.words, this.foldCase,
+                this.minFont, this.maxFont, this.approximation, this.stopWords,
+                this.phrases, set, this.scale);
+    }
+
+    /**
+     * Returns a copy of this configuration that maps counts to font size
+     * classes by {@code fontScale}.
+     *
+     * @param fontScale
+     *            how counts are mapped to font size classes
+     * @return the new configuration
+     */
+    public TagCloudConfig withScale(FontScale fontScale) {
+        assert fontScale != null : "Violation of: fontScale is not null";
+
+        return new TagCloudConfig(this.separators, this.words, this.foldCase,
+                this.minFont, this.maxFont, this.approximation, this.stopWords,
+                this.phrases, this.charset, fontScale);
+    }
+
+    /**
+     * Returns the separator characters.
+     *
+     * @return the separators
+     */
+    public SeparatorSet separators() {
+        return this.separators;
+    }
+
+    /**
+     * Returns the number of words in a cloud.
+     *
+     * @return the number of words
+     */
+    public int words() {
+        return this.words;
+    }
+
+    /**
+     * Returns whether words are lower cased before counting.
+     *
+     * @return true iff words are lower cased
+     */
+    public boolean foldsCase() {
+        return this.foldCase;
+    }
+
+    /**
+     * Returns the font size class of the least frequent word of a cloud.
+     *
+     * @return the smallest font size class
+     */
+    public int minFont() {
+        return this.minFont;
+    }
+
+    /**
+     * Returns the font size class of the most frequent word of a cloud.
+     *
+     * @return the largest font size class
+     */
+    public int maxFont() {
+        return this.maxFont;
+    }
+
+    /**
+     * Returns the largest error of an approximate count, as a fraction of
+     * the number of words, or 0 if words are counted exactly.
+     *
+     * @return the approximation
+     */
+    public double approximation() {
+        return this.approximation;
+    }
+
+    /**
+     * Returns the words left out of the cloud.
+     *
+     * @return the stop words, or null for none
+     */
+    public StopWords stopWords() {
+        return this.stopWords;
+    }
+
+    /**
+     * Returns the number of consecutive words counted as one phrase, which is
+     * 1 for a cloud of single words.
+     *
+     * @return the number of words in a phrase
+     */
+    public int phrases() {
+        return this.phrases;
+    }
+
+    /**
+     * Returns the encoding of the text files read.
+     *
+     * @return the charset
+     */
+    public Charset charset() {
+        return this.charset;
+    }
+
+    /**
+     * Returns how counts are mapped to font size classes.
+     *
+     * @return the font scale
+     */
+    public FontScale scale() {
+        return this.scale;
+    }
+
+}
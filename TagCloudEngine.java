@@ -0,0 +1,591 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Generates tag clouds with a fixed {@code TagCloudConfig}. An engine holds no
+ * state that changes between clouds, so one engine can be shared by any number
+ * of threads generating clouds at the same time, and a long-running process
+ * can keep it, and the compiled code behind it, for every request.
+ *
+ * <p>
+ * A cloud is made in three steps, which can also be called one at a time:
+ * {@code count} the words of an input, {@code cloud} to select the most
+ * frequent of them, and {@code render} or {@code writeHtml} to produce the
+ * HTML page. {@code cloud(Path)} does the first two in one call.
+ *
+ * <p>
+ * Text files compressed with gzip, or zstd if a zstd library is present,
+ * are read directly, without being decompressed to disk first.
+ *
+ * <p>
+ * If the configuration has an approximation, {@code sketch} counts in place
+ * of {@code count}, in fixed memory, and the calls that count and select in
+ * one go use it.
+ *
+ * @author Hudson Arledge and Nik Anand
+ *
+ */
+public final class TagCloudEngine {
+
+    /**
+     * Size in bytes from which an input file is counted in parallel, if the
+     * engine has a pool.
+     */
+    public static final long PARALLEL_THRESHOLD = 64L << 20;
+
+    /**
+     * The configuration of every cloud.
+     */
+    private final TagCloudConfig config;
+
+    /**
+     * The pool large files are counted on, or null to count every file on the
+     * calling thread.
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * A renderer per thread, so pages are rendered without locking and each
+     * thread reuses its own buffer.
+     */
+    private final ThreadLocal<HtmlRenderer> renderers;
+
+    /**
+     * Constructor for an engine that counts every input on the calling
+     * thread, which suits a server that already runs one cloud per thread.
+     *
+     * @param config
+     *            the configuration of every cloud
+     */
+    public TagCloudEngine(TagCloudConfig config) {
+        this(config, null);
+    }
+
+    /**
+     * Constructor for an engine that counts files of at least
+     * {@code PARALLEL_THRESHOLD} bytes on {@code pool}.
+     *
+     * @param config
+     *            the configuration of every cloud
+     * @param pool
+     *            the pool large files are counted on, or null for none
+     */
+    public TagCloudEngine(TagCloudConfig config, ForkJoinPool pool) {
+        assert config != null : "Violation of: config is not null";
+
+        this.config = config;
+        this.pool = pool;
+        this.renderers = new ThreadLocal<HtmlRenderer>() {
+            @Override
+            protected HtmlRenderer initialValue() {
+                return new HtmlRenderer();
+            }
+        };
+    }
+
+    /**
+     * Returns the configuration of every cloud.
+     *
+     * @return the configuration
+     */
+    public TagCloudConfig config() {
+        return this.config;
+    }
+
+    /**
+     * Returns the counts of the words of the text file {@code channel}. The
+     * file is memory-mapped and split into words in large chunks, straight
+     * from its bytes if it is UTF-8 or US-ASCII, and counted in parallel if
+     * it is large, UTF-8 or US-ASCII, and the engine has a pool. A snapshot
+     * written by {@code CountSnapshot} is loaded instead of being tokenized,
+     * and a gzip or zstd file is decompressed on another thread while it is
+     * tokenized.
+     *
+     * @param channel
+     *            the text file or snapshot to count
+     * @param metrics
+     *            the metrics to record into
+     * @return the counts of the words in {@code channel}
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    public WordCountTable count(FileChannel channel, PipelineMetrics metrics)
+            throws IOException {
+        assert channel != null : "Violation of: channel is not null";
+        assert metrics != null : "Violation of: metrics is not null";
+
+        long size = channel.size();
+        metrics.expect(size);
+        WordCountTable table;
+        if (CountSnapshot.isSnapshot(channel)) {
+            long start = metrics.time();
+            table = CountSnapshot.load(channel);
+            metrics.stop(PipelineMetrics.Stage.COUNT, start);
+            metrics.read(size);
+        } else if (this.pool != null && size >= PARALLEL_THRESHOLD
+                && this.config.phrases() == 1
+                && ByteTokenizer.supports(this.config.charset())
+                && !CompressedIngest.isCompressed(channel)) {
+            //a phrase would be cut wherever the file is split, a compressed
+            //stream can only be read from its start, and only in UTF-8 is
+            //an ASCII separator byte never part of a longer character, so
+            //anything else is counted on the calling thread
+            table = ParallelWordCount.count(channel, this.config.separators(),
+                    this.config.foldsCase(), this.config.stopWords(),
+                    this.pool, metrics);
+        } else {
+            table = new WordCountTable();
+            this.ingest(channel, size, table, metrics);
+        }
+        metrics.counted(table);
+        return table;
+    }
+
+    /**
+     * Returns the counts of the words read from {@code reader}, reading until
+     * the end of the stream.
+     *
+     * @param reader
+     *            the source of the text
+     * @param metrics
+     *            the metrics to record into
+     * @return the counts of the words of the text
+     * @throws IOException
+     *             if {@code reader} fails
+     */
+    public WordCountTable count(Reader reader, PipelineMetrics metrics)
+            throws IOException {
+        assert reader != null : "Violation of: reader is not null";
+        assert metrics != null : "Violation of: metrics is not null";
+
+        WordCountTable table = new WordCountTable();
+        ChunkedTokenizer tokenizer = this.tokenizer(table, metrics);
+        while (tokenizer.read(reader) >= 0) {
+            //every complete word of the chunk has been counted
+        }
+        tokenizer.finish();
+        metrics.counted(table);
+        return table;
+    }
+
+    /**
+     * Returns the approximate counts of the words of the text file
+     * {@code channel}, kept in a sketch sized for the approximation and
+     * number of words of this engine's configuration. The file is
+     * memory-mapped, or decompressed on another thread, and counted on the
+     * calling thread.
+     *
+     * @param channel
+     *            the text file to count
+     * @param metrics
+     *            the metrics to record into
+     * @return the approximate counts of the words in {@code channel}
+     * @throws IOException
+     *             if the file cannot be read
+     * @requires config().approximation() > 0
+     */
+    public SpaceSavingSketch sketch(FileChannel channel,
+            PipelineMetrics metrics) throws IOException {
+        assert channel != null : "Violation of: channel is not null";
+        assert metrics != null : "Violation of: metrics is not null";
+
+        SpaceSavingSketch sketch = this.newSketch();
+        this.tokenize(channel, sketch, metrics);
+        metrics.counted(sketch);
+        return sketch;
+    }
+
+    /**
+     * Passes every word, or phrase, of the text file {@code channel} to
+     * {@code sink}, with the separators, case folding and stop words of this
+     * engine, so a caller can count into a sink of its own. The file is
+     * memory-mapped, or decompressed on another thread, and split into words
+     * in large chunks on the calling thread.
+     *
+     * @param channel
+     *            the text file to read
+     * @param sink
+     *            the receiver of the words
+     * @param metrics
+     *            the metrics to record into
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    public void tokenize(FileChannel channel, HashedWordSink sink,
+            PipelineMetrics metrics) throws IOException {
+        assert channel != null : "Violation of: channel is not null";
+        assert sink != null : "Violation of: sink is not null";
+        assert metrics != null : "Violation of: metrics is not null";
+
+        long size = channel.size();
+        metrics.expect(size);
+        this.ingest(channel, size, sink, metrics);
+    }
+
+    /**
+     * Passes every word, or phrase, of the text file {@code channel} to
+     * {@code sink} on the calling thread. A UTF-8 or US-ASCII file is split
+     * into words straight from its bytes; a file in another encoding is
+     * decoded first. A compressed file is decompressed on another thread and
+     * any other file is memory-mapped.
+     *
+     * @param channel
+     *            the text file to read
+     * @param size
+     *            the size of the file
+     * @param sink
+     *            the receiver of the words
+     * @param metrics
+     *            the metrics to record into
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    private void ingest(FileChannel channel, long size, HashedWordSink sink,
+            PipelineMetrics metrics) throws IOException {
+        Charset charset = this.config.charset();
+        boolean compressed = CompressedIngest.isCompressed(channel);
+        if (ByteTokenizer.supports(charset)) {
+            ByteTokenizer tokenizer = this.byteTokenizer(sink, metrics);
+            if (compressed) {
+                CompressedIngest.ingest(channel, tokenizer);
+            } else {
+                MappedFileIngest.ingest(channel, 0, size, tokenizer);
+            }
+        } else {
+            ChunkedTokenizer tokenizer = this.tokenizer(sink, metrics);
+            if (compressed) {
+                CompressedIngest.ingest(channel, charset, tokenizer);
+            } else {
+                MappedFileIngest.ingest(channel, 0, size, charset, tokenizer);
+            }
+        }
+    }
+
+    /**
+     * Returns the approximate counts of the words read from {@code reader},
+     * reading until the end of the stream.
+     *
+     * @param reader
+     *            the source of the text
+     * @param metrics
+     *            the metrics to record into
+     * @return the approximate counts of the words of the text
+     * @throws IOException
+     *             if {@code reader} fails
+     * @requires config().approximation() > 0
+     */
+    public SpaceSavingSketch sketch(Reader reader, PipelineMetrics metrics)
+            throws IOException {
+        assert reader != null : "Violation of: reader is not null";
+        assert metrics != null : "Violation of: metrics is not null";
+
+        SpaceSavingSketch sketch = this.newSketch();
+        ChunkedTokenizer tokenizer = this.tokenizer(sketch, metrics);
+        while (tokenizer.read(reader) >= 0) {
+            //every complete word of the chunk has been counted
+        }
+        tokenizer.finish();
+        metrics.counted(sketch);
+        return sketch;
+    }
+
+    /**
+     * Returns an empty sketch sized for the approximation and number of words
+     * of this engine's configuration.
+     *
+     * @return the sketch
+     */
+    private SpaceSavingSketch newSketch() {
+        assert this.config.approximation() > 0
+                : "Violation of: config().approximation() > 0";
+
+        return new SpaceSavingSketch(SpaceSavingSketch.capacityFor(
+                this.config.approximation(), this.config.words()));
+    }
+
+    /**
+     * Returns a tokenizer that passes words to {@code sink} with the
+     * separators and case folding of this engine, leaving out stop words and
+     * joining words into phrases if the configuration says so.
+     *
+     * @param sink
+     *            the table or sketch the words are counted into
+     * @param metrics
+     *            the metrics to record into
+     * @return the tokenizer
+     */
+    ChunkedTokenizer tokenizer(HashedWordSink sink,
+            PipelineMetrics metrics) {
+        WordSink words = sink;
+        if (this.config.stopWords() != null || this.config.phrases() > 1) {
+            words = new PhraseCounter(sink, this.config.stopWords(),
+                    this.config.phrases());
+        }
+        return new ChunkedTokenizer(this.config.separators(),
+                this.config.foldsCase(), words,
+                ChunkedTokenizer.DEFAULT_CAPACITY, metrics);
+    }
+
+    /**
+     * Returns a tokenizer that splits bytes into words and passes them to
+     * {@code sink} with the separators, case folding and encoding of this
+     * engine, leaving out stop words and joining words into phrases if the
+     * configuration says so.
+     *
+     * @param sink
+     *            the table or sketch the words are counted into
+     * @param metrics
+     *            the metrics to record into
+     * @return the tokenizer
+     * @requires ByteTokenizer.supports(config().charset())
+     */
+    ByteTokenizer byteTokenizer(HashedWordSink sink,
+            PipelineMetrics metrics) {
+        AsciiWordSink words;
+        if (this.config.stopWords() == null && this.config.phrases() == 1
+                && sink instanceof AsciiWordSink) {
+            words = (AsciiWordSink) sink;
+        } else {
+            //also widens ASCII words for a sink that only takes characters
+            words = new PhraseCounter(sink, this.config.stopWords(),
+                    this.config.phrases());
+        }
+        return new ByteTokenizer(this.config.separators(),
+                this.config.foldsCase(), this.config.charset(), words,
+                ByteTokenizer.DEFAULT_CAPACITY, metrics);
+    }
+
+    /**
+     * Returns the cloud of the most frequent words of {@code counts}.
+     *
+     * @param counts
+     *            the counts of the words of the input
+     * @param title
+     *            the name of the input
+     * @param metrics
+     *            the metrics to record into
+     * @return the cloud
+     */
+    public TagCloudResult cloud(WordCountTable counts, String title,
+            PipelineMetrics metrics) {
+        assert counts != null : "Violation of: counts is not null";
+        assert title != null : "Violation of: title is not null";
+        assert metrics != null : "Violation of: metrics is not null";
+
+        long start = metrics.time();
+        WordCount[] top = TopWords.select(counts, this.config.words());
+        metrics.stop(PipelineMetrics.Stage.SELECT, start);
+        return new TagCloudResult(this.config, title, top, counts.total(),
+                counts.size());
+    }
+
+    /**
+     * Returns the cloud of the most frequent words of {@code sketch}. Each
+     * word carries the most its count may be too high. The number of
+     * distinct words of the input is not known, so the cloud reports -1.
+     *
+     * @param sketch
+     *            the approximate counts of the words of the input
+     * @param title
+     *            the name of the input
+     * @param metrics
+     *            the metrics to record into
+     * @return the cloud
+     */
+    public TagCloudResult cloud(SpaceSavingSketch sketch, String title,
+            PipelineMetrics metrics) {
+        assert sketch != null : "Violation of: sketch is not null";
+        assert title != null : "Violation of: title is not null";
+        assert metrics != null : "Violation of: metrics is not null";
+
+        long start = metrics.time();
+        WordCount[] top = sketch.top(this.config.words());
+        metrics.stop(PipelineMetrics.Stage.SELECT, start);
+        return new TagCloudResult(this.config, title, top, sketch.total(), -1);
+    }
+
+    /**
+     * Returns the cloud of the text file {@code channel}, counted exactly or
+     * approximately as this engine's configuration says. A snapshot is
+     * always loaded exactly.
+     *
+     * @param channel
+     *            the text file or snapshot
+     * @param title
+     *            the name of the input
+     * @param metrics
+     *            the metrics to record into
+     * @return the cloud
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    public TagCloudResult cloud(FileChannel channel, String title,
+            PipelineMetrics metrics) throws IOException {
+        assert channel != null : "Violation of: channel is not null";
+
+        if (this.config.approximation() > 0
+                && !CountSnapshot.isSnapshot(channel)) {
+            return this.cloud(this.sketch(channel, metrics), title, metrics);
+        }
+        return this.cloud(this.count(channel, metrics), title, metrics);
+    }
+
+    /**
+     * Returns the cloud of the text read from {@code reader}, counted exactly
+     * or approximately as this engine's configuration says.
+     *
+     * @param reader
+     *            the source of the text
+     * @param title
+     *            the name of the input
+     * @param metrics
+     *            the metrics to record into
+     * @return the cloud
+     * @throws IOException
+     *             if {@code reader} fails
+     */
+    public TagCloudResult cloud(Reader reader, String title,
+            PipelineMetrics metrics) throws IOException {
+        if (this.config.approximation() > 0) {
+            return this.cloud(this.sketch(reader, metrics), title, metrics);
+        }
+        return this.cloud(this.count(reader, metrics), title, metrics);
+    }
+
+    /**
+     * Returns the cloud of the text file {@code file}, titled with its name.
+     *
+     * @param file
+     *            the text file or snapshot
+     * @return the cloud
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    public TagCloudResult cloud(Path file) throws IOException {
+        assert file != null : "Violation of: file is not null";
+
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            return this.cloud(channel, file.toString(),
+                    PipelineMetrics.DISABLED);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Returns the cloud of the text read from {@code reader}.
+     *
+     * @param reader
+     *            the source of the text
+     * @param title
+     *            the name of the input
+     * @return the cloud
+     * @throws IOException
+     *             if {@code reader} fails
+     */
+    public TagCloudResult cloud(Reader reader, String title)
+            throws IOException {
+        return this.cloud(reader, title, PipelineMetrics.DISABLED);
+    }
+
+    /**
+     * Returns the HTML page of {@code cloud}.
+     *
+     * @param cloud
+     *            the cloud
+     * @return the UTF-8 bytes of the page
+     */
+    public byte[] render(TagCloudResult cloud) {
+        return this.renderers.get().render(cloud).toByteArray();
+    }
+
+    /**
+     * Writes the HTML page of {@code cloud} to {@code out}.
+     *
+     * @param cloud
+     *            the cloud
+     * @param out
+     *            the destination
+     * @throws IOException
+     *             if the page cannot be written
+     */
+    public void writeHtml(TagCloudResult cloud, OutputStream out)
+            throws IOException {
+        this.renderers.get().render(cloud).writeTo(out);
+    }
+
+    /**
+     * Writes the HTML page of {@code cloud} to {@code channel}.
+     *
+     * @param cloud
+     *            the cloud
+     * @param channel
+     *            the destination
+     * @throws IOException
+     *             if the page cannot be written
+     */
+    public void writeHtml(TagCloudResult cloud, WritableByteChannel channel)
+            throws IOException {
+        this.writeHtml(cloud, channel, PipelineMetrics.DISABLED);
+    }
+
+    /**
+     * Writes the HTML page of {@code cloud} to {@code channel}, timing it in
+     * {@code metrics}.
+     *
+     * @param cloud
+     *            the cloud
+     * @param channel
+     *            the destination
+     * @param metrics
+     *            the metrics to record into
+     * @throws IOException
+     *             if the page cannot be written
+     */
+    public void writeHtml(TagCloudResult cloud, WritableByteChannel channel,
+            PipelineMetrics metrics) throws IOException {
+        this.renderers.get().render(cloud, metrics).writeTo(channel);
+    }
+
+    /**
+     * Writes the HTML page of {@code cloud} to {@code file}, creating or
+     * replacing it.
+     *
+     * @param cloud
+     *            the cloud
+     * @param file
+     *            the destination
+     * @throws IOException
+     *             if the page cannot be written
+     */
+    public void writeHtml(TagCloudResult cloud, Path file) throws IOException {
+        this.writeHtml(cloud, file, PipelineMetrics.DISABLED);
+    }
+
+    /**
+     * Writes the HTML page of {@code cloud} to {@code file}, creating or
+     * replacing it, and times it in {@code metrics}.
+     *
+     * @param cloud
+     *            the cloud
+     * @param file
+     *            the destination
+     * @param metrics
+     *            the metrics to record into
+     * @throws IOException
+     *             if the page cannot be written
+     */
+    public void writeHtml(TagCloudResult cloud, Path file,
+            PipelineMetrics metrics) throws IOException {
+        this.renderers.get().render(cloud, metrics).writeTo(file);
+    }
+
+}
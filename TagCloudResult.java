@@ -0,0 +1,280 @@
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * The immutable outcome of generating one tag cloud: the selected words with
+ * their counts, the lowest and highest of those counts, the totals of the
+ * whole input, and the configuration the cloud was made with. Everything a
+ * renderer needs is here, so clouds made at the same time never share state.
+ *
+ * @author Hudson Arledge and Nik Anand
+ *
+ */
+public final class TagCloudResult {
+
+    /**
+     * The configuration the cloud was made with.
+     */
+    private final TagCloudConfig config;
+
+    /**
+     * The name of the input.
+     */
+    private final String title;
+
+    /**
+     * The selected words, best first.
+     */
+    private final WordCount[] top;
+
+    /**
+     * The lowest count of the selected words.
+     */
+    private final long min;
+
+    /**
+     * The highest count of the selected words.
+     */
+    private final long max;
+
+    /**
+     * The number of words in the input.
+     */
+    private final long total;
+
+    /**
+     * The number of distinct words in the input, or -1 if not known.
+     */
+    private final int distinct;
+
+    /**
+     * The counts of the selected words in ascending order, for the quantile
+     * font scale, or null for the others.
+     */
+    private final long[] ascending;
+
+    /**
+     * Constructor.
+     *
+     * @param config
+     *            the configuration the cloud was made with
+     * @param title
+     *            the name of the input
+     * @param top
+     *            the selected words, best first, as returned by
+     *            {@code TopWords} or {@code SpaceSavingSketch}
+     * @param total
+     *            the number of words in the input
+     * @param distinct
+     *            the number of distinct words in the input, or -1 if the
+     *            words were counted approximately and it is not known
+     */
+    public TagCloudResult(TagCloudConfig config, String title, WordCount[] top,
+            long total, int distinct) {
+        assert config != null : "Violation of: config is not null";
+        assert title != null : "Violation of: title is not null";
+        assert top != null : "Violation of: top is not null";
+
+        this.config = config;
+        this.title = title;
+        this.top = top.clone();
+        long lowest = 0;
+        long highest = 0;
+        if (top.length > 0) {
+            lowest = top[0].count();
+            highest = lowest;
+            for (int i = 1; i < top.length; i++) {
+                lowest = Math.min(lowest, top[i].count());
+                highest = Math.max(highest, top[i].count());
+            }
+        }
+        this.min = lowest;
+        this.max = highest;
+        this.total = total;
+        this.distinct = distinct;
+        if (config.scale() == FontScale.QUANTILE) {
+            this.ascending = new long[top.length];
+            for (int i = 0; i < top.length; i++) {
+                this.ascending[i] = top[i].count();
+            }
+            Arrays.sort(this.ascending);
+        } else {
+            this.ascending = null;
+        }
+    }
+
+    /**
+     * Returns the configuration the cloud was made with.
+     *
+     * @return the configuration
+     */
+    public TagCloudConfig config() {
+        return this.config;
+    }
+
+    /**
+     * Returns the name of the input.
+     *
+     * @return the title
+     */
+    public String title() {
+        return this.title;
+    }
+
+    /**
+     * Returns the number of selected words, which is less than
+     * {@code config().words()} if the input has fewer distinct words.
+     *
+     * @return the number of words in the cloud
+     */
+    public int size() {
+        return this.top.length;
+    }
+
+    /**
+     * Returns the selected word ranked {@code i}, counting from 0 for the most
+     * frequent.
+     *
+     * @param i
+     *            the rank
+     * @return the word and its count
+     * @requires 0 <= i < size()
+     */
+    public WordCount word(int i) {
+        return this.top[i];
+    }
+
+    /**
+     * Returns the selected words, best first.
+     *
+     * @return a copy of the selected words
+     */
+    public WordCount[] top() {
+        return this.top.clone();
+    }
+
+    /**
+     * Returns the lowest count of the selected words, or 0 if there are none.
+     *
+     * @return the lowest count
+     */
+    public long min() {
+        return this.min;
+    }
+
+    /**
+     * Returns the highest count of the selected words, or 0 if there are
+     * none.
+     *
+     * @return the highest count
+     */
+    public long max() {
+        return this.max;
+    }
+
+    /**
+     * Returns the number of words in the input.
+     *
+     * @return the total count
+     */
+    public long total() {
+        return this.total;
+    }
+
+    /**
+     * Returns the number of distinct words in the input, or -1 if the words
+     * were counted approximately and it is not known.
+     *
+     * @return the number of distinct words
+     */
+    public int distinct() {
+        return this.distinct;
+    }
+
+    /**
+     * Returns the font size class of a selected word with {@code count}
+     * occurrences. The classes grow from {@code config().minFont()} at
+     * {@code min()} to {@code config().maxFont()} at {@code max()}, by the
+     * scale {@code config().scale()}; if the counts are all equal every word
+     * gets the largest class. The classes are exact for any counts a
+     * {@code long} holds, and the same on every platform.
+     *
+     * @param count
+     *            the count of the word
+     * @return the font size class
+     * @requires min() <= count <= max()
+     */
+    public long font(long count) {
+        long low = this.config.minFont();
+        long high = this.config.maxFont();
+        if (this.max == this.min || count >= this.max) {
+            return high;
+        }
+        long range = high - low;
+        switch (this.config.scale()) {
+            case LOG:
+                //StrictMath, so the classes do not depend on the platform;
+                //log1p so a count of 0 needs no special case
+                double whole = StrictMath.log1p(this.max)
+                        - StrictMath.log1p(this.min);
+                double part = StrictMath.log1p(count)
+                        - StrictMath.log1p(this.min);
+                long step = (long) (range * (part / whole));
+                return low + Math.max(0, Math.min(range, step));
+            case QUANTILE:
+                //the number of selected words less frequent than this one,
+                //out of the number less frequent than the most frequent
+                return low + scaled(range, lowerBound(this.ascending, count),
+                        lowerBound(this.ascending, this.max));
+            default:
+                return low + scaled(range, count - this.min,
+                        this.max - this.min);
+        }
+    }
+
+    /**
+     * Returns {@code range * part / whole}, rounded down, without overflow.
+     *
+     * @param range
+     *            the number of classes above the smallest
+     * @param part
+     *            the numerator of the fraction of the range
+     * @param whole
+     *            the denominator of the fraction of the range
+     * @return the number of classes above the smallest
+     * @requires 0 <= range and 0 <= part <= whole and 0 < whole
+     */
+    private static long scaled(long range, long part, long whole) {
+        if (range == 0 || part <= Long.MAX_VALUE / range) {
+            return range * part / whole;
+        }
+        //only counts in the hundreds of quadrillions get here
+        return BigInteger.valueOf(range).multiply(BigInteger.valueOf(part))
+                .divide(BigInteger.valueOf(whole)).longValue();
+    }
+
+    /**
+     * Returns the number of entries of the ascending array {@code counts}
+     * that are less than {@code count}.
+     *
+     * @param counts
+     *            the counts, in ascending order
+     * @param count
+     *            the count
+     * @return the number of smaller counts
+     */
+    private static int lowerBound(long[] counts, long count) {
+        int low = 0;
+        int high = counts.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (counts[middle] < count) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+}
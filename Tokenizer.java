@@ -0,0 +1,384 @@
+/**
+ * Splits text into words and separator strings using a {@code SeparatorSet}.
+ * Boundaries are reported as offsets into the caller's text, so no
+ * {@code String} is created for a separator string and words are only copied
+ * if the {@code WordSink} chooses to. Text is scanned a character at a time
+ * unless the separators include supplementary code points, in which case a
+ * surrogate pair is classified as one code point and never split.
+ *
+ * @author Hudson Arledge and Nik Anand
+ *
+ */
+public final class Tokenizer {
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private Tokenizer() {
+    }
+
+    /**
+     * Returns the index just past the word or separator string that starts at
+     * {@code position} in {@code text[position, end)}.
+     *
+     * @param text
+     *            the text being scanned
+     * @param position
+     *            the index of the first character of the word or separator
+     *            string
+     * @param end
+     *            the index at which scanning stops
+     * @param separators
+     *            the separator characters
+     * @return the index just past the word or separator string
+     * @requires 0 <= position < end <= |text|
+     * @ensures <pre>
+     * position < runEnd <= end  and
+     * [text[position, runEnd) is all separators or all non-separators]  and
+     * (runEnd = end  or
+     *  [text[runEnd] is not in the same class as text[position]])
+     * </pre>
+     */
+    public static int runEnd(CharSequence text, int position, int end,
+            SeparatorSet separators) {
+        assert text != null : "Violation of: text is not null";
+        assert separators != null : "Violation of: separators is not null";
+        assert 0 <= position : "Violation of: 0 <= position";
+        assert position < end : "Violation of: position < end";
+        assert end <= text.length() : "Violation of: end <= |text|";
+
+        if (separators.hasSupplementary()) {
+            int codePoint = codePointAt(text, position, end);
+            boolean separator = separators.contains(codePoint);
+            int index = position + Character.charCount(codePoint);
+            while (index < end) {
+                codePoint = codePointAt(text, index, end);
+                if (separators.contains(codePoint) != separator) {
+                    break;
+                }
+                index += Character.charCount(codePoint);
+            }
+            return index;
+        }
+        boolean separator = separators.contains(text.charAt(position));
+        int index = position + 1;
+        while (index < end
+                && separators.contains(text.charAt(index)) == separator) {
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * Returns the index just past the word or separator string that starts at
+     * {@code position} in {@code text[position, end)}.
+     *
+     * @param text
+     *            the text being scanned
+     * @param position
+     *            the index of the first character of the word or separator
+     *            string
+     * @param end
+     *            the index at which scanning stops
+     * @param separators
+     *            the separator characters
+     * @return the index just past the word or separator string
+     * @requires 0 <= position < end <= |text|
+     * @ensures <pre>
+     * position < runEnd <= end  and
+     * [text[position, runEnd) is all separators or all non-separators]  and
+     * (runEnd = end  or
+     *  [text[runEnd] is not in the same class as text[position]])
+     * </pre>
+     */
+    public static int runEnd(char[] text, int position, int end,
+            SeparatorSet separators) {
+        assert text != null : "Violation of: text is not null";
+        assert separators != null : "Violation of: separators is not null";
+        assert 0 <= position : "Violation of: 0 <= position";
+        assert position < end : "Violation of: position < end";
+        assert end <= text.length : "Violation of: end <= |text|";
+
+        if (separators.hasSupplementary()) {
+            int codePoint = Character.codePointAt(text, position, end);
+            boolean separator = separators.contains(codePoint);
+            int index = position + Character.charCount(codePoint);
+            while (index < end) {
+                codePoint = Character.codePointAt(text, index, end);
+                if (separators.contains(codePoint) != separator) {
+                    break;
+                }
+                index += Character.charCount(codePoint);
+            }
+            return index;
+        }
+        boolean separator = separators.contains(text[position]);
+        int index = position + 1;
+        while (index < end && separators.contains(text[index]) == separator) {
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * Reports every word in {@code text[from, to)} to {@code sink}, in order.
+     *
+     * @param text
+     *            the text to split into words
+     * @param from
+     *            the index of the first character to scan
+     * @param to
+     *            the index at which scanning stops
+     * @param separators
+     *            the separator characters
+     * @param sink
+     *            the receiver of the words
+     * @return the number of words reported
+     * @requires 0 <= from <= to <= |text|
+     */
+    public static int tokenize(char[] text, int from, int to,
+            SeparatorSet separators, WordSink sink) {
+        assert text != null : "Violation of: text is not null";
+        assert separators != null : "Violation of: separators is not null";
+        assert sink != null : "Violation of: sink is not null";
+        assert 0 <= from : "Violation of: 0 <= from";
+        assert from <= to : "Violation of: from <= to";
+        assert to <= text.length : "Violation of: to <= |text|";
+
+        if (separators.hasSupplementary()) {
+            int words = 0;
+            int i = from;
+            while (i < to) {
+                int start = i;
+                i = runEnd(text, i, to, separators);
+                if (!separators.contains(Character.codePointAt(text, start,
+                        to))) {
+                    sink.word(text, start, i - start);
+                    words++;
+                }
+            }
+            return words;
+        }
+        int words = 0;
+        int i = from;
+        while (i < to) {
+            //skip the separator string, if any
+            while (i < to && separators.contains(text[i])) {
+                i++;
+            }
+            if (i < to) {
+                int start = i;
+                while (i < to && !separators.contains(text[i])) {
+                    i++;
+                }
+                sink.word(text, start, i - start);
+                words++;
+            }
+        }
+        return words;
+    }
+
+    /**
+     * Reports every word in {@code text[from, to)} to {@code sink}, in order,
+     * except that when {@code endOfInput} is false a word running up to
+     * {@code to} is held back, because the next chunk of input may continue it.
+     *
+     * @param text
+     *            the chunk of text to split into words
+     * @param from
+     *            the index of the first character to scan
+     * @param to
+     *            the index at which scanning stops
+     * @param separators
+     *            the separator characters
+     * @param sink
+     *            the receiver of the words
+     * @param endOfInput
+     *            whether {@code text[from, to)} ends the input
+     * @return the index of the first character not consumed, that is the start
+     *         of the held back word or {@code to} if there is none
+     * @requires 0 <= from <= to <= |text|
+     */
+    public static int tokenizeChunk(char[] text, int from, int to,
+            SeparatorSet separators, WordSink sink, boolean endOfInput) {
+        assert text != null : "Violation of: text is not null";
+        assert separators != null : "Violation of: separators is not null";
+        assert sink != null : "Violation of: sink is not null";
+        assert 0 <= from : "Violation of: 0 <= from";
+        assert from <= to : "Violation of: from <= to";
+        assert to <= text.length : "Violation of: to <= |text|";
+
+        if (separators.hasSupplementary()) {
+            return tokenizeCodePoints(text, from, to, separators, sink,
+                    endOfInput);
+        }
+        int i = from;
+        while (i < to) {
+            while (i < to && separators.contains(text[i])) {
+                i++;
+            }
+            if (i < to) {
+                int start = i;
+                while (i < to && !separators.contains(text[i])) {
+                    i++;
+                }
+                if (i == to && !endOfInput) {
+                    return start;
+                }
+                sink.word(text, start, i - start);
+            }
+        }
+        return to;
+    }
+
+    /**
+     * Does the work of {@code tokenizeChunk} for separators that include
+     * supplementary code points. A high surrogate ending a chunk that does
+     * not end the input is held back with the word or separator string it
+     * belongs to, so a surrogate pair is never split between chunks.
+     *
+     * @param text
+     *            the chunk of text to split into words
+     * @param from
+     *            the index of the first character to scan
+     * @param to
+     *            the index at which scanning stops
+     * @param separators
+     *            the separator characters
+     * @param sink
+     *            the receiver of the words
+     * @param endOfInput
+     *            whether {@code text[from, to)} ends the input
+     * @return the index of the first character not consumed
+     * @requires 0 <= from <= to <= |text|
+     */
+    private static int tokenizeCodePoints(char[] text, int from, int to,
+            SeparatorSet separators, WordSink sink, boolean endOfInput) {
+        int limit = to;
+        if (!endOfInput && limit > from
+                && Character.isHighSurrogate(text[limit - 1])) {
+            limit--;
+        }
+        int i = from;
+        while (i < limit) {
+            int start = i;
+            i = runEnd(text, i, limit, separators);
+            if (!separators.contains(Character.codePointAt(text, start,
+                    limit))) {
+                if (i == limit && !endOfInput) {
+                    return start;
+                }
+                sink.word(text, start, i - start);
+            }
+        }
+        return limit;
+    }
+
+    /**
+     * Returns the code point at {@code index} of {@code text}, without
+     * looking at or past {@code end}.
+     *
+     * @param text
+     *            the text
+     * @param index
+     *            the index of the code point
+     * @param end
+     *            the index at which the text ends
+     * @return the code point, or the lone surrogate at {@code index}
+     * @requires 0 <= index < end <= |text|
+     */
+    private static int codePointAt(CharSequence text, int index, int end) {
+        char c = text.charAt(index);
+        if (Character.isHighSurrogate(c) && index + 1 < end) {
+            char next = text.charAt(index + 1);
+            if (Character.isLowSurrogate(next)) {
+                return Character.toCodePoint(c, next);
+            }
+        }
+        return c;
+    }
+
+    /**
+     * The lower case of every character of the Basic Multilingual Plane,
+     * computed on first use.
+     */
+    private static final class LowerCase {
+
+        /**
+         * {@code TABLE[c]} is {@code Character.toLowerCase(c)}.
+         */
+        static final char[] TABLE = new char[1 << 16];
+
+        static {
+            for (int c = 0; c < TABLE.length; c++) {
+                TABLE[c] = Character.toLowerCase((char) c);
+            }
+        }
+    }
+
+    /**
+     * Converts {@code text[from, to)} to lower case in place. ASCII letters are
+     * handled without a table lookup, any other character is looked up in a
+     * table of {@code Character.toLowerCase} computed once, and a surrogate
+     * pair is converted as one code point. None of it depends on the default
+     * locale, so text is folded the same way on every machine.
+     *
+     * @param text
+     *            the text to convert
+     * @param from
+     *            the index of the first character to convert
+     * @param to
+     *            the index at which conversion stops
+     * @updates text
+     * @requires 0 <= from <= to <= |text|
+     */
+    public static void toLowerCase(char[] text, int from, int to) {
+        assert text != null : "Violation of: text is not null";
+        assert 0 <= from : "Violation of: 0 <= from";
+        assert from <= to : "Violation of: from <= to";
+        assert to <= text.length : "Violation of: to <= |text|";
+
+        for (int i = from; i < to; i++) {
+            char c = text[i];
+            if (c < 128) {
+                if ('A' <= c && c <= 'Z') {
+                    text[i] = (char) (c + ('a' - 'A'));
+                }
+            } else if (Character.isHighSurrogate(c) && i + 1 < to
+                    && Character.isLowSurrogate(text[i + 1])) {
+                int lower = Character.toLowerCase(
+                        Character.toCodePoint(c, text[i + 1]));
+                //a supplementary letter's lower case is supplementary too;
+                //the low surrogate written here is left as it is by the
+                //next iteration
+                if (Character.isSupplementaryCodePoint(lower)) {
+                    Character.toChars(lower, text, i);
+                }
+            } else {
+                text[i] = LowerCase.TABLE[c];
+            }
+        }
+    }
+
+    /**
+     * Returns the lower case of {@code codePoint}, as {@code toLowerCase}
+     * converts it within text: a supplementary code point whose lower case
+     * is in the Basic Multilingual Plane is left as it is.
+     *
+     * @param codePoint
+     *            the code point to convert
+     * @return the lower case of {@code codePoint}
+     * @requires 0 <= codePoint <= Character.MAX_CODE_POINT
+     */
+    static int toLowerCase(int codePoint) {
+        if (codePoint < LowerCase.TABLE.length) {
+            return LowerCase.TABLE[codePoint];
+        }
+        int lower = Character.toLowerCase(codePoint);
+        if (Character.isSupplementaryCodePoint(lower)) {
+            return lower;
+        }
+        return codePoint;
+    }
+
+}
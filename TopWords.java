@@ -0,0 +1,139 @@
+/**
+ * Selects the {@code n} most frequent words of a {@code WordCountTable}. The
+ * table is streamed once through a min-heap that never holds more than
+ * {@code n} slots, which takes O(V log n) time and O(n) memory for a
+ * vocabulary of V words. Words with equal counts are ranked alphabetically,
+ * so the selection does not depend on the layout of the table.
+ *
+ * @author Hudson Arledge and Nik Anand
+ *
+ */
+public final class TopWords {
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private TopWords() {
+    }
+
+    /**
+     * Returns the {@code n} highest ranked words of {@code table}, best first.
+     * A word ranks above another if its count is higher or if the counts are
+     * equal and it comes first alphabetically.
+     *
+     * @param table
+     *            the table of counts
+     * @param n
+     *            the number of words wanted
+     * @return the min(n, |table|) highest ranked words, best first
+     * @requires n >= 0
+     */
+    public static WordCount[] select(WordCountTable table, int n) {
+        assert table != null : "Violation of: table is not null";
+        assert n >= 0 : "Violation of: n >= 0";
+
+        int limit = Math.min(n, table.size());
+        //heap[0] is the worst of the words kept so far
+        int[] heap = new int[limit];
+        int size = 0;
+        if (limit > 0) {
+            for (int slot = 0; slot < table.capacity(); slot++) {
+                if (table.keyAt(slot) != null) {
+                    if (size < limit) {
+                        heap[size] = slot;
+                        size++;
+                        siftUp(table, heap, size - 1);
+                    } else if (ranks(table, slot, heap[0]) < 0) {
+                        heap[0] = slot;
+                        siftDown(table, heap, size);
+                    }
+                }
+            }
+        }
+        //removing the worst word repeatedly fills the result from the back
+        WordCount[] top = new WordCount[size];
+        while (size > 0) {
+            int slot = heap[0];
+            size--;
+            heap[0] = heap[size];
+            siftDown(table, heap, size);
+            top[size] = new WordCount(table.keyAt(slot), table.countAt(slot));
+        }
+        return top;
+    }
+
+    /**
+     * Compares the ranks of the words in two slots of {@code table}.
+     *
+     * @param table
+     *            the table of counts
+     * @param a
+     *            the first slot
+     * @param b
+     *            the second slot
+     * @return a negative number if the word in {@code a} ranks above the word
+     *         in {@code b}, a positive number if it ranks below, and zero if
+     *         the slots are the same
+     */
+    private static int ranks(WordCountTable table, int a, int b) {
+        return WordCount.compareByRank(table.keyAt(a), table.countAt(a),
+                table.keyAt(b), table.countAt(b));
+    }
+
+    /**
+     * Restores the heap order after {@code heap[i]} was added at the bottom.
+     *
+     * @param table
+     *            the table of counts
+     * @param heap
+     *            the slots of the kept words
+     * @param i
+     *            the index of the added slot
+     */
+    private static void siftUp(WordCountTable table, int[] heap, int i) {
+        int slot = heap[i];
+        int child = i;
+        while (child > 0) {
+            int parent = (child - 1) >>> 1;
+            if (ranks(table, slot, heap[parent]) <= 0) {
+                break;
+            }
+            heap[child] = heap[parent];
+            child = parent;
+        }
+        heap[child] = slot;
+    }
+
+    /**
+     * Restores the heap order after {@code heap[0]} was replaced.
+     *
+     * @param table
+     *            the table of counts
+     * @param heap
+     *            the slots of the kept words
+     * @param size
+     *            the number of slots in the heap
+     */
+    private static void siftDown(WordCountTable table, int[] heap, int size) {
+        if (size == 0) {
+            return;
+        }
+        int slot = heap[0];
+        int parent = 0;
+        int child = 1;
+        while (child < size) {
+            if (child + 1 < size
+                    && ranks(table, heap[child + 1], heap[child]) > 0) {
+                child++;
+            }
+            if (ranks(table, heap[child], slot) <= 0) {
+                break;
+            }
+            heap[parent] = heap[child];
+            parent = child;
+            child = 2 * parent + 1;
+        }
+        heap[parent] = slot;
+    }
+
+}
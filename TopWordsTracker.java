@@ -0,0 +1,199 @@
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+
+/**
+ * Keeps the {@code n} highest ranked words up to date while counts grow. The
+ * kept words are a min-heap with the worst at the root, and a map gives the
+ * heap position of each kept word. Because counts only ever increase, a word
+ * that is not kept can only enter by beating the root after its own count
+ * changes, so offering just the words whose counts changed keeps the set
+ * exact without rescanning the vocabulary.
+ *
+ * @author Hudson Arledge and Nik Anand
+ *
+ */
+public final class TopWordsTracker {
+
+    /**
+     * The number of words kept.
+     */
+    private final int n;
+
+    /**
+     * The kept words, as a heap whose root ranks lowest.
+     */
+    private final String[] words;
+
+    /**
+     * The count of each kept word.
+     */
+    private final long[] counts;
+
+    /**
+     * The heap index of each kept word.
+     */
+    private final HashMap<String, Integer> positions;
+
+    /**
+     * The number of words kept so far.
+     */
+    private int size;
+
+    /**
+     * Constructor.
+     *
+     * @param n
+     *            the number of words to keep
+     * @requires n >= 0
+     */
+    public TopWordsTracker(int n) {
+        assert n >= 0 : "Violation of: n >= 0";
+
+        this.n = n;
+        this.words = new String[n];
+        this.counts = new long[n];
+        this.positions = new HashMap<String, Integer>();
+        this.size = 0;
+    }
+
+    /**
+     * Records that the count of {@code word} is now {@code count}.
+     *
+     * @param word
+     *            the word whose count changed
+     * @param count
+     *            the new count of {@code word}
+     * @requires [count is not less than any count offered before for word]
+     */
+    public void offer(String word, long count) {
+        assert word != null : "Violation of: word is not null";
+
+        Integer position = this.positions.get(word);
+        if (position != null) {
+            //a kept word only moves away from the root as its count grows
+            this.counts[position] = count;
+            this.siftDown(position);
+        } else if (this.size < this.n) {
+            this.words[this.size] = word;
+            this.counts[this.size] = count;
+            this.positions.put(word, this.size);
+            this.size++;
+            this.siftUp(this.size - 1);
+        } else if (this.n > 0 && WordCount.compareByRank(word, count,
+                this.words[0], this.counts[0]) < 0) {
+            this.positions.remove(this.words[0]);
+            this.words[0] = word;
+            this.counts[0] = count;
+            this.positions.put(word, 0);
+            this.siftDown(0);
+        }
+    }
+
+    /**
+     * Forgets every kept word.
+     */
+    public void clear() {
+        Arrays.fill(this.words, 0, this.size, null);
+        this.positions.clear();
+        this.size = 0;
+    }
+
+    /**
+     * Returns the kept words, best first.
+     *
+     * @return the min(n, [number of words offered]) highest ranked words
+     */
+    public WordCount[] top() {
+        WordCount[] top = new WordCount[this.size];
+        for (int i = 0; i < this.size; i++) {
+            top[i] = new WordCount(this.words[i], this.counts[i]);
+        }
+        Arrays.sort(top, new Comparator<WordCount>() {
+            @Override
+            public int compare(WordCount o1, WordCount o2) {
+                return WordCount.compareByRank(o1.word(), o1.count(),
+                        o2.word(), o2.count());
+            }
+        });
+        return top;
+    }
+
+    /**
+     * Compares the ranks of the kept words at heap indexes {@code a} and
+     * {@code b}.
+     *
+     * @param a
+     *            the first heap index
+     * @param b
+     *            the second heap index
+     * @return a negative number if the word at {@code a} ranks above the word
+     *         at {@code b}, and a positive number if it ranks below
+     */
+    private int ranks(int a, int b) {
+        return WordCount.compareByRank(this.words[a], this.counts[a],
+                this.words[b], this.counts[b]);
+    }
+
+    /**
+     * Swaps the kept words at heap indexes {@code a} and {@code b}.
+     *
+     * @param a
+     *            the first heap index
+     * @param b
+     *            the second heap index
+     */
+    private void swap(int a, int b) {
+        String word = this.words[a];
+        long count = this.counts[a];
+        this.words[a] = this.words[b];
+        this.counts[a] = this.counts[b];
+        this.words[b] = word;
+        this.counts[b] = count;
+        this.positions.put(this.words[a], a);
+        this.positions.put(this.words[b], b);
+    }
+
+    /**
+     * Moves the word at heap index {@code i} toward the root while it ranks
+     * below its parent.
+     *
+     * @param i
+     *            the heap index
+     */
+    private void siftUp(int i) {
+        int child = i;
+        while (child > 0) {
+            int parent = (child - 1) >>> 1;
+            if (this.ranks(child, parent) <= 0) {
+                break;
+            }
+            this.swap(child, parent);
+            child = parent;
+        }
+    }
+
+    /**
+     * Moves the word at heap index {@code i} away from the root while one of
+     * its children ranks below it.
+     *
+     * @param i
+     *            the heap index
+     */
+    private void siftDown(int i) {
+        int parent = i;
+        int child = 2 * parent + 1;
+        while (child < this.size) {
+            if (child + 1 < this.size && this.ranks(child + 1, child) > 0) {
+                child++;
+            }
+            if (this.ranks(child, parent) <= 0) {
+                break;
+            }
+            this.swap(child, parent);
+            parent = child;
+            child = 2 * parent + 1;
+        }
+    }
+
+}
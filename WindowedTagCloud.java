@@ -0,0 +1,851 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A tag cloud of the words of a stream over a sliding window of time, such as
+ * the top words of a log in the last hour, refreshed every minute. Time is
+ * divided into slices of a fixed length and the window is the latest whole
+ * number of slices, the newest of which is still filling. The counts of each
+ * slice of the window are kept in a ring of tables, and their sums in a
+ * {@code RankedWordCounts}; when a slice leaves the window its counts are
+ * subtracted from the sums and its table is reused, so the window is never
+ * counted again, and the top words are kept up to date by the sums
+ * themselves, so a cloud is made without scanning the vocabulary.
+ *
+ * <p>
+ * Text is added with the time it belongs to, which is either when it was read
+ * or a timestamp at the start of each line. Text older than the window is
+ * ignored, and text newer than the window moves it forward.
+ *
+ * @author Hudson Arledge and Nik Anand
+ *
+ */
+public final class WindowedTagCloud {
+
+    /**
+     * Largest number of slices in a window.
+     */
+    public static final int MAX_SLICES = 1 << 16;
+
+    /**
+     * Number of bytes read from the input at a time.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Number of bytes after which a line without an end is counted anyway.
+     */
+    private static final int MAX_LINE = 1 << 20;
+
+    /**
+     * Milliseconds to wait before looking again at a file with no new data.
+     */
+    private static final long POLL_MILLIS = 200;
+
+    /**
+     * Queued by the reading thread after the last chunk of the input.
+     */
+    private static final byte[] END = new byte[0];
+
+    /**
+     * Default number of words in the cloud.
+     */
+    private static final int DEFAULT_WORDS = 100;
+
+    /**
+     * The configuration of the cloud.
+     */
+    private final TagCloudConfig config;
+
+    /**
+     * The length of a slice, in milliseconds.
+     */
+    private final long slice;
+
+    /**
+     * The counts of each slice of the window, indexed by slice number modulo
+     * the number of slices.
+     */
+    private final WordCountTable[] ring;
+
+    /**
+     * The number of the slice whose counts are in each table of the ring.
+     */
+    private final long[] ringSlices;
+
+    /**
+     * The sums of the counts of the slices of the window.
+     */
+    private final RankedWordCounts window;
+
+    /**
+     * The counts of the text added since the last fold, all of slice
+     * {@code freshSlice}.
+     */
+    private final WordCountTable fresh;
+
+    /**
+     * The splitter of bytes into words, or null if the charset needs
+     * decoding.
+     */
+    private final ByteTokenizer bytes;
+
+    /**
+     * The splitter of decoded text into words, or null if {@code bytes} is
+     * used.
+     */
+    private final ChunkedTokenizer chars;
+
+    /**
+     * The slice the counts of {@code fresh} belong to.
+     */
+    private long freshSlice;
+
+    /**
+     * The newest slice, which ends the window.
+     */
+    private long current;
+
+    /**
+     * Whether any time has been seen yet.
+     */
+    private boolean started;
+
+    /**
+     * Constructor.
+     *
+     * @param config
+     *            the configuration of the cloud
+     * @param window
+     *            the length of the window, in milliseconds, rounded up to a
+     *            whole number of slices
+     * @param slice
+     *            the length of a slice, in milliseconds
+     * @requires 0 < slice <= window and
+     *           (window + slice - 1) / slice <= MAX_SLICES
+     */
+    public WindowedTagCloud(TagCloudConfig config, long window, long slice) {
+        assert config != null : "Violation of: config is not null";
+        assert 0 < slice : "Violation of: 0 < slice";
+        assert slice <= window : "Violation of: slice <= window";
+        assert (window + slice - 1) / slice <= MAX_SLICES
+                : "Violation of: (window + slice - 1) / slice <= MAX_SLICES";
+
+        this.config = config;
+        this.slice = slice;
+        int slices = (int) ((window + slice - 1) / slice);
+        this.ring = new WordCountTable[slices];
+        this.ringSlices = new long[slices];
+        for (int i = 0; i < slices; i++) {
+            this.ring[i] = new WordCountTable();
+        }
+        this.window = new RankedWordCounts(config.words());
+        this.fresh = new WordCountTable();
+        TagCloudEngine engine = new TagCloudEngine(config);
+        if (ByteTokenizer.supports(config.charset())) {
+            this.bytes = engine.byteTokenizer(this.fresh,
+                    PipelineMetrics.DISABLED);
+            this.chars = null;
+        } else {
+            this.bytes = null;
+            this.chars = engine.tokenizer(this.fresh,
+                    PipelineMetrics.DISABLED);
+        }
+        this.started = false;
+    }
+
+    /**
+     * Counts the words of {@code text[offset, offset + length)}, which was
+     * written at {@code time}. The text ends a word, so it should be one or
+     * more whole lines.
+     *
+     * @param text
+     *            the buffer holding the text, in the charset of the
+     *            configuration
+     * @param offset
+     *            the index of the first byte of the text
+     * @param length
+     *            the number of bytes of the text
+     * @param time
+     *            the time of the text, in milliseconds since the epoch
+     * @requires 0 <= offset and 0 <= length and offset + length <= |text|
+     */
+    public void add(byte[] text, int offset, int length, long time) {
+        assert text != null : "Violation of: text is not null";
+        assert 0 <= offset : "Violation of: 0 <= offset";
+        assert 0 <= length : "Violation of: 0 <= length";
+        assert offset + length <= text.length
+                : "Violation of: offset + length <= |text|";
+
+        long at = Math.floorDiv(time, this.slice);
+        this.advance(time);
+        if (at <= this.current - this.ring.length) {
+            //too old for the window
+            return;
+        }
+        if (at != this.freshSlice) {
+            this.fold();
+            this.freshSlice = at;
+        }
+        if (this.bytes != null) {
+            this.bytes.accept(text, offset, length);
+            this.bytes.finish();
+        } else {
+            CharBuffer decoded = this.config.charset()
+                    .decode(ByteBuffer.wrap(text, offset, length));
+            while (decoded.hasRemaining()) {
+                CharBuffer input = this.chars.input();
+                int n = Math.min(input.remaining(), decoded.remaining());
+                int limit = decoded.limit();
+                decoded.limit(decoded.position() + n);
+                input.put(decoded);
+                decoded.limit(limit);
+                this.chars.accept(input);
+            }
+            this.chars.finish();
+        }
+    }
+
+    /**
+     * Moves the end of the window forward to the slice of {@code time}, if it
+     * is later than the newest slice, subtracting the counts of the slices
+     * that leave the window.
+     *
+     * @param time
+     *            the time, in milliseconds since the epoch
+     */
+    public void advance(long time) {
+        long at = Math.floorDiv(time, this.slice);
+        if (!this.started) {
+            this.started = true;
+            this.current = at;
+            this.freshSlice = at;
+            Arrays.fill(this.ringSlices, Long.MIN_VALUE);
+            return;
+        }
+        if (at <= this.current) {
+            return;
+        }
+        this.fold();
+        this.current = at;
+        for (int i = 0; i < this.ring.length; i++) {
+            if (this.ringSlices[i] <= at - this.ring.length) {
+                this.expire(i);
+            }
+        }
+    }
+
+    /**
+     * Subtracts the counts of the slice in table {@code i} of the ring from
+     * the window and empties the table.
+     *
+     * @param i
+     *            the index of the table in the ring
+     */
+    private void expire(int i) {
+        WordCountTable expired = this.ring[i];
+        if (expired.size() > 0) {
+            for (int slot = 0; slot < expired.capacity(); slot++) {
+                String word = expired.keyAt(slot);
+                if (word != null) {
+                    this.window.add(word, -expired.countAt(slot));
+                }
+            }
+            expired.clear();
+        }
+        this.ringSlices[i] = Long.MIN_VALUE;
+    }
+
+    /**
+     * Adds the counts of the text added since the last fold to their slice
+     * and to the window.
+     */
+    private void fold() {
+        if (this.fresh.size() == 0) {
+            return;
+        }
+        if (this.freshSlice > this.current - this.ring.length) {
+            int i = (int) Math.floorMod(this.freshSlice,
+                    (long) this.ring.length);
+            if (this.ringSlices[i] != this.freshSlice) {
+                //the table still holds a slice that has left the window
+                this.expire(i);
+                this.ringSlices[i] = this.freshSlice;
+            }
+            WordCountTable counts = this.ring[i];
+            for (int slot = 0; slot < this.fresh.capacity(); slot++) {
+                String word = this.fresh.keyAt(slot);
+                if (word != null) {
+                    long count = this.fresh.countAt(slot);
+                    counts.add(word, count);
+                    this.window.add(word, count);
+                }
+            }
+        }
+        this.fresh.clear();
+    }
+
+    /**
+     * Returns the length of a slice.
+     *
+     * @return the length of a slice, in milliseconds
+     */
+    public long slice() {
+        return this.slice;
+    }
+
+    /**
+     * Returns the number of slices in the window.
+     *
+     * @return the number of slices
+     */
+    public int slices() {
+        return this.ring.length;
+    }
+
+    /**
+     * Returns the current top words of the window, best first.
+     *
+     * @return the top words
+     */
+    public WordCount[] top() {
+        this.fold();
+        return this.window.top();
+    }
+
+    /**
+     * Returns the current cloud of the window.
+     *
+     * @param title
+     *            the name of the input
+     * @return the cloud
+     */
+    public TagCloudResult cloud(String title) {
+        assert title != null : "Violation of: title is not null";
+
+        this.fold();
+        return new TagCloudResult(this.config, title, this.window.top(),
+                this.window.total(), this.window.size());
+    }
+
+    /**
+     * Returns the length of the timestamp at the start of
+     * {@code text[from, to)}: its first word, or its first two if the first
+     * is a date and the second starts with a digit, as in
+     * "2024-05-01 12:00:00".
+     *
+     * @param text
+     *            the line
+     * @param from
+     *            the index of the first byte of the line
+     * @param to
+     *            the index just past the line
+     * @return the number of bytes of the timestamp, which may not be valid
+     */
+    private static int timestampLength(byte[] text, int from, int to) {
+        int end = from;
+        while (end < to && text[end] != ' ' && text[end] != '\t') {
+            end++;
+        }
+        if (end - from == "yyyy-mm-dd".length() && end + 1 < to
+                && text[end] == ' ' && '0' <= text[end + 1]
+                && text[end + 1] <= '9') {
+            end++;
+            while (end < to && text[end] != ' ' && text[end] != '\t') {
+                end++;
+            }
+        }
+        return end - from;
+    }
+
+    /**
+     * Returns the time written as {@code stamp}: milliseconds or seconds
+     * since the epoch, or an ISO-8601 date and time, with or without an
+     * offset. A time without an offset is taken to be UTC.
+     *
+     * @param stamp
+     *            the timestamp
+     * @return the time in milliseconds since the epoch, or Long.MIN_VALUE if
+     *         {@code stamp} is not a timestamp
+     */
+    static long parseTimestamp(String stamp) {
+        assert stamp != null : "Violation of: stamp is not null";
+
+        if (stamp.isEmpty()) {
+            return Long.MIN_VALUE;
+        }
+        boolean digits = true;
+        for (int i = 0; i < stamp.length() && digits; i++) {
+            char c = stamp.charAt(i);
+            digits = '0' <= c && c <= '9';
+        }
+        if (digits) {
+            if (stamp.length() > "999999999999".length()) {
+                return Long.MIN_VALUE;
+            }
+            long value = Long.parseLong(stamp);
+            //ten digits of seconds last until the year 2286
+            if (stamp.length() <= "9999999999".length()) {
+                return value * 1000;
+            }
+            return value;
+        }
+        //a date and time as logged by log4j, with a comma before the
+        //milliseconds
+        String iso = stamp.replace(' ', 'T').replace(',', '.');
+        try {
+            return OffsetDateTime.parse(iso).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            try {
+                return LocalDateTime.parse(iso).toInstant(ZoneOffset.UTC)
+                        .toEpochMilli();
+            } catch (DateTimeParseException f) {
+                return Long.MIN_VALUE;
+            }
+        }
+    }
+
+    /**
+     * Starts a thread that reads {@code in} and queues what it reads on
+     * {@code chunks}, followed by {@code END} at the end of the input or on
+     * failure, which is stored in {@code failure[0]}.
+     *
+     * @param in
+     *            the input
+     * @param chunks
+     *            the queue of chunks read
+     * @param failure
+     *            where a failure to read is stored
+     */
+    private static void readStream(final InputStream in,
+            final BlockingQueue<byte[]> chunks, final IOException[] failure) {
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                try {
+                    int read = in.read(buffer);
+                    while (read >= 0) {
+                        if (read > 0) {
+                            chunks.put(Arrays.copyOf(buffer, read));
+                        }
+                        read = in.read(buffer);
+                    }
+                } catch (IOException e) {
+                    failure[0] = e;
+                } catch (InterruptedException e) {
+                    failure[0] = new InterruptedIOException();
+                } finally {
+                    end(chunks);
+                }
+            }
+        }, "tagcloud-follow");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Queues {@code END} on {@code chunks}, waiting for room if need be.
+     *
+     * @param chunks
+     *            the queue of chunks read
+     */
+    private static void end(BlockingQueue<byte[]> chunks) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                chunks.put(END);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Starts a thread that follows {@code file} as it grows and queues what
+     * is appended to it on {@code chunks}. If the file becomes shorter than
+     * the part already read, or is replaced by another file, as when a log is
+     * rotated, it is read again from the start. On failure, the failure is
+     * stored in {@code failure[0]} and {@code END} is queued.
+     *
+     * @param file
+     *            the file
+     * @param fromStart
+     *            whether the text already in the file is read, rather than
+     *            only the text appended from now on
+     * @param chunks
+     *            the queue of chunks read
+     * @param failure
+     *            where a failure to read is stored
+     */
+    private static void followFile(final Path file, final boolean fromStart,
+            final BlockingQueue<byte[]> chunks, final IOException[] failure) {
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+                try {
+                    FileChannel channel = FileChannel.open(file,
+                            StandardOpenOption.READ);
+                    try {
+                        Object key = Files.readAttributes(file,
+                                BasicFileAttributes.class).fileKey();
+                        long position = fromStart ? 0 : channel.size();
+                        while (true) {
+                            buffer.clear();
+                            int read = channel.read(buffer, position);
+                            if (read > 0) {
+                                position += read;
+                                chunks.put(Arrays.copyOf(buffer.array(),
+                                        read));
+                                continue;
+                            }
+                            Thread.sleep(POLL_MILLIS);
+                            BasicFileAttributes now;
+                            try {
+                                now = Files.readAttributes(file,
+                                        BasicFileAttributes.class);
+                            } catch (NoSuchFileException e) {
+                                //being rotated; the new file comes soon
+                                continue;
+                            }
+                            if (now.size() < position || (key != null
+                                    && !key.equals(now.fileKey()))) {
+                                channel.close();
+                                channel = FileChannel.open(file,
+                                        StandardOpenOption.READ);
+                                key = now.fileKey();
+                                position = 0;
+                            }
+                        }
+                    } finally {
+                        channel.close();
+                    }
+                } catch (IOException e) {
+                    failure[0] = e;
+                } catch (InterruptedException e) {
+                    failure[0] = new InterruptedIOException();
+                } finally {
+                    end(chunks);
+                }
+            }
+        }, "tagcloud-follow");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Main method. Follows a file, or standard input, and rewrites the tag
+     * cloud of its latest window of time at every refresh, until the end of
+     * standard input. Lines are found, and timestamps read, on the raw bytes,
+     * so the input must be UTF-8 or US-ASCII.
+     *
+     * @param args
+     *            the command line arguments
+     */
+    public static void main(String[] args) {
+        int n = DEFAULT_WORDS;
+        long window = 3600;
+        long slice = 60;
+        long refresh = 60;
+        boolean timestamps = false;
+        boolean fromStart = false;
+        SeparatorSet separators = SeparatorSet.DEFAULT;
+        String stopList = null;
+        int phrases = 1;
+        Charset charset = StandardCharsets.UTF_8;
+        FontScale scale = FontScale.LINEAR;
+        String output = null;
+        String input = null;
+        try {
+            int i = 0;
+            while (i < args.length) {
+                String arg = args[i];
+                if (arg.equals("-n")) {
+                    n = Integer.parseInt(args[i + 1]);
+                    i += 2;
+                } else if (arg.equals("-w")) {
+                    window = Long.parseLong(args[i + 1]);
+                    i += 2;
+                } else if (arg.equals("-l")) {
+                    slice = Long.parseLong(args[i + 1]);
+                    i += 2;
+                } else if (arg.equals("-r")) {
+                    refresh = Long.parseLong(args[i + 1]);
+                    i += 2;
+                } else if (arg.equals("-s")) {
+                    stopList = args[i + 1];
+                    i += 2;
+                } else if (arg.equals("-g")) {
+                    phrases = Integer.parseInt(args[i + 1]);
+                    i += 2;
+                } else if (arg.equals("-e")) {
+                    charset = Charset.forName(args[i + 1]);
+                    i += 2;
+                } else if (arg.equals("-d")) {
+                    scale = FontScale.forName(args[i + 1]);
+                    i += 2;
+                } else if (arg.equals("-t")) {
+                    timestamps = true;
+                    i++;
+                } else if (arg.equals("-b")) {
+                    fromStart = true;
+                    i++;
+                } else if (arg.equals("-u")) {
+                    separators = SeparatorSet.unicode();
+                    i++;
+                } else if (arg.startsWith("-") && arg.length() > 1) {
+                    throw new IllegalArgumentException(arg);
+                } else if (output == null) {
+                    output = arg;
+                    i++;
+                } else if (input == null) {
+                    input = arg;
+                    i++;
+                } else {
+                    throw new IllegalArgumentException(arg);
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException e) {
+            //an unknown option or charset, or a malformed number
+            usage();
+            return;
+        }
+        //the lengths are given in seconds and used in milliseconds, and the
+        //window is rounded up to a whole number of slices
+        if (output == null || n < 0 || slice <= 0 || window < slice
+                || window > Long.MAX_VALUE / 1000
+                || (window + slice - 1) / slice > MAX_SLICES || refresh <= 0
+                || refresh > Long.MAX_VALUE / 1000 || scale == null
+                || !ByteTokenizer.supports(charset)
+                || phrases < 1 || phrases > PhraseCounter.MAX_WORDS) {
+            usage();
+            return;
+        }
+        TagCloudConfig config = TagCloudConfig.DEFAULT.withWords(n)
+                .withSeparators(separators).withPhrases(phrases)
+                .withCharset(charset).withScale(scale);
+        if (stopList != null) {
+            try {
+                config = config.withStopWords(
+                        BatchTagCloud.stopWords(stopList, config));
+            } catch (IOException e) {
+                System.err.println("Error reading stop words");
+                return;
+            }
+        }
+
+        WindowedTagCloud cloud = new WindowedTagCloud(config, window * 1000,
+                slice * 1000);
+        BlockingQueue<byte[]> chunks = new ArrayBlockingQueue<byte[]>(16);
+        IOException[] failure = new IOException[1];
+        String title;
+        if (input == null || input.equals("-")) {
+            title = "standard input";
+            readStream(System.in, chunks, failure);
+        } else {
+            title = input;
+            followFile(Paths.get(input), fromStart, chunks, failure);
+        }
+        title += " (last " + cloud.slices() * slice + " seconds)";
+        follow(cloud, chunks, timestamps, refresh * 1000, title,
+                Paths.get(output));
+        //written before END was queued, so visible once END was taken
+        if (failure[0] != null) {
+            System.err.println("Error reading file");
+        }
+    }
+
+    /**
+     * Counts the lines queued on {@code chunks} into {@code cloud}, and
+     * writes its cloud to {@code output} every {@code refresh} milliseconds,
+     * and once more when {@code END} is taken.
+     *
+     * @param cloud
+     *            the windowed cloud
+     * @param chunks
+     *            the queue of chunks read
+     * @param timestamps
+     *            whether lines start with the time they were written, rather
+     *            than being timed when they are read
+     * @param refresh
+     *            the milliseconds between refreshes
+     * @param title
+     *            the name of the input
+     * @param output
+     *            the file the cloud is written to
+     */
+    private static void follow(WindowedTagCloud cloud,
+            BlockingQueue<byte[]> chunks, boolean timestamps, long refresh,
+            String title, Path output) {
+        //one renderer is reused, so its buffer is only grown once
+        HtmlRenderer renderer = new HtmlRenderer();
+        byte[] line = new byte[BUFFER_SIZE];
+        int length = 0;
+        long time = System.currentTimeMillis();
+        long counted = 0;
+        long next = time + refresh;
+        boolean end = false;
+        while (!end) {
+            byte[] chunk;
+            try {
+                long wait = next - System.currentTimeMillis();
+                chunk = chunks.poll(Math.max(wait, 0), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            if (!timestamps) {
+                time = now;
+            }
+            if (chunk == END) {
+                end = true;
+                if (length > 0) {
+                    time = count(cloud, line, 0, length, timestamps, time);
+                    length = 0;
+                }
+            } else if (chunk != null) {
+                counted += chunk.length;
+                int from = 0;
+                for (int i = 0; i < chunk.length; i++) {
+                    if (chunk[i] == '\n') {
+                        if (length == 0) {
+                            time = count(cloud, chunk, from, i, timestamps,
+                                    time);
+                        } else {
+                            line = append(line, length, chunk, from, i);
+                            time = count(cloud, line, 0,
+                                    length + i - from, timestamps, time);
+                            length = 0;
+                        }
+                        from = i + 1;
+                    }
+                }
+                line = append(line, length, chunk, from, chunk.length);
+                length += chunk.length - from;
+                if (length >= MAX_LINE) {
+                    time = count(cloud, line, 0, length, timestamps, time);
+                    length = 0;
+                }
+            }
+            if (now >= next || end) {
+                if (!timestamps) {
+                    cloud.advance(now);
+                }
+                try {
+                    renderer.render(cloud.cloud(title)).writeTo(output);
+                } catch (IOException e) {
+                    System.err.println("Error writing to file");
+                    return;
+                }
+                if (counted > 0) {
+                    System.out.println("Counted " + counted + " new bytes");
+                    counted = 0;
+                }
+                next = now + refresh;
+            }
+        }
+    }
+
+    /**
+     * Returns {@code line}, or a larger copy of it, with
+     * {@code chunk[from, to)} copied after its first {@code length} bytes.
+     *
+     * @param line
+     *            the start of the line
+     * @param length
+     *            the number of bytes of the line
+     * @param chunk
+     *            the bytes to append
+     * @param from
+     *            the index of the first byte to append
+     * @param to
+     *            the index just past the last byte to append
+     * @return the buffer holding the whole line
+     */
+    private static byte[] append(byte[] line, int length, byte[] chunk,
+            int from, int to) {
+        byte[] buffer = line;
+        int needed = length + to - from;
+        if (needed > buffer.length) {
+            buffer = Arrays.copyOf(buffer,
+                    Math.max(needed, buffer.length << 1));
+        }
+        System.arraycopy(chunk, from, buffer, length, to - from);
+        return buffer;
+    }
+
+    /**
+     * Counts the line {@code text[from, to)} into {@code cloud}. If
+     * {@code timestamps} is true and the line starts with a timestamp, the
+     * line is counted at that time, without the timestamp; otherwise it is
+     * counted at {@code time}, so a line with no timestamp, such as one of a
+     * stack trace, belongs with the line before it.
+     *
+     * @param cloud
+     *            the windowed cloud
+     * @param text
+     *            the buffer holding the line
+     * @param from
+     *            the index of the first byte of the line
+     * @param to
+     *            the index just past the line
+     * @param timestamps
+     *            whether lines start with the time they were written
+     * @param time
+     *            the time of the line if it has no timestamp
+     * @return the time the line was counted at
+     */
+    private static long count(WindowedTagCloud cloud, byte[] text, int from,
+            int to, boolean timestamps, long time) {
+        long at = time;
+        int start = from;
+        if (timestamps) {
+            int stampLength = timestampLength(text, from, to);
+            long stamp = parseTimestamp(new String(text, from, stampLength,
+                    StandardCharsets.ISO_8859_1));
+            if (stamp != Long.MIN_VALUE) {
+                at = stamp;
+                start += stampLength;
+            }
+        }
+        cloud.add(text, start, to - start, at);
+        return at;
+    }
+
+    /**
+     * Prints the command line usage.
+     */
+    private static void usage() {
+        System.err.println("Usage: WindowedTagCloud [-n words]"
+                + " [-w window seconds] [-l slice seconds]"
+                + " [-r refresh seconds] [-t] [-b] [-u] [-s stop words]"
+                + " [-g words per phrase] [-e charset]"
+                + " [-d linear|log|quantile] output file [input file]");
+    }
+
+}
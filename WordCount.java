@@ -0,0 +1,118 @@
+/**
+ * An immutable pair of a word and its number of occurrences. A count found by
+ * an approximate counter also carries its error: the true number of
+ * occurrences is between {@code count() - error()} and {@code count()}.
+ *
+ * @author Hudson Arledge and Nik Anand
+ *
+ */
+public final class WordCount {
+
+    /**
+     * The word.
+     */
+    private final String word;
+
+    /**
+     * The number of occurrences of the word.
+     */
+    private final long count;
+
+    /**
+     * The most the count may be too high.
+     */
+    private final long error;
+
+    /**
+     * Constructor for an exact count.
+     *
+     * @param word
+     *            the word
+     * @param count
+     *            the number of occurrences of the word
+     */
+    public WordCount(String word, long count) {
+        this(word, count, 0);
+    }
+
+    /**
+     * Constructor for a count that may be up to {@code error} too high.
+     *
+     * @param word
+     *            the word
+     * @param count
+     *            the number of occurrences of the word
+     * @param error
+     *            the most {@code count} may be too high
+     * @requires 0 <= error <= count
+     */
+    public WordCount(String word, long count, long error) {
+        assert word != null : "Violation of: word is not null";
+        assert 0 <= error : "Violation of: 0 <= error";
+        assert error <= count : "Violation of: error <= count";
+
+        this.word = word;
+        this.count = count;
+        this.error = error;
+    }
+
+    /**
+     * Returns the word.
+     *
+     * @return the word
+     */
+    public String word() {
+        return this.word;
+    }
+
+    /**
+     * Returns the number of occurrences of the word.
+     *
+     * @return the count
+     */
+    public long count() {
+        return this.count;
+    }
+
+    /**
+     * Returns the most the count may be too high, which is 0 for an exact
+     * count.
+     *
+     * @return the error
+     */
+    public long error() {
+        return this.error;
+    }
+
+    /**
+     * Compares two words by count, higher first, and then alphabetically, so
+     * that words with equal counts always come out in the same order.
+     *
+     * @param word1
+     *            the first word
+     * @param count1
+     *            the count of the first word
+     * @param word2
+     *            the second word
+     * @param count2
+     *            the count of the second word
+     * @return a negative number, zero or a positive number as the first word
+     *         ranks before, equal to or after the second
+     */
+    public static int compareByRank(String word1, long count1, String word2,
+            long count2) {
+        if (count1 != count2) {
+            return count1 > count2 ? -1 : 1;
+        }
+        return word1.compareTo(word2);
+    }
+
+    @Override
+    public String toString() {
+        if (this.error > 0) {
+            return this.word + "=" + this.count + "-" + this.error;
+        }
+        return this.word + "=" + this.count;
+    }
+
+}
@@ -0,0 +1,481 @@
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A table from words to their number of occurrences, specialized for counting.
+ * It uses open addressing with linear probing over parallel arrays of keys,
+ * hashes and {@code long} counts, so an occurrence is one probe sequence with
+ * no boxing. Words are hashed straight from the tokenizer's buffer with the
+ * same function as {@code String.hashCode}, and a key {@code String} is only
+ * created the first time a distinct word is added.
+ *
+ * @author Hudson Arledge and Nik Anand
+ *
+ */
+public final class WordCountTable implements AsciiWordSink {
+
+    /**
+     * Default number of slots.
+     */
+    private static final int DEFAULT_CAPACITY = 1 << 10;
+
+    /**
+     * Largest number of slots; the arrays are indexed by {@code int}.
+     */
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    /**
+     * The word in each slot, or null for an empty slot.
+     */
+    private String[] keys;
+
+    /**
+     * The {@code String.hashCode} of the word in each slot.
+     */
+    private int[] hashes;
+
+    /**
+     * The count of the word in each slot.
+     */
+    private long[] counts;
+
+    /**
+     * The number of distinct words in the table.
+     */
+    private int size;
+
+    /**
+     * The sum of all counts in the table.
+     */
+    private long total;
+
+    /**
+     * The number of distinct words at which the table grows.
+     */
+    private int threshold;
+
+    /**
+     * Constructor for an empty table.
+     */
+    public WordCountTable() {
+        //the default number of slots, the size clear() returns to
+        this.allocate(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor for an empty table sized for {@code expected} distinct
+     * words.
+     *
+     * @param expected
+     *            the expected number of distinct words
+     * @requires expected >= 0
+     */
+    public WordCountTable(int expected) {
+        assert expected >= 0 : "Violation of: expected >= 0";
+
+        int capacity = DEFAULT_CAPACITY;
+        while (capacity < MAX_CAPACITY && thresholdOf(capacity) < expected) {
+            capacity <<= 1;
+        }
+        this.allocate(capacity);
+    }
+
+    /**
+     * Returns the number of distinct words at which a table of
+     * {@code capacity} slots grows, which keeps it at most two thirds full.
+     *
+     * @param capacity
+     *            the number of slots
+     * @return the growth threshold
+     */
+    private static int thresholdOf(int capacity) {
+        return (int) (2L * capacity / 3);
+    }
+
+    /**
+     * Replaces the arrays with empty ones of {@code capacity} slots.
+     *
+     * @param capacity
+     *            the number of slots, a power of two
+     */
+    private void allocate(int capacity) {
+        this.keys = new String[capacity];
+        this.hashes = new int[capacity];
+        this.counts = new long[capacity];
+        this.threshold = thresholdOf(capacity);
+    }
+
+    /**
+     * Returns the first slot probed for a word with hash {@code hash}. The hash
+     * is mixed first because {@code String.hashCode} puts little entropy in
+     * its low bits for short words.
+     *
+     * @param hash
+     *            the {@code String.hashCode} of the word
+     * @param mask
+     *            the number of slots minus one
+     * @return the home slot of the word
+     */
+    static int home(int hash, int mask) {
+        int h = hash * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    /**
+     * Returns the {@code String.hashCode} of {@code text[offset, offset +
+     * length)} without creating the {@code String}.
+     *
+     * @param text
+     *            the buffer holding the word
+     * @param offset
+     *            the index of the first character of the word
+     * @param length
+     *            the number of characters in the word
+     * @return the hash of the word
+     */
+    public static int hash(char[] text, int offset, int length) {
+        int h = 0;
+        for (int i = offset; i < offset + length; i++) {
+            h = 31 * h + text[i];
+        }
+        return h;
+    }
+
+    /**
+     * Reports whether {@code key} holds the characters {@code text[offset,
+     * offset + length)}.
+     *
+     * @param key
+     *            a word in the table
+     * @param text
+     *            the buffer holding the word looked up
+     * @param offset
+     *            the index of the first character of the word
+     * @param length
+     *            the number of characters in the word
+     * @return true iff the words are equal
+     */
+    static boolean matches(String key, char[] text, int offset,
+            int length) {
+        if (key.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (key.charAt(i) != text[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reports whether {@code key} holds the ASCII bytes {@code text[offset,
+     * offset + length)}.
+     *
+     * @param key
+     *            a word in the table
+     * @param text
+     *            the buffer holding the word looked up
+     * @param offset
+     *            the index of the first byte of the word
+     * @param length
+     *            the number of bytes in the word
+     * @return true iff the words are equal
+     */
+    static boolean matches(String key, byte[] text, int offset,
+            int length) {
+        if (key.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (key.charAt(i) != text[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void word(char[] text, int offset, int length) {
+        this.add(text, offset, length, 1);
+    }
+
+    @Override
+    public void word(char[] text, int offset, int length, int hash) {
+        this.add(text, offset, length, hash, 1);
+    }
+
+    @Override
+    public void word(byte[] text, int offset, int length, int hash) {
+        int mask = this.keys.length - 1;
+        int slot = home(hash, mask);
+        String key = this.keys[slot];
+        while (key != null) {
+            if (this.hashes[slot] == hash
+                    && matches(key, text, offset, length)) {
+                this.counts[slot]++;
+                this.total++;
+                return;
+            }
+            slot = (slot + 1) & mask;
+            key = this.keys[slot];
+        }
+        //the word is decoded only now that it is new to the table
+        this.insert(slot,
+                new String(text, offset, length, StandardCharsets.ISO_8859_1),
+                hash, 1);
+    }
+
+    /**
+     * Adds {@code delta} to the count of the word {@code text[offset, offset +
+     * length)}, adding the word if it is not in the table.
+     *
+     * @param text
+     *            the buffer holding the word
+     * @param offset
+     *            the index of the first character of the word
+     * @param length
+     *            the number of characters in the word
+     * @param delta
+     *            the amount added to the count
+     * @return the slot holding the word
+     * @requires 0 <= offset and 0 < length and offset + length <= |text|
+     */
+    public int add(char[] text, int offset, int length, long delta) {
+        assert text != null : "Violation of: text is not null";
+
+        return this.add(text, offset, length, hash(text, offset, length),
+                delta);
+    }
+
+    /**
+     * Adds {@code delta} to the count of the word {@code text[offset, offset +
+     * length)}, whose hash is {@code hash}, adding the word if it is not in
+     * the table.
+     *
+     * @param text
+     *            the buffer holding the word
+     * @param offset
+     *            the index of the first character of the word
+     * @param length
+     *            the number of characters in the word
+     * @param hash
+     *            the hash of the word
+     * @param delta
+     *            the amount added to the count
+     * @return the slot holding the word
+     * @requires 0 <= offset and 0 < length and offset + length <= |text| and
+     *           hash = hash(text, offset, length)
+     */
+    private int add(char[] text, int offset, int length, int hash,
+            long delta) {
+        int mask = this.keys.length - 1;
+        int slot = home(hash, mask);
+        String key = this.keys[slot];
+        while (key != null) {
+            if (this.hashes[slot] == hash
+                    && matches(key, text, offset, length)) {
+                this.counts[slot] += delta;
+                this.total += delta;
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+            key = this.keys[slot];
+        }
+        return this.insert(slot, new String(text, offset, length), hash,
+                delta);
+    }
+
+    /**
+     * Adds {@code delta} to the count of {@code word}, adding the word if it is
+     * not in the table.
+     *
+     * @param word
+     *            the word
+     * @param delta
+     *            the amount added to the count
+     * @return the slot holding the word
+     * @requires |word| > 0
+     */
+    public int add(String word, long delta) {
+        assert word != null : "Violation of: word is not null";
+
+        int hash = word.hashCode();
+        int slot = this.find(word, hash);
+        if (this.keys[slot] != null) {
+            this.counts[slot] += delta;
+            this.total += delta;
+            return slot;
+        }
+        return this.insert(slot, word, hash, delta);
+    }
+
+    /**
+     * Returns the count of {@code word}, or 0 if it is not in the table.
+     *
+     * @param word
+     *            the word
+     * @return the count of {@code word}
+     */
+    public long get(String word) {
+        assert word != null : "Violation of: word is not null";
+
+        return this.counts[this.find(word, word.hashCode())];
+    }
+
+    /**
+     * Returns the slot holding {@code word}, or the empty slot where it would
+     * be inserted.
+     *
+     * @param word
+     *            the word
+     * @param hash
+     *            the hash of {@code word}
+     * @return the slot for {@code word}
+     */
+    private int find(String word, int hash) {
+        int mask = this.keys.length - 1;
+        int slot = home(hash, mask);
+        String key = this.keys[slot];
+        while (key != null
+                && !(this.hashes[slot] == hash && key.equals(word))) {
+            slot = (slot + 1) & mask;
+            key = this.keys[slot];
+        }
+        return slot;
+    }
+
+    /**
+     * Puts a new word in the empty slot {@code slot}, growing the table if it
+     * is too full.
+     *
+     * @param slot
+     *            the empty slot found for the word
+     * @param word
+     *            the word
+     * @param hash
+     *            the hash of {@code word}
+     * @param count
+     *            the count of {@code word}
+     * @return the slot holding the word after any growth
+     */
+    private int insert(int slot, String word, int hash, long count) {
+        if (this.size == this.keys.length - 1) {
+            throw new IllegalStateException("Word count table is full");
+        }
+        this.keys[slot] = word;
+        this.hashes[slot] = hash;
+        this.counts[slot] = count;
+        this.size++;
+        this.total += count;
+        if (this.size > this.threshold && this.keys.length < MAX_CAPACITY) {
+            this.rehash(this.keys.length << 1);
+            return this.find(word, hash);
+        }
+        return slot;
+    }
+
+    /**
+     * Moves every word into new arrays of {@code capacity} slots.
+     *
+     * @param capacity
+     *            the new number of slots, a power of two
+     */
+    private void rehash(int capacity) {
+        String[] oldKeys = this.keys;
+        int[] oldHashes = this.hashes;
+        long[] oldCounts = this.counts;
+        this.allocate(capacity);
+        int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int slot = home(oldHashes[i], mask);
+                while (this.keys[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                this.keys[slot] = oldKeys[i];
+                this.hashes[slot] = oldHashes[i];
+                this.counts[slot] = oldCounts[i];
+            }
+        }
+    }
+
+    /**
+     * Adds every count of {@code other} to this table.
+     *
+     * @param other
+     *            the table whose counts are added
+     */
+    public void addAll(WordCountTable other) {
+        assert other != null : "Violation of: other is not null";
+        assert other != this : "Violation of: other is not this";
+
+        for (int i = 0; i < other.keys.length; i++) {
+            if (other.keys[i] != null) {
+                this.add(other.keys[i], other.counts[i]);
+            }
+        }
+    }
+
+    /**
+     * Removes every word from the table.
+     */
+    public void clear() {
+        this.allocate(DEFAULT_CAPACITY);
+        this.size = 0;
+        this.total = 0;
+    }
+
+    /**
+     * Returns the number of distinct words in the table.
+     *
+     * @return the number of distinct words
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns the sum of all counts, which is the number of words added.
+     *
+     * @return the total count
+     */
+    public long total() {
+        return this.total;
+    }
+
+    /**
+     * Returns the number of slots. Together with {@code keyAt} and
+     * {@code countAt} this lets callers visit every word without an iterator.
+     *
+     * @return the number of slots
+     */
+    public int capacity() {
+        return this.keys.length;
+    }
+
+    /**
+     * Returns the word in {@code slot}, or null if the slot is empty.
+     *
+     * @param slot
+     *            the slot
+     * @return the word in {@code slot}
+     * @requires 0 <= slot < capacity()
+     */
+    public String keyAt(int slot) {
+        return this.keys[slot];
+    }
+
+    /**
+     * Returns the count of the word in {@code slot}, or 0 if the slot is
+     * empty.
+     *
+     * @param slot
+     *            the slot
+     * @return the count in {@code slot}
+     * @requires 0 <= slot < capacity()
+     */
+    public long countAt(int slot) {
+        return this.counts[slot];
+    }
+
+}
@@ -0,0 +1,24 @@
+/**
+ * Receives the words found by {@code Tokenizer}. A word is passed as a slice
+ * of the tokenizer's buffer, which is only valid for the duration of the call,
+ * so an implementation must copy the characters if it keeps them.
+ *
+ * @author Hudson Arledge and Nik Anand
+ *
+ */
+public interface WordSink {
+
+    /**
+     * Accepts the word {@code text[offset, offset + length)}.
+     *
+     * @param text
+     *            the buffer holding the word
+     * @param offset
+     *            the index of the first character of the word
+     * @param length
+     *            the number of characters in the word
+     * @requires 0 <= offset and 0 < length and offset + length <= |text|
+     */
+    void word(char[] text, int offset, int length);
+
+}
@@ -0,0 +1,117 @@
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+
+import tagcloud.bench.Stages;
+
+/**
+ * The benchmarked stages, implemented with the generator's classes. This class
+ * is in the unnamed package so that it can use them.
+ *
+ * @author Hudson Arledge and Nik Anand
+ *
+ */
+public final class BenchStages implements Stages {
+
+    /**
+     * An {@code AsciiWordSink} that only counts the words it receives.
+     */
+    private static final class WordCounter implements AsciiWordSink {
+
+        /**
+         * The number of words received.
+         */
+        private long words;
+
+        @Override
+        public void word(char[] text, int offset, int length) {
+            this.words++;
+        }
+
+        @Override
+        public void word(char[] text, int offset, int length, int hash) {
+            this.words++;
+        }
+
+        @Override
+        public void word(byte[] text, int offset, int length, int hash) {
+            this.words++;
+        }
+    }
+
+    /**
+     * The engine of the default configuration, whose tokenizer is the one
+     * {@code count} uses.
+     */
+    private final TagCloudEngine engine = new TagCloudEngine(
+            TagCloudConfig.DEFAULT);
+
+    /**
+     * The renderer, reused so that rendering allocates as it does in a
+     * long-running process.
+     */
+    private final HtmlRenderer renderer = new HtmlRenderer();
+
+    @Override
+    public long tokenize(Path file) throws IOException {
+        WordCounter counter = new WordCounter();
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            //the default charset is UTF-8, which count splits as bytes
+            MappedFileIngest.ingest(channel, 0, channel.size(),
+                    this.engine.byteTokenizer(counter,
+                            PipelineMetrics.DISABLED));
+        } finally {
+            channel.close();
+        }
+        return counter.words;
+    }
+
+    @Override
+    public Object count(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            //the engine has no pool, so it counts on the calling thread
+            return this.engine.count(channel, PipelineMetrics.DISABLED);
+        } finally {
+            channel.close();
+        }
+    }
+
+    @Override
+    public Object countParallel(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            //called directly rather than through an engine with a pool,
+            //which counts files below TagCloudEngine.PARALLEL_THRESHOLD on
+            //the calling thread; a corpus is still split into ranges of at
+            //least ParallelWordCount.MIN_SEGMENT_SIZE, so the 1MB corpus
+            //measures the fork/join overhead on a single range
+            TagCloudConfig config = this.engine.config();
+            return ParallelWordCount.count(channel, config.separators(),
+                    config.foldsCase(), config.stopWords(),
+                    ForkJoinPool.commonPool(), PipelineMetrics.DISABLED);
+        } finally {
+            channel.close();
+        }
+    }
+
+    @Override
+    public Object select(Object counts, int n) {
+        return new TagCloudEngine(TagCloudConfig.DEFAULT.withWords(n)).cloud(
+                (WordCountTable) counts, "benchmark", PipelineMetrics.DISABLED);
+    }
+
+    @Override
+    public long render(Object top, int n) {
+        return this.renderer.render((TagCloudResult) top).size();
+    }
+
+    @Override
+    public long pipeline(Path file, int n) throws IOException {
+        return this.render(this.select(this.count(file), n), n);
+    }
+
+}
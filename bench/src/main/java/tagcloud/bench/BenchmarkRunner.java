@@ -0,0 +1,58 @@
+package tagcloud.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the usual JMH command line, adding the GC profiler
+ * (for the bytes allocated per operation) and a JSON result file unless the
+ * command line already chooses a profiler or a result file. The JSON file can
+ * be compared between versions to catch regressions. For example
+ *
+ * <pre>
+ * java -jar target/benchmarks.jar -p corpus=100MB StageBenchmarks
+ * </pre>
+ *
+ * @author Hudson Arledge and Nik Anand
+ *
+ */
+public final class BenchmarkRunner {
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private BenchmarkRunner() {
+    }
+
+    /**
+     * Main method.
+     *
+     * @param args
+     *            JMH command line options
+     * @throws RunnerException
+     *             if the benchmarks fail
+     * @throws CommandLineOptionException
+     *             if the options are invalid
+     */
+    public static void main(String[] args)
+            throws RunnerException, CommandLineOptionException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .parent(commandLine);
+        if (commandLine.getProfilers().isEmpty()) {
+            options.addProfiler(GCProfiler.class);
+        }
+        if (!commandLine.getResult().hasValue()) {
+            options.result("jmh-result.json")
+                    .resultFormat(ResultFormatType.JSON);
+        }
+        new Runner(options.build()).run();
+    }
+
+}
@@ -0,0 +1,49 @@
+package tagcloud.bench;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Counts the megabytes of input processed by a benchmark. JMH reports the
+ * counter as a rate next to the operation rate, which gives the throughput of
+ * a stage in MB/s.
+ *
+ * @author Hudson Arledge and Nik Anand
+ *
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class ByteCounter {
+
+    /**
+     * Number of bytes in a megabyte.
+     */
+    private static final double BYTES_PER_MEGABYTE = 1 << 20;
+
+    /**
+     * The megabytes processed in the current iteration.
+     */
+    public double megabytes;
+
+    /**
+     * Clears the counter at the start of each iteration.
+     */
+    @Setup(Level.Iteration)
+    public void reset() {
+        this.megabytes = 0;
+    }
+
+    /**
+     * Records that {@code bytes} more bytes were processed.
+     *
+     * @param bytes
+     *            the number of bytes processed
+     */
+    public void add(long bytes) {
+        this.megabytes += bytes / BYTES_PER_MEGABYTE;
+    }
+
+}
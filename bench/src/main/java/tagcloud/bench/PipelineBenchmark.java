@@ -0,0 +1,91 @@
+package tagcloud.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the whole pipeline, from reading a corpus to rendering its cloud,
+ * as {@code TagCloud} runs it.
+ *
+ * @author Hudson Arledge and Nik Anand
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms4g", "-Xmx4g" })
+public class PipelineBenchmark {
+
+    /**
+     * The size of the Zipf corpus.
+     */
+    @Param({ "1MB", "100MB", "1GB" })
+    public String corpus;
+
+    /**
+     * The number of words in the cloud.
+     */
+    @Param({ "100" })
+    public int n;
+
+    /**
+     * The stages under test.
+     */
+    private Stages stages;
+
+    /**
+     * The corpus file.
+     */
+    private Path file;
+
+    /**
+     * The size of the corpus in bytes.
+     */
+    private long bytes;
+
+    /**
+     * Generates or finds the corpus.
+     *
+     * @throws IOException
+     *             if the corpus cannot be written
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        this.stages = Stages.load();
+        this.file = ZipfCorpus.get(this.corpus);
+        this.bytes = Files.size(this.file);
+    }
+
+    /**
+     * Makes the cloud of the corpus.
+     *
+     * @param counter
+     *            the MB/s counter
+     * @return the number of bytes rendered
+     * @throws IOException
+     *             if the corpus cannot be read
+     */
+    @Benchmark
+    public long pipeline(ByteCounter counter) throws IOException {
+        counter.add(this.bytes);
+        return this.stages.pipeline(this.file, this.n);
+    }
+
+}
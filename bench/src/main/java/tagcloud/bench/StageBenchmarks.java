@@ -0,0 +1,156 @@
+package tagcloud.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks each stage of the pipeline on its own: tokenizing, counting,
+ * selecting the top words and rendering the HTML. The stages that read the
+ * corpus also report their throughput in MB/s; selecting and rendering work
+ * on counts prepared once per trial.
+ *
+ * @author Hudson Arledge and Nik Anand
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms4g", "-Xmx4g" })
+public class StageBenchmarks {
+
+    /**
+     * The size of the Zipf corpus.
+     */
+    @Param({ "1MB", "100MB", "1GB" })
+    public String corpus;
+
+    /**
+     * The number of words in the cloud.
+     */
+    @Param({ "100" })
+    public int n;
+
+    /**
+     * The stages under test.
+     */
+    private Stages stages;
+
+    /**
+     * The corpus file.
+     */
+    private Path file;
+
+    /**
+     * The size of the corpus in bytes.
+     */
+    private long bytes;
+
+    /**
+     * The counts of the corpus.
+     */
+    private Object counts;
+
+    /**
+     * The top words of the corpus.
+     */
+    private Object top;
+
+    /**
+     * Generates or finds the corpus and prepares the inputs of the later
+     * stages.
+     *
+     * @throws IOException
+     *             if the corpus cannot be written or read
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        this.stages = Stages.load();
+        this.file = ZipfCorpus.get(this.corpus);
+        this.bytes = Files.size(this.file);
+        this.counts = this.stages.count(this.file);
+        this.top = this.stages.select(this.counts, this.n);
+    }
+
+    /**
+     * Splits the corpus into words.
+     *
+     * @param counter
+     *            the MB/s counter
+     * @return the number of words
+     * @throws IOException
+     *             if the corpus cannot be read
+     */
+    @Benchmark
+    public long tokenize(ByteCounter counter) throws IOException {
+        counter.add(this.bytes);
+        return this.stages.tokenize(this.file);
+    }
+
+    /**
+     * Counts the words of the corpus on one thread.
+     *
+     * @param counter
+     *            the MB/s counter
+     * @return the table of counts
+     * @throws IOException
+     *             if the corpus cannot be read
+     */
+    @Benchmark
+    public Object count(ByteCounter counter) throws IOException {
+        counter.add(this.bytes);
+        return this.stages.count(this.file);
+    }
+
+    /**
+     * Counts the words of the corpus on every core.
+     *
+     * @param counter
+     *            the MB/s counter
+     * @return the table of counts
+     * @throws IOException
+     *             if the corpus cannot be read
+     */
+    @Benchmark
+    public Object countParallel(ByteCounter counter) throws IOException {
+        counter.add(this.bytes);
+        return this.stages.countParallel(this.file);
+    }
+
+    /**
+     * Selects the top words from the counts.
+     *
+     * @return the top words
+     */
+    @Benchmark
+    public Object select() {
+        return this.stages.select(this.counts, this.n);
+    }
+
+    /**
+     * Renders the cloud of the top words.
+     *
+     * @return the number of bytes rendered
+     */
+    @Benchmark
+    public long render() {
+        return this.stages.render(this.top, this.n);
+    }
+
+}
@@ -0,0 +1,101 @@
+package tagcloud.bench;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * The stages of the tag cloud pipeline, as seen by the benchmarks. The
+ * generator's classes are in the unnamed package, which code in a named
+ * package cannot refer to, so the implementation ({@code BenchStages}, in the
+ * unnamed package) is loaded by name once and every stage result is passed
+ * around as an opaque {@code Object}.
+ *
+ * @author Hudson Arledge and Nik Anand
+ *
+ */
+public interface Stages {
+
+    /**
+     * Splits {@code file} into words without counting them.
+     *
+     * @param file
+     *            the text to tokenize
+     * @return the number of words
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    long tokenize(Path file) throws IOException;
+
+    /**
+     * Counts the words of {@code file} on the calling thread.
+     *
+     * @param file
+     *            the text to count
+     * @return the table of counts
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    Object count(Path file) throws IOException;
+
+    /**
+     * Counts the words of {@code file} on every available core.
+     *
+     * @param file
+     *            the text to count
+     * @return the table of counts
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    Object countParallel(Path file) throws IOException;
+
+    /**
+     * Selects the {@code n} most frequent words of a table of counts.
+     *
+     * @param counts
+     *            a table returned by {@code count}
+     * @param n
+     *            the number of words
+     * @return the selected words
+     */
+    Object select(Object counts, int n);
+
+    /**
+     * Renders the HTML cloud of selected words, discarding the output.
+     *
+     * @param top
+     *            the words returned by {@code select}
+     * @param n
+     *            the number of words
+     * @return the number of bytes rendered
+     */
+    long render(Object top, int n);
+
+    /**
+     * Runs every stage, from reading {@code file} to rendering its cloud.
+     *
+     * @param file
+     *            the text to make a cloud of
+     * @param n
+     *            the number of words
+     * @return the number of bytes rendered
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    long pipeline(Path file, int n) throws IOException;
+
+    /**
+     * Returns the implementation of the stages.
+     *
+     * @return the stages
+     */
+    static Stages load() {
+        try {
+            return (Stages) Class.forName("BenchStages")
+                    .getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("BenchStages is not on the class path",
+                    e);
+        }
+    }
+
+}
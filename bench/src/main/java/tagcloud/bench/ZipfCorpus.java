@@ -0,0 +1,177 @@
+package tagcloud.bench;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+
+/**
+ * Generates text corpora whose word frequencies follow a Zipf distribution,
+ * like natural language and log text. A corpus is written once to a cache
+ * directory and reused by later runs, and the same size and seed always give
+ * the same bytes, so results from different runs are comparable.
+ *
+ * @author Hudson Arledge and Nik Anand
+ *
+ */
+public final class ZipfCorpus {
+
+    /**
+     * Number of distinct words the corpus is drawn from.
+     */
+    public static final int VOCABULARY = 200_000;
+
+    /**
+     * Exponent of the Zipf distribution.
+     */
+    public static final double EXPONENT = 1.07;
+
+    /**
+     * Seed of every random choice.
+     */
+    private static final long SEED = 2231;
+
+    /**
+     * Directory the corpora are cached in, from the system property
+     * {@code tagcloud.bench.corpora} or else under the temporary directory.
+     */
+    private static final Path CACHE = Paths.get(System.getProperty(
+            "tagcloud.bench.corpora",
+            System.getProperty("java.io.tmpdir") + "/tagcloud-corpora"));
+
+    /**
+     * Separator strings placed between words, most of them single spaces.
+     */
+    private static final byte[][] SEPARATORS = {
+            " ".getBytes(), " ".getBytes(), " ".getBytes(), " ".getBytes(),
+            " ".getBytes(), " ".getBytes(), ", ".getBytes(),
+            ". ".getBytes(), "\n".getBytes(), " - ".getBytes() };
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private ZipfCorpus() {
+    }
+
+    /**
+     * Returns a corpus of about {@code size} bytes, generating it if it is not
+     * cached yet.
+     *
+     * @param size
+     *            a size such as {@code 1MB}, {@code 100MB} or {@code 1GB}
+     * @return the path of the corpus
+     * @throws IOException
+     *             if the corpus cannot be written
+     */
+    public static Path get(String size) throws IOException {
+        long bytes = parseSize(size);
+        Path file = CACHE.resolve("zipf-" + size + "-" + SEED + ".txt");
+        if (Files.isRegularFile(file)) {
+            return file;
+        }
+        Files.createDirectories(CACHE);
+        Path partial = CACHE.resolve(file.getFileName() + ".partial");
+        write(partial, bytes);
+        Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        return file;
+    }
+
+    /**
+     * Returns the number of bytes in a size such as {@code 100MB}.
+     *
+     * @param size
+     *            a number followed by {@code KB}, {@code MB} or {@code GB}
+     * @return the number of bytes
+     */
+    static long parseSize(String size) {
+        String unit = size.substring(size.length() - 2).toUpperCase();
+        long number = Long.parseLong(size.substring(0, size.length() - 2));
+        switch (unit) {
+            case "KB":
+                return number << 10;
+            case "MB":
+                return number << 20;
+            case "GB":
+                return number << 30;
+            default:
+                throw new IllegalArgumentException("Unknown size: " + size);
+        }
+    }
+
+    /**
+     * Writes a corpus of at least {@code bytes} bytes to {@code file}.
+     *
+     * @param file
+     *            the file to create or replace
+     * @param bytes
+     *            the size of the corpus
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    private static void write(Path file, long bytes) throws IOException {
+        Random random = new Random(SEED);
+        byte[][] words = vocabulary(random);
+        double[] cumulative = new double[VOCABULARY];
+        double sum = 0;
+        for (int rank = 0; rank < VOCABULARY; rank++) {
+            sum += 1 / Math.pow(rank + 1, EXPONENT);
+            cumulative[rank] = sum;
+        }
+        OutputStream out = new BufferedOutputStream(Files.newOutputStream(file),
+                1 << 16);
+        try {
+            long written = 0;
+            while (written < bytes) {
+                int rank = Arrays.binarySearch(cumulative,
+                        random.nextDouble() * sum);
+                if (rank < 0) {
+                    rank = Math.min(VOCABULARY - 1, -rank - 1);
+                }
+                byte[] separator = SEPARATORS[random
+                        .nextInt(SEPARATORS.length)];
+                out.write(words[rank]);
+                out.write(separator);
+                written += words[rank].length + separator.length;
+            }
+            out.write('\n');
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Returns {@code VOCABULARY} distinct lower case words of 1 to 12 letters,
+     * shorter ones being more likely.
+     *
+     * @param random
+     *            the source of randomness
+     * @return the words, the most frequent first
+     */
+    private static byte[][] vocabulary(Random random) {
+        HashSet<String> seen = new HashSet<String>();
+        byte[][] words = new byte[VOCABULARY][];
+        int count = 0;
+        while (count < VOCABULARY) {
+            int length = 1 + Math.min(11, (int) Math.abs(random.nextGaussian()
+                    * 3 + count * 6.0 / VOCABULARY));
+            char[] word = new char[length];
+            for (int i = 0; i < length; i++) {
+                word[i] = (char) ('a' + random.nextInt(26));
+            }
+            String text = new String(word);
+            if (seen.add(text)) {
+                words[count] = text.getBytes();
+                count++;
+            }
+        }
+        return words;
+    }
+
+}
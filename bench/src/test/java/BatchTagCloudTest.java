@@ -0,0 +1,218 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests of {@code BatchTagCloud}: the naming of the clouds of the inputs,
+ * the detection of clouds that would overwrite each other, and the clouds
+ * written by the shared pool of workers.
+ *
+ * @author Hudson Arledge and Nik Anand
+ *
+ */
+public final class BatchTagCloudTest {
+
+    /**
+     * Directory the inputs and clouds are written to.
+     */
+    @TempDir
+    Path dir;
+
+    /**
+     * Writes {@code text} to {@code file}, creating its directory.
+     *
+     * @param file
+     *            the file
+     * @param text
+     *            the text
+     * @return the file
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    private static Path write(Path file, String text) throws IOException {
+        Files.createDirectories(file.getParent());
+        return Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns the path of {@code file} under {@code outputDir} that a cloud
+     * moved to the whole path of its input is written to.
+     *
+     * @param outputDir
+     *            the directory the clouds are written to
+     * @param file
+     *            the input file
+     * @return the cloud
+     */
+    private static Path wholePath(Path outputDir, Path file) {
+        Path input = file.toAbsolutePath().normalize();
+        return outputDir.resolve(
+                input.getRoot().relativize(input).toString() + ".html");
+    }
+
+    /**
+     * Runs the batch tool with {@code args}, and returns what it printed to
+     * standard error. Its summary on standard output is discarded.
+     *
+     * @param args
+     *            the command line arguments
+     * @return the errors printed
+     */
+    private static String run(String... args) {
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        PrintStream savedOut = System.out;
+        PrintStream savedErr = System.err;
+        System.setOut(new PrintStream(new ByteArrayOutputStream(), true));
+        System.setErr(new PrintStream(errors, true));
+        try {
+            BatchTagCloud.main(args);
+        } finally {
+            System.setOut(savedOut);
+            System.setErr(savedErr);
+        }
+        return new String(errors.toByteArray());
+    }
+
+    /**
+     * A file named on its own gets its cloud at its name, a directory's
+     * files get theirs at their paths under it, a file named twice is
+     * listed once, and same-named files get theirs at their whole paths.
+     *
+     * @throws IOException
+     *             if a file cannot be written or listed
+     */
+    @Test
+    public void outputNaming() throws IOException {
+        Path docs = this.dir.resolve("docs");
+        Path a = write(docs.resolve("a.txt"), "a");
+        Path b = write(docs.resolve("sub").resolve("b.txt"), "b");
+        Path c = write(this.dir.resolve("c.txt"), "c");
+        Path out = this.dir.resolve("out");
+        List<Path> inputs = new ArrayList<Path>();
+        List<Path> outputs = new ArrayList<Path>();
+        BatchTagCloud.listInputs(Arrays.asList(c, docs, a, c), out, inputs,
+                outputs);
+        assertEquals(3, inputs.size());
+        assertEquals(c, inputs.get(0));
+        assertEquals(out.resolve("c.txt.html"), outputs.get(0));
+        for (int i = 1; i < 3; i++) {
+            if (inputs.get(i).equals(a)) {
+                assertEquals(out.resolve("a.txt.html"), outputs.get(i));
+            } else {
+                assertEquals(b, inputs.get(i));
+                assertEquals(out.resolve("sub").resolve("b.txt.html"),
+                        outputs.get(i));
+            }
+        }
+
+        Path x = write(this.dir.resolve("x").resolve("log.txt"), "x");
+        Path y = write(this.dir.resolve("y").resolve("log.txt"), "y");
+        Path z = write(this.dir.resolve("z").resolve("other.txt"), "z");
+        inputs.clear();
+        outputs.clear();
+        BatchTagCloud.listInputs(Arrays.asList(x, y, z), out, inputs,
+                outputs);
+        assertEquals(Arrays.asList(x, y, z), inputs);
+        assertEquals(Arrays.asList(wholePath(out, x), wholePath(out, y),
+                out.resolve("other.txt.html")), outputs);
+    }
+
+    /**
+     * A file whose cloud would land on the whole path given to a same-named
+     * file is an error naming both inputs and the cloud, and the batch tool
+     * prints that message and writes nothing.
+     *
+     * @throws IOException
+     *             if a file cannot be written
+     */
+    @Test
+    public void collisionIsReported() throws IOException {
+        Path x = write(this.dir.resolve("x").resolve("log.txt"), "x");
+        Path y = write(this.dir.resolve("y").resolve("log.txt"), "y");
+        Path out = this.dir.resolve("out");
+        //a directory holding a file at the whole path of x
+        Path mirror = this.dir.resolve("mirror");
+        Path absolute = x.toAbsolutePath().normalize();
+        Path copy = write(
+                mirror.resolve(absolute.getRoot().relativize(absolute)
+                        .toString()),
+                "copy");
+
+        String message = null;
+        try {
+            BatchTagCloud.listInputs(Arrays.asList(x, y, mirror), out,
+                    new ArrayList<Path>(), new ArrayList<Path>());
+            fail("no collision found");
+        } catch (IOException e) {
+            message = e.getMessage();
+        }
+        assertTrue(message.contains(x.toString()), message);
+        assertTrue(message.contains(copy.toString()), message);
+        assertTrue(message.contains(wholePath(out, x).toString()), message);
+
+        String errors = run("-o", out.toString(), x.toString(), y.toString(),
+                mirror.toString());
+        assertTrue(errors.contains(message), errors);
+        assertFalse(Files.exists(out));
+    }
+
+    /**
+     * Many files counted at once on the shared pool get the same clouds,
+     * byte for byte and in every format, as each counted alone.
+     *
+     * @throws IOException
+     *             if a file cannot be written or read
+     */
+    @Test
+    public void sharedPoolMatchesSingleRuns() throws IOException {
+        Random random = new Random(8);
+        List<Path> inputs = new ArrayList<Path>();
+        for (int f = 0; f < 8; f++) {
+            StringBuilder text = new StringBuilder();
+            int words = 1000 + random.nextInt(20_000);
+            for (int w = 0; w < words; w++) {
+                text.append("w").append(Math.min(random.nextInt(500),
+                        random.nextInt(500)));
+                text.append(w % 9 == 8 ? ".\n" : " ");
+            }
+            inputs.add(write(this.dir.resolve("in").resolve(f + ".txt"),
+                    text.toString()));
+        }
+        Path batch = this.dir.resolve("batch");
+        List<String> args = new ArrayList<String>(Arrays.asList("-o",
+                batch.toString(), "-t", "3", "-n", "40", "-f", "html,json"));
+        for (Path input : inputs) {
+            args.add(input.toString());
+        }
+        assertEquals("", run(args.toArray(new String[0])));
+
+        for (int f = 0; f < inputs.size(); f++) {
+            Path single = this.dir.resolve("single" + f);
+            assertEquals("", run("-o", single.toString(), "-t", "1", "-n",
+                    "40", "-f", "html,json", inputs.get(f).toString()));
+            for (String name : new String[] { f + ".txt.html",
+                f + ".txt.json" }) {
+                assertArrayEquals(Files.readAllBytes(single.resolve(name)),
+                        Files.readAllBytes(batch.resolve(name)),
+                        name);
+            }
+        }
+    }
+
+}
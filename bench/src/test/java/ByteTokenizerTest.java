@@ -0,0 +1,215 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of {@code ByteTokenizer}.
+ *
+ * @author Hudson Arledge and Nik Anand
+ *
+ */
+public final class ByteTokenizerTest {
+
+    /**
+     * Pieces random text is made of: ASCII letters, digits and separators,
+     * letters of two and three bytes, a character of four bytes, an em dash,
+     * a tab, CJK punctuation and capitals to fold.
+     */
+    private static final String[] PIECES = { "a", "b", "Z", "7", " ", ",",
+        ".", "\n", "é", "Ä", "ß", "中", "文", "😀", "—", "\t", "、", "İ" };
+
+    /**
+     * A sink that records every word it is given, as a string, and checks
+     * its hash.
+     */
+    private static final class Recorder implements AsciiWordSink {
+
+        /**
+         * The words received, in order.
+         */
+        private final List<String> words = new ArrayList<String>();
+
+        /**
+         * The number of words received as ASCII bytes.
+         */
+        private int asciiWords;
+
+        @Override
+        public void word(char[] text, int offset, int length) {
+            this.words.add(new String(text, offset, length));
+        }
+
+        @Override
+        public void word(char[] text, int offset, int length, int hash) {
+            String word = new String(text, offset, length);
+            assertEquals(word.hashCode(), hash, word);
+            this.words.add(word);
+        }
+
+        @Override
+        public void word(byte[] text, int offset, int length, int hash) {
+            String word = new String(text, offset, length,
+                    StandardCharsets.ISO_8859_1);
+            for (int i = 0; i < length; i++) {
+                assertTrue(text[offset + i] >= 0, word);
+            }
+            assertEquals(word.hashCode(), hash, word);
+            this.words.add(word);
+            this.asciiWords++;
+        }
+    }
+
+    /**
+     * Returns the words of {@code text} as {@code ChunkedTokenizer} finds
+     * them in the decoded text.
+     *
+     * @param text
+     *            the UTF-8 text
+     * @param separators
+     *            the separator characters
+     * @param foldCase
+     *            whether the text is lower cased
+     * @return the words, in order
+     * @throws IOException
+     *             never
+     */
+    private static List<String> expected(byte[] text, SeparatorSet separators,
+            boolean foldCase) throws IOException {
+        Recorder recorder = new Recorder();
+        ChunkedTokenizer tokenizer = new ChunkedTokenizer(separators,
+                foldCase, recorder, ChunkedTokenizer.DEFAULT_CAPACITY,
+                PipelineMetrics.DISABLED);
+        StringReader reader = new StringReader(
+                new String(text, StandardCharsets.UTF_8));
+        while (tokenizer.read(reader) >= 0) {
+            //every complete word of the chunk has been reported
+        }
+        tokenizer.finish();
+        return recorder.words;
+    }
+
+    /**
+     * Returns the words of {@code text}, passed to a {@code ByteTokenizer}
+     * with a buffer of {@code capacity} bytes in chunks of random sizes up to
+     * {@code maxChunk} bytes.
+     *
+     * @param text
+     *            the UTF-8 text
+     * @param separators
+     *            the separator characters
+     * @param foldCase
+     *            whether the text is lower cased
+     * @param capacity
+     *            the initial capacity of the buffer
+     * @param maxChunk
+     *            the largest chunk
+     * @param random
+     *            the source of randomness
+     * @return the sink the words were given to
+     */
+    private static Recorder tokenize(byte[] text, SeparatorSet separators,
+            boolean foldCase, int capacity, int maxChunk, Random random) {
+        Recorder recorder = new Recorder();
+        ByteTokenizer tokenizer = new ByteTokenizer(separators, foldCase,
+                StandardCharsets.UTF_8, recorder, capacity,
+                PipelineMetrics.DISABLED);
+        int from = 0;
+        while (from < text.length) {
+            int n = Math.min(text.length - from, random.nextInt(maxChunk + 1));
+            tokenizer.accept(text, from, n);
+            from += n;
+        }
+        tokenizer.finish();
+        return recorder;
+    }
+
+    /**
+     * Words of ASCII characters are given to the sink as bytes, lower cased,
+     * and read back as ISO-8859-1 strings.
+     */
+    @Test
+    public void asciiWordsAreBytes() {
+        byte[] text = "Hello, World hello".getBytes(StandardCharsets.UTF_8);
+        Recorder recorder = tokenize(text, SeparatorSet.DEFAULT, true, 64,
+                text.length, new Random(1));
+        assertEquals("[hello, world, hello]", recorder.words.toString());
+        assertEquals(3, recorder.asciiWords);
+    }
+
+    /**
+     * Words holding other characters are decoded and given to the sink as
+     * characters.
+     */
+    @Test
+    public void nonAsciiWordsAreDecoded() {
+        byte[] text = "Naïve CAFÉ x 😀".getBytes(StandardCharsets.UTF_8);
+        Recorder recorder = tokenize(text, SeparatorSet.DEFAULT, true, 64,
+                text.length, new Random(1));
+        assertEquals("[naïve, café, x, 😀]", recorder.words.toString());
+        assertEquals(1, recorder.asciiWords);
+    }
+
+    /**
+     * A character cut by the end of a chunk is held back and completed by
+     * the next, however the chunks fall.
+     */
+    @Test
+    public void multiByteCharacterAcrossChunks() {
+        byte[] text = "aé 中b 😀".getBytes(StandardCharsets.UTF_8);
+        for (int cut = 0; cut <= text.length; cut++) {
+            Recorder recorder = new Recorder();
+            ByteTokenizer tokenizer = new ByteTokenizer(SeparatorSet.DEFAULT,
+                    true, StandardCharsets.UTF_8, recorder, 1,
+                    PipelineMetrics.DISABLED);
+            tokenizer.accept(text, 0, cut);
+            tokenizer.accept(text, cut, text.length - cut);
+            tokenizer.finish();
+            assertEquals("[aé, 中b, 😀]", recorder.words.toString(),
+                    "cut at " + cut);
+        }
+    }
+
+    /**
+     * Random mixed text, with some malformed bytes, passed in chunks of
+     * random sizes into buffers large and small, gives the same words as
+     * {@code ChunkedTokenizer} does on the decoded text.
+     *
+     * @throws IOException
+     *             never
+     */
+    @Test
+    public void randomTextMatchesChunkedTokenizer() throws IOException {
+        Random random = new Random(18);
+        SeparatorSet[] sets = { SeparatorSet.DEFAULT, SeparatorSet.unicode() };
+        for (int trial = 0; trial < 400; trial++) {
+            StringBuilder builder = new StringBuilder();
+            int pieces = random.nextInt(200);
+            for (int i = 0; i < pieces; i++) {
+                builder.append(PIECES[random.nextInt(PIECES.length)]);
+            }
+            byte[] text = builder.toString().getBytes(StandardCharsets.UTF_8);
+            if (text.length > 0 && random.nextInt(4) == 0) {
+                //a stray continuation or lead byte
+                text[random.nextInt(text.length)] = (byte) (0x80
+                        + random.nextInt(0x80));
+            }
+            SeparatorSet separators = sets[trial % sets.length];
+            boolean foldCase = random.nextBoolean();
+            int capacity = 1 + random.nextInt(16);
+            int maxChunk = 1 + random.nextInt(32);
+            assertEquals(expected(text, separators, foldCase),
+                    tokenize(text, separators, foldCase, capacity, maxChunk,
+                            random).words,
+                    "trial " + trial);
+        }
+    }
+
+}
@@ -0,0 +1,148 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+
+/**
+ * Tests of {@code ChunkedTokenizer}.
+ *
+ * @author Hudson Arledge and Nik Anand
+ *
+ */
+public final class ChunkedTokenizerTest {
+
+    /**
+     * Longest time a test may take before it is taken to hang.
+     */
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+    /**
+     * An encoding in which every byte stands for three copies of the ASCII
+     * character with its value, so that its decoder needs room for three
+     * characters before it can take a byte.
+     */
+    private static final class Tripled extends Charset {
+
+        /**
+         * Constructor.
+         */
+        Tripled() {
+            super("x-tripled", new String[0]);
+        }
+
+        @Override
+        public boolean contains(Charset cs) {
+            return false;
+        }
+
+        @Override
+        public CharsetDecoder newDecoder() {
+            return new CharsetDecoder(this, 3, 3) {
+                @Override
+                protected CoderResult decodeLoop(ByteBuffer in,
+                        CharBuffer out) {
+                    while (in.hasRemaining()) {
+                        if (out.remaining() < 3) {
+                            return CoderResult.OVERFLOW;
+                        }
+                        char c = (char) in.get();
+                        out.put(c).put(c).put(c);
+                    }
+                    return CoderResult.UNDERFLOW;
+                }
+            };
+        }
+
+        @Override
+        public CharsetEncoder newEncoder() {
+            throw new UnsupportedOperationException();
+        }
+
+    }
+
+    /**
+     * Decodes {@code text} in {@code chunk} byte pieces with
+     * {@code decoder} into a tokenizer whose buffer starts with
+     * {@code capacity} characters, and returns the counts.
+     *
+     * @param text
+     *            the encoded text
+     * @param decoder
+     *            the decoder of the text
+     * @param capacity
+     *            the initial capacity of the tokenizer
+     * @param chunk
+     *            the number of bytes passed at a time
+     * @return the counts
+     */
+    private static WordCountTable decode(final byte[] text,
+            final CharsetDecoder decoder, final int capacity,
+            final int chunk) {
+        final WordCountTable counts = new WordCountTable();
+        assertTimeoutPreemptively(TIMEOUT, new Executable() {
+            @Override
+            public void execute() {
+                ChunkedTokenizer tokenizer = new ChunkedTokenizer(
+                        SeparatorSet.DEFAULT, counts, capacity);
+                //bytes of a character cut by the end of a chunk are left
+                //in the buffer and passed again with the next chunk
+                ByteBuffer bytes = ByteBuffer.wrap(text);
+                for (int to = 0; to < text.length;) {
+                    to = Math.min(text.length, to + chunk);
+                    bytes.limit(to);
+                    tokenizer.decode(decoder, bytes, to == text.length);
+                }
+                assertEquals(0, bytes.remaining());
+                tokenizer.finish();
+            }
+        });
+        return counts;
+    }
+
+    /**
+     * A decoder that needs more free characters than the tokenizer keeps
+     * free is given more room rather than being called again with the same.
+     */
+    @Test
+    public void decoderNeedingThreeCharactersMakesProgress() {
+        byte[] text = "ab cd ab".getBytes(StandardCharsets.US_ASCII);
+        for (int capacity = 1; capacity <= 16; capacity++) {
+            for (int chunk = 1; chunk <= text.length; chunk++) {
+                WordCountTable counts = decode(text,
+                        new Tripled().newDecoder(), capacity, chunk);
+                String at = capacity + "/" + chunk;
+                assertEquals(2, counts.get("aaabbb"), at);
+                assertEquals(1, counts.get("cccddd"), at);
+                assertEquals(3, counts.total(), at);
+            }
+        }
+    }
+
+    /**
+     * UTF-16 text passed a byte at a time into a buffer of one character,
+     * with surrogate pairs cut between chunks, counts the same as the string.
+     */
+    @Test
+    public void surrogatePairsThroughTinyBuffer() {
+        String text = "😀😀 x😀 😀😀 naïve 😀x";
+        WordCountTable counts = decode(
+                text.getBytes(StandardCharsets.UTF_16BE),
+                StandardCharsets.UTF_16BE.newDecoder(), 1, 1);
+        assertEquals(2, counts.get("😀😀"));
+        assertEquals(1, counts.get("x😀"));
+        assertEquals(1, counts.get("naïve"));
+        assertEquals(1, counts.get("😀x"));
+        assertEquals(5, counts.total());
+    }
+
+}
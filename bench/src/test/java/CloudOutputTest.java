@@ -0,0 +1,411 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of {@code CloudOutput}, and of the JSON and CSV formats written
+ * through it. Every output has the smallest buffer allowed, so the buffer is
+ * drained in the middle of words.
+ *
+ * @author Hudson Arledge and Nik Anand
+ *
+ */
+public final class CloudOutputTest {
+
+    /**
+     * The smallest buffer an output may have.
+     */
+    private static final int CAPACITY = 64;
+
+    /**
+     * Characters random text is drawn from: ASCII, characters special in
+     * each format, a control character, characters of two and three bytes,
+     * both halves of a surrogate pair, and the pair itself.
+     */
+    private static final String[] PIECES = { "a", "Z", " ", ",", "\"", "'",
+        "&", "<", ">", "\\", "\n", "\r", "\t", "\u0001", "\u001f", "é", "中",
+        "😀", "\uD83D", "\uDE00" };
+
+    /**
+     * The words of the sample cloud, best first.
+     */
+    private static final String[] SAMPLE = { "plain", "a,b", "say \"hi\"",
+        "back\\slash", "tab\there", "line\nbreak", "ctl\u0001", "naïve",
+        "😀", "" + '\uD800' + "x" };
+
+    /**
+     * An output and the bytes written through it.
+     */
+    private static final class Sink {
+
+        /**
+         * The bytes written to the channel.
+         */
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        /**
+         * The output under test.
+         */
+        private final CloudOutput out = new CloudOutput(
+                Channels.newChannel(this.bytes), CAPACITY);
+
+        /**
+         * Flushes the output and returns everything written, decoded.
+         *
+         * @return the text written
+         * @throws IOException
+         *             never
+         */
+        String text() throws IOException {
+            this.out.flush();
+            return new String(this.bytes.toByteArray(),
+                    StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Returns a random string of up to {@code pieces} pieces.
+     *
+     * @param random
+     *            the source of randomness
+     * @param pieces
+     *            the most pieces
+     * @return the string
+     */
+    private static String randomText(Random random, int pieces) {
+        StringBuilder text = new StringBuilder();
+        int n = random.nextInt(pieces + 1);
+        for (int i = 0; i < n; i++) {
+            text.append(PIECES[random.nextInt(PIECES.length)]);
+        }
+        return text.toString();
+    }
+
+    /**
+     * Returns {@code text} with its unpaired surrogates replaced by '?', as
+     * it reads back once written as UTF-8.
+     *
+     * @param text
+     *            the text
+     * @return the text as written
+     */
+    private static String encodable(String text) {
+        return new String(text.getBytes(StandardCharsets.UTF_8),
+                StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns {@code text} escaped as markup, as {@code putMarkup} should.
+     *
+     * @param text
+     *            the text
+     * @return the escaped text
+     */
+    private static String markup(String text) {
+        StringBuilder escaped = new StringBuilder();
+        for (char c : encodable(text).toCharArray()) {
+            switch (c) {
+                case '&':
+                    escaped.append("&amp;");
+                    break;
+                case '<':
+                    escaped.append("&lt;");
+                    break;
+                case '>':
+                    escaped.append("&gt;");
+                    break;
+                case '"':
+                    escaped.append("&quot;");
+                    break;
+                case '\'':
+                    escaped.append("&#39;");
+                    break;
+                default:
+                    if (c < ' ' && c != '\t' && c != '\n' && c != '\r') {
+                        escaped.append('?');
+                    } else {
+                        escaped.append(c);
+                    }
+                    break;
+            }
+        }
+        return escaped.toString();
+    }
+
+    /**
+     * Returns {@code text} as a JSON string literal, as {@code putJson}
+     * should.
+     *
+     * @param text
+     *            the text
+     * @return the literal, quotes included
+     */
+    private static String json(String text) {
+        StringBuilder escaped = new StringBuilder("\"");
+        for (char c : encodable(text).toCharArray()) {
+            if (c == '"' || c == '\\') {
+                escaped.append('\\').append(c);
+            } else if (c < ' ') {
+                escaped.append(String.format("\\u%04x", (int) c));
+            } else {
+                escaped.append(c);
+            }
+        }
+        return escaped.append('"').toString();
+    }
+
+    /**
+     * Returns the JSON string literal {@code literal}, without its quotes,
+     * unescaped.
+     *
+     * @param literal
+     *            the inside of the literal
+     * @return the string
+     */
+    private static String unescapeJson(String literal) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < literal.length(); i++) {
+            char c = literal.charAt(i);
+            if (c != '\\') {
+                text.append(c);
+            } else {
+                i++;
+                char e = literal.charAt(i);
+                if (e == 'u') {
+                    text.append((char) Integer
+                            .parseInt(literal.substring(i + 1, i + 5), 16));
+                    i += 4;
+                } else {
+                    text.append(e);
+                }
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * Returns the records of the CSV text {@code csv}, as in RFC 4180.
+     *
+     * @param csv
+     *            the text
+     * @return the records, each a list of its fields
+     */
+    private static List<List<String>> parseCsv(String csv) {
+        List<List<String>> records = new ArrayList<List<String>>();
+        List<String> record = new ArrayList<String>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        int i = 0;
+        while (i < csv.length()) {
+            char c = csv.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < csv.length()
+                        && csv.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                record.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\r' && csv.startsWith("\r\n", i)) {
+                record.add(field.toString());
+                field.setLength(0);
+                records.add(record);
+                record = new ArrayList<String>();
+                i++;
+            } else {
+                field.append(c);
+            }
+            i++;
+        }
+        return records;
+    }
+
+    /**
+     * Returns the sample cloud, whose words need every kind of escape.
+     *
+     * @return the cloud
+     */
+    private static TagCloudResult sampleCloud() {
+        WordCount[] top = new WordCount[SAMPLE.length];
+        for (int i = 0; i < SAMPLE.length; i++) {
+            top[i] = new WordCount(SAMPLE[i], 1000L * (SAMPLE.length - i));
+        }
+        return new TagCloudResult(TagCloudConfig.DEFAULT,
+                "title \"with\" quotes", top, 123_456_789L, SAMPLE.length);
+    }
+
+    /**
+     * Each kind of text is escaped as its format needs.
+     *
+     * @throws IOException
+     *             never
+     */
+    @Test
+    public void escapes() throws IOException {
+        Sink sink = new Sink();
+        sink.out.putMarkup("a&b<c>\"d'e\u0001\tf");
+        assertEquals("a&amp;b&lt;c&gt;&quot;d&#39;e?\tf", sink.text());
+
+        sink = new Sink();
+        sink.out.putJson("q\"b\\c\u0001\n\u001fé");
+        assertEquals("\"q\\\"b\\\\c\\u0001\\u000a\\u001fé\"", sink.text());
+
+        sink = new Sink();
+        sink.out.putCsv("plain").put("|").putCsv("a,b").put("|")
+                .putCsv("say \"hi\"").put("|").putCsv("\"").put("|")
+                .putCsv("two\r\nlines");
+        assertEquals("plain|\"a,b\"|\"say \"\"hi\"\"\"|\"\"\"\"|"
+                + "\"two\r\nlines\"", sink.text());
+
+        sink = new Sink();
+        sink.out.put("\uD800x\uDC00 😀 \uDE00\uD83D");
+        assertEquals("?x? 😀 ??", sink.text());
+    }
+
+    /**
+     * Random text, after random amounts of other text so that it runs into
+     * the end of the buffer at every offset, is written exactly, escaped or
+     * not.
+     *
+     * @throws IOException
+     *             never
+     */
+    @Test
+    public void randomTextAcrossDrains() throws IOException {
+        Random random = new Random(21);
+        for (int trial = 0; trial < 500; trial++) {
+            Sink sink = new Sink();
+            StringBuilder expected = new StringBuilder();
+            for (int part = 0; part < 20; part++) {
+                String text = randomText(random, 3 * CAPACITY);
+                switch (random.nextInt(4)) {
+                    case 0:
+                        sink.out.put(text);
+                        expected.append(encodable(text));
+                        break;
+                    case 1:
+                        sink.out.putMarkup(text);
+                        expected.append(markup(text));
+                        break;
+                    case 2:
+                        sink.out.putJson(text);
+                        expected.append(json(text));
+                        break;
+                    default:
+                        byte[] raw = encodable(text)
+                                .getBytes(StandardCharsets.UTF_8);
+                        sink.out.put(raw, 0, raw.length);
+                        expected.append(encodable(text));
+                        break;
+                }
+            }
+            assertEquals(expected.toString(), sink.text(), "trial " + trial);
+        }
+    }
+
+    /**
+     * Numbers are written in decimal, the extremes included, wherever they
+     * fall in the buffer.
+     *
+     * @throws IOException
+     *             never
+     */
+    @Test
+    public void longs() throws IOException {
+        long[] values = { 0, 1, -1, 9, 10, -10, 1234567890123L,
+            Long.MAX_VALUE, Long.MIN_VALUE, Long.MIN_VALUE + 1 };
+        for (int prefix = 0; prefix < 2 * CAPACITY; prefix++) {
+            Sink sink = new Sink();
+            StringBuilder expected = new StringBuilder();
+            char[] pad = new char[prefix];
+            Arrays.fill(pad, 'x');
+            sink.out.put(new String(pad));
+            expected.append(pad);
+            for (long value : values) {
+                sink.out.putLong(value).put(" ");
+                expected.append(value).append(' ');
+            }
+            assertEquals(expected.toString(), sink.text(),
+                    "after " + prefix);
+        }
+    }
+
+    /**
+     * The JSON of a cloud whose words need escaping reads back as the words
+     * and counts of the cloud.
+     *
+     * @throws IOException
+     *             never
+     */
+    @Test
+    public void jsonRoundTrip() throws IOException {
+        TagCloudResult cloud = sampleCloud();
+        Sink sink = new Sink();
+        CloudFormats.JSON.write(cloud, sink.out);
+        String json = sink.text();
+
+        Matcher title = Pattern
+                .compile("\"title\": \"((?:[^\"\\\\]|\\\\.)*)\"")
+                .matcher(json);
+        title.find();
+        assertEquals(cloud.title(), unescapeJson(title.group(1)));
+        Matcher words = Pattern.compile("\\{\"word\": \"((?:[^\"\\\\]|\\\\.)*)\""
+                + ", \"count\": (\\d+)").matcher(json);
+        for (int i = 0; i < cloud.size(); i++) {
+            words.find();
+            assertEquals(encodable(cloud.word(i).word()),
+                    unescapeJson(words.group(1)), "word " + i);
+            assertEquals(cloud.word(i).count(),
+                    Long.parseLong(words.group(2)), "count " + i);
+        }
+        assertFalse(words.find());
+        assertTrue(json.contains("\"total\": 123456789,"));
+    }
+
+    /**
+     * The CSV of a cloud whose words need quoting reads back as its header
+     * and the rank, word, count, error and font of each word.
+     *
+     * @throws IOException
+     *             never
+     */
+    @Test
+    public void csvRoundTrip() throws IOException {
+        TagCloudResult cloud = sampleCloud();
+        Sink sink = new Sink();
+        CloudFormats.CSV.write(cloud, sink.out);
+        List<List<String>> records = parseCsv(sink.text());
+
+        assertEquals(cloud.size() + 1, records.size());
+        assertEquals(Arrays.asList("rank", "word", "count", "error", "font"),
+                records.get(0));
+        for (int i = 0; i < cloud.size(); i++) {
+            WordCount word = cloud.word(i);
+            assertEquals(Arrays.asList(Integer.toString(i + 1),
+                    encodable(word.word()), Long.toString(word.count()), "0",
+                    Long.toString(cloud.font(word.count()))),
+                    records.get(i + 1), "row " + (i + 1));
+        }
+    }
+
+}
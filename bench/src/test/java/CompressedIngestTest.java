@@ -0,0 +1,134 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.ThrowingSupplier;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests of {@code CompressedIngest}.
+ *
+ * @author Hudson Arledge and Nik Anand
+ *
+ */
+public final class CompressedIngestTest {
+
+    /**
+     * Longest time a count of a test file may take before it is taken to
+     * hang.
+     */
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+    /**
+     * Directory the test files are written to.
+     */
+    @TempDir
+    Path dir;
+
+    /**
+     * Writes {@code text} in {@code charset}, compressed with gzip, and counts
+     * it through {@code TagCloudEngine.count(FileChannel, PipelineMetrics)},
+     * failing if that does not finish.
+     *
+     * @param text
+     *            the text of the file
+     * @param charset
+     *            the encoding of the text
+     * @return the counts
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    private WordCountTable count(String text, Charset charset)
+            throws IOException {
+        final Path file = this.dir.resolve("input.txt.gz");
+        OutputStream out = new GZIPOutputStream(Files.newOutputStream(file));
+        try {
+            out.write(text.getBytes(charset));
+        } finally {
+            out.close();
+        }
+        final TagCloudEngine engine = new TagCloudEngine(
+                TagCloudConfig.DEFAULT.withCharset(charset));
+        return assertTimeoutPreemptively(TIMEOUT,
+                new ThrowingSupplier<WordCountTable>() {
+                    @Override
+                    public WordCountTable get() throws IOException {
+                        FileChannel channel = FileChannel.open(file);
+                        try {
+                            return engine.count(channel,
+                                    PipelineMetrics.DISABLED);
+                        } finally {
+                            channel.close();
+                        }
+                    }
+                });
+    }
+
+    /**
+     * A held back word that leaves one free character in the tokenizer's
+     * buffer, too little for the surrogate pair that follows it, used to stop
+     * the decoder from making progress.
+     *
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    @Test
+    public void wordOneShortOfCapacityBeforeSurrogatePair()
+            throws IOException {
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i < ChunkedTokenizer.DEFAULT_CAPACITY - 1; i++) {
+            word.append('a');
+        }
+        String text = word + "😀 end " + word + " end";
+        for (Charset charset : new Charset[] { StandardCharsets.UTF_16,
+            StandardCharsets.UTF_8 }) {
+            WordCountTable counts = this.count(text, charset);
+            assertEquals(2, counts.get("end"), charset.toString());
+            assertEquals(4, counts.total(), charset.toString());
+        }
+    }
+
+    /**
+     * A UTF-16 text long enough to be decompressed in several buffers, so
+     * that characters are cut by the ends of buffers, counts the same as it
+     * does uncompressed.
+     *
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    @Test
+    public void longTextCountsAsUncompressed() throws IOException {
+        String[] words = { "naïve", "😀x", "the", "ωmega", "b" };
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 200_000; i++) {
+            text.append(words[i % words.length]);
+            if (i % 7 == 0) {
+                text.append('\n');
+            } else {
+                text.append(' ');
+            }
+        }
+        WordCountTable counts = this.count(text.toString(),
+                StandardCharsets.UTF_16);
+        WordCountTable expected = new TagCloudEngine(TagCloudConfig.DEFAULT)
+                .count(new StringReader(text.toString()),
+                        PipelineMetrics.DISABLED);
+        assertEquals(expected.total(), counts.total());
+        assertEquals(expected.size(), counts.size());
+        for (String word : words) {
+            assertEquals(expected.get(word), counts.get(word), word);
+        }
+    }
+
+}
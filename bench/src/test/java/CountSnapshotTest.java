@@ -0,0 +1,100 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests of {@code CountSnapshot}.
+ *
+ * @author Hudson Arledge and Nik Anand
+ *
+ */
+public final class CountSnapshotTest {
+
+    /**
+     * Characters the random words are made of: ASCII, and characters of two,
+     * three and four UTF-8 bytes, whose first bytes are negative as signed
+     * bytes.
+     */
+    private static final String[] CHARACTERS = { "a", "b", "z", "0", "é",
+        "ω", "中", "😀" };
+
+    /**
+     * Directory the snapshots are written to.
+     */
+    @TempDir
+    Path dir;
+
+    /**
+     * Returns a table of up to {@code n} random words, many sharing
+     * prefixes, with random counts.
+     *
+     * @param random
+     *            the source of randomness
+     * @param n
+     *            the number of words to add
+     * @return the table
+     */
+    private static WordCountTable randomTable(Random random, int n) {
+        WordCountTable table = new WordCountTable();
+        for (int i = 0; i < n; i++) {
+            StringBuilder word = new StringBuilder();
+            int length = 1 + random.nextInt(6);
+            for (int j = 0; j < length; j++) {
+                word.append(CHARACTERS[random.nextInt(CHARACTERS.length)]);
+            }
+            table.add(word.toString(), 1 + random.nextInt(1000));
+        }
+        return table;
+    }
+
+    /**
+     * Tables of many sizes are written with their words in unsigned order of
+     * their UTF-8 bytes, and read back with the same counts.
+     *
+     * @throws IOException
+     *             if a snapshot cannot be written or read
+     */
+    @Test
+    public void writeSortsEntriesAndKeepsCounts() throws IOException {
+        Random random = new Random(7);
+        for (int n : new int[] { 0, 1, 2, 3, 15, 16, 17, 100, 5000, 50_000 }) {
+            WordCountTable table = randomTable(random, n);
+            Path file = this.dir.resolve("counts" + n + ".tcs");
+            CountSnapshot.write(table, 0, file);
+            FileChannel channel = FileChannel.open(file);
+            try {
+                CountSnapshot.Cursor cursor = new CountSnapshot.Cursor(
+                        channel);
+                assertEquals(table.size(), cursor.entries());
+                assertEquals(table.total(), cursor.total());
+                byte[] previous = null;
+                int entries = 0;
+                while (cursor.next()) {
+                    byte[] key = cursor.word()
+                            .getBytes(StandardCharsets.UTF_8);
+                    if (previous != null) {
+                        assertTrue(CountSnapshot.compareBytes(previous,
+                                previous.length, key, key.length) < 0,
+                                "\"" + cursor.word() + "\" is out of order");
+                    }
+                    assertEquals(table.get(cursor.word()), cursor.count(),
+                            cursor.word());
+                    previous = key;
+                    entries++;
+                }
+                assertEquals(table.size(), entries);
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+}
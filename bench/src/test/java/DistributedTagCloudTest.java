@@ -0,0 +1,257 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * End to end tests of {@code DistributedTagCloud}: worker JVMs are started on
+ * this machine, and the merged cloud is compared with the cloud of a count of
+ * the same files in this process.
+ *
+ * @author Hudson Arledge and Nik Anand
+ *
+ */
+public final class DistributedTagCloudTest {
+
+    /**
+     * Number of files in the corpus.
+     */
+    private static final int FILES = 7;
+
+    /**
+     * Number of distinct words the corpus is drawn from.
+     */
+    private static final int VOCABULARY = 3000;
+
+    /**
+     * Directory the corpus and the partial counts are written to.
+     */
+    @TempDir
+    Path dir;
+
+    /**
+     * The files of the corpus.
+     */
+    private List<Path> inputs;
+
+    /**
+     * Writes a corpus of {@code FILES} files of different sizes whose words
+     * follow Zipf's law, with a vocabulary shared between the files.
+     *
+     * @throws IOException
+     *             if a file cannot be written
+     */
+    @BeforeEach
+    public void writeCorpus() throws IOException {
+        Random random = new Random(14);
+        double[] cumulative = new double[VOCABULARY];
+        double sum = 0;
+        for (int i = 0; i < VOCABULARY; i++) {
+            sum += 1.0 / (i + 1);
+            cumulative[i] = sum;
+        }
+        this.inputs = new ArrayList<Path>();
+        for (int f = 0; f < FILES; f++) {
+            StringBuilder text = new StringBuilder();
+            int words = 2000 + random.nextInt(20_000);
+            for (int w = 0; w < words; w++) {
+                double x = random.nextDouble() * sum;
+                int lo = 0;
+                int hi = VOCABULARY - 1;
+                while (lo < hi) {
+                    int mid = (lo + hi) >>> 1;
+                    if (cumulative[mid] < x) {
+                        lo = mid + 1;
+                    } else {
+                        hi = mid;
+                    }
+                }
+                //mixed case, so the workers fold it as this process does
+                String word = "w" + Integer.toString(lo, 36);
+                if (w % 5 == 0) {
+                    word = word.toUpperCase(Locale.ROOT);
+                }
+                text.append(word);
+                if (w % 11 == 10) {
+                    text.append(".\n");
+                } else {
+                    text.append(' ');
+                }
+            }
+            Path file = this.dir.resolve("part" + f + ".txt");
+            Files.write(file,
+                    text.toString().getBytes(StandardCharsets.UTF_8));
+            this.inputs.add(file);
+        }
+    }
+
+    /**
+     * Returns the counts of every word of the corpus, counted in this
+     * process.
+     *
+     * @return the counts
+     * @throws IOException
+     *             if a file cannot be read
+     */
+    private WordCountTable countHere() throws IOException {
+        TagCloudEngine engine = new TagCloudEngine(TagCloudConfig.DEFAULT);
+        WordCountTable all = new WordCountTable();
+        for (Path file : this.inputs) {
+            FileChannel channel = FileChannel.open(file);
+            try {
+                all.addAll(engine.count(channel, PipelineMetrics.DISABLED));
+            } finally {
+                channel.close();
+            }
+        }
+        return all;
+    }
+
+    /**
+     * Returns a new, empty directory for the partial counts.
+     *
+     * @return the directory
+     * @throws IOException
+     *             if it cannot be created
+     */
+    private Path partials() throws IOException {
+        return Files.createTempDirectory(this.dir, "partials");
+    }
+
+    /**
+     * Returns the number of files in {@code directory}.
+     *
+     * @param directory
+     *            the directory
+     * @return the number of files in it
+     * @throws IOException
+     *             if it cannot be listed
+     */
+    private static int countFiles(Path directory) throws IOException {
+        int count = 0;
+        DirectoryStream<Path> files = Files.newDirectoryStream(directory);
+        try {
+            for (Path file : files) {
+                count++;
+            }
+        } finally {
+            files.close();
+        }
+        return count;
+    }
+
+    /**
+     * Workers that spill a run every hundred distinct words give the same
+     * cloud, with the same counts, as one count of all the files.
+     *
+     * @throws IOException
+     *             if a file cannot be read or written
+     */
+    @Test
+    public void exactCloudWithSpilledRunsMatchesOneProcess()
+            throws IOException {
+        TagCloudConfig config = TagCloudConfig.DEFAULT.withWords(60);
+        Path partials = this.partials();
+        TagCloudResult cloud = DistributedTagCloud.coordinate(this.inputs, 3,
+                config, 100, new ArrayList<String>(), partials);
+        assertNotNull(cloud, "a worker failed");
+        assertTrue(countFiles(partials) > 3 * 2,
+                "the workers did not spill several runs each");
+
+        WordCountTable all = this.countHere();
+        TagCloudResult expected = new TagCloudEngine(config).cloud(all,
+                "all files", PipelineMetrics.DISABLED);
+        assertEquals(expected.size(), cloud.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.word(i).word(), cloud.word(i).word(),
+                    "word at rank " + i);
+            assertEquals(expected.word(i).count(), cloud.word(i).count(),
+                    "count at rank " + i);
+            assertEquals(0, cloud.word(i).error(), "error at rank " + i);
+        }
+        assertEquals(all.total(), cloud.total());
+    }
+
+    /**
+     * The command line, with a tiny {@code -i}, writes the same page as a
+     * cloud of one count of all the files.
+     *
+     * @throws IOException
+     *             if a file cannot be read or written
+     */
+    @Test
+    public void commandLineWritesSamePageAsOneProcess() throws IOException {
+        Path output = this.dir.resolve("distributed.html");
+        List<String> args = new ArrayList<String>();
+        String[] options = { "-n", "40", "-w", "2", "-i", "50", "-x",
+            "-Xmx64m", output.toString() };
+        for (String option : options) {
+            args.add(option);
+        }
+        for (Path input : this.inputs) {
+            args.add(input.toString());
+        }
+        DistributedTagCloud.main(args.toArray(new String[args.size()]));
+
+        TagCloudConfig config = TagCloudConfig.DEFAULT.withWords(40);
+        TagCloudEngine engine = new TagCloudEngine(config);
+        Path expected = this.dir.resolve("expected.html");
+        engine.writeHtml(engine.cloud(this.countHere(), "all files",
+                PipelineMetrics.DISABLED), expected);
+        assertArrayEquals(Files.readAllBytes(expected),
+                Files.readAllBytes(output));
+    }
+
+    /**
+     * With {@code -a}, every word of the merged cloud has a count no lower
+     * than its true count and at most its error higher, and the most
+     * frequent words, far ahead of the rest, are all found.
+     *
+     * @throws IOException
+     *             if a file cannot be read or written
+     */
+    @Test
+    public void approximateCloudBoundsTrueCounts() throws IOException {
+        TagCloudConfig config = TagCloudConfig.DEFAULT.withWords(20)
+                .withApproximation(0.02);
+        TagCloudResult cloud = DistributedTagCloud.coordinate(this.inputs, 3,
+                config, 100, new ArrayList<String>(), this.partials());
+        assertNotNull(cloud, "a worker failed");
+
+        WordCountTable all = this.countHere();
+        boolean approximate = false;
+        for (int i = 0; i < cloud.size(); i++) {
+            WordCount word = cloud.word(i);
+            long truth = all.get(word.word());
+            assertTrue(word.count() >= truth,
+                    word + " is counted below its true count " + truth);
+            assertTrue(word.count() - word.error() <= truth, word
+                    + " has an error bound below its true count " + truth);
+            approximate |= word.error() > 0;
+        }
+        assertTrue(approximate, "the sketches held the whole vocabulary");
+        TagCloudResult exact = new TagCloudEngine(
+                TagCloudConfig.DEFAULT.withWords(3)).cloud(all, "all files",
+                        PipelineMetrics.DISABLED);
+        for (int i = 0; i < exact.size(); i++) {
+            assertEquals(exact.word(i).word(), cloud.word(i).word(),
+                    "most frequent word at rank " + i);
+        }
+    }
+
+}
@@ -0,0 +1,243 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests of {@code IncrementalTagCloud}. After every refresh the counts are
+ * compared with a count of the text consumed so far in one go by a
+ * {@code TagCloudEngine} of the same configuration.
+ *
+ * @author Hudson Arledge and Nik Anand
+ *
+ */
+public final class IncrementalTagCloudTest {
+
+    /**
+     * Number of words in the clouds.
+     */
+    private static final int WORDS = 20;
+
+    /**
+     * Directory the followed files and snapshots are written to.
+     */
+    @TempDir
+    Path dir;
+
+    /**
+     * Appends {@code text} to {@code file}, creating it if needed.
+     *
+     * @param file
+     *            the file
+     * @param text
+     *            the text
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    private static void append(Path file, String text) throws IOException {
+        Files.write(file, text.getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Returns the words of {@code table} with their counts.
+     *
+     * @param table
+     *            the counts
+     * @return the words and counts, in alphabetical order
+     */
+    private static Map<String, Long> counts(WordCountTable table) {
+        Map<String, Long> counts = new TreeMap<String, Long>();
+        for (int slot = 0; slot < table.capacity(); slot++) {
+            String word = table.keyAt(slot);
+            if (word != null) {
+                counts.put(word, table.countAt(slot));
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Checks that {@code cloud} has consumed the first {@code consumed}
+     * characters of {@code text}, and has counted them, and selected its top
+     * words, as {@code config} counts them in one go.
+     *
+     * @param cloud
+     *            the cloud
+     * @param text
+     *            the whole text of the file
+     * @param consumed
+     *            the number of characters expected to be counted
+     * @param config
+     *            the configuration of the cloud
+     * @throws IOException
+     *             never
+     */
+    private static void check(IncrementalTagCloud cloud, String text,
+            int consumed, TagCloudConfig config) throws IOException {
+        String counted = text.substring(0, consumed);
+        assertEquals(counted.getBytes(StandardCharsets.UTF_8).length,
+                cloud.offset(), counted);
+        WordCountTable expected = new TagCloudEngine(config).count(
+                new StringReader(counted), PipelineMetrics.DISABLED);
+        assertEquals(counts(expected), counts(cloud.counts()), counted);
+        assertEquals(expected.total(), cloud.counts().total(), counted);
+        assertEquals(Arrays.toString(TopWords.select(expected, WORDS)),
+                Arrays.toString(cloud.top()), counted);
+    }
+
+    /**
+     * A word cut off by the end of an append is held back at the last
+     * separator, and counted whole once the rest of it is appended.
+     *
+     * @throws IOException
+     *             if the file cannot be read or written
+     */
+    @Test
+    public void splitWordHeldBack() throws IOException {
+        TagCloudConfig config = TagCloudConfig.DEFAULT.withWords(WORDS);
+        Path file = this.dir.resolve("log.txt");
+        IncrementalTagCloud cloud = new IncrementalTagCloud(file, config);
+        append(file, "hello naï");
+        assertEquals(6, cloud.refresh());
+        check(cloud, "hello naï", 6, config);
+        //"wor" is held back until a separator follows it
+        append(file, "ve wor");
+        assertEquals(7, cloud.refresh());
+        check(cloud, "hello naïve wor", 12, config);
+        assertEquals(0, cloud.refresh());
+        append(file, "ld hello\n");
+        cloud.refresh();
+        check(cloud, "hello naïve world hello\n", 24, config);
+        assertEquals(2, cloud.counts().get("hello"));
+        assertEquals(0, cloud.counts().get("wor"));
+    }
+
+    /**
+     * Random text appended in random pieces, cut anywhere, is counted as
+     * the text up to the last separator is counted in one go.
+     *
+     * @throws IOException
+     *             if the file cannot be read or written
+     */
+    @Test
+    public void randomAppends() throws IOException {
+        TagCloudConfig config = TagCloudConfig.DEFAULT.withWords(WORDS);
+        Random random = new Random(6);
+        String[] pieces = { "alpha", "Beta", "gamma", "é", " ", ", ", ".\n",
+            "x" };
+        for (int trial = 0; trial < 20; trial++) {
+            Path file = this.dir.resolve("random" + trial + ".txt");
+            IncrementalTagCloud cloud = new IncrementalTagCloud(file, config);
+            StringBuilder text = new StringBuilder();
+            for (int step = 0; step < 30; step++) {
+                StringBuilder piece = new StringBuilder();
+                int n = random.nextInt(12);
+                for (int i = 0; i < n; i++) {
+                    piece.append(pieces[random.nextInt(pieces.length)]);
+                }
+                append(file, piece.toString());
+                text.append(piece);
+                cloud.refresh();
+                int consumed = text.length();
+                while (consumed > 0 && " ,.\n"
+                        .indexOf(text.charAt(consumed - 1)) < 0) {
+                    consumed--;
+                }
+                check(cloud, text.toString(), consumed, config);
+            }
+        }
+    }
+
+    /**
+     * A file that becomes shorter than the part already counted is counted
+     * again from its start.
+     *
+     * @throws IOException
+     *             if the file cannot be read or written
+     */
+    @Test
+    public void truncationResets() throws IOException {
+        TagCloudConfig config = TagCloudConfig.DEFAULT.withWords(WORDS);
+        Path file = this.dir.resolve("log.txt");
+        IncrementalTagCloud cloud = new IncrementalTagCloud(file, config);
+        append(file, "one two three four five six\n");
+        cloud.refresh();
+        check(cloud, "one two three four five six\n", 28, config);
+
+        Files.write(file, "seven two\n".getBytes(StandardCharsets.UTF_8));
+        assertEquals(10, cloud.refresh());
+        check(cloud, "seven two\n", 10, config);
+        append(file, "two eight ");
+        cloud.refresh();
+        check(cloud, "seven two\ntwo eight ", 20, config);
+    }
+
+    /**
+     * A cloud restored from a saved state carries on from where the saved
+     * one stopped, and ends with the counts of the whole file.
+     *
+     * @throws IOException
+     *             if a file cannot be read or written
+     */
+    @Test
+    public void saveAndRestore() throws IOException {
+        TagCloudConfig config = TagCloudConfig.DEFAULT.withWords(WORDS);
+        Path file = this.dir.resolve("log.txt");
+        Path state = this.dir.resolve("state.bin");
+        IncrementalTagCloud first = new IncrementalTagCloud(file, config);
+        append(file, "red green blue red gre");
+        first.refresh();
+        first.save(state);
+
+        append(file, "en blue red\n");
+        IncrementalTagCloud second = new IncrementalTagCloud(file, config);
+        second.restore(state);
+        check(second, "red green blue red green blue red\n", 19, config);
+        second.refresh();
+        check(second, "red green blue red green blue red\n", 34, config);
+        assertEquals(3, second.counts().get("red"));
+        assertEquals(2, second.counts().get("green"));
+
+        //restoring replaces what was counted since
+        second.restore(state);
+        check(second, "red green blue red green blue red\n", 19, config);
+    }
+
+    /**
+     * A phrase whose first word is counted by one refresh and whose last
+     * word is counted by the next is counted once, as in one go.
+     *
+     * @throws IOException
+     *             if the file cannot be read or written
+     */
+    @Test
+    public void phraseSpansRefreshes() throws IOException {
+        TagCloudConfig config = TagCloudConfig.DEFAULT.withWords(WORDS)
+                .withPhrases(2);
+        Path file = this.dir.resolve("log.txt");
+        IncrementalTagCloud cloud = new IncrementalTagCloud(file, config);
+        append(file, "big red ");
+        cloud.refresh();
+        check(cloud, "big red ", 8, config);
+        append(file, "dog big red dog");
+        cloud.refresh();
+        check(cloud, "big red dog big red dog", 20, config);
+        append(file, " ");
+        cloud.refresh();
+        check(cloud, "big red dog big red dog ", 24, config);
+        assertEquals(2, cloud.counts().get("red dog"));
+    }
+
+}
@@ -0,0 +1,143 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.ThrowingSupplier;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests of {@code MappedFileIngest}.
+ *
+ * @author Hudson Arledge and Nik Anand
+ *
+ */
+public final class MappedFileIngestTest {
+
+    /**
+     * A supplementary character, which decodes to a surrogate pair.
+     */
+    private static final String EMOJI = "😀";
+
+    /**
+     * Longest time a count of a test file may take before it is taken to
+     * hang.
+     */
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+    /**
+     * Directory the test files are written to.
+     */
+    @TempDir
+    Path dir;
+
+    /**
+     * Returns {@code length} copies of 'a'.
+     *
+     * @param length
+     *            the length of the word
+     * @return the word
+     */
+    private static String word(int length) {
+        StringBuilder word = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            word.append('a');
+        }
+        return word.toString();
+    }
+
+    /**
+     * Writes {@code text} in {@code charset} and counts it through
+     * {@code TagCloudEngine.count(FileChannel, PipelineMetrics)}, failing if
+     * that does not finish.
+     *
+     * @param text
+     *            the text of the file
+     * @param charset
+     *            the encoding of the file
+     * @return the counts
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    private WordCountTable count(String text, Charset charset)
+            throws IOException {
+        final Path file = this.dir.resolve("input.txt");
+        Files.write(file, text.getBytes(charset));
+        final TagCloudEngine engine = new TagCloudEngine(
+                TagCloudConfig.DEFAULT.withCharset(charset));
+        return assertTimeoutPreemptively(TIMEOUT,
+                new ThrowingSupplier<WordCountTable>() {
+                    @Override
+                    public WordCountTable get() throws IOException {
+                        FileChannel channel = FileChannel.open(file);
+                        try {
+                            return engine.count(channel,
+                                    PipelineMetrics.DISABLED);
+                        } finally {
+                            channel.close();
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Checks that a word of {@code length} characters followed by a
+     * supplementary character is counted, in UTF-16 and UTF-8.
+     *
+     * @param length
+     *            the length of the word
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    private void checkLongWordBeforeSurrogatePair(int length)
+            throws IOException {
+        String word = word(length);
+        for (Charset charset : new Charset[] { StandardCharsets.UTF_16,
+            StandardCharsets.UTF_8 }) {
+            WordCountTable counts = this.count(
+                    word + EMOJI + " end " + word + " end", charset);
+            assertEquals(2, counts.get("end"), charset.toString());
+            assertEquals(4, counts.total(), charset.toString());
+        }
+    }
+
+    /**
+     * A held back word that leaves one free character in the tokenizer's
+     * buffer, too little for the surrogate pair that follows it, used to stop
+     * the decoder from making progress.
+     *
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    @Test
+    public void wordOneShortOfCapacityBeforeSurrogatePair()
+            throws IOException {
+        this.checkLongWordBeforeSurrogatePair(
+                ChunkedTokenizer.DEFAULT_CAPACITY - 1);
+    }
+
+    /**
+     * Words just shorter and longer than the buffer, either side of the one
+     * above.
+     *
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    @Test
+    public void wordsAroundCapacityBeforeSurrogatePair() throws IOException {
+        this.checkLongWordBeforeSurrogatePair(
+                ChunkedTokenizer.DEFAULT_CAPACITY - 2);
+        this.checkLongWordBeforeSurrogatePair(
+                ChunkedTokenizer.DEFAULT_CAPACITY);
+        this.checkLongWordBeforeSurrogatePair(
+                2 * ChunkedTokenizer.DEFAULT_CAPACITY - 1);
+    }
+
+}
@@ -0,0 +1,284 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests that {@code ParallelWordCount} counts exactly what the sequential
+ * {@code TagCloud.generateMapWithCount} does, reading the file through a
+ * {@code Reader}, on random UTF-8 text with malformed bytes, split at every
+ * kind of point.
+ *
+ * @author Hudson Arledge and Nik Anand
+ *
+ */
+public final class ParallelWordCountTest {
+
+    /**
+     * Pieces of well formed text the random files are made of: ASCII and
+     * other words, upper case letters that fold to one or more characters,
+     * ASCII separators and separators only in the Unicode set.
+     */
+    private static final String[] PIECES = { "the", "Cat", "naïve", "ΩMEGA",
+        "中文", "😀", "x😀y", "İstanbul", "STRASSE", "ǅ", "a", "b", " ", " ",
+        "\n", ",", ".", "'", "-", " ", "—", "、", " ",
+        "\t", "\r\n", "0", "42" };
+
+    /**
+     * Malformed byte sequences: a lone continuation byte, truncated
+     * sequences, an overlong encoding, an encoded surrogate, and bytes that
+     * never occur in UTF-8.
+     */
+    private static final byte[][] MALFORMED = { { (byte) 0x80 },
+        { (byte) 0xC3 }, { (byte) 0xE4, (byte) 0xB8 },
+        { (byte) 0xF0, (byte) 0x9F, (byte) 0x98 },
+        { (byte) 0xC0, (byte) 0xAF }, { (byte) 0xED, (byte) 0xA0,
+            (byte) 0x80 },
+        { (byte) 0xFF }, { (byte) 0xFE, (byte) 0xF8 },
+        { (byte) 0xF4, (byte) 0x90, (byte) 0x80, (byte) 0x80 } };
+
+    /**
+     * The pool the files are counted on.
+     */
+    private static ForkJoinPool pool;
+
+    /**
+     * Directory the test files are written to.
+     */
+    @TempDir
+    Path dir;
+
+    /**
+     * Starts the pool.
+     */
+    @BeforeAll
+    public static void startPool() {
+        pool = new ForkJoinPool(4);
+    }
+
+    /**
+     * Stops the pool.
+     */
+    @AfterAll
+    public static void stopPool() {
+        pool.shutdown();
+    }
+
+    /**
+     * Returns about {@code length} bytes of random UTF-8 text, with a
+     * malformed sequence in about one piece in {@code malformedEvery}, or
+     * none if it is 0.
+     *
+     * @param random
+     *            the source of randomness
+     * @param length
+     *            the number of bytes wanted
+     * @param malformedEvery
+     *            how rare malformed sequences are
+     * @return the text
+     */
+    private static byte[] randomText(Random random, int length,
+            int malformedEvery) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(length + 16);
+        while (out.size() < length) {
+            if (malformedEvery > 0 && random.nextInt(malformedEvery) == 0) {
+                byte[] bad = MALFORMED[random.nextInt(MALFORMED.length)];
+                out.write(bad, 0, bad.length);
+            } else {
+                byte[] piece = PIECES[random.nextInt(PIECES.length)]
+                        .getBytes(StandardCharsets.UTF_8);
+                out.write(piece, 0, piece.length);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Checks that {@code actual} has the same words and counts as
+     * {@code expected}.
+     *
+     * @param expected
+     *            the counts of the sequential count
+     * @param actual
+     *            the counts checked
+     * @param what
+     *            a description of the case
+     */
+    private static void assertSameCounts(WordCountTable expected,
+            WordCountTable actual, String what) {
+        assertEquals(expected.size(), actual.size(), what + ": words");
+        assertEquals(expected.total(), actual.total(), what + ": total");
+        for (int slot = 0; slot < expected.capacity(); slot++) {
+            String word = expected.keyAt(slot);
+            if (word != null) {
+                assertEquals(expected.countAt(slot), actual.get(word),
+                        what + ": count of \"" + word + "\"");
+            }
+        }
+    }
+
+    /**
+     * Counts {@code file} as {@code TagCloud.generateMapWithCount} does for a
+     * file it reads through a {@code Reader}.
+     *
+     * @param file
+     *            the file
+     * @param config
+     *            the configuration
+     * @return the counts
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    private static WordCountTable sequential(Path file, TagCloudConfig config)
+            throws IOException {
+        Reader reader = new InputStreamReader(Files.newInputStream(file),
+                StandardCharsets.UTF_8);
+        try {
+            return new TagCloudEngine(config).count(reader,
+                    PipelineMetrics.DISABLED);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Checks that {@code text} is counted the same sequentially and in
+     * parallel ranges of at least each of {@code segmentSizes} bytes, with
+     * {@code config}'s separators, case folding and stop words.
+     *
+     * @param text
+     *            the contents of the file
+     * @param config
+     *            the configuration
+     * @param segmentSizes
+     *            the smallest ranges to try
+     * @param what
+     *            a description of the case
+     * @throws IOException
+     *             if the file cannot be written or read
+     */
+    private void check(byte[] text, TagCloudConfig config, int[] segmentSizes,
+            String what) throws IOException {
+        Path file = this.dir.resolve("input.txt");
+        Files.write(file, text);
+        WordCountTable expected = sequential(file, config);
+        FileChannel channel = FileChannel.open(file);
+        try {
+            assertSameCounts(expected, new TagCloudEngine(config).count(
+                    channel, PipelineMetrics.DISABLED), what + ", mapped");
+            for (int size : segmentSizes) {
+                WordCountTable parallel = ParallelWordCount.count(channel,
+                        config.separators(), config.foldsCase(),
+                        config.stopWords(), pool, PipelineMetrics.DISABLED,
+                        size);
+                assertSameCounts(expected, parallel,
+                        what + ", segments of " + size);
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Random text with malformed bytes counts the same in parallel as
+     * sequentially, with both separator sets, with and without case folding
+     * and stop words, split into ranges of many sizes.
+     *
+     * @throws IOException
+     *             if a file cannot be written or read
+     */
+    @Test
+    public void randomTextWithMalformedBytes() throws IOException {
+        Random random = new Random(3);
+        SeparatorSet[] separatorSets = { SeparatorSet.DEFAULT,
+            SeparatorSet.unicode() };
+        int[] sizes = { 1, 2, 3, 5, 8, 13, 64, 1000, 65_536 };
+        for (int trial = 0; trial < 12; trial++) {
+            byte[] text = randomText(random, 1 + random.nextInt(200_000),
+                    trial % 3 * 8);
+            for (SeparatorSet separators : separatorSets) {
+                TagCloudConfig config = TagCloudConfig.DEFAULT
+                        .withSeparators(separators)
+                        .withCaseFolding(trial % 2 == 0);
+                if (trial % 4 == 1) {
+                    config = config.withStopWords(StopWords.english());
+                }
+                this.check(text, config, sizes, "trial " + trial + ", "
+                        + (separators == SeparatorSet.DEFAULT ? "default"
+                                : "unicode")
+                        + " separators");
+            }
+        }
+    }
+
+    /**
+     * Short texts are counted the same when split after every separator byte
+     * they have, however the text starts and ends.
+     *
+     * @throws IOException
+     *             if a file cannot be written or read
+     */
+    @Test
+    public void everySplitPointOfShortTexts() throws IOException {
+        Random random = new Random(5);
+        for (int trial = 0; trial < 200; trial++) {
+            byte[] text = randomText(random, random.nextInt(40), 4);
+            this.check(text, TagCloudConfig.DEFAULT, new int[] { 1, 2, 3 },
+                    "short text " + trial);
+            this.check(text,
+                    TagCloudConfig.DEFAULT
+                            .withSeparators(SeparatorSet.unicode()),
+                    new int[] { 1, 2, 3 }, "short text " + trial + ", unicode");
+        }
+    }
+
+    /**
+     * The ranges start at 0, end at the size of the file, increase, and end
+     * on separator bytes.
+     *
+     * @throws IOException
+     *             if a file cannot be written or read
+     */
+    @Test
+    public void rangesEndOnSeparators() throws IOException {
+        byte[] text = randomText(new Random(11), 50_000, 8);
+        Path file = this.dir.resolve("input.txt");
+        Files.write(file, text);
+        FileChannel channel = FileChannel.open(file);
+        try {
+            for (int segments : new int[] { 1, 4, 100, 10_000 }) {
+                long[] bounds = ParallelWordCount.split(channel,
+                        SeparatorSet.DEFAULT, segments, 1);
+                assertEquals(0, bounds[0]);
+                assertEquals(text.length, bounds[bounds.length - 1]);
+                for (int i = 1; i < bounds.length; i++) {
+                    assertTrue(bounds[i - 1] < bounds[i],
+                            "ranges do not increase at " + i);
+                    if (i < bounds.length - 1) {
+                        byte b = text[(int) bounds[i]];
+                        assertTrue(b >= 0
+                                && SeparatorSet.DEFAULT.contains((char) b),
+                                "range " + i + " does not end on a separator");
+                    }
+                }
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+}
@@ -0,0 +1,38 @@
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Locale;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of {@code PipelineMetrics}.
+ *
+ * @author Hudson Arledge and Nik Anand
+ *
+ */
+public final class PipelineMetricsTest {
+
+    /**
+     * The keys of the JSON report are the same in every default locale, even
+     * one such as Turkish that lower cases "I" to a dotless "ı".
+     */
+    @Test
+    public void jsonKeysDoNotDependOnLocale() {
+        Locale saved = Locale.getDefault();
+        try {
+            Locale.setDefault(new Locale("tr", "TR"));
+            PipelineMetrics metrics = PipelineMetrics.start(0);
+            metrics.stop(PipelineMetrics.Stage.TOKENIZE, metrics.time());
+            String json = metrics.toJson("input");
+            assertTrue(json.contains("\"tokenize\": {\"millis\": "), json);
+            assertTrue(json.contains("\"megabytesPerSecond\": "), json);
+            for (int i = 0; i < json.length(); i++) {
+                assertTrue(json.charAt(i) < 0x80,
+                        "non-ASCII character in " + json);
+            }
+        } finally {
+            Locale.setDefault(saved);
+        }
+    }
+
+}
@@ -0,0 +1,189 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of {@code RankedWordCounts}.
+ *
+ * @author Hudson Arledge and Nik Anand
+ *
+ */
+public final class RankedWordCountsTest {
+
+    /**
+     * Returns the {@code n} highest ranked words of {@code reference}, best
+     * first, as "word=count".
+     *
+     * @param reference
+     *            the counts
+     * @param n
+     *            the number of words
+     * @return the top words
+     */
+    private static List<String> expectedTop(Map<String, Long> reference,
+            int n) {
+        List<Map.Entry<String, Long>> entries = new ArrayList<Map.Entry<String, Long>>(
+                reference.entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<String, Long>>() {
+            @Override
+            public int compare(Map.Entry<String, Long> o1,
+                    Map.Entry<String, Long> o2) {
+                return WordCount.compareByRank(o1.getKey(), o1.getValue(),
+                        o2.getKey(), o2.getValue());
+            }
+        });
+        List<String> top = new ArrayList<String>();
+        for (int i = 0; i < Math.min(n, entries.size()); i++) {
+            top.add(entries.get(i).getKey() + "=" + entries.get(i).getValue());
+        }
+        return top;
+    }
+
+    /**
+     * Returns {@code top} as "word=count".
+     *
+     * @param top
+     *            the top words
+     * @return the words and counts
+     */
+    private static List<String> strings(WordCount[] top) {
+        List<String> strings = new ArrayList<String>();
+        for (WordCount word : top) {
+            strings.add(word.toString());
+        }
+        return strings;
+    }
+
+    /**
+     * Checks {@code counts} against {@code reference} after operation
+     * {@code step}.
+     *
+     * @param counts
+     *            the counts under test
+     * @param reference
+     *            the expected counts
+     * @param vocabulary
+     *            every word that may have been counted
+     * @param n
+     *            the number of words kept
+     * @param step
+     *            the number of the operation, for messages
+     */
+    private static void check(RankedWordCounts counts,
+            Map<String, Long> reference, List<String> vocabulary, int n,
+            int step) {
+        assertEquals(expectedTop(reference, n), strings(counts.top()),
+                "top at " + step);
+        assertEquals(reference.size(), counts.size(), "size at " + step);
+        long total = 0;
+        for (long count : reference.values()) {
+            total += count;
+        }
+        assertEquals(total, counts.total(), "total at " + step);
+        for (String word : vocabulary) {
+            Long count = reference.get(word);
+            assertEquals(count == null ? 0 : count.longValue(),
+                    counts.count(word), word + " at " + step);
+        }
+    }
+
+    /**
+     * Runs random additions and subtractions on {@code vocabulary} words,
+     * never taking a count below zero, and checks every observable after
+     * each one against a {@code HashMap}.
+     *
+     * @param random
+     *            the source of randomness
+     * @param words
+     *            the number of words in the vocabulary
+     * @param n
+     *            the number of words kept
+     * @param steps
+     *            the number of operations
+     */
+    private static void randomDeltas(Random random, int words, int n,
+            int steps) {
+        List<String> vocabulary = new ArrayList<String>();
+        for (int i = 0; i < words; i++) {
+            vocabulary.add("w" + Integer.toString(i, 36));
+        }
+        RankedWordCounts counts = new RankedWordCounts(n);
+        Map<String, Long> reference = new HashMap<String, Long>();
+        for (int step = 0; step < steps; step++) {
+            String word = vocabulary.get(random.nextInt(words));
+            Long old = reference.get(word);
+            long current = old == null ? 0 : old.longValue();
+            long delta;
+            if (current > 0 && random.nextInt(3) == 0) {
+                //sometimes all of it, so the word is removed
+                delta = random.nextBoolean() ? -current
+                        : -1 - random.nextInt((int) current);
+            } else {
+                //small counts, so ties are common
+                delta = 1 + random.nextInt(3);
+            }
+            long result = counts.add(word, delta);
+            assertEquals(current + delta, result, "add at " + step);
+            if (current + delta == 0) {
+                reference.remove(word);
+            } else {
+                reference.put(word, current + delta);
+            }
+            check(counts, reference, vocabulary, n, step);
+        }
+    }
+
+    /**
+     * Random positive and negative deltas on a small vocabulary, so words
+     * move between the heaps and are removed and added again often.
+     */
+    @Test
+    public void randomDeltasSmallVocabulary() {
+        Random random = new Random(19);
+        for (int n = 0; n <= 6; n++) {
+            randomDeltas(random, 12, n, 600);
+        }
+    }
+
+    /**
+     * Random positive and negative deltas on a vocabulary larger than the
+     * initial table, so it grows and its index deletes many entries.
+     */
+    @Test
+    public void randomDeltasLargeVocabulary() {
+        Random random = new Random(20);
+        randomDeltas(random, 300, 10, 4000);
+    }
+
+    /**
+     * A zero delta for a word that is not counted leaves it uncounted, and
+     * clear forgets every word.
+     */
+    @Test
+    public void zeroDeltaAndClear() {
+        RankedWordCounts counts = new RankedWordCounts(2);
+        assertEquals(0, counts.add("a", 0));
+        assertEquals(0, counts.size());
+        assertEquals(0, counts.top().length);
+        counts.add("a", 2);
+        counts.add("b", 1);
+        counts.add("c", 3);
+        assertEquals("[c=3, a=2]", strings(counts.top()).toString());
+        counts.clear();
+        assertEquals(0, counts.size());
+        assertEquals(0, counts.total());
+        assertEquals(0, counts.count("c"));
+        assertEquals(0, counts.top().length);
+        counts.add("b", 1);
+        assertEquals("[b=1]", strings(counts.top()).toString());
+    }
+
+}
@@ -0,0 +1,192 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of {@code SeparatorSet}, and of the case folding table of
+ * {@code Tokenizer} that goes with it.
+ *
+ * @author Hudson Arledge and Nik Anand
+ *
+ */
+public final class SeparatorSetTest {
+
+    /**
+     * Returns the words of {@code text} split at {@code separators}.
+     *
+     * @param text
+     *            the text
+     * @param separators
+     *            the separator characters
+     * @return the words, in order
+     */
+    private static List<String> words(String text,
+            SeparatorSet separators) {
+        final List<String> words = new ArrayList<String>();
+        char[] chars = text.toCharArray();
+        Tokenizer.tokenize(chars, 0, chars.length, separators,
+                new WordSink() {
+                    @Override
+                    public void word(char[] t, int offset, int length) {
+                        words.add(new String(t, offset, length));
+                    }
+                });
+        return words;
+    }
+
+    /**
+     * Supplementary code points are found by range, up to and including the
+     * ends of each range, and a set with none scans by character.
+     */
+    @Test
+    public void supplementaryRanges() {
+        SeparatorSet set = SeparatorSet.builder().add(0x10000)
+                .addRange(0x1F600, 0x1F64F).add(0x1F680)
+                .addRange(0x10FFF0, Character.MAX_CODE_POINT).add(' ')
+                .build();
+        assertTrue(set.hasSupplementary());
+        assertTrue(set.contains(0x10000));
+        assertFalse(set.contains(0x10001));
+        assertFalse(set.contains(0x1F5FF));
+        assertTrue(set.contains(0x1F600));
+        assertTrue(set.contains(0x1F64F));
+        assertFalse(set.contains(0x1F650));
+        assertFalse(set.contains(0x1F67F));
+        assertTrue(set.contains(0x1F680));
+        assertFalse(set.contains(0x1F681));
+        assertTrue(set.contains(Character.MAX_CODE_POINT));
+        assertTrue(set.contains(' '));
+        assertFalse(set.contains('a'));
+        //half of a pair is not a separator unless added on its own
+        assertFalse(set.contains('\uD83D'));
+        assertEquals("[a, b😃c, d]",
+                words("a😀b😃c🚀d", SeparatorSet.builder().add(0x1F600)
+                        .add(0x1F680).build()).toString());
+
+        assertFalse(SeparatorSet.of(" ,.").hasSupplementary());
+        assertFalse(SeparatorSet.DEFAULT.hasSupplementary());
+    }
+
+    /**
+     * Random ranges and single code points, some removed again, compile to
+     * exactly the set a {@code BitSet} holds, across the whole code space.
+     */
+    @Test
+    public void randomSetsMatchBitSet() {
+        Random random = new Random(15);
+        for (int trial = 0; trial < 40; trial++) {
+            SeparatorSet.Builder builder = SeparatorSet.builder();
+            BitSet expected = new BitSet();
+            StringBuilder removed = new StringBuilder();
+            for (int i = 0; i < 30; i++) {
+                int first = random.nextInt(Character.MAX_CODE_POINT + 1);
+                int last = Math.min(Character.MAX_CODE_POINT,
+                        first + random.nextInt(random.nextBoolean() ? 4 : 5000));
+                builder.addRange(first, last);
+                expected.set(first, last + 1);
+            }
+            for (int i = 0; i < 10; i++) {
+                int c = expected.nextSetBit(
+                        random.nextInt(Character.MAX_CODE_POINT + 1));
+                if (c >= 0 && !Character.isSurrogate((char) c)
+                        || c >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                    removed.appendCodePoint(c);
+                    expected.clear(c);
+                }
+            }
+            builder.remove(removed);
+            SeparatorSet set = builder.build();
+            for (int c = 0; c <= Character.MAX_CODE_POINT; c++) {
+                if (set.contains(c) != expected.get(c)) {
+                    assertEquals(expected.get(c), set.contains(c),
+                            "trial " + trial + " at " + c);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removals win over additions, whichever is made first.
+     */
+    @Test
+    public void removalsWin() {
+        SeparatorSet set = SeparatorSet.builder().remove("'_😀")
+                .addPunctuation().addSymbols().add("' ").build();
+        assertFalse(set.contains('\''));
+        assertFalse(set.contains('_'));
+        assertFalse(set.contains(0x1F600));
+        assertTrue(set.contains(0x1F601));
+        assertTrue(set.contains('!'));
+        assertEquals("[don't, snake_case]",
+                words("don't! snake_case", set).toString());
+    }
+
+    /**
+     * The Unicode set splits at em dashes, tabs, no-break spaces and CJK
+     * punctuation, and keeps letters of every script, so multilingual text
+     * splits into its words.
+     */
+    @Test
+    public void unicodeSplitsPunctuationAndSpaces() {
+        SeparatorSet unicode = SeparatorSet.unicode();
+        String separators = "—–\t 　、。「」！？…‘’“” ";
+        for (int i = 0; i < separators.length(); i++) {
+            assertTrue(unicode.contains(separators.charAt(i)),
+                    "U+" + Integer.toHexString(separators.charAt(i)));
+            assertFalse(SeparatorSet.DEFAULT.contains(separators.charAt(i))
+                    && separators.charAt(i) != '\t'
+                    && separators.charAt(i) != ' ',
+                    "U+" + Integer.toHexString(separators.charAt(i))
+                            + " is a default separator");
+        }
+        String letters = "aZéßω中文한글ñ";
+        for (int i = 0; i < letters.length(); i++) {
+            assertFalse(unicode.contains(letters.charAt(i)),
+                    String.valueOf(letters.charAt(i)));
+        }
+        assertEquals("[word, dash, tab, 中文, 日本語, end, naïve]",
+                words("word—dash\ttab、中文。日本語「end」 naïve…",
+                        unicode).toString());
+        //the default set, which has no tab, leaves all of them in the words
+        assertEquals("[word—dash\ttab、中文。日本語「end」 naïve…]",
+                words("word—dash\ttab、中文。日本語「end」 naïve…",
+                        SeparatorSet.DEFAULT).toString());
+    }
+
+    /**
+     * Case folding is the same under a Turkish default locale as under any
+     * other: "I" folds to "i", not to a dotless i, and letters outside the
+     * Basic Multilingual Plane fold as one code point.
+     */
+    @Test
+    public void foldingIgnoresDefaultLocale() {
+        Locale saved = Locale.getDefault();
+        Locale.setDefault(new Locale("tr", "TR"));
+        try {
+            String text = "I İ Iİ ÄÖÜ ΣΑΣ 𐐀𐐁 ABC";
+            char[] chars = text.toCharArray();
+            Tokenizer.toLowerCase(chars, 0, chars.length);
+            assertEquals("i i ii äöü σασ 𐐨𐐩 abc", new String(chars));
+            assertEquals('i', Tokenizer.toLowerCase('I'));
+            assertEquals(0x10428, Tokenizer.toLowerCase(0x10400));
+            for (int c = 0; c < Character.MIN_SUPPLEMENTARY_CODE_POINT; c++) {
+                if (Tokenizer.toLowerCase(c) != Character.toLowerCase(c)) {
+                    assertEquals(Character.toLowerCase(c),
+                            Tokenizer.toLowerCase(c),
+                            "U+" + Integer.toHexString(c));
+                }
+            }
+        } finally {
+            Locale.setDefault(saved);
+        }
+    }
+
+}
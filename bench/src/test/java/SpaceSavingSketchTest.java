@@ -0,0 +1,88 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of {@code SpaceSavingSketch}.
+ *
+ * @author Hudson Arledge and Nik Anand
+ *
+ */
+public final class SpaceSavingSketchTest {
+
+    /**
+     * Passes {@code word} to {@code sketch} once.
+     *
+     * @param sketch
+     *            the sketch
+     * @param word
+     *            the word
+     */
+    private static void add(SpaceSavingSketch sketch, String word) {
+        char[] text = word.toCharArray();
+        sketch.word(text, 0, text.length);
+    }
+
+    /**
+     * A sketch holding as many words as its capacity, the fullest its index
+     * gets, counts them exactly, whether or not the capacity is a power of
+     * two.
+     */
+    @Test
+    public void fullSketchCountsExactly() {
+        Random random = new Random(13);
+        for (int capacity = 1; capacity <= 300; capacity++) {
+            SpaceSavingSketch sketch = new SpaceSavingSketch(capacity);
+            Map<String, Long> expected = new HashMap<String, Long>();
+            for (int i = 0; i < 20 * capacity; i++) {
+                String word = "w" + random.nextInt(capacity);
+                add(sketch, word);
+                Long count = expected.get(word);
+                expected.put(word, count == null ? 1 : count + 1);
+            }
+            assertEquals(expected.size(), sketch.size());
+            for (WordCount word : sketch.top(capacity)) {
+                assertEquals((long) expected.get(word.word()), word.count(),
+                        "capacity " + capacity + ", " + word);
+                assertEquals(0, word.error());
+            }
+        }
+    }
+
+    /**
+     * A sketch given more distinct words than its capacity never counts a
+     * word below its true count, nor more than its error above it.
+     */
+    @Test
+    public void overfullSketchBoundsCounts() {
+        Random random = new Random(29);
+        for (int capacity : new int[] { 1, 7, 64, 100, 1000 }) {
+            SpaceSavingSketch sketch = new SpaceSavingSketch(capacity);
+            Map<String, Long> expected = new HashMap<String, Long>();
+            for (int i = 0; i < 50 * capacity; i++) {
+                //skewed, so some words stay in the sketch
+                int rank = (int) Math.floor(Math.pow(random.nextDouble(), 3)
+                        * 10 * capacity);
+                String word = "w" + rank;
+                add(sketch, word);
+                Long count = expected.get(word);
+                expected.put(word, count == null ? 1 : count + 1);
+            }
+            assertEquals(capacity, sketch.size());
+            for (WordCount word : sketch.top(capacity)) {
+                long truth = expected.get(word.word());
+                assertTrue(word.count() >= truth, word + " below " + truth);
+                assertTrue(word.count() - word.error() <= truth,
+                        word + " error below " + truth);
+                assertTrue(word.error() <= sketch.errorBound(),
+                        word.toString());
+            }
+        }
+    }
+
+}
@@ -0,0 +1,136 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.ThrowingSupplier;
+
+/**
+ * Tests of {@code StopWords}.
+ *
+ * @author Hudson Arledge and Nik Anand
+ *
+ */
+public final class StopWordsTest {
+
+    /**
+     * Returns {@code n} distinct random lower case words.
+     *
+     * @param n
+     *            the number of words
+     * @param random
+     *            the source of randomness
+     * @return the words
+     */
+    private static List<String> randomWords(int n, Random random) {
+        Set<String> words = new HashSet<String>();
+        while (words.size() < n) {
+            int length = 1 + random.nextInt(12);
+            char[] word = new char[length];
+            for (int i = 0; i < length; i++) {
+                word[i] = (char) ('a' + random.nextInt(26));
+            }
+            words.add(new String(word));
+        }
+        return new ArrayList<String>(words);
+    }
+
+    /**
+     * Checks that {@code set} holds exactly {@code words}, looking up
+     * {@code misses} too, through both of its lookups.
+     *
+     * @param set
+     *            the compiled set
+     * @param words
+     *            the stop words
+     * @param misses
+     *            words that may or may not be stop words
+     */
+    private static void checkSet(StopWords set, List<String> words,
+            List<String> misses) {
+        Set<String> expected = new HashSet<String>(words);
+        assertEquals(expected.size(), set.size());
+        for (String word : words) {
+            assertTrue(set.contains(word), word);
+        }
+        for (String word : misses) {
+            char[] text = ("." + word + ".").toCharArray();
+            boolean member = expected.contains(word);
+            assertEquals(member, set.contains(word), word);
+            assertEquals(member,
+                    set.contains(text, 1, word.length(), word.hashCode()),
+                    word);
+        }
+        String[] sorted = expected.toArray(new String[expected.size()]);
+        Arrays.sort(sorted);
+        assertArrayEquals(sorted, set.words());
+    }
+
+    /**
+     * Sets of many sizes hold exactly their words.
+     */
+    @Test
+    public void randomSets() {
+        Random random = new Random(1601);
+        for (int n : new int[] { 0, 1, 2, 3, 7, 8, 9, 100, 1000, 20_000 }) {
+            List<String> words = randomWords(n, random);
+            checkSet(StopWords.of(words), words, randomWords(2000, random));
+        }
+    }
+
+    /**
+     * Words with equal hashes, such as "Aa" and "BB", are told apart.
+     */
+    @Test
+    public void equalHashes() {
+        List<String> words = Arrays.asList("Aa", "BB", "AaAa", "BBBB",
+                "AaBB", "the");
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+        StopWords set = StopWords.of(words);
+        checkSet(set, words, Arrays.asList("BBAa", "AaAa", "a", "", "th"));
+        assertFalse(set.contains("BBAa"));
+    }
+
+    /**
+     * The English list is found, and the empty word and duplicates are
+     * dropped.
+     */
+    @Test
+    public void englishAndDuplicates() {
+        StopWords english = StopWords.english();
+        assertTrue(english.contains("the"));
+        assertTrue(english.contains("yourselves"));
+        assertFalse(english.contains("cloud"));
+        StopWords set = StopWords.of(Arrays.asList("a", "", "b", "a"));
+        assertEquals(2, set.size());
+        assertFalse(set.contains(""));
+    }
+
+    /**
+     * A list of a hundred thousand words is compiled in well under the time
+     * a table found by trial and error would take.
+     */
+    @Test
+    public void largeListBuildsQuickly() {
+        final List<String> words = randomWords(100_000, new Random(17));
+        StopWords set = assertTimeoutPreemptively(Duration.ofSeconds(10),
+                new ThrowingSupplier<StopWords>() {
+                    @Override
+                    public StopWords get() {
+                        return StopWords.of(words);
+                    }
+                });
+        checkSet(set, words, randomWords(1000, new Random(18)));
+    }
+
+}
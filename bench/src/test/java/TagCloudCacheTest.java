@@ -0,0 +1,319 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests of {@code TagCloudCache}.
+ *
+ * @author Hudson Arledge and Nik Anand
+ *
+ */
+public final class TagCloudCacheTest {
+
+    /**
+     * Longest time a request may take before it is taken to hang.
+     */
+    private static final Duration TIMEOUT = Duration.ofSeconds(60);
+
+    /**
+     * Estimated bytes of memory of a cached cloud of one word of four
+     * characters: the cloud, the word, and its characters.
+     */
+    private static final long ONE_WORD_CLOUD = 256 + 80 + 2 * 4;
+
+    /**
+     * Directory the inputs and cached clouds are written to.
+     */
+    @TempDir
+    Path dir;
+
+    /**
+     * Writes {@code text} to the file {@code name} and returns it.
+     *
+     * @param name
+     *            the name of the file
+     * @param text
+     *            the text
+     * @return the file
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    private Path write(String name, String text) throws IOException {
+        return Files.write(this.dir.resolve(name),
+                text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns a cache of the default configuration with room for
+     * {@code capacity} bytes, kept in memory only.
+     *
+     * @param capacity
+     *            the estimated bytes of memory
+     * @return the cache
+     * @throws IOException
+     *             never
+     */
+    private static TagCloudCache memoryCache(long capacity)
+            throws IOException {
+        return new TagCloudCache(new TagCloudEngine(TagCloudConfig.DEFAULT),
+                capacity, null);
+    }
+
+    /**
+     * Returns the key of {@code file} in {@code cache}.
+     *
+     * @param cache
+     *            the cache
+     * @param file
+     *            the file
+     * @return the key
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    private static String key(TagCloudCache cache, Path file)
+            throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            return cache.key(channel);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Returns the hits, disk hits, shared counts, misses and evictions of
+     * {@code cache}.
+     *
+     * @param cache
+     *            the cache
+     * @return the statistics
+     */
+    private static List<Long> stats(TagCloudCache cache) {
+        return Arrays.asList(cache.hits(), cache.diskHits(), cache.shared(),
+                cache.misses(), cache.evictions());
+    }
+
+    /**
+     * A file is counted once, and a copy of it under another name is found
+     * by its content and titled with its own name, while a file whose bytes
+     * differ is counted.
+     *
+     * @throws IOException
+     *             if a file cannot be read or written
+     */
+    @Test
+    public void hitsAndMisses() throws IOException {
+        TagCloudCache cache = memoryCache(1 << 20);
+        Path a = this.write("a.txt", "to be or not to be");
+        Path copy = this.write("copy.txt", "to be or not to be");
+        Path b = this.write("b.txt", "to be or not to be!");
+
+        TagCloudResult first = cache.cloud(a);
+        assertEquals(Arrays.asList(0L, 0L, 0L, 1L, 0L), stats(cache));
+        assertEquals(a.toString(), first.title());
+        cache.cloud(a);
+        assertEquals(Arrays.asList(1L, 0L, 0L, 1L, 0L), stats(cache));
+        TagCloudResult copied = cache.cloud(copy);
+        assertEquals(Arrays.asList(2L, 0L, 0L, 1L, 0L), stats(cache));
+        assertEquals(copy.toString(), copied.title());
+        assertEquals(Arrays.toString(first.top()),
+                Arrays.toString(copied.top()));
+        cache.cloud(b);
+        assertEquals(Arrays.asList(2L, 0L, 0L, 2L, 0L), stats(cache));
+        assertEquals(2, cache.size());
+    }
+
+    /**
+     * The cache keeps no more clouds than fit in its bytes, and evicts the
+     * least recently used first.
+     *
+     * @throws IOException
+     *             if a file cannot be read or written
+     */
+    @Test
+    public void leastRecentlyUsedEviction() throws IOException {
+        TagCloudCache cache = memoryCache(2 * ONE_WORD_CLOUD);
+        Path one = this.write("one.txt", "aaaa");
+        Path two = this.write("two.txt", "bbbb");
+        Path three = this.write("three.txt", "cccc");
+
+        cache.cloud(one);
+        cache.cloud(two);
+        assertEquals(2 * ONE_WORD_CLOUD, cache.bytes());
+        //one is now more recently used than two
+        cache.cloud(one);
+        cache.cloud(three);
+        assertEquals(Arrays.asList(1L, 0L, 0L, 3L, 1L), stats(cache));
+        assertEquals(2, cache.size());
+        assertEquals(2 * ONE_WORD_CLOUD, cache.bytes());
+        cache.cloud(one);
+        cache.cloud(three);
+        assertEquals(Arrays.asList(3L, 0L, 0L, 3L, 1L), stats(cache));
+        cache.cloud(two);
+        assertEquals(Arrays.asList(3L, 0L, 0L, 4L, 2L), stats(cache));
+
+        //a cloud larger than the whole cache is not kept
+        TagCloudCache tiny = memoryCache(ONE_WORD_CLOUD - 1);
+        tiny.cloud(one);
+        assertEquals(0, tiny.size());
+        assertEquals(0, tiny.bytes());
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.bytes());
+    }
+
+    /**
+     * A cloud written to the directory is read back by another cache, and by
+     * the same cache once evicted, without being counted again; a damaged
+     * file, or another configuration, is a miss.
+     *
+     * @throws IOException
+     *             if a file cannot be read or written
+     */
+    @Test
+    public void diskTierReload() throws IOException {
+        Path clouds = this.dir.resolve("clouds");
+        Path input = this.write("input.txt", "one two two three three three");
+        TagCloudEngine engine = new TagCloudEngine(TagCloudConfig.DEFAULT);
+
+        TagCloudCache writer = new TagCloudCache(engine, 1 << 20, clouds);
+        TagCloudResult counted = writer.cloud(input);
+        assertEquals(1, writer.misses());
+
+        TagCloudCache reader = new TagCloudCache(engine, 1 << 20, clouds);
+        TagCloudResult loaded = reader.cloud(input);
+        assertEquals(Arrays.asList(0L, 1L, 0L, 0L, 0L), stats(reader));
+        assertEquals(Arrays.toString(counted.top()),
+                Arrays.toString(loaded.top()));
+        assertEquals(counted.total(), loaded.total());
+        assertEquals(counted.distinct(), loaded.distinct());
+        assertEquals(input.toString(), loaded.title());
+        //read back into memory, so the next request is a memory hit
+        reader.cloud(input);
+        assertEquals(Arrays.asList(1L, 1L, 0L, 0L, 0L), stats(reader));
+        reader.clear();
+        reader.cloud(input);
+        assertEquals(Arrays.asList(1L, 2L, 0L, 0L, 0L), stats(reader));
+
+        TagCloudCache other = new TagCloudCache(
+                new TagCloudEngine(TagCloudConfig.DEFAULT.withWords(2)),
+                1 << 20, clouds);
+        other.cloud(input);
+        assertEquals(1, other.misses());
+        assertNotEquals(key(writer, input), key(other, input));
+
+        DirectoryStream<Path> files = Files.newDirectoryStream(clouds);
+        try {
+            for (Path file : files) {
+                Files.write(file, new byte[] { 1, 2, 3 });
+            }
+        } finally {
+            files.close();
+        }
+        TagCloudCache damaged = new TagCloudCache(engine, 1 << 20, clouds);
+        assertEquals(Arrays.toString(counted.top()),
+                Arrays.toString(damaged.cloud(input).top()));
+        assertEquals(Arrays.asList(0L, 0L, 0L, 1L, 0L), stats(damaged));
+    }
+
+    /**
+     * A word longer than the buffer the input is hashed with, as the
+     * tokenizers produce from a long run of letters, is written to the
+     * directory and read back, not taken for a damaged file.
+     *
+     * @throws IOException
+     *             if a file cannot be read or written
+     */
+    @Test
+    public void longWordReloaded() throws IOException {
+        Path clouds = this.dir.resolve("clouds");
+        char[] letters = new char[200_000];
+        Arrays.fill(letters, 'q');
+        String word = new String(letters);
+        Path input = this.write("long.txt",
+                word + " short " + word + "\n" + word.substring(70_000));
+        TagCloudEngine engine = new TagCloudEngine(TagCloudConfig.DEFAULT);
+
+        TagCloudResult counted = new TagCloudCache(engine, 1 << 20, clouds)
+                .cloud(input);
+        assertEquals(word, counted.word(0).word());
+        assertEquals(2, counted.word(0).count());
+
+        TagCloudCache reader = new TagCloudCache(engine, 1 << 20, clouds);
+        TagCloudResult loaded = reader.cloud(input);
+        assertEquals(Arrays.asList(0L, 1L, 0L, 0L, 0L), stats(reader));
+        assertEquals(Arrays.toString(counted.top()),
+                Arrays.toString(loaded.top()));
+    }
+
+    /**
+     * Many threads asking at once for the cloud of a file that is not
+     * cached count it once between them, and all get the same cloud.
+     *
+     * @throws Exception
+     *             if the file cannot be written or a request fails
+     */
+    @Test
+    public void concurrentRequestsCountOnce() throws Exception {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 200_000; i++) {
+            text.append("w").append(i % 997).append(' ');
+        }
+        final Path input = this.write("big.txt", text.toString());
+        final int threads = 8;
+        for (int trial = 0; trial < 5; trial++) {
+            final TagCloudCache cache = memoryCache(1 << 20);
+            final CountDownLatch start = new CountDownLatch(1);
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            try {
+                List<Future<TagCloudResult>> results =
+                        new ArrayList<Future<TagCloudResult>>();
+                for (int i = 0; i < threads; i++) {
+                    results.add(pool.submit(new Callable<TagCloudResult>() {
+                        @Override
+                        public TagCloudResult call() throws Exception {
+                            start.await();
+                            return cache.cloud(input);
+                        }
+                    }));
+                }
+                start.countDown();
+                List<String> tops = new ArrayList<String>();
+                for (Future<TagCloudResult> result : results) {
+                    tops.add(Arrays.toString(result
+                            .get(TIMEOUT.getSeconds(), TimeUnit.SECONDS)
+                            .top()));
+                }
+                assertEquals(1, cache.misses(), "trial " + trial);
+                assertEquals(threads - 1, cache.hits() + cache.shared(),
+                        "trial " + trial);
+                for (String top : tops) {
+                    assertEquals(tops.get(0), top);
+                }
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+    }
+
+}
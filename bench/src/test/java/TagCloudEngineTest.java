@@ -0,0 +1,208 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests of {@code TagCloudEngine} shared between threads.
+ *
+ * @author Hudson Arledge and Nik Anand
+ *
+ */
+public final class TagCloudEngineTest {
+
+    /**
+     * Longest time a thread may take before it is taken to hang.
+     */
+    private static final Duration TIMEOUT = Duration.ofSeconds(120);
+
+    /**
+     * Number of input files.
+     */
+    private static final int FILES = 12;
+
+    /**
+     * Number of threads sharing the engine.
+     */
+    private static final int THREADS = 6;
+
+    /**
+     * Directory the inputs are written to.
+     */
+    @TempDir
+    Path dir;
+
+    /**
+     * Returns a random text of about {@code words} words drawn from
+     * {@code vocabulary} words, some of them needing escapes in HTML, so
+     * that the pages of different texts differ in length.
+     *
+     * @param random
+     *            the source of randomness
+     * @param words
+     *            the number of words
+     * @param vocabulary
+     *            the number of distinct words
+     * @return the text
+     */
+    private static String randomText(Random random, int words,
+            int vocabulary) {
+        String[] extras = { "naïve", "中文", "a&b", "<tag>", "\"q\"" };
+        StringBuilder text = new StringBuilder();
+        for (int w = 0; w < words; w++) {
+            int word = Math.min(random.nextInt(vocabulary),
+                    random.nextInt(vocabulary));
+            if (word < extras.length) {
+                text.append(extras[word]);
+            } else {
+                text.append("w").append(Integer.toString(word, 36));
+            }
+            text.append(w % 13 == 12 ? ".\n" : " ");
+        }
+        return text.toString();
+    }
+
+    /**
+     * Returns the words, counts, total and number of distinct words of
+     * {@code cloud}.
+     *
+     * @param cloud
+     *            the cloud
+     * @return the description
+     */
+    private static String describe(TagCloudResult cloud) {
+        return Arrays.toString(cloud.top()) + " " + cloud.total() + " "
+                + cloud.distinct();
+    }
+
+    /**
+     * Returns the page {@code engine} writes for {@code cloud} to a stream.
+     *
+     * @param engine
+     *            the engine
+     * @param cloud
+     *            the cloud
+     * @return the bytes of the page
+     * @throws IOException
+     *             never
+     */
+    private static byte[] written(TagCloudEngine engine, TagCloudResult cloud)
+            throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        engine.writeHtml(cloud, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * One engine used by many threads at once, each over the inputs in its
+     * own order, from files and from readers, makes the same clouds and
+     * renders the same pages as it does on one thread.
+     *
+     * @throws Exception
+     *             if an input cannot be written or read, or a thread fails
+     */
+    @Test
+    public void threadsMatchSingleThread() throws Exception {
+        Random random = new Random(12);
+        final List<Path> inputs = new ArrayList<Path>();
+        final List<String> texts = new ArrayList<String>();
+        for (int f = 0; f < FILES; f++) {
+            String text = randomText(random, 100 + random.nextInt(40_000),
+                    10 + random.nextInt(5000));
+            Path file = this.dir.resolve("input" + f + ".txt");
+            Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+            inputs.add(file);
+            texts.add(text);
+        }
+        final TagCloudEngine engine = new TagCloudEngine(
+                TagCloudConfig.DEFAULT.withWords(50));
+
+        //the single-threaded results, on a thread of their own so its
+        //renderer is not shared with the threads below
+        final List<String> clouds = new ArrayList<String>();
+        final List<byte[]> pages = new ArrayList<byte[]>();
+        ExecutorService single = Executors.newSingleThreadExecutor();
+        try {
+            single.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws IOException {
+                    for (Path input : inputs) {
+                        TagCloudResult cloud = engine.cloud(input);
+                        clouds.add(describe(cloud));
+                        pages.add(engine.render(cloud));
+                    }
+                    return null;
+                }
+            }).get(TIMEOUT.getSeconds(), TimeUnit.SECONDS);
+        } finally {
+            single.shutdownNow();
+        }
+
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Void>> results = new ArrayList<Future<Void>>();
+            for (int t = 0; t < THREADS; t++) {
+                final long seed = t;
+                results.add(pool.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        List<Integer> order = new ArrayList<Integer>();
+                        for (int round = 0; round < 3; round++) {
+                            for (int f = 0; f < FILES; f++) {
+                                order.add(f);
+                            }
+                        }
+                        Random shuffle = new Random(seed);
+                        Collections.shuffle(order, shuffle);
+                        start.await();
+                        for (int f : order) {
+                            TagCloudResult cloud;
+                            if (shuffle.nextBoolean()) {
+                                cloud = engine.cloud(inputs.get(f));
+                            } else {
+                                cloud = engine.cloud(
+                                        new StringReader(texts.get(f)),
+                                        inputs.get(f).toString());
+                            }
+                            assertEquals(clouds.get(f), describe(cloud),
+                                    "input " + f);
+                            assertArrayEquals(pages.get(f),
+                                    engine.render(cloud), "input " + f);
+                            assertArrayEquals(pages.get(f),
+                                    written(engine, cloud), "input " + f);
+                        }
+                        return null;
+                    }
+                }));
+            }
+            start.countDown();
+            for (Future<Void> result : results) {
+                result.get(TIMEOUT.getSeconds(), TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+}
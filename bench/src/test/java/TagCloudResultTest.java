@@ -0,0 +1,258 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+/**
+ * Tests of the selection and font scaling of {@code TagCloudResult} at sizes
+ * the sample files never reach: a synthetic stream of words, counted through
+ * the tokenizer, whose most frequent words occur hundreds of millions of
+ * times in the full run; tables of counts over a quintillion, near the limit
+ * of a {@code long}; and thousands of words tied at the cutoff of a cloud.
+ * The streamed text is generated as it is counted, so no corpus is written
+ * to disk. The stream of a billion words takes a while, so it is only run
+ * when asked for, with
+ *
+ * <pre>
+ * mvn -B test -Dtest=TagCloudResultTest -Dtagcloud.billion=true
+ * </pre>
+ *
+ * @author Hudson Arledge and Nik Anand
+ *
+ */
+public final class TagCloudResultTest {
+
+    /**
+     * The words of the streamed text, each of which occurs
+     * {@code MULTIPLICITY} times in every block of it. The three words that
+     * occur 5 times tie at the cutoff of a 4 word cloud, and "cat", which
+     * comes first in the text, is the one left out.
+     */
+    private static final String[] WORDS = {
+        "the", "of", "cat", "bat", "ant", "and", "to", "a", "in", "is" };
+
+    /**
+     * The number of times each of {@code WORDS} occurs in a block.
+     */
+    private static final int[] MULTIPLICITY = { 9, 7, 5, 5, 5, 3, 2, 1, 1, 1 };
+
+    /**
+     * Number of bytes of text fed to the tokenizer at a time.
+     */
+    private static final int CHUNK = 1 << 16;
+
+    /**
+     * Returns the cloud of {@code table} with {@code n} words, scaled by
+     * {@code scale}.
+     *
+     * @param table
+     *            the counts
+     * @param n
+     *            the number of words
+     * @param scale
+     *            the font scale
+     * @return the cloud
+     */
+    private static TagCloudResult cloud(WordCountTable table, int n,
+            FontScale scale) {
+        TagCloudConfig config = TagCloudConfig.DEFAULT.withWords(n)
+                .withScale(scale);
+        return new TagCloudEngine(config).cloud(table, "synthetic",
+                PipelineMetrics.DISABLED);
+    }
+
+    /**
+     * Checks the font size classes of {@code cloud}: the most frequent word
+     * gets the largest class and the least frequent the smallest, no word
+     * gets a smaller class than a less frequent one, and linear classes are
+     * exactly those of arbitrary precision arithmetic.
+     *
+     * @param cloud
+     *            the cloud
+     */
+    private static void checkFonts(TagCloudResult cloud) {
+        TagCloudConfig config = cloud.config();
+        String name = config.scale().toString();
+        if (cloud.size() == 0) {
+            return;
+        }
+        assertEquals(config.maxFont(), cloud.font(cloud.max()),
+                name + ": largest count is not in the largest class");
+        if (cloud.min() < cloud.max()) {
+            assertEquals(config.minFont(), cloud.font(cloud.min()),
+                    name + ": smallest count is not in the smallest class");
+        }
+        BigInteger range = BigInteger
+                .valueOf(config.maxFont() - config.minFont());
+        BigInteger spread = BigInteger.valueOf(cloud.max() - cloud.min());
+        for (int i = 0; i < cloud.size(); i++) {
+            long count = cloud.word(i).count();
+            long font = cloud.font(count);
+            assertTrue(config.minFont() <= font && font <= config.maxFont(),
+                    name + ": class " + font + " out of range");
+            if (i > 0) {
+                WordCount above = cloud.word(i - 1);
+                assertTrue(above.count() >= count,
+                        name + ": words out of order at rank " + i);
+                assertTrue(cloud.font(above.count()) >= font,
+                        name + ": smaller class for a larger count at rank "
+                                + i);
+            }
+            if (config.scale() == FontScale.LINEAR
+                    && cloud.min() < cloud.max()) {
+                long exact = range
+                        .multiply(BigInteger.valueOf(count - cloud.min()))
+                        .divide(spread).longValue() + config.minFont();
+                assertEquals(exact, font,
+                        name + ": class of " + count);
+            }
+        }
+    }
+
+    /**
+     * Streams about {@code words} words, in blocks of {@code WORDS}, through
+     * the tokenizer and checks the counts, the selection at a tied cutoff and
+     * the font classes of the cloud.
+     *
+     * @param words
+     *            the number of words to stream, about
+     */
+    private static void checkStream(long words) {
+        StringBuilder text = new StringBuilder();
+        int perBlock = 0;
+        for (int round = 0; round < MULTIPLICITY[0]; round++) {
+            for (int i = 0; i < WORDS.length; i++) {
+                if (MULTIPLICITY[i] > round) {
+                    text.append(WORDS[i]).append(' ');
+                    perBlock++;
+                }
+            }
+        }
+        byte[] block = text.toString().getBytes();
+        int blocksPerChunk = CHUNK / block.length;
+        byte[] chunk = new byte[blocksPerChunk * block.length];
+        for (int i = 0; i < blocksPerChunk; i++) {
+            System.arraycopy(block, 0, chunk, i * block.length, block.length);
+        }
+        long blocks = Math.max(1, words / perBlock);
+
+        WordCountTable table = new WordCountTable();
+        ByteTokenizer tokenizer = new TagCloudEngine(TagCloudConfig.DEFAULT)
+                .byteTokenizer(table, PipelineMetrics.DISABLED);
+        long left = blocks;
+        while (left >= blocksPerChunk) {
+            tokenizer.accept(chunk, 0, chunk.length);
+            left -= blocksPerChunk;
+        }
+        tokenizer.accept(chunk, 0, (int) left * block.length);
+        tokenizer.finish();
+
+        assertEquals(blocks * perBlock, table.total(), "wrong total");
+        for (int i = 0; i < WORDS.length; i++) {
+            assertEquals(blocks * MULTIPLICITY[i], table.get(WORDS[i]),
+                    "wrong count of " + WORDS[i]);
+        }
+        for (FontScale scale : FontScale.values()) {
+            TagCloudResult cloud = cloud(table, 4, scale);
+            assertEquals(4, cloud.size(), "wrong number of words");
+            assertEquals("[the, of, ant, bat]",
+                    Arrays.toString(new String[] { cloud.word(0).word(),
+                        cloud.word(1).word(), cloud.word(2).word(),
+                        cloud.word(3).word() }),
+                    "wrong words at a tied cutoff");
+            checkFonts(cloud);
+            checkFonts(cloud(table, WORDS.length + 5, scale));
+        }
+    }
+
+    /**
+     * A stream of a few million words counts exactly, keeps the first of the
+     * tied words alphabetically and scales its fonts correctly.
+     */
+    @Test
+    public void stream() {
+        checkStream(5_000_000L);
+    }
+
+    /**
+     * A stream of a billion words, whose most frequent word occurs over two
+     * hundred million times, counts exactly, keeps the first of the tied
+     * words alphabetically and scales its fonts correctly.
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "tagcloud.billion", matches = "true")
+    public void billionWordStream() {
+        checkStream(1_000_000_000L);
+    }
+
+    /**
+     * The clouds of a table whose counts, and their sum, nearly fill a
+     * {@code long}, with some of them tied, scale their fonts correctly,
+     * whether {@code n} is less than, equal to or more than the vocabulary.
+     */
+    @Test
+    public void hugeCounts() {
+        WordCountTable table = new WordCountTable();
+        long top = 1L << 60;
+        final int distinct = 24;
+        for (int i = 0; i < distinct; i++) {
+            //every fourth word ties with the one before it
+            long count = top / (i - i / 4 + 1);
+            table.add("w" + (char) ('a' + i), count);
+        }
+        assertTrue(table.total() > 0, "total overflowed");
+        for (FontScale scale : FontScale.values()) {
+            checkFonts(cloud(table, distinct, scale));
+            checkFonts(cloud(table, distinct / 2, scale));
+            TagCloudResult all = cloud(table, distinct * 10, scale);
+            assertEquals(distinct, all.size(),
+                    "wrong number of words when n exceeds the vocabulary");
+            checkFonts(all);
+        }
+    }
+
+    /**
+     * The words kept at a cutoff through thousands of tied words are the
+     * same however the table was filled, and are the first of them
+     * alphabetically.
+     */
+    @Test
+    public void ties() {
+        final int tied = 10_000;
+        final int n = 100;
+        final long count = 3_000_000_000L;
+        List<String> words = new ArrayList<String>();
+        for (int i = 0; i < tied; i++) {
+            words.add(String.format("t%05d", i));
+        }
+        Random random = new Random(2231);
+        for (int trial = 0; trial < 4; trial++) {
+            Collections.shuffle(words, random);
+            WordCountTable table = new WordCountTable();
+            table.add("most", count + 1);
+            for (String word : words) {
+                table.add(word, count);
+            }
+            for (FontScale scale : FontScale.values()) {
+                TagCloudResult cloud = cloud(table, n, scale);
+                assertEquals("most", cloud.word(0).word(),
+                        "wrong most frequent word");
+                for (int i = 1; i < n; i++) {
+                    assertEquals(String.format("t%05d", i - 1),
+                            cloud.word(i).word(),
+                            "wrong word kept at a tied cutoff, rank " + i);
+                }
+                checkFonts(cloud);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,92 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.HashSet;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of {@code TagCloud}.
+ *
+ * @author Hudson Arledge and Nik Anand
+ *
+ */
+public final class TagCloudTest {
+
+    /**
+     * Characters random text is drawn from: ASCII letters and separators,
+     * non-ASCII letters and separators, and the halves of a surrogate pair.
+     */
+    private static final String ALPHABET = "ab ,.-zé—\t、x😀";
+
+    /**
+     * The {@code HashSet} overload of {@code nextWordOrSeparator} splits
+     * random text exactly as the {@code SeparatorSet} overload does with the
+     * same separators compiled.
+     */
+    @Test
+    public void hashSetOverloadMatchesCompiledOverload() {
+        HashSet<Character> separators = new HashSet<Character>();
+        for (char c : " ,.-—\t、".toCharArray()) {
+            separators.add(c);
+        }
+        SeparatorSet compiled = SeparatorSet.of(separators);
+        Random random = new Random(1);
+        for (int trial = 0; trial < 200; trial++) {
+            int length = 1 + random.nextInt(60);
+            StringBuilder text = new StringBuilder(length);
+            for (int i = 0; i < length; i++) {
+                text.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+            }
+            String s = text.toString();
+            for (int position = 0; position < s.length(); position++) {
+                assertEquals(
+                        TagCloud.nextWordOrSeparator(s, position, compiled),
+                        TagCloud.nextWordOrSeparator(s, position, separators),
+                        s + " at " + position);
+            }
+        }
+    }
+
+    /**
+     * Splitting a text from its start with the {@code HashSet} overload
+     * gives back its words and separator strings in order.
+     */
+    @Test
+    public void hashSetOverloadSplitsText() {
+        HashSet<Character> separators = new HashSet<Character>();
+        separators.add(' ');
+        separators.add(',');
+        String text = "one, two  three";
+        String[] expected = { "one", ", ", "two", "  ", "three" };
+        int position = 0;
+        for (String part : expected) {
+            String next = TagCloud.nextWordOrSeparator(text, position,
+                    separators);
+            assertEquals(part, next);
+            position += next.length();
+        }
+        assertEquals(text.length(), position);
+    }
+
+    /**
+     * A set the overload has already compiled is compiled again once
+     * separators are added to it, or once another set is passed.
+     */
+    @Test
+    public void changedSetIsRecompiled() {
+        HashSet<Character> separators = new HashSet<Character>();
+        separators.add(' ');
+        assertEquals("a-b", TagCloud.nextWordOrSeparator("a-b c", 0,
+                separators));
+        separators.add('-');
+        assertEquals("a", TagCloud.nextWordOrSeparator("a-b c", 0,
+                separators));
+        HashSet<Character> other = new HashSet<Character>();
+        other.add('b');
+        assertEquals("a-", TagCloud.nextWordOrSeparator("a-b c", 0, other));
+        assertEquals("a", TagCloud.nextWordOrSeparator("a-b c", 0,
+                separators));
+    }
+
+}
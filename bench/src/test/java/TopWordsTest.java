@@ -0,0 +1,130 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of {@code TopWords}.
+ *
+ * @author Hudson Arledge and Nik Anand
+ *
+ */
+public final class TopWordsTest {
+
+    /**
+     * Returns a table of {@code words} with the counts {@code counts}, added
+     * in a random order into a table sized for {@code expected} words, so the
+     * words are laid out differently from one call to the next.
+     *
+     * @param words
+     *            the words
+     * @param counts
+     *            the count of each word
+     * @param expected
+     *            the size the table is made for
+     * @param random
+     *            the source of randomness
+     * @return the table
+     */
+    private static WordCountTable table(List<String> words, long[] counts,
+            int expected, Random random) {
+        List<Integer> order = new ArrayList<Integer>();
+        for (int i = 0; i < words.size(); i++) {
+            order.add(i);
+        }
+        Collections.shuffle(order, random);
+        WordCountTable table = new WordCountTable(expected);
+        for (int i : order) {
+            table.add(words.get(i), counts[i]);
+        }
+        return table;
+    }
+
+    /**
+     * Returns the words of {@code top} as "word=count".
+     *
+     * @param top
+     *            the words
+     * @return the words and counts
+     */
+    private static String strings(WordCount[] top) {
+        return Arrays.toString(top);
+    }
+
+    /**
+     * Words tied at the cutoff are kept alphabetically, however the table
+     * was filled.
+     */
+    @Test
+    public void tiesAtCutoffAreAlphabetical() {
+        List<String> words = Arrays.asList("pear", "fig", "apple", "kiwi",
+                "date", "lime", "top");
+        long[] counts = { 3, 3, 3, 3, 3, 3, 9 };
+        Random random = new Random(5);
+        for (int trial = 0; trial < 50; trial++) {
+            WordCountTable table = table(words, counts,
+                    random.nextInt(5000), random);
+            assertEquals("[top=9, apple=3, date=3, fig=3]",
+                    strings(TopWords.select(table, 4)), "trial " + trial);
+            assertEquals("[top=9]", strings(TopWords.select(table, 1)));
+        }
+    }
+
+    /**
+     * Asking for more words than the table holds returns all of them, best
+     * first, and asking for none, or selecting from an empty table, returns
+     * none.
+     */
+    @Test
+    public void nBeyondVocabularyAndZero() {
+        WordCountTable table = new WordCountTable();
+        table.add("b", 2);
+        table.add("a", 2);
+        table.add("c", 5);
+        assertEquals("[c=5, a=2, b=2]", strings(TopWords.select(table, 3)));
+        assertEquals("[c=5, a=2, b=2]", strings(TopWords.select(table, 4)));
+        assertEquals("[c=5, a=2, b=2]",
+                strings(TopWords.select(table, Integer.MAX_VALUE)));
+        assertEquals(0, TopWords.select(table, 0).length);
+        assertEquals(0, TopWords.select(new WordCountTable(), 10).length);
+        assertEquals(0, TopWords.select(new WordCountTable(), 0).length);
+    }
+
+    /**
+     * Random counts, with many ties, select the same words as sorting the
+     * whole vocabulary does.
+     */
+    @Test
+    public void randomCountsMatchFullSort() {
+        Random random = new Random(50);
+        for (int trial = 0; trial < 100; trial++) {
+            int vocabulary = 1 + random.nextInt(3000);
+            List<String> words = new ArrayList<String>();
+            long[] counts = new long[vocabulary];
+            List<WordCount> all = new ArrayList<WordCount>();
+            for (int i = 0; i < vocabulary; i++) {
+                words.add(Integer.toString(random.nextInt(), 36) + "_" + i);
+                counts[i] = 1 + random.nextInt(20);
+                all.add(new WordCount(words.get(i), counts[i]));
+            }
+            Collections.sort(all, new Comparator<WordCount>() {
+                @Override
+                public int compare(WordCount o1, WordCount o2) {
+                    return WordCount.compareByRank(o1.word(), o1.count(),
+                            o2.word(), o2.count());
+                }
+            });
+            int n = random.nextInt(vocabulary + 10);
+            WordCountTable table = table(words, counts, 0, random);
+            assertEquals(all.subList(0, Math.min(n, vocabulary)).toString(),
+                    strings(TopWords.select(table, n)), "trial " + trial);
+        }
+    }
+
+}
@@ -0,0 +1,211 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests of {@code WindowedTagCloud}.
+ *
+ * @author Hudson Arledge and Nik Anand
+ *
+ */
+public final class WindowedTagCloudTest {
+
+    /**
+     * The length of a slice, in milliseconds.
+     */
+    private static final long SLICE = 1000;
+
+    /**
+     * The configuration of the clouds, with room for every word.
+     */
+    private static final TagCloudConfig CONFIG = TagCloudConfig.DEFAULT
+            .withWords(1000);
+
+    /**
+     * Directory the clouds are written to.
+     */
+    @TempDir
+    Path dir;
+
+    /**
+     * Adds {@code text} to {@code cloud} at {@code time}.
+     *
+     * @param cloud
+     *            the cloud
+     * @param text
+     *            the text
+     * @param time
+     *            the time of the text
+     */
+    private static void add(WindowedTagCloud cloud, String text, long time) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        cloud.add(bytes, 0, bytes.length, time);
+    }
+
+    /**
+     * Returns the top words of {@code cloud} in alphabetical order.
+     *
+     * @param cloud
+     *            the cloud
+     * @return the words and their counts
+     */
+    private static Map<String, Long> counts(WindowedTagCloud cloud) {
+        Map<String, Long> counts = new TreeMap<String, Long>();
+        for (WordCount word : cloud.top()) {
+            counts.put(word.word(), word.count());
+        }
+        return counts;
+    }
+
+    /**
+     * A window is rounded up to a whole number of slices.
+     */
+    @Test
+    public void windowRoundsUpToSlices() {
+        assertEquals(3, new WindowedTagCloud(CONFIG, 3 * SLICE, SLICE)
+                .slices());
+        assertEquals(4, new WindowedTagCloud(CONFIG, 3 * SLICE + 1, SLICE)
+                .slices());
+    }
+
+    /**
+     * Moving the window forward subtracts the slices that leave it.
+     */
+    @Test
+    public void advanceExpiresOldSlices() {
+        WindowedTagCloud cloud = new WindowedTagCloud(CONFIG, 3 * SLICE,
+                SLICE);
+        add(cloud, "a a", 0);
+        add(cloud, "a b", SLICE);
+        add(cloud, "c", 2 * SLICE);
+        assertEquals("{a=3, b=1, c=1}", counts(cloud).toString());
+        cloud.advance(3 * SLICE);
+        assertEquals("{a=1, b=1, c=1}", counts(cloud).toString());
+        cloud.advance(4 * SLICE + SLICE / 2);
+        assertEquals("{c=1}", counts(cloud).toString());
+        cloud.advance(100 * SLICE);
+        assertEquals("{}", counts(cloud).toString());
+        //moving backwards does nothing
+        cloud.advance(0);
+        add(cloud, "d", 100 * SLICE);
+        assertEquals("{d=1}", counts(cloud).toString());
+    }
+
+    /**
+     * Text older than the window is not counted.
+     */
+    @Test
+    public void textOlderThanWindowIsIgnored() {
+        WindowedTagCloud cloud = new WindowedTagCloud(CONFIG, 3 * SLICE,
+                SLICE);
+        add(cloud, "new", 10 * SLICE);
+        add(cloud, "old", 7 * SLICE + SLICE - 1);
+        add(cloud, "edge", 8 * SLICE);
+        assertEquals("{edge=1, new=1}", counts(cloud).toString());
+    }
+
+    /**
+     * Text of an earlier slice still in the window is counted in that slice,
+     * and leaves the window with it.
+     */
+    @Test
+    public void outOfOrderSlices() {
+        WindowedTagCloud cloud = new WindowedTagCloud(CONFIG, 3 * SLICE,
+                SLICE);
+        add(cloud, "x", 2 * SLICE);
+        add(cloud, "y", SLICE);
+        add(cloud, "x", 2 * SLICE + 1);
+        add(cloud, "z", 0);
+        add(cloud, "y", SLICE + 1);
+        assertEquals("{x=2, y=2, z=1}", counts(cloud).toString());
+        cloud.advance(3 * SLICE);
+        assertEquals("{x=2, y=2}", counts(cloud).toString());
+        cloud.advance(4 * SLICE);
+        assertEquals("{x=2}", counts(cloud).toString());
+    }
+
+    /**
+     * Random text at random times, mostly moving forward but sometimes
+     * going back, counts over many turns of the ring exactly what was added
+     * within the window.
+     */
+    @Test
+    public void ringReuseMatchesReference() {
+        Random random = new Random(19);
+        int slices = 4;
+        WindowedTagCloud cloud = new WindowedTagCloud(CONFIG, slices * SLICE,
+                SLICE);
+        //the slice and word of every text counted
+        List<long[]> added = new ArrayList<long[]>();
+        long time = 0;
+        long current = Long.MIN_VALUE;
+        for (int step = 0; step < 2000; step++) {
+            long at = time - random.nextInt((slices + 2) * (int) SLICE);
+            if (random.nextInt(4) == 0) {
+                time += random.nextInt((int) (3 * SLICE));
+            }
+            int word = random.nextInt(8);
+            add(cloud, "w" + word, at);
+            long slice = Math.floorDiv(at, SLICE);
+            current = Math.max(current, slice);
+            if (slice > current - slices) {
+                added.add(new long[] { slice, word });
+            }
+            if (random.nextInt(10) == 0) {
+                cloud.advance(time);
+                current = Math.max(current, Math.floorDiv(time, SLICE));
+            }
+            Map<String, Long> expected = new TreeMap<String, Long>();
+            for (long[] text : added) {
+                if (text[0] > current - slices) {
+                    String key = "w" + text[1];
+                    Long count = expected.get(key);
+                    expected.put(key, count == null ? 1 : count + 1);
+                }
+            }
+            assertEquals(expected, counts(cloud), "at step " + step);
+        }
+    }
+
+    /**
+     * The command line refuses a charset whose lines cannot be found on the
+     * raw bytes, such as UTF-16, and writes no cloud.
+     */
+    @Test
+    public void mainRejectsCharsetsNotSplitAsBytes() {
+        Path output = this.dir.resolve("cloud.html");
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        InputStream savedIn = System.in;
+        PrintStream savedErr = System.err;
+        //a short standard input, so a run that is not refused ends at once
+        System.setIn(new ByteArrayInputStream(
+                "a b\n".getBytes(StandardCharsets.UTF_16)));
+        System.setErr(new PrintStream(errors, true));
+        try {
+            WindowedTagCloud.main(new String[] { "-e", "UTF-16",
+                "-r", "1", output.toString(), "-" });
+        } finally {
+            System.setIn(savedIn);
+            System.setErr(savedErr);
+        }
+        assertTrue(new String(errors.toByteArray()).startsWith("Usage:"));
+        assertFalse(Files.exists(output));
+    }
+
+}
@@ -0,0 +1,254 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of {@code WordCountTable}.
+ *
+ * @author Hudson Arledge and Nik Anand
+ *
+ */
+public final class WordCountTableTest {
+
+    /**
+     * Characters random words are made of, ASCII and not.
+     */
+    private static final String[] CHARACTERS = { "a", "b", "q", "z", "0",
+        "é", "ω", "中", "😀" };
+
+    /**
+     * Returns {@code n} distinct random words, about half of them ASCII.
+     *
+     * @param random
+     *            the source of randomness
+     * @param n
+     *            the number of words
+     * @return the words
+     */
+    private static List<String> randomWords(Random random, int n) {
+        Map<String, Boolean> words = new HashMap<String, Boolean>();
+        while (words.size() < n) {
+            boolean ascii = random.nextBoolean();
+            StringBuilder word = new StringBuilder();
+            int length = 1 + random.nextInt(8);
+            for (int i = 0; i < length; i++) {
+                word.append(CHARACTERS[random
+                        .nextInt(ascii ? 5 : CHARACTERS.length)]);
+            }
+            words.put(word.toString(), Boolean.TRUE);
+        }
+        return new ArrayList<String>(words.keySet());
+    }
+
+    /**
+     * Returns whether {@code word} is all ASCII.
+     *
+     * @param word
+     *            the word
+     * @return true iff every character of {@code word} is below 128
+     */
+    private static boolean isAscii(String word) {
+        for (int i = 0; i < word.length(); i++) {
+            if (word.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds one occurrence of {@code word} to {@code table} through the sink
+     * method {@code way} selects: as characters, as characters with their
+     * hash, or, for an ASCII word, as bytes with their hash.
+     *
+     * @param table
+     *            the table
+     * @param word
+     *            the word
+     * @param way
+     *            which method is used
+     */
+    private static void addOne(WordCountTable table, String word, int way) {
+        //padding on both sides, so offsets are exercised
+        char[] chars = ("[" + word + "]").toCharArray();
+        int hash = WordCountTable.hash(chars, 1, word.length());
+        if (way == 0) {
+            table.word(chars, 1, word.length());
+        } else if (way == 1 || !isAscii(word)) {
+            table.word(chars, 1, word.length(), hash);
+        } else {
+            byte[] bytes = ("[" + word + "]")
+                    .getBytes(StandardCharsets.US_ASCII);
+            table.word(bytes, 1, word.length(), hash);
+        }
+    }
+
+    /**
+     * Checks {@code table} against {@code reference}, through lookups and
+     * through iteration over its slots.
+     *
+     * @param table
+     *            the table
+     * @param reference
+     *            the expected counts
+     */
+    private static void check(WordCountTable table,
+            Map<String, Long> reference) {
+        assertEquals(reference.size(), table.size());
+        long total = 0;
+        for (Map.Entry<String, Long> entry : reference.entrySet()) {
+            assertEquals(entry.getValue().longValue(),
+                    table.get(entry.getKey()), entry.getKey());
+            total += entry.getValue();
+        }
+        assertEquals(total, table.total());
+        Map<String, Long> iterated = new HashMap<String, Long>();
+        for (int slot = 0; slot < table.capacity(); slot++) {
+            String word = table.keyAt(slot);
+            if (word != null) {
+                assertNull(iterated.put(word, table.countAt(slot)), word);
+            }
+        }
+        assertEquals(reference, iterated);
+        assertEquals(0, Integer.bitCount(table.capacity()) - 1);
+        assertTrue(table.size() <= 2L * table.capacity() / 3);
+    }
+
+    /**
+     * The hash of a word's characters is its {@code String.hashCode}, and an
+     * ASCII word added as bytes, as characters or as a string is the same
+     * entry.
+     */
+    @Test
+    public void charAndByteHashesAgree() {
+        Random random = new Random(4);
+        for (String word : randomWords(random, 500)) {
+            char[] chars = word.toCharArray();
+            assertEquals(word.hashCode(),
+                    WordCountTable.hash(chars, 0, chars.length), word);
+            WordCountTable table = new WordCountTable();
+            addOne(table, word, 0);
+            addOne(table, word, 1);
+            addOne(table, word, 2);
+            table.add(word, 2);
+            table.add(chars, 0, chars.length, 3);
+            assertEquals(1, table.size(), word);
+            assertEquals(8, table.get(word), word);
+            assertEquals(8, table.total(), word);
+        }
+    }
+
+    /**
+     * Random words added every way, many more than fit in the first table,
+     * count as a {@code HashMap} counts them, as the table grows.
+     */
+    @Test
+    public void randomAddsMatchReference() {
+        Random random = new Random(40);
+        List<String> words = randomWords(random, 5000);
+        WordCountTable table = new WordCountTable();
+        int initialCapacity = table.capacity();
+        Map<String, Long> reference = new HashMap<String, Long>();
+        for (int step = 0; step < 40_000; step++) {
+            //early words more often, so counts are skewed
+            String word = words.get(Math.min(random.nextInt(words.size()),
+                    random.nextInt(words.size())));
+            long delta;
+            int way = random.nextInt(5);
+            if (way < 3) {
+                addOne(table, word, way);
+                delta = 1;
+            } else if (way == 3) {
+                delta = random.nextInt(1000);
+                table.add(word, delta);
+            } else {
+                delta = random.nextInt(1000);
+                char[] chars = word.toCharArray();
+                table.add(chars, 0, chars.length, delta);
+            }
+            Long old = reference.get(word);
+            reference.put(word, (old == null ? 0 : old) + delta);
+            if (step % 4000 == 0) {
+                check(table, reference);
+            }
+        }
+        check(table, reference);
+        assertTrue(table.capacity() > initialCapacity);
+        assertEquals(0, table.get("not a word"));
+    }
+
+    /**
+     * A table sized for an expected number of words holds them without
+     * growing.
+     */
+    @Test
+    public void expectedSize() {
+        Random random = new Random(41);
+        List<String> words = randomWords(random, 3000);
+        WordCountTable table = new WordCountTable(words.size());
+        int capacity = table.capacity();
+        Map<String, Long> reference = new HashMap<String, Long>();
+        for (String word : words) {
+            table.add(word, 1);
+            reference.put(word, 1L);
+        }
+        assertEquals(capacity, table.capacity());
+        check(table, reference);
+    }
+
+    /**
+     * Adding one table to another sums the counts of their words.
+     */
+    @Test
+    public void addAll() {
+        Random random = new Random(42);
+        List<String> words = randomWords(random, 2000);
+        WordCountTable a = new WordCountTable();
+        WordCountTable b = new WordCountTable();
+        Map<String, Long> reference = new HashMap<String, Long>();
+        for (int i = 0; i < 6000; i++) {
+            String word = words.get(random.nextInt(words.size()));
+            long count = 1 + random.nextInt(50);
+            (random.nextBoolean() ? a : b).add(word, count);
+            Long old = reference.get(word);
+            reference.put(word, (old == null ? 0 : old) + count);
+        }
+        a.addAll(b);
+        check(a, reference);
+    }
+
+    /**
+     * Clearing a table forgets every word and shrinks it back, and the
+     * table can be filled again.
+     */
+    @Test
+    public void clear() {
+        Random random = new Random(43);
+        List<String> words = randomWords(random, 3000);
+        WordCountTable table = new WordCountTable();
+        int initialCapacity = table.capacity();
+        for (String word : words) {
+            table.add(word, 5);
+        }
+        table.clear();
+        check(table, new HashMap<String, Long>());
+        assertEquals(initialCapacity, table.capacity());
+        assertEquals(0, table.get(words.get(0)));
+        Map<String, Long> reference = new HashMap<String, Long>();
+        for (String word : words.subList(0, 100)) {
+            addOne(table, word, 2);
+            reference.put(word, 1L);
+        }
+        check(table, reference);
+    }
+
+}